@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+import com.example.android.sunshine.app.utils.PollingCheck;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Set;
+
+/*
+    Checks that the settings follow changes made to the shared preferences, that their own
+    writes show up at once and reach the shared preferences in the background, and times the
+    reads a list bind makes against going to the shared preferences each time.
+ */
+public class TestSunshineSettings extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSunshineSettings.class.getSimpleName();
+
+    private static final int BENCHMARK_READS = 10000;
+
+    private SharedPreferences mPrefs;
+    private SunshineSettings mSettings;
+    private String mLocationKey;
+    private String mLocation;
+    private int mLocationStatus;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mSettings = SunshineSettings.getInstance(mContext);
+        mLocationKey = mContext.getString(R.string.pref_location_key);
+        mLocation = mSettings.getPreferredLocation();
+        mLocationStatus = mSettings.getLocationStatus();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().putString(mLocationKey, mLocation).commit();
+        mSettings.setLocationStatus(mLocationStatus);
+        mSettings.untrackLocations(Arrays.asList("London,uk", "Paris,fr"));
+        mSettings.reload();
+        super.tearDown();
+    }
+
+    public void testFollowsPreferences() {
+        mPrefs.edit().putString(mLocationKey, "94043").commit();
+        // The listener is called on the main thread
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return "94043".equals(mSettings.getPreferredLocation());
+            }
+        }.run();
+    }
+
+    public void testWritesShowUpAtOnce() {
+        final String statusKey = mContext.getString(R.string.pref_location_status_key);
+        mSettings.setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN);
+        mSettings.setLocationStatus(SunshineSyncAdapter.LOCATION_STATUS_INVALID);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, mSettings.getLocationStatus());
+
+        // A reload before the write has reached the shared preferences must keep it
+        mSettings.reload();
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, mSettings.getLocationStatus());
+
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                return mPrefs.getInt(statusKey, SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN)
+                        == SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+            }
+        }.run();
+        mSettings.reload();
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, mSettings.getLocationStatus());
+    }
+
+    public void testTrackedLocations() {
+        final String trackedKey = mContext.getString(R.string.pref_tracked_locations_key);
+        mSettings.trackLocations(Arrays.asList("London,uk", "Paris,fr"));
+        mSettings.untrackLocations(Collections.singleton("London,uk"));
+        assertTrue(mSettings.getTrackedLocations().contains("Paris,fr"));
+        assertFalse("Error: an untracked location is still synced",
+                mSettings.getTrackedLocations().contains("London,uk"));
+
+        new PollingCheck() {
+            @Override
+            protected boolean check() {
+                Set<String> tracked = mPrefs.getStringSet(trackedKey,
+                        Collections.<String>emptySet());
+                return tracked.contains("Paris,fr") && !tracked.contains("London,uk");
+            }
+        }.run();
+    }
+
+    @LargeTest
+    public void testBenchmarkReads() {
+        long start = System.nanoTime();
+        int hash = 0;
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            hash += readPreferences(mContext);
+        }
+        long prefsNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        int settingsHash = 0;
+        for (int i = 0; i < BENCHMARK_READS; i++) {
+            settingsHash += readSettings(mContext);
+        }
+        long settingsNanos = System.nanoTime() - start;
+        assertTrue(hash > 0 && settingsHash > 0);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d reads of location, units, art pack and status: shared preferences %d ms, "
+                        + "settings %d ms",
+                BENCHMARK_READS, prefsNanos / 1000000, settingsNanos / 1000000));
+    }
+
+    // How Utility read the settings before
+    private static int readPreferences(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        String location = prefs.getString(context.getString(R.string.pref_location_key),
+                context.getString(R.string.pref_location_default));
+        boolean metric = prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+        String sunshineArtPack = context.getString(R.string.pref_art_pack_sunshine);
+        boolean localGraphics = prefs.getString(context.getString(R.string.pref_art_pack_key),
+                sunshineArtPack).equals(sunshineArtPack);
+        int status = prefs.getInt(context.getString(R.string.pref_location_status_key),
+                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN);
+        return location.length() + (metric ? 1 : 0) + (localGraphics ? 2 : 0) + status;
+    }
+
+    private static int readSettings(Context context) {
+        String location = Utility.getPreferredLocation(context);
+        boolean metric = Utility.isMetric(context);
+        boolean localGraphics = Utility.usingLocalGraphics(context);
+        int status = Utility.getLocationStatus(context);
+        return location.length() + (metric ? 1 : 0) + (localGraphics ? 2 : 0) + status;
+    }
+}
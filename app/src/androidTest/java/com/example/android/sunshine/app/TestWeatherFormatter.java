@@ -0,0 +1,275 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.text.format.Time;
+import android.util.Log;
+
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/*
+    Checks that the formatter writes exactly what String.format and SimpleDateFormat wrote
+    before, in both units, follows unit changes, and times 10k list binds against formatting
+    everything from scratch.
+ */
+public class TestWeatherFormatter extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherFormatter.class.getSimpleName();
+
+    private static final int BENCHMARK_BINDS = 10000;
+    private static final int DAYS = 14;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final double[] TEMPERATURES = {
+            -273.15, -40, -2.5, -1.5, -0.5, -0.4, -0.0, 0, 0.4, 0.5, 1.5, 2.5, 21.49, 21.5,
+            37.77, 99.5, 155.6, 1e12, Double.NaN
+    };
+
+    private static final float[] DEGREES = {
+            0, 22.4f, 22.5f, 67.5f, 100, 157.5f, 202.4f, 247.5f, 292.5f, 337.4f, 337.5f, 359.9f,
+            400, -10, Float.NaN
+    };
+
+    private SharedPreferences mPrefs;
+    private String mUnitsKey;
+    private String mUnits;
+    private WeatherFormatter mFormatter;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(mContext);
+        mUnitsKey = mContext.getString(R.string.pref_units_key);
+        mUnits = mPrefs.getString(mUnitsKey, mContext.getString(R.string.pref_units_metric));
+        mFormatter = WeatherFormatter.getInstance(mContext);
+        mFormatter.invalidate();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        setUnits(mUnits);
+        super.tearDown();
+    }
+
+    // The settings hear about changes on the main thread, so catch them up before we carry on
+    private void setUnits(String units) {
+        mPrefs.edit().putString(mUnitsKey, units).commit();
+        SunshineSettings.getInstance(mContext).reload();
+    }
+
+    public void testMatchesStringFormat() {
+        for (String units : new String[]{mContext.getString(R.string.pref_units_metric),
+                mContext.getString(R.string.pref_units_imperial)}) {
+            setUnits(units);
+            for (double temperature : TEMPERATURES) {
+                // Twice, so the second comes from the cache
+                for (int i = 0; i < 2; i++) {
+                    assertEquals("Error: " + temperature + " in " + units,
+                            formatTemperature(mContext, temperature),
+                            mFormatter.formatTemperature(temperature));
+                }
+            }
+            for (float degrees : DEGREES) {
+                for (double temperature : TEMPERATURES) {
+                    float windSpeed = (float) temperature;
+                    assertEquals("Error: " + windSpeed + " from " + degrees + " in " + units,
+                            getFormattedWind(mContext, windSpeed, degrees),
+                            mFormatter.getFormattedWind(windSpeed, degrees));
+                }
+            }
+        }
+    }
+
+    public void testFollowsUnitChanges() {
+        setUnits(mContext.getString(R.string.pref_units_metric));
+        String celsius = mFormatter.formatTemperature(20);
+        setUnits(mContext.getString(R.string.pref_units_imperial));
+        String fahrenheit = mFormatter.formatTemperature(20);
+        assertFalse("Error: a temperature cached in one unit was served in the other",
+                celsius.equals(fahrenheit));
+        assertEquals(formatTemperature(mContext, 20), fahrenheit);
+    }
+
+    public void testMatchesDateFormats() {
+        long now = System.currentTimeMillis();
+        for (int day = -1; day < DAYS; day++) {
+            long date = now + day * DAY_IN_MILLIS;
+            for (int i = 0; i < 2; i++) {
+                assertEquals(getFriendlyDayString(mContext, date, true),
+                        mFormatter.getFriendlyDayString(date, true));
+                assertEquals(getFriendlyDayString(mContext, date, false),
+                        mFormatter.getFriendlyDayString(date, false));
+                assertEquals(getFullFriendlyDayString(mContext, date),
+                        mFormatter.getFullFriendlyDayString(date));
+            }
+        }
+    }
+
+    public void testSplit() {
+        String[] parts = WeatherFormatter.split("%1.0f°", new String[]{"%1.0f"});
+        assertEquals("", parts[0]);
+        assertEquals("°", parts[1]);
+
+        parts = WeatherFormatter.split("%1$1.0f km/h %2$s", new String[]{"%1$1.0f"},
+                new String[]{"%2$s"});
+        assertEquals("", parts[0]);
+        assertEquals(" km/h ", parts[1]);
+        assertEquals("", parts[2]);
+
+        assertNull("Error: arguments in another order can't be spliced",
+                WeatherFormatter.split("%2$s %1$1.0f km/h", new String[]{"%1$1.0f"},
+                        new String[]{"%2$s"}));
+        assertNull("Error: other conversions can't be spliced",
+                WeatherFormatter.split("%1.0f %%", new String[]{"%1.0f"}));
+    }
+
+    @LargeTest
+    public void testBenchmarkListBinds() {
+        long today = System.currentTimeMillis();
+
+        // A warm-up pass of each, so neither side pays for class loading
+        bindOld(today, DAYS);
+        bindNew(today, DAYS);
+
+        long start = System.nanoTime();
+        int length = bindOld(today, BENCHMARK_BINDS);
+        long oldNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        assertEquals(length, bindNew(today, BENCHMARK_BINDS));
+        long newNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d list binds: String.format and new date formats %d ms, formatter %d ms",
+                BENCHMARK_BINDS, oldNanos / 1000000, newNanos / 1000000));
+    }
+
+    // What the forecast list formats for each day
+    private int bindOld(long today, int binds) {
+        int length = 0;
+        for (int i = 0; i < binds; i++) {
+            int day = i % DAYS;
+            length += getFriendlyDayString(mContext, today + day * DAY_IN_MILLIS, day == 0)
+                    .length();
+            length += formatTemperature(mContext, 20 + day * 0.7).length();
+            length += formatTemperature(mContext, 10 - day * 0.3).length();
+        }
+        return length;
+    }
+
+    private int bindNew(long today, int binds) {
+        int length = 0;
+        for (int i = 0; i < binds; i++) {
+            int day = i % DAYS;
+            length += Utility.getFriendlyDayString(mContext, today + day * DAY_IN_MILLIS,
+                    day == 0).length();
+            length += Utility.formatTemperature(mContext, 20 + day * 0.7).length();
+            length += Utility.formatTemperature(mContext, 10 - day * 0.3).length();
+        }
+        return length;
+    }
+
+    // How Utility formatted everything before the formatter
+
+    private static boolean isMetric(Context context) {
+        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
+        return prefs.getString(context.getString(R.string.pref_units_key),
+                context.getString(R.string.pref_units_metric))
+                .equals(context.getString(R.string.pref_units_metric));
+    }
+
+    private static String formatTemperature(Context context, double temperature) {
+        if (!isMetric(context)) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        return String.format(context.getString(R.string.format_temperature), temperature);
+    }
+
+    private static String getFormattedWind(Context context, float windSpeed, float degrees) {
+        int windFormat;
+        if (isMetric(context)) {
+            windFormat = R.string.format_wind_kmh;
+        } else {
+            windFormat = R.string.format_wind_mph;
+            windSpeed = .621371192237334f * windSpeed;
+        }
+        String direction = "Unknown";
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = "N";
+        } else if (degrees >= 22.5 && degrees < 67.5) {
+            direction = "NE";
+        } else if (degrees >= 67.5 && degrees < 112.5) {
+            direction = "E";
+        } else if (degrees >= 112.5 && degrees < 157.5) {
+            direction = "SE";
+        } else if (degrees >= 157.5 && degrees < 202.5) {
+            direction = "S";
+        } else if (degrees >= 202.5 && degrees < 247.5) {
+            direction = "SW";
+        } else if (degrees >= 247.5 && degrees < 292.5) {
+            direction = "W";
+        } else if (degrees >= 292.5 && degrees < 337.5) {
+            direction = "NW";
+        }
+        return String.format(context.getString(windFormat), windSpeed, direction);
+    }
+
+    private static String getFriendlyDayString(Context context, long dateInMillis,
+                                               boolean displayLongToday) {
+        Time time = new Time();
+        time.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, time.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), time.gmtoff);
+        if (displayLongToday && julianDay == currentJulianDay) {
+            return context.getString(R.string.format_full_friendly_date,
+                    context.getString(R.string.today),
+                    getFormattedMonthDay(dateInMillis));
+        } else if (julianDay < currentJulianDay + 7) {
+            return getDayName(context, dateInMillis);
+        } else {
+            return new SimpleDateFormat("EEE MMM dd").format(dateInMillis);
+        }
+    }
+
+    private static String getFullFriendlyDayString(Context context, long dateInMillis) {
+        return context.getString(R.string.format_full_friendly_date,
+                getDayName(context, dateInMillis), getFormattedMonthDay(dateInMillis));
+    }
+
+    private static String getDayName(Context context, long dateInMillis) {
+        Time t = new Time();
+        t.setToNow();
+        int julianDay = Time.getJulianDay(dateInMillis, t.gmtoff);
+        int currentJulianDay = Time.getJulianDay(System.currentTimeMillis(), t.gmtoff);
+        if (julianDay == currentJulianDay) {
+            return context.getString(R.string.today);
+        } else if (julianDay == currentJulianDay + 1) {
+            return context.getString(R.string.tomorrow);
+        } else {
+            return new SimpleDateFormat("EEEE").format(dateInMillis);
+        }
+    }
+
+    private static String getFormattedMonthDay(long dateInMillis) {
+        return new SimpleDateFormat("MMMM dd").format(dateInMillis);
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/*
+    Checks that forecast rows decode the same whatever the column order of the cursor, that
+    columns left out of a projection read as defaults, and that each consumer's projection
+    reads back what was stored.  Also times binding a list through the pruned projection against
+    the old wide one.
+ */
+public class TestForecastRow extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastRow.class.getSimpleName();
+
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_BINDS = 500;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    // What the forecast list used to ask for
+    private static final String[] WIDE_LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        deleteAllRecords();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAllRecords();
+        super.tearDown();
+    }
+
+    private void deleteAllRecords() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    public void testDecodeIgnoresColumnOrder() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                LocationEntry.COLUMN_COORD_LONG,
+                WeatherEntry.COLUMN_MIN_TEMP,
+                WeatherEntry.COLUMN_WEATHER_ID,
+                WeatherEntry._ID,
+                WeatherEntry.COLUMN_SHORT_DESC,
+                WeatherEntry.COLUMN_MAX_TEMP,
+                WeatherEntry.COLUMN_DATE,
+                LocationEntry.COLUMN_COORD_LAT
+        });
+        cursor.addRow(new Object[]{-147.353, 65.0, 321, 7L, "Asteroids", 75.0,
+                TestUtilities.TEST_DATE, 64.7488});
+        assertTrue(cursor.moveToFirst());
+
+        ForecastRow row = new ForecastRow.Decoder(cursor).read();
+        assertEquals(7L, row.getId());
+        assertEquals(TestUtilities.TEST_DATE, row.getDate());
+        assertEquals(321, row.getWeatherId());
+        assertEquals("Asteroids", row.getShortDesc());
+        assertEquals(75.0, row.getMaxTemp());
+        assertEquals(65.0, row.getMinTemp());
+        assertEquals(64.7488, row.getCoordLat());
+        assertEquals(-147.353, row.getCoordLong());
+        cursor.close();
+    }
+
+    public void testMissingColumnsReadAsDefaults() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{WeatherEntry.COLUMN_DATE});
+        cursor.addRow(new Object[]{TestUtilities.TEST_DATE});
+        assertTrue(cursor.moveToFirst());
+
+        ForecastRow row = new ForecastRow.Decoder(cursor).read();
+        assertEquals(TestUtilities.TEST_DATE, row.getDate());
+        assertEquals(0L, row.getId());
+        assertEquals(0, row.getWeatherId());
+        assertNull(row.getShortDesc());
+        assertEquals(0.0, row.getHumidity());
+        assertEquals(0.0, row.getCoordLat());
+        cursor.close();
+    }
+
+    public void testProjectionsReadBackStoredValues() {
+        long locationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues weather = TestUtilities.createWeatherValues(locationId);
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.insert(WeatherEntry.CONTENT_URI, weather);
+        long date = WeatherContract.normalizeDate(TestUtilities.TEST_DATE);
+
+        Cursor cursor = resolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION, date),
+                ForecastRow.LIST_COLUMNS, null, null, SORT_ORDER);
+        assertEquals(Arrays.asList(ForecastRow.LIST_COLUMNS),
+                Arrays.asList(cursor.getColumnNames()));
+        assertTrue(cursor.moveToFirst());
+        ForecastRow row = new ForecastRow.Decoder(cursor).read();
+        assertEquals(date, row.getDate());
+        assertEquals(321, row.getWeatherId());
+        assertEquals(75.0, row.getMaxTemp());
+        assertEquals(65.0, row.getMinTemp());
+        assertEquals(64.7488, row.getCoordLat());
+        assertEquals(-147.353, row.getCoordLong());
+        cursor.close();
+
+        cursor = resolver.query(
+                WeatherEntry.buildWeatherLocationWithDate(TestUtilities.TEST_LOCATION, date),
+                ForecastRow.DETAIL_COLUMNS, null, null, null);
+        assertEquals(Arrays.asList(ForecastRow.DETAIL_COLUMNS),
+                Arrays.asList(cursor.getColumnNames()));
+        assertTrue(cursor.moveToFirst());
+        row = new ForecastRow.Decoder(cursor).read();
+        assertEquals(1.2, row.getHumidity());
+        assertEquals(1.3, row.getPressure());
+        assertEquals(5.5, row.getWindSpeed());
+        assertEquals(1.1, row.getDegrees());
+        cursor.close();
+
+        ForecastSnapshot snapshot = ForecastSnapshot.query(resolver, TestUtilities.TEST_LOCATION,
+                date);
+        assertEquals(1, snapshot.size());
+        assertTrue(snapshot.getId(0) > 0);
+        assertEquals("Asteroids", snapshot.getShortDesc(0));
+        assertEquals(321, snapshot.getWeatherId(0));
+    }
+
+    @LargeTest
+    public void testBenchmarkListBinding() {
+        long locationId = TestUtilities.insertNorthPoleLocationValues(mContext);
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            values[day] = TestUtilities.createWeatherValues(locationId);
+            values[day].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+        }
+        ContentResolver resolver = mContext.getContentResolver();
+        assertEquals(DAYS, resolver.bulkInsert(WeatherEntry.CONTENT_URI, values));
+
+        // Skip the query cache, so both sides pay for the cursor window they fill
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        String[] args = new String[]{TestUtilities.TEST_LOCATION,
+                Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))};
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            Cursor cursor = queryList(dbHelper, WIDE_LIST_COLUMNS, args);
+            double sum = 0;
+            while (cursor.moveToNext()) {
+                sum += cursor.getLong(cursor.getColumnIndex(WeatherEntry.COLUMN_DATE))
+                        + cursor.getInt(cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID))
+                        + cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP))
+                        + cursor.getDouble(cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP));
+            }
+            assertTrue(sum > 0);
+            cursor.close();
+        }
+        long wideNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_BINDS; i++) {
+            Cursor cursor = queryList(dbHelper, ForecastRow.LIST_COLUMNS, args);
+            ForecastRow.Decoder row = new ForecastRow.Decoder(cursor);
+            double sum = 0;
+            while (cursor.moveToNext()) {
+                sum += row.getDate() + row.getWeatherId() + row.getMaxTemp() + row.getMinTemp();
+            }
+            assertTrue(sum > 0);
+            cursor.close();
+        }
+        long prunedNanos = System.nanoTime() - start;
+        dbHelper.close();
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d list binds of %d days: wide projection %d ms, pruned + decoder %d ms",
+                BENCHMARK_BINDS, DAYS, wideNanos / 1000000, prunedNanos / 1000000));
+    }
+
+    private static Cursor queryList(WeatherDbHelper dbHelper, String[] columns, String[] args) {
+        Cursor cursor = WeatherProvider.sWeatherByLocationSettingQueryBuilder.query(
+                dbHelper.getReadableDatabase(), columns,
+                WeatherProvider.sLocationSettingWithStartDateSelection, args, null, null,
+                SORT_ORDER);
+        assertEquals(DAYS, cursor.getCount());
+        return cursor;
+    }
+}
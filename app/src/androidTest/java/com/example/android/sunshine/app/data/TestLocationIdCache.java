@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Collections;
+import java.util.Locale;
+
+/*
+    Checks that location settings resolve to row ids from memory once the location table has
+    been read, that location writes through the provider are picked up, and times the weather
+    queries by location id against joining on the setting, over hundreds of locations.
+ */
+public class TestLocationIdCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestLocationIdCache.class.getSimpleName();
+
+    private static final int LOCATIONS = 300;
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_QUERIES = 1000;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    // What the forecast list asks for
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private WeatherDbHelper mDbHelper;
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        mLocationIds = new long[LOCATIONS];
+        WeatherBatch batch = new WeatherBatch(LOCATIONS * DAYS);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+                mLocationIds[i] = db.insert(LocationEntry.TABLE_NAME, null, location);
+                for (int day = 0; day < DAYS; day++) {
+                    batch.add(mLocationIds[i], TestUtilities.TEST_DATE + day * DAY_IN_MILLIS,
+                            800 + day % 5, "Clear", 10.0, 20.0, 50, 1013.25, 3.5, 90.0);
+                }
+            }
+            batch.normalizeDates();
+            WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+            try {
+                assertEquals(batch.size(), inserter.insertAll(batch));
+            } finally {
+                inserter.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    public void testFirstLookupLoadsEveryLocation() {
+        LocationIdCache cache = new LocationIdCache();
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        assertEquals(mLocationIds[7], cache.getId(db, "loc7"));
+        assertEquals("Error: the first lookup should read the whole location table",
+                LOCATIONS, cache.size());
+
+        for (int i = 0; i < LOCATIONS; i++) {
+            assertEquals(mLocationIds[i], cache.getId(db, "loc" + i));
+        }
+        assertEquals(1, cache.getMissCount());
+        assertEquals(LOCATIONS, cache.getHitCount());
+    }
+
+    public void testUnknownSettingIsFoundOnceInserted() {
+        LocationIdCache cache = new LocationIdCache();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        assertEquals(-1, cache.getId(db, "94043"));
+
+        ContentValues location = TestUtilities.createNorthPoleLocationValues();
+        location.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+        assertEquals("Error: a missing setting should not be remembered as missing",
+                locationId, cache.getId(db, "94043"));
+    }
+
+    public void testNothingIsKeptDuringAWrite() {
+        LocationIdCache cache = new LocationIdCache();
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        cache.beginWrite();
+        assertEquals(mLocationIds[3], cache.getId(db, "loc3"));
+        assertEquals("Error: ids read while a write was in flight were kept", 0, cache.size());
+        cache.endWrite();
+
+        assertEquals(mLocationIds[3], cache.getId(db, "loc3"));
+        cache.beginWrite();
+        cache.invalidate(Collections.singleton("loc3"));
+        cache.endWrite();
+        assertEquals(LOCATIONS - 1, cache.size());
+        assertEquals(mLocationIds[3], cache.getId(db, "loc3"));
+        assertEquals(LOCATIONS, cache.size());
+    }
+
+    public void testProviderPicksUpLocationWrites() {
+        ContentResolver resolver = mContext.getContentResolver();
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+
+        long locationId = ContentUris.parseId(resolver.insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues()));
+        ContentValues weather = TestUtilities.createWeatherValues(locationId);
+        resolver.insert(WeatherEntry.CONTENT_URI, weather);
+        assertEquals(1, countWeather(resolver, TestUtilities.TEST_LOCATION));
+
+        // Move the location to another setting; the old one must stop resolving
+        ContentValues values = new ContentValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, "94043");
+        resolver.update(LocationEntry.CONTENT_URI, values, LocationEntry._ID + " = ?",
+                new String[]{Long.toString(locationId)});
+        assertEquals(0, countWeather(resolver, TestUtilities.TEST_LOCATION));
+        assertEquals(1, countWeather(resolver, "94043"));
+
+        // Recreate the location under a new row id
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+        locationId = ContentUris.parseId(resolver.insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues()));
+        resolver.insert(WeatherEntry.CONTENT_URI, TestUtilities.createWeatherValues(locationId));
+        assertEquals("Error: a deleted location's row id was still used",
+                1, countWeather(resolver, TestUtilities.TEST_LOCATION));
+
+        resolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        resolver.delete(LocationEntry.CONTENT_URI, null, null);
+    }
+
+    private static int countWeather(ContentResolver resolver, String locationSetting) {
+        Cursor cursor = resolver.query(WeatherEntry.buildWeatherLocation(locationSetting),
+                null, null, null, SORT_ORDER);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testLocationIdQueryUsesIndex() {
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                LIST_COLUMNS, WeatherProvider.sLocationIdWithStartDateSelection, null, null,
+                SORT_ORDER, null);
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql,
+                new String[]{Long.toString(mLocationIds[7]),
+                        Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))});
+        StringBuilder plan = new StringBuilder();
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(cursor.getColumnIndex("detail"))).append('\n');
+        }
+        cursor.close();
+        assertTrue("Error: weather rows are not looked up by location id and date:\n" + plan,
+                plan.toString().contains(WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        assertFalse("Error: rows are sorted instead of read in index order:\n" + plan,
+                plan.toString().contains("TEMP B-TREE"));
+    }
+
+    @LargeTest
+    public void testBenchmarkLocationIdQueries() {
+        SQLiteDatabase db = mDbHelper.getReadableDatabase();
+        String startDate = Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        String bySetting = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                LIST_COLUMNS, WeatherProvider.sLocationSettingWithStartDateSelection, null, null,
+                SORT_ORDER, null);
+        String byId = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                LIST_COLUMNS, WeatherProvider.sLocationIdWithStartDateSelection, null, null,
+                SORT_ORDER, null);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            readAll(db.rawQuery(bySetting, new String[]{"loc" + (i % LOCATIONS), startDate}));
+        }
+        long joinNanos = System.nanoTime() - start;
+
+        LocationIdCache cache = new LocationIdCache();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            long locationId = cache.getId(db, "loc" + (i % LOCATIONS));
+            readAll(db.rawQuery(byId, new String[]{Long.toString(locationId), startDate}));
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        // What a sync used to pay for each location before it could write any weather
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            Cursor cursor = db.query(LocationEntry.TABLE_NAME, new String[]{LocationEntry._ID},
+                    LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
+                    new String[]{"loc" + (i % LOCATIONS)}, null, null, null);
+            assertTrue(cursor.moveToFirst());
+            cursor.close();
+        }
+        long lookupNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            assertTrue(cache.getId(db, "loc" + (i % LOCATIONS)) != -1);
+        }
+        long cachedLookupNanos = System.nanoTime() - start;
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d queries over %d locations x %d days: join on setting %d ms, "
+                        + "cached id + location_id %d ms; id lookups: query %d ms, cached %d ms",
+                BENCHMARK_QUERIES, LOCATIONS, DAYS, joinNanos / 1000000,
+                cachedNanos / 1000000, lookupNanos / 1000000, cachedLookupNanos / 1000000));
+    }
+
+    private static void readAll(Cursor cursor) {
+        assertEquals(DAYS, cursor.getCount());
+        while (cursor.moveToNext()) {
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                cursor.getString(i);
+            }
+        }
+        cursor.close();
+    }
+}
@@ -16,20 +16,26 @@
 package com.example.android.sunshine.app.data;
 
 import android.content.ComponentName;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentUris;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.pm.PackageManager;
 import android.content.pm.ProviderInfo;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.net.Uri;
 import android.os.Build;
+import android.os.Bundle;
 import android.test.AndroidTestCase;
 import android.util.Log;
 
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
+import java.util.ArrayList;
+
 /*
     Note: This is not a complete set of tests of the Sunshine ContentProvider, but it does test
     that at least the basic functionality has been implemented correctly.
@@ -512,4 +518,200 @@ public class TestProvider extends AndroidTestCase {
         }
         cursor.close();
     }
+
+    public void testUpsertSkipsUnchangedRows() {
+        ContentValues testValues = TestUtilities.createNorthPoleLocationValues();
+        Uri locationUri = mContext.getContentResolver().insert(LocationEntry.CONTENT_URI, testValues);
+        long locationRowId = ContentUris.parseId(locationUri);
+
+        ContentValues[] weatherValues = createBulkInsertWeatherValues(locationRowId);
+        int changed = mContext.getContentResolver().bulkInsert(
+                WeatherEntry.buildWeatherUpsertUri(), weatherValues);
+        assertEquals("Error: Every row should be new on the first upsert",
+                BULK_INSERT_RECORDS_TO_INSERT, changed);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID}, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        long firstRowId = cursor.getLong(0);
+        cursor.close();
+
+        // The same data again must not touch anything
+        weatherValues = createBulkInsertWeatherValues(locationRowId);
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherContract.KEY_VALUES, weatherValues);
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_WEATHER, null, extras);
+        assertEquals(0, result.getInt(WeatherContract.KEY_INSERTED));
+        assertEquals(0, result.getInt(WeatherContract.KEY_UPDATED));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, result.getInt(WeatherContract.KEY_UNCHANGED));
+        assertEquals(0, result.getLongArray(WeatherContract.KEY_CHANGED_DATES).length);
+
+        // Revise a single day; only that day should be reported, and rows must keep their _id
+        weatherValues = createBulkInsertWeatherValues(locationRowId);
+        weatherValues[3].put(WeatherEntry.COLUMN_MAX_TEMP, 99);
+        extras.putParcelableArray(WeatherContract.KEY_VALUES, weatherValues);
+        result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_UPSERT_WEATHER, null, extras);
+        assertEquals(1, result.getInt(WeatherContract.KEY_UPDATED));
+        long[] changedDates = result.getLongArray(WeatherContract.KEY_CHANGED_DATES);
+        assertEquals(1, changedDates.length);
+        assertEquals(WeatherContract.normalizeDate(
+                weatherValues[3].getAsLong(WeatherEntry.COLUMN_DATE)), changedDates[0]);
+
+        cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                new String[]{WeatherEntry._ID, WeatherEntry.COLUMN_MAX_TEMP}, null, null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: Upsert replaced an unchanged row", firstRowId, cursor.getLong(0));
+        assertTrue(cursor.moveToPosition(3));
+        assertEquals(99.0, cursor.getDouble(1));
+        cursor.close();
+    }
+
+    private static Bundle createSyncCommit(String[] locationSettings, String[] cityNames,
+                                           int days, long retentionCutoff) {
+        long millisecondsInADay = 1000*60*60*24;
+        WeatherBatch batch = new WeatherBatch();
+        for (int location = 0; location < locationSettings.length; location++) {
+            for (int day = 0; day < days; day++) {
+                batch.add(location, TestUtilities.TEST_DATE + day * millisecondsInADay, 321,
+                        "Asteroids", 65 - day, 75 + day, 1.2, 1.3, 5.5, 1.1);
+            }
+        }
+        double[] coords = new double[locationSettings.length];
+        Bundle extras = new Bundle();
+        extras.putParcelable(WeatherContract.KEY_BATCH, batch);
+        extras.putStringArray(WeatherContract.KEY_LOCATION_SETTINGS, locationSettings);
+        extras.putStringArray(WeatherContract.KEY_CITY_NAMES, cityNames);
+        extras.putDoubleArray(WeatherContract.KEY_COORD_LATS, coords);
+        extras.putDoubleArray(WeatherContract.KEY_COORD_LONGS, coords);
+        extras.putLong(WeatherContract.KEY_RETENTION_CUTOFF, retentionCutoff);
+        return extras;
+    }
+
+    public void testCommitSync() {
+        long existingLocationId = ContentUris.parseId(mContext.getContentResolver().insert(
+                LocationEntry.CONTENT_URI, TestUtilities.createNorthPoleLocationValues()));
+
+        String[] locationSettings = {TestUtilities.TEST_LOCATION, "94043"};
+        Bundle result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_SYNC, null,
+                createSyncCommit(locationSettings, new String[]{"North Pole", "Mountain View"},
+                        BULK_INSERT_RECORDS_TO_INSERT, 0));
+        long[] locationIds = result.getLongArray(WeatherContract.KEY_LOCATION_IDS);
+        assertEquals("Error: an existing location was not reused",
+                existingLocationId, locationIds[0]);
+        assertTrue(locationIds[1] != existingLocationId);
+        assertEquals(2 * BULK_INSERT_RECORDS_TO_INSERT,
+                result.getInt(WeatherContract.KEY_INSERTED));
+        assertEquals(0, result.getInt(WeatherContract.KEY_DELETED));
+
+        // The next sync drops the first three days of both locations
+        long cutoff = WeatherContract.normalizeDate(TestUtilities.TEST_DATE + 2 * 1000*60*60*24);
+        result = mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_COMMIT_SYNC, null,
+                createSyncCommit(locationSettings, new String[]{"North Pole", "Mountain View"},
+                        BULK_INSERT_RECORDS_TO_INSERT, cutoff));
+        assertEquals(0, result.getInt(WeatherContract.KEY_INSERTED) +
+                result.getInt(WeatherContract.KEY_UPDATED));
+        assertEquals(2 * 3, result.getInt(WeatherContract.KEY_DELETED));
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(2 * (BULK_INSERT_RECORDS_TO_INSERT - 3), cursor.getCount());
+        cursor.close();
+    }
+
+    public void testCommitSyncIsAtomic() {
+        // The second location has no city name, which fails the commit half way through
+        try {
+            mContext.getContentResolver().call(WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_COMMIT_SYNC, null,
+                    createSyncCommit(new String[]{TestUtilities.TEST_LOCATION, "94043"},
+                            new String[]{"North Pole"}, BULK_INSERT_RECORDS_TO_INSERT, 0));
+            fail("Error: a malformed commit should fail");
+        } catch (RuntimeException expected) {
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: a failed commit left a location behind", 0, cursor.getCount());
+        cursor.close();
+    }
+
+    // A location and a week of its weather, with the location id filled in from the first result
+    private static ArrayList<ContentProviderOperation> createSyncOperations(
+            ContentValues locationValues) {
+        ArrayList<ContentProviderOperation> operations = new ArrayList<ContentProviderOperation>();
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValues(locationValues)
+                .build());
+        for (ContentValues weatherValues : createBulkInsertWeatherValues(0)) {
+            operations.add(ContentProviderOperation.newInsert(WeatherEntry.CONTENT_URI)
+                    .withValues(weatherValues)
+                    .withValueBackReference(WeatherEntry.COLUMN_LOC_KEY, 0)
+                    .build());
+        }
+        operations.add(ContentProviderOperation.newDelete(WeatherEntry.CONTENT_URI)
+                .withSelection(WeatherEntry.COLUMN_DATE + " < ?",
+                        new String[]{Long.toString(TestUtilities.TEST_DATE)})
+                .build());
+        return operations;
+    }
+
+    public void testApplyBatchNotifiesOncePerUri() throws Exception {
+        TestUtilities.TestContentObserver locationObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(LocationEntry.CONTENT_URI, true,
+                locationObserver);
+        TestUtilities.TestContentObserver weatherObserver = TestUtilities.getTestContentObserver();
+        mContext.getContentResolver().registerContentObserver(WeatherEntry.CONTENT_URI, true,
+                weatherObserver);
+
+        ContentProviderResult[] results = mContext.getContentResolver().applyBatch(
+                WeatherContract.CONTENT_AUTHORITY,
+                createSyncOperations(TestUtilities.createNorthPoleLocationValues()));
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT + 2, results.length);
+
+        // Give any extra notifications time to arrive before counting them
+        Thread.sleep(500);
+        locationObserver.waitForNotificationOrFail();
+        weatherObserver.waitForNotificationOrFail();
+        assertEquals("Error: one batch should notify the location uri once",
+                1, locationObserver.mChangeCount);
+        assertEquals("Error: one batch should notify the weather uri once",
+                1, weatherObserver.mChangeCount);
+        mContext.getContentResolver().unregisterContentObserver(locationObserver);
+        mContext.getContentResolver().unregisterContentObserver(weatherObserver);
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals(BULK_INSERT_RECORDS_TO_INSERT, cursor.getCount());
+        cursor.close();
+    }
+
+    public void testApplyBatchIsAtomic() throws Exception {
+        ArrayList<ContentProviderOperation> operations =
+                createSyncOperations(TestUtilities.createNorthPoleLocationValues());
+        // A location without a city name violates NOT NULL and fails the whole batch
+        operations.add(ContentProviderOperation.newInsert(LocationEntry.CONTENT_URI)
+                .withValue(LocationEntry.COLUMN_LOCATION_SETTING, "94043")
+                .build());
+        try {
+            mContext.getContentResolver().applyBatch(WeatherContract.CONTENT_AUTHORITY,
+                    operations);
+            fail("Error: a failing operation should fail the batch");
+        } catch (android.database.SQLException expected) {
+        } catch (OperationApplicationException expected) {
+        }
+
+        Cursor cursor = mContext.getContentResolver().query(WeatherEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: a failed batch left weather behind", 0, cursor.getCount());
+        cursor.close();
+        cursor = mContext.getContentResolver().query(LocationEntry.CONTENT_URI,
+                null, null, null, null);
+        assertEquals("Error: a failed batch left a location behind", 0, cursor.getCount());
+        cursor.close();
+    }
 }
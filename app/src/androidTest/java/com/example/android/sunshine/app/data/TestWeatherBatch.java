@@ -0,0 +1,190 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Checks the compiled-statement insert path against the ContentValues one, and times both over
+    a few thousand rows spread across many locations.
+ */
+public class TestWeatherBatch extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherBatch.class.getSimpleName();
+
+    private static final int LOCATIONS = 200;
+    private static final int DAYS = 14;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private WeatherDbHelper mDbHelper;
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        mLocationIds = new long[LOCATIONS];
+        for (int i = 0; i < LOCATIONS; i++) {
+            ContentValues location = TestUtilities.createNorthPoleLocationValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+            mLocationIds[i] = db.insert(LocationEntry.TABLE_NAME, null, location);
+            assertTrue(mLocationIds[i] != -1);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    private WeatherBatch createBatch(int seed) {
+        WeatherBatch batch = new WeatherBatch();
+        for (long locationId : mLocationIds) {
+            for (int day = 0; day < DAYS; day++) {
+                batch.add(locationId, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS,
+                        800 + (day + seed) % 5, "Clear", 10.0 + day, 20.0 + day + seed,
+                        50 + day, 1013.25, 3.5, 90.0);
+            }
+        }
+        batch.normalizeDates();
+        return batch;
+    }
+
+    public void testBatchMatchesContentValues() {
+        WeatherBatch batch = createBatch(0);
+        ContentValues expected = batch.toContentValues(5);
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+        long rowId = inserter.insert(batch, 5);
+        inserter.close();
+        assertTrue(rowId != -1);
+
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, null, WeatherEntry._ID + " = ?",
+                new String[]{Long.toString(rowId)}, null, null, null);
+        TestUtilities.validateCursor("Error: batch insert did not store the row as given",
+                cursor, expected);
+    }
+
+    public void testParcelRoundTrip() {
+        WeatherBatch batch = createBatch(1);
+        Parcel parcel = Parcel.obtain();
+        batch.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        WeatherBatch copy = WeatherBatch.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(batch.size(), copy.size());
+        for (int i = 0; i < batch.size(); i++) {
+            assertEquals(batch.toContentValues(i), copy.toContentValues(i));
+        }
+    }
+
+    public void testIncompleteRowsAreRejected() {
+        WeatherBatch batch = createBatch(0);
+        ContentValues[] values = new ContentValues[]{batch.toContentValues(0),
+                batch.toContentValues(1)};
+        assertEquals(2, WeatherBatch.fromContentValues(values).size());
+
+        values[1].remove(WeatherEntry.COLUMN_SHORT_DESC);
+        try {
+            WeatherBatch.fromContentValues(values);
+            fail("Error: a row without a description was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+
+        values[1] = batch.toContentValues(1);
+        values[1].put(WeatherEntry.COLUMN_DATE, "tomorrow");
+        try {
+            WeatherBatch.fromContentValues(values);
+            fail("Error: a row with a date that isn't a number was accepted");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+
+    public void testUpsertBatch() {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        WeatherUpserter.Result result = WeatherUpserter.upsert(db, createBatch(0));
+        assertEquals(LOCATIONS * DAYS, result.inserted);
+
+        result = WeatherUpserter.upsert(db, createBatch(0));
+        assertEquals(LOCATIONS * DAYS, result.unchanged);
+        assertEquals(0, result.changedCount());
+
+        // seed 1 changes every max temperature and weather id
+        result = WeatherUpserter.upsert(db, createBatch(1));
+        assertEquals(LOCATIONS * DAYS, result.updated);
+    }
+
+    @LargeTest
+    public void testBenchmarkInsert() {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        WeatherBatch batch = createBatch(0);
+        ContentValues[] values = new ContentValues[batch.size()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = batch.toContentValues(i);
+        }
+
+        // ContentValues path, as bulkInsert used to do it
+        long start = System.nanoTime();
+        db.beginTransaction();
+        try {
+            for (ContentValues value : values) {
+                db.insert(WeatherEntry.TABLE_NAME, null, value);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long contentValuesNanos = System.nanoTime() - start;
+
+        db.delete(WeatherEntry.TABLE_NAME, null, null);
+
+        // Compiled statement path, including the cost of filling the batch
+        start = System.nanoTime();
+        batch = createBatch(0);
+        int inserted;
+        db.beginTransaction();
+        WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+        try {
+            inserted = inserter.insertAll(batch);
+            db.setTransactionSuccessful();
+        } finally {
+            inserter.close();
+            db.endTransaction();
+        }
+        long batchNanos = System.nanoTime() - start;
+
+        assertEquals(values.length, inserted);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d rows over %d locations: ContentValues %d ms, compiled batch %d ms",
+                values.length, LOCATIONS, contentValuesNanos / 1000000, batchNanos / 1000000));
+    }
+}
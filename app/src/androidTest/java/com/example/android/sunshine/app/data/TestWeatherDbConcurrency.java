@@ -0,0 +1,191 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/*
+    Runs widget-style reads while a sync rewrites every location in one transaction, and compares
+    how long the reads wait in write-ahead logging mode and in the old rollback journal mode.
+ */
+public class TestWeatherDbConcurrency extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherDbConcurrency.class.getSimpleName();
+
+    private static final int LOCATIONS = 200;
+    private static final int DAYS = 14;
+    private static final int SYNCS = 5;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    private static final String[] WIDGET_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private long[] mLocationIds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    private WeatherDbHelper openDatabase(boolean writeAheadLogging) {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        dbHelper.setWriteAheadLoggingEnabled(writeAheadLogging);
+
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        mLocationIds = new long[LOCATIONS];
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+                mLocationIds[i] = db.insert(LocationEntry.TABLE_NAME, null, location);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        sync(db, 0);
+        return dbHelper;
+    }
+
+    // One sync's worth of rows for every location, as the sync adapter commits them
+    private void sync(SQLiteDatabase db, int seed) {
+        WeatherBatch batch = new WeatherBatch(LOCATIONS * DAYS);
+        for (long locationId : mLocationIds) {
+            for (int day = 0; day < DAYS; day++) {
+                batch.add(locationId, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS,
+                        800 + (day + seed) % 5, "Clear", 10.0 + seed, 20.0 + seed,
+                        50, 1013.25, 3.5, 90.0);
+            }
+        }
+        batch.normalizeDates();
+        db.beginTransactionNonExclusive();
+        try {
+            WeatherUpserter.upsert(db, batch);
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return the latency of every read, in nanoseconds, made while the syncs ran.
+     */
+    private long[] readDuringSyncs(final WeatherDbHelper dbHelper) throws InterruptedException {
+        final AtomicBoolean syncing = new AtomicBoolean(true);
+        final Throwable[] writerError = new Throwable[1];
+        Thread writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    SQLiteDatabase db = dbHelper.getWritableDatabase();
+                    for (int i = 1; i <= SYNCS; i++) {
+                        sync(db, i);
+                    }
+                } catch (Throwable t) {
+                    writerError[0] = t;
+                } finally {
+                    syncing.set(false);
+                }
+            }
+        });
+
+        String sql = WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(
+                WIDGET_COLUMNS, WeatherProvider.sLocationSettingWithStartDateSelection, null,
+                null, WeatherEntry.COLUMN_DATE + " ASC", null);
+        String today = Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE));
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+
+        long[] latencies = new long[1024];
+        int reads = 0;
+        writer.start();
+        while (syncing.get()) {
+            long start = System.nanoTime();
+            Cursor cursor = db.rawQuery(sql, new String[]{"loc" + (reads % LOCATIONS), today});
+            assertEquals(DAYS, cursor.getCount());
+            cursor.close();
+            if (reads == latencies.length) {
+                latencies = Arrays.copyOf(latencies, reads * 2);
+            }
+            latencies[reads++] = System.nanoTime() - start;
+        }
+        writer.join();
+        assertNull("Error: a sync failed: " + writerError[0], writerError[0]);
+        return Arrays.copyOf(latencies, reads);
+    }
+
+    private static String describe(long[] latencies) {
+        Arrays.sort(latencies);
+        if (latencies.length == 0) {
+            return "no reads";
+        }
+        return String.format(Locale.US, "%d reads, p50 %.2f ms, p99 %.2f ms, max %.2f ms",
+                latencies.length,
+                latencies[latencies.length / 2] / 1e6,
+                latencies[latencies.length * 99 / 100] / 1e6,
+                latencies[latencies.length - 1] / 1e6);
+    }
+
+    public void testWriteAheadLoggingIsEnabled() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        Cursor cursor = dbHelper.getWritableDatabase().rawQuery("PRAGMA journal_mode", null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: weather.db is not in write-ahead logging mode",
+                "wal", cursor.getString(0).toLowerCase(Locale.US));
+        cursor.close();
+        dbHelper.close();
+    }
+
+    @LargeTest
+    public void testBenchmarkReadsDuringSync() throws InterruptedException {
+        WeatherDbHelper dbHelper = openDatabase(true);
+        long[] wal = readDuringSyncs(dbHelper);
+        dbHelper.close();
+
+        dbHelper = openDatabase(false);
+        long[] rollbackJournal = readDuringSyncs(dbHelper);
+        dbHelper.close();
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Widget reads during %d syncs of %d locations x %d days:\n"
+                        + "  write-ahead log: %s\n  rollback journal: %s",
+                SYNCS, LOCATIONS, DAYS, describe(wal), describe(rollbackJournal)));
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.TreeSet;
+
+/*
+    Upgrades a database as version 2 of the app left it, and checks that nothing is lost and that
+    the result matches a database created from scratch.
+ */
+public class TestWeatherDbMigrations extends AndroidTestCase {
+
+    private static final int DAYS = 14;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // The schema exactly as version 2 created it
+    private static final String VERSION_2_LOCATION_TABLE = "CREATE TABLE location (" +
+            "_id INTEGER PRIMARY KEY," +
+            "location_setting TEXT UNIQUE NOT NULL, " +
+            "city_name TEXT NOT NULL, " +
+            "coord_lat REAL NOT NULL, " +
+            "coord_long REAL NOT NULL  );";
+    private static final String VERSION_2_WEATHER_TABLE = "CREATE TABLE weather (" +
+            "_id INTEGER PRIMARY KEY AUTOINCREMENT," +
+            "location_id INTEGER NOT NULL, " +
+            "date INTEGER NOT NULL, " +
+            "short_desc TEXT NOT NULL, " +
+            "weather_id INTEGER NOT NULL," +
+            "min REAL NOT NULL, " +
+            "max REAL NOT NULL, " +
+            "humidity REAL NOT NULL, " +
+            "pressure REAL NOT NULL, " +
+            "wind REAL NOT NULL, " +
+            "degrees REAL NOT NULL,  " +
+            "FOREIGN KEY (location_id) REFERENCES location (_id),  " +
+            "UNIQUE (date, location_id) ON CONFLICT REPLACE);";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        super.tearDown();
+    }
+
+    private SQLiteDatabase createVersion2Database() {
+        SQLiteDatabase db = mContext.openOrCreateDatabase(WeatherDbHelper.DATABASE_NAME,
+                Context.MODE_PRIVATE, null);
+        db.execSQL(VERSION_2_LOCATION_TABLE);
+        db.execSQL(VERSION_2_WEATHER_TABLE);
+        long locationId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        for (int day = 0; day < DAYS; day++) {
+            ContentValues weather = TestUtilities.createWeatherValues(locationId);
+            weather.put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+            weather.put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day);
+            assertTrue(db.insert(WeatherEntry.TABLE_NAME, null, weather) != -1);
+        }
+        db.setVersion(2);
+        return db;
+    }
+
+    private static int count(SQLiteDatabase db, String table) {
+        Cursor cursor = db.rawQuery("SELECT COUNT(*) FROM " + table, null);
+        try {
+            assertTrue(cursor.moveToFirst());
+            return cursor.getInt(0);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /*
+        The columns of every table and the names of every index, in a comparable form.  The DDL
+        text itself is allowed to differ, e.g. after an ALTER TABLE.
+     */
+    private static List<String> describeSchema(SQLiteDatabase db) {
+        List<String> schema = new ArrayList<String>();
+        Cursor objects = db.rawQuery("SELECT type, name FROM sqlite_master WHERE name NOT LIKE "
+                + "'sqlite_%' AND name != 'android_metadata' ORDER BY type, name", null);
+        while (objects.moveToNext()) {
+            String type = objects.getString(0);
+            String name = objects.getString(1);
+            schema.add(type + " " + name);
+            if ("table".equals(type)) {
+                TreeSet<String> columns = new TreeSet<String>();
+                Cursor info = db.rawQuery("PRAGMA table_info(" + name + ")", null);
+                while (info.moveToNext()) {
+                    columns.add(info.getString(info.getColumnIndex("name")) + " "
+                            + info.getString(info.getColumnIndex("type")) + " "
+                            + info.getInt(info.getColumnIndex("notnull")));
+                }
+                info.close();
+                schema.add(columns.toString());
+            } else if ("index".equals(type)) {
+                List<String> columns = new ArrayList<String>();
+                Cursor info = db.rawQuery("PRAGMA index_info(" + name + ")", null);
+                while (info.moveToNext()) {
+                    columns.add(info.getString(info.getColumnIndex("name")));
+                }
+                info.close();
+                schema.add(columns.toString());
+            }
+        }
+        objects.close();
+        return schema;
+    }
+
+    public void testStepsReachDatabaseVersion() {
+        assertEquals("Error: DATABASE_VERSION was bumped without a migration step",
+                WeatherDbHelper.DATABASE_VERSION, WeatherDbMigrations.getLatestVersion());
+    }
+
+    public void testUpgradeFromVersion2KeepsRows() {
+        SQLiteDatabase old = createVersion2Database();
+        old.close();
+
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        assertEquals(WeatherDbHelper.DATABASE_VERSION, db.getVersion());
+        assertEquals("Error: the upgrade threw away locations", 1,
+                count(db, LocationEntry.TABLE_NAME));
+        assertEquals("Error: the upgrade threw away weather", DAYS,
+                count(db, WeatherEntry.TABLE_NAME));
+
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, new String[]{WeatherEntry.COLUMN_MAX_TEMP},
+                null, null, null, null, WeatherEntry.COLUMN_DATE + " ASC");
+        for (int day = 0; day < DAYS; day++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(75.0 + day, cursor.getDouble(0));
+        }
+        cursor.close();
+        dbHelper.close();
+    }
+
+    public void testUpgradedSchemaMatchesFreshSchema() {
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        List<String> fresh = describeSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        createVersion2Database().close();
+        dbHelper = new WeatherDbHelper(mContext);
+        List<String> upgraded = describeSchema(dbHelper.getReadableDatabase());
+        dbHelper.close();
+
+        assertEquals("Error: onCreate and the migrations build different schemas",
+                fresh, upgraded);
+    }
+
+    public void testFailingStepRollsBackEverything() {
+        SQLiteDatabase db = createVersion2Database();
+        List<WeatherDbMigrations.Step> steps = Arrays.<WeatherDbMigrations.Step>asList(
+                new WeatherDbMigrations.Step(3) {
+                    @Override
+                    void apply(SQLiteDatabase db) {
+                        db.execSQL("CREATE TABLE migrated (_id INTEGER PRIMARY KEY)");
+                        db.delete(WeatherEntry.TABLE_NAME, null, null);
+                    }
+                },
+                new WeatherDbMigrations.Step(4) {
+                    @Override
+                    void apply(SQLiteDatabase db) {
+                        throw new RuntimeException("step failed");
+                    }
+                });
+        try {
+            WeatherDbMigrations.migrate(db, 2, 4, steps);
+            fail("Error: a failing step should fail the migration");
+        } catch (RuntimeException expected) {
+        }
+
+        assertEquals("Error: the steps before the failing one were not rolled back", DAYS,
+                count(db, WeatherEntry.TABLE_NAME));
+        Cursor cursor = db.rawQuery(
+                "SELECT name FROM sqlite_master WHERE type='table' AND name='migrated'", null);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+        db.close();
+    }
+
+    public void testMissingStepIsRejected() {
+        SQLiteDatabase db = createVersion2Database();
+        List<WeatherDbMigrations.Step> steps = Arrays.<WeatherDbMigrations.Step>asList(
+                new WeatherDbMigrations.Step(3) {
+                    @Override
+                    void apply(SQLiteDatabase db) {
+                    }
+                },
+                new WeatherDbMigrations.Step(5) {
+                    @Override
+                    void apply(SQLiteDatabase db) {
+                    }
+                });
+        try {
+            WeatherDbMigrations.migrate(db, 2, 5, steps);
+            fail("Error: a gap between versions should fail the migration");
+        } catch (IllegalStateException expected) {
+        }
+        db.close();
+    }
+}
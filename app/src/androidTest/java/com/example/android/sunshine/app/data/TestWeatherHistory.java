@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Checks that past days are compacted into the history table within the retention window, in
+    bounded batches, and times a sync with a year of history for many locations: kept in the
+    history table, kept in the weather table, and not kept at all as the sync used to do.
+ */
+public class TestWeatherHistory extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherHistory.class.getSimpleName();
+
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+    private static final int FORECAST_DAYS = 14;
+    private static final int HISTORY_DAYS = 365;
+    private static final int BENCHMARK_LOCATIONS = 100;
+    private static final int BENCHMARK_SYNCS = 3;
+
+    // The first day of the forecast; everything before it is in the past
+    private static final long TODAY = WeatherContract.normalizeDate(
+            TestUtilities.TEST_DATE + 30 * DAY_IN_MILLIS);
+
+    private ContentResolver mResolver;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = mContext.getContentResolver();
+        deleteAll();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        deleteAll();
+        super.tearDown();
+    }
+
+    private void deleteAll() {
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+        mResolver.delete(HistoryEntry.CONTENT_URI, null, null);
+    }
+
+    private static long day(int offset) {
+        return TODAY + offset * DAY_IN_MILLIS;
+    }
+
+    // Weather for every day in [firstDay, lastDay), relative to TODAY
+    private static ContentValues[] createDays(long locationId, int firstDay, int lastDay) {
+        ContentValues[] values = new ContentValues[lastDay - firstDay];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = TestUtilities.createWeatherValues(locationId);
+            values[i].put(WeatherEntry.COLUMN_DATE, day(firstDay + i));
+            values[i].put(WeatherEntry.COLUMN_MAX_TEMP, 70 + firstDay + i);
+        }
+        return values;
+    }
+
+    private Bundle compact(int historyDays, int batchSize) {
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.KEY_COMPACT_BEFORE, TODAY);
+        extras.putLong(WeatherContract.KEY_HISTORY_CUTOFF, day(-historyDays));
+        extras.putInt(WeatherContract.KEY_BATCH_SIZE, batchSize);
+        return mResolver.call(WeatherEntry.CONTENT_URI, WeatherContract.METHOD_COMPACT_HISTORY,
+                null, extras);
+    }
+
+    private int count(Uri uri) {
+        Cursor cursor = mResolver.query(uri, null, null, null, null);
+        try {
+            return cursor.getCount();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testCompactionKeepsTheRetentionWindow() {
+        long locationId = ContentUris.parseId(mResolver.insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues()));
+        // 20 past days, today, and a week ahead
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createDays(locationId, -20, 7));
+
+        Bundle result = compact(10, 3);
+        assertEquals(10, result.getInt(WeatherContract.KEY_COMPACTED));
+        assertEquals(10, result.getInt(WeatherContract.KEY_DELETED));
+        assertEquals("Error: the forecast itself should be left alone", 7,
+                count(WeatherEntry.CONTENT_URI));
+
+        Cursor cursor = mResolver.query(HistoryEntry.CONTENT_URI, null, null, null,
+                HistoryEntry.COLUMN_DATE + " ASC");
+        assertEquals(10, cursor.getCount());
+        for (int i = -10; i < 0; i++) {
+            assertTrue(cursor.moveToNext());
+            assertEquals(day(i), cursor.getLong(cursor.getColumnIndex(HistoryEntry.COLUMN_DATE)));
+            assertEquals(70.0 + i,
+                    cursor.getDouble(cursor.getColumnIndex(HistoryEntry.COLUMN_MAX_TEMP)));
+        }
+        cursor.close();
+
+        // A day later, with a shorter window, the oldest summaries age out
+        result = compact(5, 3);
+        assertEquals(0, result.getInt(WeatherContract.KEY_COMPACTED));
+        assertEquals(5, result.getInt(WeatherContract.KEY_DELETED));
+        assertEquals(5, count(HistoryEntry.CONTENT_URI));
+    }
+
+    public void testNoHistoryDeletesThePast() {
+        long locationId = ContentUris.parseId(mResolver.insert(LocationEntry.CONTENT_URI,
+                TestUtilities.createNorthPoleLocationValues()));
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createDays(locationId, -3, 7));
+
+        Bundle result = compact(0, WeatherHistoryCompactor.DEFAULT_BATCH_SIZE);
+        assertEquals(0, result.getInt(WeatherContract.KEY_COMPACTED));
+        assertEquals(3, result.getInt(WeatherContract.KEY_DELETED));
+        assertEquals(7, count(WeatherEntry.CONTENT_URI));
+        assertEquals(0, count(HistoryEntry.CONTENT_URI));
+    }
+
+    public void testBatchesAreBounded() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+        long locationId = db.insert(LocationEntry.TABLE_NAME, null,
+                TestUtilities.createNorthPoleLocationValues());
+        for (ContentValues values : createDays(locationId, -10, 0)) {
+            db.insert(WeatherEntry.TABLE_NAME, null, values);
+        }
+
+        WeatherHistoryCompactor.Result result = new WeatherHistoryCompactor.Result();
+        assertTrue(WeatherHistoryCompactor.compactBatch(db, TODAY, day(-30), 4, result));
+        assertEquals("Error: a batch handled more rows than it was allowed to",
+                4, result.compacted);
+        assertTrue(WeatherHistoryCompactor.compactBatch(db, TODAY, day(-30), 4, result));
+        assertFalse(WeatherHistoryCompactor.compactBatch(db, TODAY, day(-30), 4, result));
+        assertEquals(10, result.compacted);
+        dbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+    }
+
+    // Benchmark helpers, straight on the database the way the provider runs them
+
+    private static long[] insertLocations(SQLiteDatabase db) {
+        long[] locationIds = new long[BENCHMARK_LOCATIONS];
+        for (int i = 0; i < BENCHMARK_LOCATIONS; i++) {
+            ContentValues location = TestUtilities.createNorthPoleLocationValues();
+            location.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+            locationIds[i] = db.insert(LocationEntry.TABLE_NAME, null, location);
+        }
+        return locationIds;
+    }
+
+    private static WeatherBatch createBatch(long[] locationIds, int firstDay, int lastDay,
+                                            int seed) {
+        WeatherBatch batch = new WeatherBatch(locationIds.length * (lastDay - firstDay));
+        for (long locationId : locationIds) {
+            for (int i = firstDay; i < lastDay; i++) {
+                batch.add(locationId, day(i), 800 + (i + seed) % 5, "Clear", 10.0 + seed,
+                        20.0 + seed, 50, 1013.25, 3.5, 90.0);
+            }
+        }
+        batch.normalizeDates();
+        return batch;
+    }
+
+    private static void fillWeather(SQLiteDatabase db, WeatherBatch batch) {
+        db.beginTransaction();
+        try {
+            WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+            try {
+                inserter.insertAll(batch);
+            } finally {
+                inserter.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    /**
+     * @return how long the syncs' write transactions took, in nanoseconds, upserting tomorrow's
+     * forecast and, if {@code deleteBefore} isn't 0, deleting everything before it.
+     */
+    private static long timeSyncs(SQLiteDatabase db, long[] locationIds, long deleteBefore) {
+        long total = 0;
+        for (int seed = 1; seed <= BENCHMARK_SYNCS; seed++) {
+            WeatherBatch batch = createBatch(locationIds, 1, FORECAST_DAYS + 1, seed);
+            long start = System.nanoTime();
+            db.beginTransactionNonExclusive();
+            try {
+                WeatherUpserter.upsert(db, batch);
+                if (deleteBefore != 0) {
+                    db.delete(WeatherEntry.TABLE_NAME, WeatherEntry.COLUMN_DATE + " < ?",
+                            new String[]{Long.toString(deleteBefore)});
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            total += System.nanoTime() - start;
+        }
+        return total / BENCHMARK_SYNCS;
+    }
+
+    @LargeTest
+    public void testBenchmarkSyncWithAYearOfHistory() {
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getWritableDatabase();
+
+        // What the sync used to do: today's forecast, and yesterday left to delete
+        long[] locationIds = insertLocations(db);
+        fillWeather(db, createBatch(locationIds, -1, FORECAST_DAYS, 0));
+        long deleteOnSyncNanos = timeSyncs(db, locationIds, day(1));
+        dbHelper.close();
+
+        // A year of history kept in the weather table, pruned on every sync
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        locationIds = insertLocations(db);
+        fillWeather(db, createBatch(locationIds, -HISTORY_DAYS, FORECAST_DAYS, 0));
+        long inlineHistoryNanos = timeSyncs(db, locationIds, day(1 - HISTORY_DAYS));
+        dbHelper.close();
+
+        // A year of history in the history table: the sync only upserts, and the day that
+        // just passed is compacted afterwards
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        dbHelper = new WeatherDbHelper(mContext);
+        db = dbHelper.getWritableDatabase();
+        locationIds = insertLocations(db);
+        fillWeather(db, createBatch(locationIds, -HISTORY_DAYS, FORECAST_DAYS, 0));
+        // Move the year into the history table before timing anything
+        WeatherHistoryCompactor.Result result = new WeatherHistoryCompactor.Result();
+        db.beginTransaction();
+        try {
+            while (WeatherHistoryCompactor.compactBatch(db, TODAY, day(-HISTORY_DAYS),
+                    WeatherHistoryCompactor.DEFAULT_BATCH_SIZE, result)) {
+                db.yieldIfContendedSafely();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        long historyTableNanos = timeSyncs(db, locationIds, 0);
+
+        long start = System.nanoTime();
+        long longestBatch = 0;
+        int batches = 0;
+        result = new WeatherHistoryCompactor.Result();
+        boolean more = true;
+        while (more) {
+            long batchStart = System.nanoTime();
+            db.beginTransactionNonExclusive();
+            try {
+                more = WeatherHistoryCompactor.compactBatch(db, day(1), day(1 - HISTORY_DAYS),
+                        WeatherHistoryCompactor.DEFAULT_BATCH_SIZE, result);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            longestBatch = Math.max(longestBatch, System.nanoTime() - batchStart);
+            batches++;
+        }
+        long compactionNanos = System.nanoTime() - start;
+        assertEquals(BENCHMARK_LOCATIONS, result.compacted);
+        assertEquals(BENCHMARK_LOCATIONS, result.deleted);
+        dbHelper.close();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "Sync of %d locations x %d days, average of %d:\n"
+                        + "  no history, delete on sync: %d ms\n"
+                        + "  %d days of history in the weather table: %d ms\n"
+                        + "  %d days of history in the history table: %d ms, then compaction "
+                        + "%d ms in %d batches, longest %d ms",
+                BENCHMARK_LOCATIONS, FORECAST_DAYS, BENCHMARK_SYNCS,
+                deleteOnSyncNanos / 1000000,
+                HISTORY_DAYS, inlineHistoryNanos / 1000000,
+                HISTORY_DAYS, historyTableNanos / 1000000, compactionNanos / 1000000, batches,
+                longestBatch / 1000000));
+    }
+}
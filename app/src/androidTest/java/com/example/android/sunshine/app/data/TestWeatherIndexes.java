@@ -0,0 +1,207 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/*
+    Checks that the location setting + date queries are planned through the secondary indexes,
+    and times them over many locations with months of history, with and without the indexes.
+ */
+public class TestWeatherIndexes extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherIndexes.class.getSimpleName();
+
+    private static final int LOCATIONS = 100;
+    private static final int HISTORY_DAYS = 120;
+    private static final int BENCHMARK_QUERIES = 200;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // What the today widget asks for
+    private static final String[] WIDGET_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // What the forecast list asks for
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private WeatherDbHelper mDbHelper;
+    // The day the forecast starts on; everything before it is history
+    private long mToday;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mContext.deleteDatabase(WeatherDbHelper.DATABASE_NAME);
+        mDbHelper = new WeatherDbHelper(mContext);
+        mToday = WeatherContract.normalizeDate(
+                TestUtilities.TEST_DATE + (HISTORY_DAYS - 14) * DAY_IN_MILLIS);
+
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        WeatherBatch batch = new WeatherBatch(LOCATIONS * HISTORY_DAYS);
+        db.beginTransaction();
+        try {
+            for (int i = 0; i < LOCATIONS; i++) {
+                ContentValues location = TestUtilities.createNorthPoleLocationValues();
+                location.put(LocationEntry.COLUMN_LOCATION_SETTING, "loc" + i);
+                long locationId = db.insert(LocationEntry.TABLE_NAME, null, location);
+                for (int day = 0; day < HISTORY_DAYS; day++) {
+                    batch.add(locationId, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS,
+                            800 + day % 5, "Clear", 10.0 + day % 7, 20.0 + day % 7,
+                            50, 1013.25, 3.5, 90.0);
+                }
+            }
+            batch.normalizeDates();
+            WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+            try {
+                assertEquals(batch.size(), inserter.insertAll(batch));
+            } finally {
+                inserter.close();
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDbHelper.close();
+        super.tearDown();
+    }
+
+    private static String buildQuery(String[] projection, String selection) {
+        return WeatherProvider.sWeatherByLocationSettingQueryBuilder.buildQuery(projection,
+                selection, null, null, SORT_ORDER, null);
+    }
+
+    private String explain(String[] projection, String selection, String[] selectionArgs) {
+        Cursor cursor = mDbHelper.getReadableDatabase().rawQuery(
+                "EXPLAIN QUERY PLAN " + buildQuery(projection, selection), selectionArgs);
+        StringBuilder plan = new StringBuilder();
+        int detail = cursor.getColumnIndex("detail");
+        while (cursor.moveToNext()) {
+            plan.append(cursor.getString(detail)).append('\n');
+        }
+        cursor.close();
+        return plan.toString();
+    }
+
+    private void assertPlanUsesIndexes(String plan, boolean covering) {
+        Log.d(LOG_TAG, plan);
+        assertTrue("Error: weather rows are not looked up by location and date:\n" + plan,
+                plan.contains((covering ? "COVERING INDEX " : "INDEX ")
+                        + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE));
+        // Older SQLite versions say "SEARCH TABLE location", newer ones "SEARCH location"
+        assertTrue("Error: the location setting is not looked up through an index:\n" + plan,
+                Pattern.compile("SEARCH (TABLE )?" + LocationEntry.TABLE_NAME + " USING .*INDEX")
+                        .matcher(plan).find());
+        assertFalse("Error: rows are sorted instead of read in index order:\n" + plan,
+                plan.contains("TEMP B-TREE"));
+    }
+
+    public void testStartDateQueryUsesIndexes() {
+        String[] args = {"loc7", Long.toString(mToday)};
+        assertPlanUsesIndexes(explain(WIDGET_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection, args), true);
+        assertPlanUsesIndexes(explain(LIST_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection, args), true);
+    }
+
+    public void testDayQueryUsesIndexes() {
+        String[] args = {"loc7", Long.toString(mToday)};
+        assertPlanUsesIndexes(explain(WIDGET_COLUMNS,
+                WeatherProvider.sLocationSettingAndDaySelection, args), true);
+        // The detail view reads every column, so only the lookup itself is indexed
+        assertPlanUsesIndexes(explain(null,
+                WeatherProvider.sLocationSettingAndDaySelection, args), false);
+    }
+
+    public void testUpgradeFromVersion2AddsIndexesAndKeepsRows() {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        db.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        db.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_LOCATION_SETTING);
+
+        mDbHelper.onUpgrade(db, 2, 3);
+
+        Cursor cursor = db.rawQuery("SELECT name FROM sqlite_master WHERE type='index' AND "
+                + "name IN (?, ?)", new String[]{WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE,
+                WeatherDbHelper.INDEX_LOCATION_SETTING});
+        assertEquals("Error: the upgrade did not add the indexes", 2, cursor.getCount());
+        cursor.close();
+
+        cursor = db.rawQuery("SELECT COUNT(*) FROM " + WeatherEntry.TABLE_NAME, null);
+        assertTrue(cursor.moveToFirst());
+        assertEquals("Error: the upgrade threw away weather rows",
+                LOCATIONS * HISTORY_DAYS, cursor.getInt(0));
+        cursor.close();
+    }
+
+    private long timeQueries(SQLiteDatabase db) {
+        String sql = buildQuery(LIST_COLUMNS,
+                WeatherProvider.sLocationSettingWithStartDateSelection);
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            Cursor cursor = db.rawQuery(sql,
+                    new String[]{"loc" + (i % LOCATIONS), Long.toString(mToday)});
+            assertEquals(14, cursor.getCount());
+            cursor.close();
+        }
+        return System.nanoTime() - start;
+    }
+
+    @LargeTest
+    public void testBenchmarkIndexedQueries() {
+        SQLiteDatabase db = mDbHelper.getWritableDatabase();
+        long indexedNanos = timeQueries(db);
+
+        db.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_WEATHER_LOCATION_DATE);
+        db.execSQL("DROP INDEX " + WeatherDbHelper.INDEX_LOCATION_SETTING);
+        long unindexedNanos = timeQueries(db);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d start date queries over %d locations x %d days: indexed %d ms, "
+                        + "unique constraints only %d ms",
+                BENCHMARK_QUERIES, LOCATIONS, HISTORY_DAYS, indexedNanos / 1000000,
+                unindexedNanos / 1000000));
+    }
+}
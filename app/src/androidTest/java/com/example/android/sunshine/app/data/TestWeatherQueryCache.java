@@ -0,0 +1,238 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Locale;
+
+/*
+    Checks that the provider's query cache serves repeated weather-by-location queries from
+    memory, that writes only drop the locations they touch, and times repeated widget and list
+    queries against running the join every time.
+ */
+public class TestWeatherQueryCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherQueryCache.class.getSimpleName();
+
+    private static final String OTHER_LOCATION = "94043";
+    private static final int DAYS = 14;
+    private static final int BENCHMARK_QUERIES = 500;
+    private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
+
+    // What the today widget asks for
+    private static final String[] WIDGET_COLUMNS = {
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    // What the forecast list asks for
+    private static final String[] LIST_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    private static final String SORT_ORDER = WeatherEntry.COLUMN_DATE + " ASC";
+
+    private ContentResolver mResolver;
+    private long mLocationId;
+    private long mOtherLocationId;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = mContext.getContentResolver();
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+
+        mLocationId = insertLocation(TestUtilities.TEST_LOCATION);
+        mOtherLocationId = insertLocation(OTHER_LOCATION);
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createWeek(mLocationId, 0));
+        mResolver.bulkInsert(WeatherEntry.CONTENT_URI, createWeek(mOtherLocationId, 0));
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mResolver.delete(WeatherEntry.CONTENT_URI, null, null);
+        mResolver.delete(LocationEntry.CONTENT_URI, null, null);
+        super.tearDown();
+    }
+
+    private long insertLocation(String locationSetting) {
+        ContentValues values = TestUtilities.createNorthPoleLocationValues();
+        values.put(LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        return ContentUris.parseId(mResolver.insert(LocationEntry.CONTENT_URI, values));
+    }
+
+    private static ContentValues[] createWeek(long locationId, int seed) {
+        ContentValues[] values = new ContentValues[DAYS];
+        for (int day = 0; day < DAYS; day++) {
+            values[day] = TestUtilities.createWeatherValues(locationId);
+            values[day].put(WeatherEntry.COLUMN_DATE, TestUtilities.TEST_DATE + day * DAY_IN_MILLIS);
+            values[day].put(WeatherEntry.COLUMN_MAX_TEMP, 75 + day + seed);
+        }
+        return values;
+    }
+
+    private Bundle getStats() {
+        return mResolver.call(WeatherEntry.CONTENT_URI, WeatherContract.METHOD_QUERY_CACHE_STATS,
+                null, null);
+    }
+
+    private double queryFirstMaxTemp(String locationSetting) {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(locationSetting,
+                TestUtilities.TEST_DATE);
+        Cursor cursor = mResolver.query(uri, WIDGET_COLUMNS, null, null, SORT_ORDER);
+        try {
+            assertTrue("Error: no weather for " + locationSetting, cursor.moveToFirst());
+            assertEquals(DAYS, cursor.getCount());
+            return cursor.getDouble(2);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public void testRepeatedQueryIsServedFromCache() {
+        Uri uri = WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                TestUtilities.TEST_DATE);
+        Cursor uncached = mResolver.query(uri, LIST_COLUMNS, null, null, SORT_ORDER);
+        long hits = getStats().getLong(WeatherContract.KEY_CACHE_HITS);
+        Cursor cached = mResolver.query(uri, LIST_COLUMNS, null, null, SORT_ORDER);
+        assertEquals("Error: the second identical query should be a cache hit",
+                hits + 1, getStats().getLong(WeatherContract.KEY_CACHE_HITS));
+
+        assertEquals(uncached.getCount(), cached.getCount());
+        assertEquals(uncached.getColumnCount(), cached.getColumnCount());
+        while (uncached.moveToNext()) {
+            assertTrue(cached.moveToNext());
+            for (int i = 0; i < uncached.getColumnCount(); i++) {
+                assertEquals(uncached.getString(i), cached.getString(i));
+            }
+        }
+        uncached.close();
+        cached.close();
+    }
+
+    public void testWritesInvalidateOnlyTheirLocation() {
+        assertEquals(75.0, queryFirstMaxTemp(TestUtilities.TEST_LOCATION));
+        assertEquals(75.0, queryFirstMaxTemp(OTHER_LOCATION));
+
+        // Revise the first location through the upsert path
+        Bundle extras = new Bundle();
+        extras.putParcelableArray(WeatherContract.KEY_VALUES, createWeek(mLocationId, 10));
+        mResolver.call(WeatherEntry.CONTENT_URI, WeatherContract.METHOD_UPSERT_WEATHER, null,
+                extras);
+
+        long hits = getStats().getLong(WeatherContract.KEY_CACHE_HITS);
+        assertEquals("Error: a cached query returned rows older than the last write",
+                85.0, queryFirstMaxTemp(TestUtilities.TEST_LOCATION));
+        assertEquals(hits, getStats().getLong(WeatherContract.KEY_CACHE_HITS));
+        assertEquals(75.0, queryFirstMaxTemp(OTHER_LOCATION));
+        assertEquals("Error: an untouched location should still be cached",
+                hits + 1, getStats().getLong(WeatherContract.KEY_CACHE_HITS));
+
+        // update() and delete() with arbitrary selections
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, 50);
+        mResolver.update(WeatherEntry.CONTENT_URI, values, WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mOtherLocationId)});
+        assertEquals(50.0, queryFirstMaxTemp(OTHER_LOCATION));
+
+        mResolver.delete(WeatherEntry.CONTENT_URI, WeatherEntry.COLUMN_LOC_KEY + " = ?",
+                new String[]{Long.toString(mLocationId)});
+        Cursor cursor = mResolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(TestUtilities.TEST_LOCATION,
+                        TestUtilities.TEST_DATE), WIDGET_COLUMNS, null, null, SORT_ORDER);
+        assertEquals(0, cursor.getCount());
+        cursor.close();
+    }
+
+    @LargeTest
+    public void testBenchmarkWidgetAndListQueries() {
+        Uri widgetUri = WeatherEntry.buildWeatherLocationWithStartDate(
+                TestUtilities.TEST_LOCATION, TestUtilities.TEST_DATE);
+
+        // The join as the provider used to run it for every query
+        WeatherDbHelper dbHelper = new WeatherDbHelper(mContext);
+        SQLiteDatabase db = dbHelper.getReadableDatabase();
+        String join = WeatherEntry.TABLE_NAME + " INNER JOIN " + LocationEntry.TABLE_NAME
+                + " ON " + WeatherEntry.TABLE_NAME + "." + WeatherEntry.COLUMN_LOC_KEY
+                + " = " + LocationEntry.TABLE_NAME + "." + LocationEntry._ID;
+        String selection = LocationEntry.TABLE_NAME + "." + LocationEntry.COLUMN_LOCATION_SETTING
+                + " = ? AND " + WeatherEntry.COLUMN_DATE + " >= ? ";
+        String[] selectionArgs = {TestUtilities.TEST_LOCATION,
+                Long.toString(WeatherContract.normalizeDate(TestUtilities.TEST_DATE))};
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            readAll(db.query(join, WIDGET_COLUMNS, selection, selectionArgs, null, null,
+                    SORT_ORDER));
+            readAll(db.query(join, LIST_COLUMNS, selection, selectionArgs, null, null,
+                    SORT_ORDER));
+        }
+        long joinNanos = System.nanoTime() - start;
+        dbHelper.close();
+
+        Bundle before = getStats();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_QUERIES; i++) {
+            readAll(mResolver.query(widgetUri, WIDGET_COLUMNS, null, null, SORT_ORDER));
+            readAll(mResolver.query(widgetUri, LIST_COLUMNS, null, null, SORT_ORDER));
+        }
+        long providerNanos = System.nanoTime() - start;
+        Bundle after = getStats();
+
+        long hits = after.getLong(WeatherContract.KEY_CACHE_HITS)
+                - before.getLong(WeatherContract.KEY_CACHE_HITS);
+        long misses = after.getLong(WeatherContract.KEY_CACHE_MISSES)
+                - before.getLong(WeatherContract.KEY_CACHE_MISSES);
+        assertTrue("Error: at most the first query of each kind should miss", misses <= 2);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d widget + list queries: join every time %d ms, cached provider %d ms, "
+                        + "hit rate %.1f%%",
+                BENCHMARK_QUERIES, joinNanos / 1000000, providerNanos / 1000000,
+                100f * hits / (hits + misses)));
+    }
+
+    private static void readAll(Cursor cursor) {
+        while (cursor.moveToNext()) {
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                cursor.getString(i);
+            }
+        }
+        cursor.close();
+    }
+}
@@ -0,0 +1,216 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/*
+    A minimal HTTP/1.1 server on the loopback interface that serves one forecast body the way a
+    well behaved origin would: with an ETag and a Cache-Control header, answering 304 when the
+    request's If-None-Match matches, and gzipping the body when the client accepts it and
+    compression is on.  Connections are kept alive.  Every request is recorded so tests can look
+    at what was actually sent.
+ */
+class MockForecastServer {
+
+    static final class Request {
+        final String requestLine;
+        final Map<String, String> headers = new HashMap<String, String>();
+
+        Request(String requestLine) {
+            this.requestLine = requestLine;
+        }
+
+        String getHeader(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+    }
+
+    private final ServerSocket mServerSocket;
+    private final Thread mThread;
+    private final List<Request> mRequests = new ArrayList<Request>();
+    private final List<Socket> mSockets = new ArrayList<Socket>();
+
+    private volatile String mBody = "";
+    private volatile String mEtag;
+    private volatile String mCacheControl;
+    private volatile boolean mGzip;
+    private volatile int mConnectionCount;
+
+    MockForecastServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (!mServerSocket.isClosed()) {
+                    try {
+                        final Socket socket = mServerSocket.accept();
+                        mConnectionCount++;
+                        synchronized (mSockets) {
+                            mSockets.add(socket);
+                        }
+                        // Each connection gets its own thread so kept-alive ones don't block
+                        new Thread(new Runnable() {
+                            @Override
+                            public void run() {
+                                try {
+                                    serveConnection(socket);
+                                } catch (IOException e) {
+                                    // The client went away
+                                } finally {
+                                    try {
+                                        socket.close();
+                                    } catch (IOException e) {
+                                        // ignore
+                                    }
+                                }
+                            }
+                        }, "MockForecastServer connection").start();
+                    } catch (IOException e) {
+                        // Closed, or the client went away; either way move on
+                    }
+                }
+            }
+        }, "MockForecastServer");
+        mThread.start();
+    }
+
+    /**
+     * @return a base url in the same shape as OwmForecastSource.FORECAST_BASE_URL.
+     */
+    String getBaseUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + "/data/2.5/forecast/daily?";
+    }
+
+    void setResponse(String body, String etag, String cacheControl) {
+        mBody = body;
+        mEtag = etag;
+        mCacheControl = cacheControl;
+    }
+
+    void setGzip(boolean gzip) {
+        mGzip = gzip;
+    }
+
+    /**
+     * @return how many TCP connections have been accepted, whatever number of requests they
+     * carried.
+     */
+    int getConnectionCount() {
+        return mConnectionCount;
+    }
+
+    synchronized List<Request> getRequests() {
+        return new ArrayList<Request>(mRequests);
+    }
+
+    void shutdown() throws IOException {
+        mServerSocket.close();
+        // Kept-alive connections would otherwise sit waiting for another request
+        synchronized (mSockets) {
+            for (Socket socket : mSockets) {
+                socket.close();
+            }
+        }
+        try {
+            mThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serveConnection(Socket socket) throws IOException {
+        BufferedReader in = new BufferedReader(
+                new InputStreamReader(socket.getInputStream(), "UTF-8"));
+        OutputStream out = socket.getOutputStream();
+        while (serve(in, out)) {
+            // Keep going until the client closes the connection
+        }
+    }
+
+    /**
+     * @return false once the connection should be closed.
+     */
+    private boolean serve(BufferedReader in, OutputStream out) throws IOException {
+        String requestLine = in.readLine();
+        if (requestLine == null) {
+            return false;
+        }
+        Request request = new Request(requestLine);
+        for (String line = in.readLine(); line != null && line.length() > 0; line = in.readLine()) {
+            int colon = line.indexOf(':');
+            if (colon > 0) {
+                request.headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US),
+                        line.substring(colon + 1).trim());
+            }
+        }
+        synchronized (this) {
+            mRequests.add(request);
+        }
+
+        String etag = mEtag;
+        String cacheControl = mCacheControl;
+        boolean notModified = etag != null && etag.equals(request.getHeader("If-None-Match"));
+        byte[] body = notModified ? new byte[0] : mBody.getBytes("UTF-8");
+        String acceptEncoding = request.getHeader("Accept-Encoding");
+        boolean gzip = !notModified && mGzip
+                && acceptEncoding != null && acceptEncoding.contains("gzip");
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            GZIPOutputStream gzipOut = new GZIPOutputStream(compressed);
+            gzipOut.write(body);
+            gzipOut.close();
+            body = compressed.toByteArray();
+        }
+
+        StringBuilder head = new StringBuilder();
+        head.append(notModified ? "HTTP/1.1 304 Not Modified" : "HTTP/1.1 200 OK").append("\r\n");
+        if (etag != null) {
+            head.append("ETag: ").append(etag).append("\r\n");
+        }
+        if (cacheControl != null) {
+            head.append("Cache-Control: ").append(cacheControl).append("\r\n");
+        }
+        if (!notModified) {
+            head.append("Content-Type: application/json; charset=utf-8\r\n");
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        if (gzip) {
+            head.append("Content-Encoding: gzip\r\n");
+        }
+        boolean close = "close".equalsIgnoreCase(request.getHeader("Connection"));
+        head.append(close ? "Connection: close\r\n" : "Connection: keep-alive\r\n");
+        head.append("\r\n");
+
+        out.write(head.toString().getBytes("UTF-8"));
+        out.write(body);
+        out.flush();
+        return !close;
+    }
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TestForecastFetcher extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastFetcher.class.getSimpleName();
+
+    private static final long FETCH_LATENCY_MS = 200;
+
+    /*
+        Stands in for OWM: every fetch takes FETCH_LATENCY_MS, and a couple of location names
+        make it fail the way the real server can.
+     */
+    static class FakeForecastSource implements ForecastSource {
+        static final String DOWN = "down";
+        static final String GARBAGE = "garbage";
+        static final String UNKNOWN = "unknown";
+
+        @Override
+        public ForecastParser.Forecast fetch(String locationSetting, boolean revalidate)
+                throws IOException, JSONException {
+            try {
+                Thread.sleep(FETCH_LATENCY_MS);
+            } catch (InterruptedException e) {
+                throw new IOException("Interrupted");
+            }
+            if (DOWN.equals(locationSetting)) {
+                throw new IOException("Connection refused");
+            } else if (GARBAGE.equals(locationSetting)) {
+                return ForecastParser.parse(new StringReader("{\"list\":[{]}"), 14);
+            } else if (UNKNOWN.equals(locationSetting)) {
+                return ForecastParser.parse(new StringReader("{\"cod\":\"404\"}"), 14);
+            }
+            return ForecastParser.parse(
+                    new StringReader(TestForecastParser.createForecastJson(14)), 14);
+        }
+    }
+
+    public void testFailuresStayPerLocation() {
+        List<String> locations = new ArrayList<String>();
+        locations.add("94043");
+        locations.add(FakeForecastSource.DOWN);
+        locations.add(FakeForecastSource.GARBAGE);
+        locations.add(FakeForecastSource.UNKNOWN);
+        locations.add("London,uk");
+
+        List<ForecastFetcher.Result> results =
+                new ForecastFetcher(new FakeForecastSource(), 4).fetchAll(locations,
+                        Collections.<String>emptySet());
+
+        assertEquals(locations.size(), results.size());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, results.get(0).status);
+        assertEquals(14, results.get(0).forecast.days.size());
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, results.get(1).status);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID, results.get(2).status);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_INVALID, results.get(3).status);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, results.get(4).status);
+        assertEquals("London,uk", results.get(4).locationSetting);
+    }
+
+    public void testWallTimeGrowsSubLinearly() {
+        ForecastFetcher fetcher = new ForecastFetcher(new FakeForecastSource(),
+                ForecastFetcher.DEFAULT_MAX_CONCURRENT_FETCHES);
+        for (int count : new int[]{1, 4, 16}) {
+            List<String> locations = new ArrayList<String>();
+            for (int i = 0; i < count; i++) {
+                locations.add("location" + i);
+            }
+            long start = System.currentTimeMillis();
+            fetcher.fetchAll(locations, Collections.<String>emptySet());
+            long elapsed = System.currentTimeMillis() - start;
+            Log.i(LOG_TAG, count + " locations synced in " + elapsed + " ms");
+
+            long sequential = count * FETCH_LATENCY_MS;
+            if (count > 1) {
+                assertTrue("Error: " + count + " locations took " + elapsed + " ms",
+                        elapsed < sequential / 2);
+            }
+        }
+    }
+}
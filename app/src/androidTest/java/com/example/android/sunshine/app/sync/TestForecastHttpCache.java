@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+/*
+    Runs OwmForecastSource against a local server to check that validators are stored, sent
+    back, and that unchanged forecasts come back as notModified without being parsed, but only
+    for forecasts that were stored.
+ */
+public class TestForecastHttpCache extends AndroidTestCase {
+
+    private static final String LOCATION = "94043";
+    private static final String ETAG = "\"v1\"";
+
+    private MockForecastServer mServer;
+    private ForecastHttpCache mCache;
+    private OwmForecastSource mSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockForecastServer();
+        mCache = new ForecastHttpCache(new File(mContext.getCacheDir(), "test-forecasts"));
+        mCache.clear();
+        mSource = new OwmForecastSource(mServer.getBaseUrl(),
+                new UrlConnectionSyncHttpClient(), mCache);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        mCache.clear();
+        super.tearDown();
+    }
+
+    public void testConditionalGet() throws Exception {
+        mServer.setResponse(TestForecastParser.createForecastJson(14), ETAG, "max-age=0");
+
+        ForecastParser.Forecast forecast = fetchAndStore();
+        assertFalse(forecast.notModified);
+        assertEquals(14, forecast.days.size());
+        assertEquals(1, mCache.getMissCount());
+
+        // Stale straight away, so the second fetch has to revalidate
+        forecast = fetchAndStore();
+        assertTrue("Error: an unchanged forecast should not be parsed again", forecast.notModified);
+        assertEquals(0, forecast.days.size());
+        assertEquals(1, mCache.getConditionalHitCount());
+
+        List<MockForecastServer.Request> requests = mServer.getRequests();
+        assertEquals(2, requests.size());
+        assertNull(requests.get(0).getHeader("If-None-Match"));
+        assertEquals(ETAG, requests.get(1).getHeader("If-None-Match"));
+
+        // A new version on the server means a full download again
+        mServer.setResponse(TestForecastParser.createForecastJson(14), "\"v2\"", "max-age=0");
+        forecast = fetchAndStore();
+        assertFalse(forecast.notModified);
+        assertEquals(2, mCache.getMissCount());
+    }
+
+    public void testFreshEntrySkipsRequest() throws Exception {
+        mServer.setResponse(TestForecastParser.createForecastJson(14), ETAG, "max-age=3600");
+
+        assertFalse(fetchAndStore().notModified);
+        assertTrue(fetchAndStore().notModified);
+        assertTrue(fetchAndStore().notModified);
+
+        assertEquals(1, mServer.getRequests().size());
+        assertEquals(2, mCache.getHitCount());
+        assertEquals(1, mCache.getMissCount());
+    }
+
+    public void testNoStoreIsNotCached() throws Exception {
+        mServer.setResponse(TestForecastParser.createForecastJson(14), ETAG, "no-store");
+
+        assertFalse(fetchAndStore().notModified);
+        assertFalse(fetchAndStore().notModified);
+
+        assertNull(mServer.getRequests().get(1).getHeader("If-None-Match"));
+        assertEquals(2, mCache.getMissCount());
+    }
+
+    public void testErrorResponseIsNotCached() throws Exception {
+        mServer.setResponse("{\"cod\":\"404\",\"message\":\"city not found\"}", ETAG, "max-age=0");
+
+        ForecastParser.Forecast forecast = mSource.fetch(LOCATION, true);
+        assertEquals(404, forecast.messageCode);
+        assertNull(forecast.cacheEntry);
+
+        // Nothing usable was stored, so there is nothing to revalidate
+        mSource.fetch(LOCATION, true);
+        assertNull(mServer.getRequests().get(1).getHeader("If-None-Match"));
+        assertEquals(0, mCache.getConditionalHitCount());
+    }
+
+    public void testUnstoredForecastIsNotRevalidated() throws Exception {
+        mServer.setResponse(TestForecastParser.createForecastJson(14), ETAG, "max-age=3600");
+
+        // As if writing the forecast to the database failed: its entry is never put
+        ForecastParser.Forecast forecast = mSource.fetch(LOCATION, true);
+        assertNotNull(forecast.cacheEntry);
+        assertFalse("Error: a forecast that was never stored came back not modified",
+                mSource.fetch(LOCATION, true).notModified);
+        assertEquals(2, mServer.getRequests().size());
+    }
+
+    public void testMissingRowsSkipValidators() throws Exception {
+        mServer.setResponse(TestForecastParser.createForecastJson(14), ETAG, "max-age=0");
+        fetchAndStore();
+
+        // As if the weather rows had been dropped since: the entry must not be used
+        ForecastParser.Forecast forecast = mSource.fetch(LOCATION, false);
+        assertFalse(forecast.notModified);
+        assertEquals(14, forecast.days.size());
+        assertNull(mServer.getRequests().get(1).getHeader("If-None-Match"));
+    }
+
+    public void testFetcherSkipsUnchangedLocations() throws Exception {
+        mServer.setResponse(TestForecastParser.createForecastJson(14), ETAG, "max-age=0");
+        List<String> locations = new ArrayList<String>();
+        locations.add(LOCATION);
+        Set<String> stored = Collections.singleton(LOCATION);
+        ForecastFetcher fetcher = new ForecastFetcher(mSource, 1);
+
+        ForecastFetcher.Result result = fetcher.fetchAll(locations, stored).get(0);
+        assertFalse(result.notModified);
+        assertNotNull(result.forecast);
+        assertNotNull(result.pendingCacheEntry);
+        mCache.put(result.pendingCacheEntry);
+
+        result = fetcher.fetchAll(locations, stored).get(0);
+        assertEquals(SunshineSyncAdapter.LOCATION_STATUS_OK, result.status);
+        assertTrue(result.notModified);
+        assertNull(result.forecast);
+
+        result = fetcher.fetchAll(locations, Collections.<String>emptySet()).get(0);
+        assertFalse("Error: a location without stored rows came back not modified",
+                result.notModified);
+    }
+
+    // What the sync adapter does: the entry only goes in once the forecast is stored
+    private ForecastParser.Forecast fetchAndStore() throws Exception {
+        ForecastParser.Forecast forecast = mSource.fetch(LOCATION, true);
+        if (forecast.cacheEntry != null) {
+            mCache.put(forecast.cacheEntry);
+        }
+        return forecast;
+    }
+}
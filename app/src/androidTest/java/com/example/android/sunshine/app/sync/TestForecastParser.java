@@ -0,0 +1,199 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.Locale;
+
+/*
+    Checks that the streaming forecast parser decodes exactly what the JSONObject path did, and
+    measures both on the 14 and 16 day payloads OWM sends us.
+ */
+public class TestForecastParser extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestForecastParser.class.getSimpleName();
+
+    private static final int WARMUP_ITERATIONS = 50;
+    private static final int BENCHMARK_ITERATIONS = 500;
+
+    /*
+        Builds a response shaped like the one from api.openweathermap.org/data/2.5/forecast/daily,
+        including the fields we don't store so the parser has to skip them.
+     */
+    static String createForecastJson(int numDays) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"city\":{\"id\":5375480,\"name\":\"Mountain View\",")
+                .append("\"coord\":{\"lon\":-122.083847,\"lat\":37.386051},")
+                .append("\"country\":\"US\",\"population\":0},")
+                .append("\"cod\":\"200\",\"message\":0.0112,\"cnt\":").append(numDays)
+                .append(",\"list\":[");
+        for (int i = 0; i < numDays; i++) {
+            if (i > 0) sb.append(',');
+            sb.append(String.format(Locale.US,
+                    "{\"dt\":%d,\"temp\":{\"day\":%.2f,\"min\":%.2f,\"max\":%.2f,"
+                            + "\"night\":%.2f,\"eve\":%.2f,\"morn\":%.2f},"
+                            + "\"pressure\":%.2f,\"humidity\":%d,"
+                            + "\"weather\":[{\"id\":%d,\"main\":\"%s\",\"description\":\"%s\","
+                            + "\"icon\":\"01d\"}],"
+                            + "\"speed\":%.2f,\"deg\":%d,\"clouds\":%d}",
+                    1419033600L + i * 86400L, 18.0 + i * 0.1, 12.0 + i * 0.1, 21.0 + i * 0.1,
+                    14.0, 17.0, 13.0, 1013.0 + i, 60 + i, i % 2 == 0 ? 800 : 501,
+                    i % 2 == 0 ? "Clear" : "Rain", i % 2 == 0 ? "sky is clear" : "moderate rain",
+                    1.5 + i * 0.2, 10 * i, i));
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    public void testStreamingMatchesJsonObject() throws Throwable {
+        String json = createForecastJson(14);
+        ForecastParser.Forecast expected = ForecastParser.parse(json, 14);
+        ForecastParser.Forecast actual = ForecastParser.parse(toStream(json), 14);
+
+        assertEquals(expected.messageCode, actual.messageCode);
+        assertEquals(expected.cityName, actual.cityName);
+        assertEquals(expected.cityLatitude, actual.cityLatitude);
+        assertEquals(expected.cityLongitude, actual.cityLongitude);
+        assertEquals(expected.days.size(), actual.days.size());
+        for (int i = 0; i < expected.days.size(); i++) {
+            ForecastParser.Day e = expected.days.get(i);
+            ForecastParser.Day a = actual.days.get(i);
+            assertEquals("Day " + i, e.pressure, a.pressure);
+            assertEquals("Day " + i, e.humidity, a.humidity);
+            assertEquals("Day " + i, e.windSpeed, a.windSpeed);
+            assertEquals("Day " + i, e.windDirection, a.windDirection);
+            assertEquals("Day " + i, e.high, a.high);
+            assertEquals("Day " + i, e.low, a.low);
+            assertEquals("Day " + i, e.description, a.description);
+            assertEquals("Day " + i, e.weatherId, a.weatherId);
+        }
+    }
+
+    public void testErrorCode() throws Throwable {
+        ForecastParser.Forecast forecast = ForecastParser.parse(
+                toStream("{\"cod\":\"404\",\"message\":\"Error: Not found city\"}"), 14);
+        assertEquals(404, forecast.messageCode);
+        assertFalse(ForecastParser.isOk(forecast));
+    }
+
+    public void testMalformedResponse() throws Throwable {
+        try {
+            ForecastParser.parse(toStream("{\"city\":{\"name\":\"Nowhere\"},\"list\":[{\"pressure\":"),
+                    14);
+            fail("Error: a truncated response should not parse");
+        } catch (IOException e) {
+            // An unexpected end of stream is a read failure, as it was before
+        } catch (JSONException e) {
+            // Also acceptable
+        }
+        try {
+            ForecastParser.parse(toStream("{\"list\":[]}"), 14);
+            fail("Error: a forecast without a city should be rejected");
+        } catch (JSONException e) {
+            // expected
+        }
+    }
+
+    @LargeTest
+    public void testBenchmark14Days() throws Throwable {
+        runBenchmark(14);
+    }
+
+    @LargeTest
+    public void testBenchmark16Days() throws Throwable {
+        runBenchmark(16);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void runBenchmark(int numDays) throws Throwable {
+        byte[] payload = createForecastJson(numDays).getBytes("UTF-8");
+
+        for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+            parseThroughJsonObject(payload, numDays);
+            ForecastParser.parse(new ByteArrayInputStream(payload), numDays);
+        }
+
+        Debug.startAllocCounting();
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            parseThroughJsonObject(payload, numDays);
+        }
+        long jsonObjectNanos = System.nanoTime() - start;
+        int jsonObjectAllocCount = Debug.getThreadAllocCount();
+        int jsonObjectAllocSize = Debug.getThreadAllocSize();
+
+        Debug.resetThreadAllocCount();
+        Debug.resetThreadAllocSize();
+        start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ITERATIONS; i++) {
+            ForecastParser.parse(new ByteArrayInputStream(payload), numDays);
+        }
+        long streamingNanos = System.nanoTime() - start;
+        int streamingAllocCount = Debug.getThreadAllocCount();
+        int streamingAllocSize = Debug.getThreadAllocSize();
+
+        Debug.stopAllocCounting();
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d days, per parse: JSONObject %d us / %d allocs / %d bytes, "
+                        + "streaming %d us / %d allocs / %d bytes",
+                numDays,
+                jsonObjectNanos / BENCHMARK_ITERATIONS / 1000,
+                jsonObjectAllocCount / BENCHMARK_ITERATIONS,
+                jsonObjectAllocSize / BENCHMARK_ITERATIONS,
+                streamingNanos / BENCHMARK_ITERATIONS / 1000,
+                streamingAllocCount / BENCHMARK_ITERATIONS,
+                streamingAllocSize / BENCHMARK_ITERATIONS));
+
+        assertTrue("Error: the streaming parser allocated more than the JSONObject path",
+                streamingAllocSize < jsonObjectAllocSize);
+    }
+
+    /*
+        This is what the sync adapter used to do with the response: read it line by line into a
+        buffer, then hand the resulting String to JSONObject.
+     */
+    private static ForecastParser.Forecast parseThroughJsonObject(byte[] payload, int numDays)
+            throws IOException, JSONException {
+        BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new ByteArrayInputStream(payload)));
+        StringBuffer buffer = new StringBuffer();
+        String line;
+        while ((line = reader.readLine()) != null) {
+            buffer.append(line + "\n");
+        }
+        reader.close();
+        return ForecastParser.parse(buffer.toString(), numDays);
+    }
+
+    private static InputStream toStream(String json) throws IOException {
+        return new ByteArrayInputStream(json.getBytes("UTF-8"));
+    }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Checks that the sync client decodes compressed forecasts and reuses its connections, and logs
+    bytes on the wire and time to first byte with and without compression.
+ */
+public class TestSyncHttpClient extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSyncHttpClient.class.getSimpleName();
+
+    private static final int FETCHES = 20;
+
+    private MockForecastServer mServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new MockForecastServer();
+        // No validators, so every fetch is a full download
+        mServer.setResponse(TestForecastParser.createForecastJson(16), null, "no-store");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mServer.shutdown();
+        super.tearDown();
+    }
+
+    public void testGzipIsDecoded() throws Exception {
+        mServer.setGzip(true);
+        UrlConnectionSyncHttpClient client = new UrlConnectionSyncHttpClient();
+        OwmForecastSource source = new OwmForecastSource(mServer.getBaseUrl(), client, null);
+
+        ForecastParser.Forecast forecast = source.fetch("94043", false);
+        assertEquals(16, forecast.days.size());
+        assertTrue("Error: the compressed body should be smaller than the decoded one",
+                client.getBytesOnWire() < client.getBytesDecoded());
+        assertTrue(mServer.getRequests().get(0).getHeader("Accept-Encoding").contains("gzip"));
+    }
+
+    public void testConnectionsAreReused() throws Exception {
+        mServer.setGzip(true);
+        UrlConnectionSyncHttpClient client = new UrlConnectionSyncHttpClient();
+        OwmForecastSource source = new OwmForecastSource(mServer.getBaseUrl(), client, null);
+
+        for (int i = 0; i < FETCHES; i++) {
+            assertEquals(16, source.fetch("location" + i, false).days.size());
+        }
+        assertEquals(FETCHES, mServer.getRequests().size());
+        assertTrue("Error: sequential fetches should share a kept-alive connection, but "
+                        + mServer.getConnectionCount() + " were opened",
+                mServer.getConnectionCount() < FETCHES);
+    }
+
+    @LargeTest
+    public void testBenchmarkCompression() throws Exception {
+        long[] plain = measure(false);
+        long[] gzip = measure(true);
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d fetches: identity %d bytes, %d us to first byte; gzip %d bytes, %d us to first byte",
+                FETCHES, plain[0], plain[1] / 1000 / FETCHES, gzip[0], gzip[1] / 1000 / FETCHES));
+        assertTrue(gzip[0] < plain[0]);
+    }
+
+    /**
+     * @return bytes on the wire and total time to first byte in nanoseconds.
+     */
+    private long[] measure(boolean gzip) throws Exception {
+        mServer.setGzip(gzip);
+        UrlConnectionSyncHttpClient client = new UrlConnectionSyncHttpClient();
+        OwmForecastSource source = new OwmForecastSource(mServer.getBaseUrl(), client, null);
+        for (int i = 0; i < FETCHES; i++) {
+            source.fetch("location" + i, false);
+        }
+        return new long[]{client.getBytesOnWire(), client.getTotalTimeToFirstByteNanos()};
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class TestSyncPublisher extends AndroidTestCase {
+
+    private static final String LOCATION = "99705";
+
+    /*
+        Records every fan-out it is handed.
+     */
+    static class RecordingConsumer implements SyncPublisher.Consumer {
+        final List<ForecastSnapshot> snapshots = new ArrayList<ForecastSnapshot>();
+        boolean dataChanged;
+        boolean notify;
+        Thread thread;
+
+        @Override
+        public synchronized void onPublish(ForecastSnapshot snapshot, boolean dataChanged,
+                                           boolean notify) {
+            snapshots.add(snapshot);
+            this.dataChanged = dataChanged;
+            this.notify = notify;
+            this.thread = Thread.currentThread();
+        }
+
+        synchronized int count() {
+            return snapshots.size();
+        }
+    }
+
+    private final AtomicInteger mLoads = new AtomicInteger();
+    private ForecastSnapshot mSnapshot;
+    private RecordingConsumer mConsumer;
+    private SyncPublisher mPublisher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSnapshot = createSnapshot(LOCATION, WeatherContract.normalizeDate(
+                System.currentTimeMillis()));
+        mLoads.set(0);
+        mConsumer = new RecordingConsumer();
+        mPublisher = new SyncPublisher(new SyncPublisher.SnapshotLoader() {
+            @Override
+            public ForecastSnapshot load() {
+                mLoads.incrementAndGet();
+                return mSnapshot;
+            }
+        }, mConsumer);
+    }
+
+    /*
+        Snapshots can only be read from the provider or a Parcel, so build one from a Parcel.
+     */
+    static ForecastSnapshot createSnapshot(String location, long today) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeString(location);
+            parcel.writeInt(2);
+            for (int i = 0; i < 2; i++) {
+                parcel.writeLong(i + 1);
+                parcel.writeLong(today + i * 1000L * 60 * 60 * 24);
+                parcel.writeInt(800);
+                parcel.writeString("Clear");
+                parcel.writeDouble(25 + i);
+                parcel.writeDouble(15 + i);
+            }
+            parcel.setDataPosition(0);
+            return ForecastSnapshot.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public void testPublishesBeforeReturning() {
+        assertTrue(mPublisher.publish(true, true));
+        assertEquals("Error: the fan-out didn't run during the call", 1, mConsumer.count());
+        assertSame(mSnapshot, mConsumer.snapshots.get(0));
+        assertSame("Error: the fan-out ran on another thread", Thread.currentThread(),
+                mConsumer.thread);
+        assertTrue(mConsumer.dataChanged);
+        assertTrue(mConsumer.notify);
+    }
+
+    public void testUnchangedSnapshotIsNotPublishedAgain() {
+        assertTrue(mPublisher.publish(true, false));
+
+        // Another sync changed rows, but none that are in the snapshot
+        mSnapshot = createSnapshot(LOCATION, mSnapshot.getDate(0));
+        assertFalse(mPublisher.publish(true, false));
+        assertEquals(2, mLoads.get());
+        assertEquals("Error: an unchanged snapshot was published again", 1, mConsumer.count());
+        assertEquals(1, mPublisher.getSkipCount());
+
+        mSnapshot = createSnapshot("94043", mSnapshot.getDate(0));
+        assertTrue(mPublisher.publish(true, false));
+        assertEquals(2, mConsumer.count());
+    }
+
+    public void testNotifyGoesOutWithUnchangedSnapshot() {
+        mPublisher.publish(true, false);
+        assertTrue(mPublisher.publish(true, true));
+        assertEquals(2, mConsumer.count());
+        assertFalse("Error: an unchanged snapshot was reported as changed",
+                mConsumer.dataChanged);
+        assertTrue(mConsumer.notify);
+    }
+
+    public void testNothingToTellIsNotPublished() {
+        assertFalse(mPublisher.publish(false, false));
+        assertEquals(0, mLoads.get());
+
+        mSnapshot = null;
+        assertFalse(mPublisher.publish(true, true));
+        assertEquals(1, mLoads.get());
+        assertEquals(0, mConsumer.count());
+    }
+
+    public void testLatestSnapshotIsKeptForItsLocation() {
+        mPublisher.publish(true, false);
+
+        long now = System.currentTimeMillis();
+        assertSame(mSnapshot, SyncPublisher.getLatestSnapshot(LOCATION, now));
+        assertNull(SyncPublisher.getLatestSnapshot("94043", now));
+        assertNull("Error: a snapshot that no longer starts today should not be served",
+                SyncPublisher.getLatestSnapshot(LOCATION, now + 1000L * 60 * 60 * 24 * 2));
+    }
+
+    public void testSnapshotParcels() {
+        Parcel parcel = Parcel.obtain();
+        mSnapshot.writeToParcel(parcel, 0);
+        parcel.setDataPosition(0);
+        ForecastSnapshot copy = ForecastSnapshot.CREATOR.createFromParcel(parcel);
+        parcel.recycle();
+
+        assertEquals(LOCATION, copy.getLocationSetting());
+        assertEquals(mSnapshot.size(), copy.size());
+        for (int i = 0; i < copy.size(); i++) {
+            assertEquals(mSnapshot.getId(i), copy.getId(i));
+            assertEquals(mSnapshot.getDate(i), copy.getDate(i));
+            assertEquals(mSnapshot.getWeatherId(i), copy.getWeatherId(i));
+            assertEquals(mSnapshot.getShortDesc(i), copy.getShortDesc(i));
+            assertEquals(mSnapshot.getMaxTemp(i), copy.getMaxTemp(i));
+            assertEquals(mSnapshot.getMinTemp(i), copy.getMinTemp(i));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.test.AndroidTestCase;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+public class TestSyncScheduler extends AndroidTestCase {
+
+    private static final String PREFS_NAME = "test_sync_scheduler";
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long HOUR_IN_MILLIS = 1000 * 60 * 60;
+    private static final int DAYS = 14;
+
+    /*
+        A clock that only moves when told to.
+     */
+    static class FakeClock implements SyncScheduler.Clock {
+        long now;
+
+        FakeClock(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+
+        void advanceSeconds(int seconds) {
+            now += seconds * 1000L;
+        }
+    }
+
+    private SharedPreferences mPrefs;
+    private FakeClock mClock;
+    private SyncScheduler mScheduler;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        mClock = new FakeClock(atHour(12));
+        mScheduler = new SyncScheduler(mPrefs, mClock, UTC);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    private static long atHour(int hour) {
+        Calendar calendar = Calendar.getInstance(UTC);
+        calendar.clear();
+        calendar.set(2015, Calendar.JUNE, 24, hour, 0, 0);
+        return calendar.getTimeInMillis();
+    }
+
+    private int sync(int status, int changedDays) {
+        return mScheduler.onSyncFinished(status, changedDays, DAYS, false);
+    }
+
+    public void testDefaultInterval() {
+        assertEquals(SyncScheduler.DEFAULT_INTERVAL, mScheduler.getInterval());
+    }
+
+    public void testVolatileWeatherSyncsSooner() {
+        int calm = 0;
+        for (int i = 0; i < 5; i++) {
+            calm = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, 0);
+            mClock.now = atHour(12);
+        }
+        assertEquals(SyncScheduler.MAX_INTERVAL, calm);
+
+        int changing = 0;
+        for (int i = 0; i < 5; i++) {
+            changing = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS);
+        }
+        assertTrue("Error: changing weather should sync more often than calm weather",
+                changing < calm);
+        assertTrue(changing >= SyncScheduler.MIN_INTERVAL);
+        assertEquals(changing, mScheduler.getInterval());
+    }
+
+    public void testServerDownBacksOffExponentially() {
+        int first = sync(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, 0);
+        assertEquals(SyncScheduler.MIN_BACKOFF, first);
+
+        mClock.advanceSeconds(first);
+        int second = sync(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, 0);
+        assertEquals(first * 2, second);
+
+        int interval = second;
+        for (int i = 0; i < 20; i++) {
+            mClock.advanceSeconds(interval);
+            interval = sync(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, 0);
+        }
+        assertEquals(SyncScheduler.MAX_BACKOFF, interval);
+
+        // One success resets the backoff
+        mClock.now = atHour(12);
+        sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS);
+        assertEquals(SyncScheduler.MIN_BACKOFF,
+                sync(SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN, 0));
+    }
+
+    public void testFailureRateStretchesInterval() {
+        int healthy = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS / 2);
+
+        mPrefs.edit().clear().commit();
+        for (int i = 0; i < 5; i++) {
+            sync(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID, 0);
+        }
+        int flaky = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS / 2);
+        assertTrue("Error: a server that keeps failing should be asked less often",
+                flaky > healthy);
+    }
+
+    public void testNightIsRelaxedUntilMorning() {
+        int day = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS);
+
+        mPrefs.edit().clear().commit();
+        mClock.now = atHour(1);
+        int night = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS);
+        assertTrue(night > day);
+
+        // Close to morning there's no point waiting past it
+        mPrefs.edit().clear().commit();
+        mClock.now = atHour(5);
+        int dawn = sync(SunshineSyncAdapter.LOCATION_STATUS_OK, DAYS);
+        assertEquals(day, dawn);
+    }
+
+    public void testStaleFirstRowSyncsSoon() {
+        for (int i = 0; i < 5; i++) {
+            sync(SunshineSyncAdapter.LOCATION_STATUS_OK, 0);
+        }
+        int interval = mScheduler.onSyncFinished(SunshineSyncAdapter.LOCATION_STATUS_OK, 0, DAYS,
+                true);
+        assertEquals(SyncScheduler.MIN_INTERVAL, interval);
+    }
+
+    public void testDataNeverOlderThanMaxStaleness() {
+        sync(SunshineSyncAdapter.LOCATION_STATUS_OK, 0);
+
+        // Eleven hours of failures that aren't the server being down
+        mClock.now += 11 * HOUR_IN_MILLIS;
+        int interval = sync(SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID, 0);
+        assertEquals(SyncScheduler.MIN_INTERVAL, interval);
+    }
+}
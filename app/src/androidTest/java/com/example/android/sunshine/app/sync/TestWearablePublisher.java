@@ -0,0 +1,192 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Parcel;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+import com.google.android.gms.wearable.DataMap;
+import com.google.android.gms.wearable.PutDataRequest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/*
+    Checks that the watch is only written to when today's high, low, condition or units change,
+    with one connection per write, and counts the writes and bytes a day of syncs saves over
+    sending on every one.
+ */
+public class TestWearablePublisher extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWearablePublisher.class.getSimpleName();
+
+    private static final String PREFS_NAME = "test_wearable_publisher";
+    private static final String LOCATION = "99705";
+    // A sync every 3 hours
+    private static final int SYNCS_PER_DAY = 8;
+
+    /*
+        Records what it is asked to do instead of going to the Data Layer.
+     */
+    static class RecordingDataLayer implements WearablePublisher.DataLayer {
+        final List<PutDataRequest> requests = new ArrayList<PutDataRequest>();
+        int connects;
+        int disconnects;
+        boolean connectFails;
+        boolean putFails;
+
+        @Override
+        public boolean connect() {
+            if (connectFails) {
+                return false;
+            }
+            connects++;
+            return true;
+        }
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            if (putFails) {
+                return false;
+            }
+            requests.add(request);
+            return true;
+        }
+
+        @Override
+        public void disconnect() {
+            disconnects++;
+        }
+    }
+
+    private SharedPreferences mPrefs;
+    private RecordingDataLayer mDataLayer;
+    private WearablePublisher mPublisher;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mPrefs = mContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        mPrefs.edit().clear().commit();
+        mDataLayer = new RecordingDataLayer();
+        mPublisher = new WearablePublisher(mPrefs, mContext.getResources(), mDataLayer);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mPrefs.edit().clear().commit();
+        super.tearDown();
+    }
+
+    static ForecastSnapshot createSnapshot(double max, double min, int weatherId) {
+        Parcel parcel = Parcel.obtain();
+        try {
+            parcel.writeString(LOCATION);
+            parcel.writeInt(1);
+            parcel.writeLong(1);
+            parcel.writeLong(WeatherContract.normalizeDate(System.currentTimeMillis()));
+            parcel.writeInt(weatherId);
+            parcel.writeString("Clear");
+            parcel.writeDouble(max);
+            parcel.writeDouble(min);
+            parcel.setDataPosition(0);
+            return ForecastSnapshot.CREATOR.createFromParcel(parcel);
+        } finally {
+            parcel.recycle();
+        }
+    }
+
+    public void testOnlyChangesAreSent() {
+        assertTrue(mPublisher.publish(createSnapshot(25, 15, 800), true));
+        assertFalse("Error: the same content was sent twice",
+                mPublisher.publish(createSnapshot(25, 15, 800), true));
+        assertEquals(1, mDataLayer.connects);
+
+        assertTrue("Error: a new high wasn't sent",
+                mPublisher.publish(createSnapshot(26, 15, 800), true));
+        assertTrue("Error: a new low wasn't sent",
+                mPublisher.publish(createSnapshot(26, 14, 800), true));
+        assertTrue("Error: a new condition wasn't sent",
+                mPublisher.publish(createSnapshot(26, 14, 500), true));
+        assertTrue("Error: new units weren't sent",
+                mPublisher.publish(createSnapshot(26, 14, 500), false));
+
+        assertEquals(5, mPublisher.getWriteCount());
+        assertEquals(1, mPublisher.getSkipCount());
+        assertEquals("Error: every connect should be matched by one write", 5,
+                mDataLayer.connects);
+        assertEquals(mDataLayer.connects, mDataLayer.disconnects);
+    }
+
+    public void testSendsInTheUsersUnits() {
+        mPublisher.publish(createSnapshot(25, 15, 800), false);
+        DataMap dataMap = DataMap.fromByteArray(mDataLayer.requests.get(0).getData());
+        assertEquals(77.0, dataMap.getDouble(WearablePublisher.DATAITEM_TEMP_MAX), 1e-9);
+        assertEquals(59.0, dataMap.getDouble(WearablePublisher.DATAITEM_TEMP_MIN), 1e-9);
+        assertTrue(mDataLayer.requests.get(0).getAssets().containsKey(
+                WearablePublisher.DATAITEM_TEMP_IMAGE));
+    }
+
+    public void testRemembersAcrossInstances() {
+        mPublisher.publish(createSnapshot(25, 15, 800), true);
+        WearablePublisher publisher = new WearablePublisher(mPrefs, mContext.getResources(),
+                mDataLayer);
+        assertFalse("Error: a new process sent what the watch already had",
+                publisher.publish(createSnapshot(25, 15, 800), true));
+        assertTrue(publisher.getBytesSaved() > 0);
+    }
+
+    public void testFailuresAreRetried() {
+        mDataLayer.connectFails = true;
+        assertFalse(mPublisher.publish(createSnapshot(25, 15, 800), true));
+        mDataLayer.connectFails = false;
+
+        mDataLayer.putFails = true;
+        assertFalse(mPublisher.publish(createSnapshot(25, 15, 800), true));
+        assertEquals("Error: a failed write left the client connected", mDataLayer.connects,
+                mDataLayer.disconnects);
+        mDataLayer.putFails = false;
+
+        assertTrue("Error: content that never got out wasn't sent again",
+                mPublisher.publish(createSnapshot(25, 15, 800), true));
+        assertEquals(0, mPublisher.getSkipCount());
+    }
+
+    @LargeTest
+    public void testBenchmarkDayOfSyncs() {
+        // Today's forecast is usually revised a couple of times a day
+        double[] highs = {25, 25, 25, 26, 26, 26, 26, 24};
+        int[] conditions = {800, 800, 800, 800, 800, 801, 801, 801};
+        for (int i = 0; i < SYNCS_PER_DAY; i++) {
+            mPublisher.publish(createSnapshot(highs[i], 15, conditions[i]), true);
+        }
+
+        int writes = mPublisher.getWriteCount();
+        assertEquals(4, writes);
+        assertEquals(SYNCS_PER_DAY - writes, mPublisher.getSkipCount());
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "%d syncs: %d Data Layer writes of %d bytes, %d skipped, saving %d bytes",
+                SYNCS_PER_DAY, writes, mPublisher.getBytesWritten(),
+                mPublisher.getSkipCount(), mPublisher.getBytesSaved()));
+    }
+}
@@ -21,8 +21,6 @@ import android.content.Intent;
 import android.content.SharedPreferences;
 import android.content.res.TypedArray;
 import android.database.Cursor;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
@@ -47,25 +45,16 @@ import android.view.ViewTreeObserver;
 import android.widget.AbsListView;
 import android.widget.TextView;
 
+import com.example.android.sunshine.app.data.ForecastRow;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
-import com.google.android.gms.common.ConnectionResult;
-import com.google.android.gms.common.api.GoogleApiClient;
-import com.google.android.gms.common.api.ResultCallback;
-import com.google.android.gms.wearable.Asset;
-import com.google.android.gms.wearable.DataApi;
-import com.google.android.gms.wearable.PutDataMapRequest;
-import com.google.android.gms.wearable.PutDataRequest;
-import com.google.android.gms.wearable.Wearable;
 
 /**
  * Encapsulates fetching the forecast and displaying it as a {@link android.support.v7.widget.RecyclerView} layout.
  */
 public class ForecastFragment extends Fragment implements
         LoaderManager.LoaderCallbacks<Cursor>,
-        SharedPreferences.OnSharedPreferenceChangeListener,
-        GoogleApiClient.ConnectionCallbacks,
-        GoogleApiClient.OnConnectionFailedListener {
+        SharedPreferences.OnSharedPreferenceChangeListener {
     public static final String LOG_TAG = ForecastFragment.class.getSimpleName();
     private ForecastAdapter mForecastAdapter;
     private RecyclerView mRecyclerView;
@@ -74,63 +63,9 @@ public class ForecastFragment extends Fragment implements
     private boolean mHoldForTransition;
     private long mInitialSelectedDate = -1;
 
-    private GoogleApiClient mGoogleApiClient;
-
     private static final String SELECTED_KEY = "selected_position";
 
     private static final int FORECAST_LOADER = 0;
-    // For the forecast view we're showing only a small subset of the stored data.
-    // Specify the columns we need.
-    private static final String[] FORECAST_COLUMNS = {
-            // In this case the id needs to be fully qualified with a table name, since
-            // the content provider joins the location & weather tables in the background
-            // (both have an _id column)
-            // On the one hand, that's annoying.  On the other, you can search the weather table
-            // using the location set by the user, which is only in the Location table.
-            // So the convenience is worth it.
-            WeatherContract.WeatherEntry.TABLE_NAME + "." + WeatherContract.WeatherEntry._ID,
-            WeatherContract.WeatherEntry.COLUMN_DATE,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.LocationEntry.COLUMN_COORD_LAT,
-            WeatherContract.LocationEntry.COLUMN_COORD_LONG
-    };
-
-    // These indices are tied to FORECAST_COLUMNS.  If FORECAST_COLUMNS changes, these
-    // must change.
-    static final int COL_WEATHER_ID = 0;
-    static final int COL_WEATHER_DATE = 1;
-    static final int COL_WEATHER_DESC = 2;
-    static final int COL_WEATHER_MAX_TEMP = 3;
-    static final int COL_WEATHER_MIN_TEMP = 4;
-    static final int COL_LOCATION_SETTING = 5;
-    static final int COL_WEATHER_CONDITION_ID = 6;
-    static final int COL_COORD_LAT = 7;
-    static final int COL_COORD_LONG = 8;
-
-    // DataItem Keys
-    private static final String DATAITEM_TEMP_PATH = "/DATAITEM_TEMP_PATH";
-    private static final String DATAITEM_TEMP_MAX = "DATAITEM_TEMP_MAX";
-    private static final String DATAITEM_TEMP_MIN = "DATAITEM_TEMP_MIN";
-    private static final String DATAITEM_TEMP_IMAGE = "DATAITEM_TEMP_IMAGE";
-
-    @Override
-    public void onConnected(Bundle bundle) {
-
-    }
-
-    @Override
-    public void onConnectionSuspended(int i) {
-
-    }
-
-    @Override
-    public void onConnectionFailed(ConnectionResult connectionResult) {
-
-    }
 
     /**
      * A callback interface that all activities containing this fragment must
@@ -152,19 +87,12 @@ public class ForecastFragment extends Fragment implements
         super.onCreate(savedInstanceState);
         // Add this line in order for this fragment to handle menu events.
         setHasOptionsMenu(true);
-
-        mGoogleApiClient = new GoogleApiClient.Builder(getActivity())
-                .addApi(Wearable.API)
-                .addConnectionCallbacks(this)
-                .addOnConnectionFailedListener(this)
-                .build();
     }
 
     @Override
     public void onResume() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.registerOnSharedPreferenceChangeListener(this);
-        mGoogleApiClient.connect();
         super.onResume();
     }
 
@@ -172,9 +100,6 @@ public class ForecastFragment extends Fragment implements
     public void onPause() {
         SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(getActivity());
         sp.unregisterOnSharedPreferenceChangeListener(this);
-        if (mGoogleApiClient != null && mGoogleApiClient.isConnected()) {
-            mGoogleApiClient.disconnect();
-        }
         super.onPause();
     }
 
@@ -323,8 +248,9 @@ public class ForecastFragment extends Fragment implements
             Cursor c = mForecastAdapter.getCursor();
             if (null != c) {
                 c.moveToPosition(0);
-                String posLat = c.getString(COL_COORD_LAT);
-                String posLong = c.getString(COL_COORD_LONG);
+                ForecastRow.Decoder row = mForecastAdapter.getRowDecoder();
+                double posLat = row.getCoordLat();
+                double posLong = row.getCoordLong();
                 Uri geoLocation = Uri.parse("geo:" + posLat + "," + posLong);
 
                 Intent intent = new Intent(Intent.ACTION_VIEW);
@@ -365,7 +291,7 @@ public class ForecastFragment extends Fragment implements
 
         return new CursorLoader(getActivity(),
                 weatherForLocationUri,
-                FORECAST_COLUMNS,
+                ForecastRow.LIST_COLUMNS,
                 null,
                 null,
                 sortOrder);
@@ -373,16 +299,6 @@ public class ForecastFragment extends Fragment implements
 
     @Override
     public void onLoadFinished(Loader<Cursor> loader, Cursor data) {
-        // Sending data to the wearable
-        if (data.moveToFirst()) {
-            double max = data.getDouble(ForecastFragment.COL_WEATHER_MAX_TEMP);
-            double min = data.getDouble(ForecastFragment.COL_WEATHER_MIN_TEMP);
-            int id = data.getInt(COL_WEATHER_CONDITION_ID); //Utility.getIconResourceForWeatherCondition(data.getInt(COL_WEATHER_ID));
-            Bitmap bitmap = BitmapFactory.decodeResource(getResources(),
-                    Utility.getArtResourceForWeatherCondition(id));
-            sendTempDataToWearable(max, min, Utility.toAsset(bitmap));
-        }
-
         mForecastAdapter.swapCursor(data);
         updateEmptyView();
         if ( data.getCount() == 0 ) {
@@ -399,11 +315,11 @@ public class ForecastFragment extends Fragment implements
                         if (position == RecyclerView.NO_POSITION &&
                                 -1 != mInitialSelectedDate) {
                             Cursor data = mForecastAdapter.getCursor();
+                            ForecastRow.Decoder row = mForecastAdapter.getRowDecoder();
                             int count = data.getCount();
-                            int dateColumn = data.getColumnIndex(WeatherContract.WeatherEntry.COLUMN_DATE);
                             for ( int i = 0; i < count; i++ ) {
                                 data.moveToPosition(i);
-                                if ( data.getLong(dateColumn) == mInitialSelectedDate ) {
+                                if ( row.getDate() == mInitialSelectedDate ) {
                                     position = i;
                                     break;
                                 }
@@ -492,31 +408,4 @@ public class ForecastFragment extends Fragment implements
             updateEmptyView();
         }
     }
-
-    // This method send a data item containing Max, Min Temp and image to the wearable
-    private void sendTempDataToWearable(double max, double min, Asset asset) {
-        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(DATAITEM_TEMP_PATH);
-
-        putDataMapRequest.getDataMap().putDouble(DATAITEM_TEMP_MAX, max);
-        putDataMapRequest.getDataMap().putDouble(DATAITEM_TEMP_MIN, min);
-        putDataMapRequest.getDataMap().putAsset(DATAITEM_TEMP_IMAGE, asset);
-        PutDataRequest request = putDataMapRequest.asPutDataRequest();
-        Wearable.DataApi.putDataItem(mGoogleApiClient, request).setResultCallback(
-                new ResultCallback<DataApi.DataItemResult>() {
-                    @Override
-                    public void onResult(DataApi.DataItemResult dataItemResult) {
-                        // This actually shows if only data has been stored successfully
-                        // Doesn't show if it has been delivered to wearable or not
-                        if (!dataItemResult.getStatus().isSuccess()) {
-                            Log.e(LOG_TAG, "Failed to store data in the dataItem: " +
-                                    DATAITEM_TEMP_PATH);
-
-                        } else {
-                            Log.d(LOG_TAG, "Data has been successfully stored in the dataItem: " +
-                                    DATAITEM_TEMP_PATH);
-                        }
-                    }
-                }
-        );
-    }
-}
\ No newline at end of file
+}
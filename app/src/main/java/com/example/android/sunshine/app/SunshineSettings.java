@@ -0,0 +1,314 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.preference.PreferenceManager;
+import android.util.Log;
+
+import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * The settings the app reads while it binds views, loads forecasts and syncs, kept in memory.
+ *
+ * Every read is a single volatile read of an immutable snapshot, with no preference lookups and
+ * no key strings to resolve.  The snapshot is read again whenever the shared preferences
+ * change.  The settings the app writes itself land in the snapshot straight away and reach the
+ * shared preferences a moment later, on a background thread, where writes made in the
+ * meantime are applied together.
+ */
+public class SunshineSettings {
+    private static final String LOG_TAG = SunshineSettings.class.getSimpleName();
+
+    /**
+     * One immutable set of values.
+     */
+    private static final class Snapshot {
+        final String location;
+        final boolean metric;
+        final String artPack;
+        final boolean localGraphics;
+        final int historyDays;
+        final boolean notificationsEnabled;
+        final long lastNotification;
+        final int locationStatus;
+        final Set<String> trackedLocations;
+
+        Snapshot(String location, boolean metric, String artPack, boolean localGraphics,
+                 int historyDays, boolean notificationsEnabled, long lastNotification,
+                 int locationStatus, Set<String> trackedLocations) {
+            this.location = location;
+            this.metric = metric;
+            this.artPack = artPack;
+            this.localGraphics = localGraphics;
+            this.historyDays = historyDays;
+            this.notificationsEnabled = notificationsEnabled;
+            this.lastNotification = lastNotification;
+            this.locationStatus = locationStatus;
+            this.trackedLocations = trackedLocations;
+        }
+    }
+
+    private static SunshineSettings sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final String mLocationKey;
+    private final String mLocationDefault;
+    private final String mUnitsKey;
+    private final String mUnitsMetric;
+    private final String mArtPackKey;
+    private final String mArtPackSunshine;
+    private final String mHistoryKey;
+    private final String mHistoryOff;
+    private final String mNotificationsKey;
+    private final boolean mNotificationsDefault;
+    private final String mLastNotificationKey;
+    private final String mLocationStatusKey;
+    private final String mTrackedLocationsKey;
+
+    // Held here since SharedPreferences only keeps a weak reference to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener mListener =
+            new SharedPreferences.OnSharedPreferenceChangeListener() {
+                @Override
+                public void onSharedPreferenceChanged(SharedPreferences prefs, String key) {
+                    reload();
+                }
+            };
+
+    private final ExecutorService mExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, LOG_TAG);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
+    private volatile Snapshot mSnapshot;
+
+    // Guarded by this.  Writes not yet handed to the shared preferences, and the ones being
+    // handed over, which a reload has to keep in the snapshot until they are there
+    private HashMap<String, Object> mPending = new HashMap<String, Object>();
+    private HashMap<String, Object> mFlushing;
+
+    public static synchronized SunshineSettings getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new SunshineSettings(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private SunshineSettings(Context context) {
+        mLocationKey = context.getString(R.string.pref_location_key);
+        mLocationDefault = context.getString(R.string.pref_location_default);
+        mUnitsKey = context.getString(R.string.pref_units_key);
+        mUnitsMetric = context.getString(R.string.pref_units_metric);
+        mArtPackKey = context.getString(R.string.pref_art_pack_key);
+        mArtPackSunshine = context.getString(R.string.pref_art_pack_sunshine);
+        mHistoryKey = context.getString(R.string.pref_history_key);
+        mHistoryOff = context.getString(R.string.pref_history_off);
+        mNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
+        mNotificationsDefault = Boolean.parseBoolean(
+                context.getString(R.string.pref_enable_notifications_default));
+        mLastNotificationKey = context.getString(R.string.pref_last_notification);
+        mLocationStatusKey = context.getString(R.string.pref_location_status_key);
+        mTrackedLocationsKey = context.getString(R.string.pref_tracked_locations_key);
+
+        mPrefs = PreferenceManager.getDefaultSharedPreferences(context);
+        mPrefs.registerOnSharedPreferenceChangeListener(mListener);
+        reload();
+    }
+
+    public String getPreferredLocation() {
+        return mSnapshot.location;
+    }
+
+    public boolean isMetric() {
+        return mSnapshot.metric;
+    }
+
+    /**
+     * @return the URL format of the art pack.
+     */
+    public String getArtPack() {
+        return mSnapshot.artPack;
+    }
+
+    public boolean usingLocalGraphics() {
+        return mSnapshot.localGraphics;
+    }
+
+    /**
+     * @return how many past days of weather to keep as history; 0 keeps none.
+     */
+    public int getHistoryDays() {
+        return mSnapshot.historyDays;
+    }
+
+    public boolean areNotificationsEnabled() {
+        return mSnapshot.notificationsEnabled;
+    }
+
+    /**
+     * @return when the last weather notification was shown, or 0 if none has been.
+     */
+    public long getLastNotification() {
+        return mSnapshot.lastNotification;
+    }
+
+    @SuppressWarnings("ResourceType")
+    @SunshineSyncAdapter.LocationStatus
+    public int getLocationStatus() {
+        return mSnapshot.locationStatus;
+    }
+
+    /**
+     * @return the locations synced along with the preferred one.  Read-only.
+     */
+    public Set<String> getTrackedLocations() {
+        return mSnapshot.trackedLocations;
+    }
+
+    /**
+     * Adds locations to sync along with the preferred one, until they are untracked.
+     */
+    public synchronized void trackLocations(Collection<String> locations) {
+        Set<String> tracked = new HashSet<String>(mSnapshot.trackedLocations);
+        if (tracked.addAll(locations)) {
+            put(mTrackedLocationsKey, tracked);
+        }
+    }
+
+    /**
+     * Stops syncing these locations.  The preferred location is synced whether it is tracked
+     * or not.
+     */
+    public synchronized void untrackLocations(Collection<String> locations) {
+        Set<String> tracked = new HashSet<String>(mSnapshot.trackedLocations);
+        if (tracked.removeAll(locations)) {
+            put(mTrackedLocationsKey, tracked);
+        }
+    }
+
+    public void setLastNotification(long lastNotification) {
+        put(mLastNotificationKey, lastNotification);
+    }
+
+    public void setLocationStatus(@SunshineSyncAdapter.LocationStatus int locationStatus) {
+        put(mLocationStatusKey, locationStatus);
+    }
+
+    /**
+     * Reads the snapshot from the shared preferences again, keeping the writes they don't
+     * have yet.
+     */
+    synchronized void reload() {
+        HashMap<String, Object> values = new HashMap<String, Object>();
+        if (mFlushing != null) {
+            values.putAll(mFlushing);
+        }
+        values.putAll(mPending);
+
+        String location = mPrefs.getString(mLocationKey, mLocationDefault);
+        String artPack = mPrefs.getString(mArtPackKey, mArtPackSunshine);
+        int historyDays;
+        try {
+            historyDays = Integer.parseInt(mPrefs.getString(mHistoryKey, mHistoryOff));
+        } catch (NumberFormatException e) {
+            historyDays = 0;
+        }
+        Long lastNotification = (Long) values.get(mLastNotificationKey);
+        Integer locationStatus = (Integer) values.get(mLocationStatusKey);
+        @SuppressWarnings("unchecked")
+        Set<String> trackedLocations = (Set<String>) values.get(mTrackedLocationsKey);
+        if (trackedLocations == null) {
+            trackedLocations = mPrefs.getStringSet(mTrackedLocationsKey,
+                    Collections.<String>emptySet());
+        }
+        mSnapshot = new Snapshot(
+                location,
+                mPrefs.getString(mUnitsKey, mUnitsMetric).equals(mUnitsMetric),
+                artPack,
+                artPack.equals(mArtPackSunshine),
+                historyDays,
+                mPrefs.getBoolean(mNotificationsKey, mNotificationsDefault),
+                lastNotification != null ? lastNotification
+                        : mPrefs.getLong(mLastNotificationKey, 0),
+                locationStatus != null ? locationStatus
+                        : mPrefs.getInt(mLocationStatusKey,
+                                SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN),
+                // The preferences' own set must not be modified, so it is copied
+                Collections.unmodifiableSet(new HashSet<String>(trackedLocations)));
+    }
+
+    private void put(String key, Object value) {
+        synchronized (this) {
+            boolean scheduled = !mPending.isEmpty();
+            mPending.put(key, value);
+            reload();
+            if (scheduled) {
+                // Goes out with the flush that is already on its way
+                return;
+            }
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                flush();
+            }
+        });
+    }
+
+    private void flush() {
+        HashMap<String, Object> values;
+        synchronized (this) {
+            values = mPending;
+            mPending = new HashMap<String, Object>();
+            mFlushing = values;
+        }
+        SharedPreferences.Editor editor = mPrefs.edit();
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            Object value = entry.getValue();
+            if (value instanceof Integer) {
+                editor.putInt(entry.getKey(), (Integer) value);
+            } else if (value instanceof Set) {
+                @SuppressWarnings("unchecked")
+                Set<String> set = (Set<String>) value;
+                editor.putStringSet(entry.getKey(), set);
+            } else {
+                editor.putLong(entry.getKey(), (Long) value);
+            }
+        }
+        // apply() updates the preferences in memory before it returns, and goes to disk later
+        editor.apply();
+        synchronized (this) {
+            mFlushing = null;
+        }
+        Log.v(LOG_TAG, "Wrote " + values.size() + " settings");
+    }
+}
@@ -0,0 +1,260 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.Context;
+
+import java.util.Locale;
+
+/**
+ * Maps OpenWeatherMap condition ids to the icon, art, artwork URL, image URL and description
+ * Sunshine shows for them, through a table indexed by condition id that is built once.
+ *
+ * Based on weather code data found at:
+ * http://bugs.openweathermap.org/projects/api/wiki/Weather_Condition_Codes
+ *
+ * The artwork URLs depend on the art pack preference, so they are formatted once per art pack
+ * and formatted again only when the art pack changes.
+ */
+public class WeatherConditions {
+
+    // Condition ids are three digits; anything outside the table is unknown
+    static final int TABLE_SIZE = 1000;
+
+    /**
+     * How one group of conditions is shown.
+     */
+    private static final class Kind {
+        final int index;
+        final int iconResource;
+        final int artResource;
+        // Fills in the art pack's URL format
+        final String artName;
+        final String imageUrl;
+
+        Kind(int index, int iconResource, int artResource, String artName, String imageUrl) {
+            this.index = index;
+            this.iconResource = iconResource;
+            this.artResource = artResource;
+            this.artName = artName;
+            this.imageUrl = imageUrl;
+        }
+    }
+
+    private static final Kind STORM = new Kind(0, R.drawable.ic_storm, R.drawable.art_storm,
+            "storm",
+            "http://upload.wikimedia.org/wikipedia/commons/2/28/Thunderstorm_in_Annemasse,_France.jpg");
+    private static final Kind LIGHT_RAIN = new Kind(1, R.drawable.ic_light_rain,
+            R.drawable.art_light_rain, "light_rain",
+            "http://upload.wikimedia.org/wikipedia/commons/a/a0/Rain_on_leaf_504605006.jpg");
+    private static final Kind RAIN = new Kind(2, R.drawable.ic_rain, R.drawable.art_rain,
+            "rain",
+            "http://upload.wikimedia.org/wikipedia/commons/6/6c/Rain-on-Thassos.jpg");
+    private static final Kind SNOW = new Kind(3, R.drawable.ic_snow, R.drawable.art_snow,
+            "snow",
+            "http://upload.wikimedia.org/wikipedia/commons/b/b8/Fresh_snow.JPG");
+    private static final Kind FOG = new Kind(4, R.drawable.ic_fog, R.drawable.art_fog,
+            "fog",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e6/Westminster_fog_-_London_-_UK.jpg");
+    // Shown as a storm, but with a picture of the dust ahead of one
+    private static final Kind TORNADO = new Kind(5, R.drawable.ic_storm, R.drawable.art_storm,
+            "storm",
+            "http://upload.wikimedia.org/wikipedia/commons/d/dc/Raised_dust_ahead_of_a_severe_thunderstorm_1.jpg");
+    private static final Kind CLEAR = new Kind(6, R.drawable.ic_clear, R.drawable.art_clear,
+            "clear",
+            "http://upload.wikimedia.org/wikipedia/commons/7/7e/A_few_trees_and_the_sun_(6009964513).jpg");
+    private static final Kind LIGHT_CLOUDS = new Kind(7, R.drawable.ic_light_clouds,
+            R.drawable.art_light_clouds, "light_clouds",
+            "http://upload.wikimedia.org/wikipedia/commons/e/e7/Cloudy_Blue_Sky_(5031259890).jpg");
+    private static final Kind CLOUDS = new Kind(8, R.drawable.ic_cloudy, R.drawable.art_clouds,
+            "clouds",
+            "http://upload.wikimedia.org/wikipedia/commons/5/54/Cloudy_hills_in_Elis,_Greece_2.jpg");
+
+    private static final Kind[] KINDS = {
+            STORM, LIGHT_RAIN, RAIN, SNOW, FOG, TORNADO, CLEAR, LIGHT_CLOUDS, CLOUDS
+    };
+
+    // Indexed by condition id; null for conditions we have no pictures for
+    private static final Kind[] sKinds = new Kind[TABLE_SIZE];
+    // Indexed by condition id; 0 for conditions we have no description for
+    private static final int[] sStringIds = new int[TABLE_SIZE];
+
+    static {
+        // Where ranges overlap, the first one listed wins
+        putKind(200, 232, STORM);
+        putKind(300, 321, LIGHT_RAIN);
+        putKind(500, 504, RAIN);
+        putKind(511, 511, SNOW);
+        putKind(520, 531, RAIN);
+        putKind(600, 622, SNOW);
+        putKind(701, 761, FOG);
+        putKind(781, 781, TORNADO);
+        putKind(800, 800, CLEAR);
+        putKind(801, 801, LIGHT_CLOUDS);
+        putKind(802, 804, CLOUDS);
+
+        putString(200, 232, R.string.condition_2xx);
+        putString(300, 321, R.string.condition_3xx);
+        putString(500, R.string.condition_500);
+        putString(501, R.string.condition_501);
+        putString(502, R.string.condition_502);
+        putString(503, R.string.condition_503);
+        putString(504, R.string.condition_504);
+        putString(511, R.string.condition_511);
+        putString(520, R.string.condition_520);
+        putString(531, R.string.condition_531);
+        putString(600, R.string.condition_600);
+        putString(601, R.string.condition_601);
+        putString(602, R.string.condition_602);
+        putString(611, R.string.condition_611);
+        putString(612, R.string.condition_612);
+        putString(615, R.string.condition_615);
+        putString(616, R.string.condition_616);
+        putString(620, R.string.condition_620);
+        putString(621, R.string.condition_621);
+        putString(622, R.string.condition_622);
+        putString(701, R.string.condition_701);
+        putString(711, R.string.condition_711);
+        putString(721, R.string.condition_721);
+        putString(731, R.string.condition_731);
+        putString(741, R.string.condition_741);
+        putString(751, R.string.condition_751);
+        putString(761, R.string.condition_761);
+        putString(762, R.string.condition_762);
+        putString(771, R.string.condition_771);
+        putString(781, R.string.condition_781);
+        putString(800, R.string.condition_800);
+        putString(801, R.string.condition_801);
+        putString(802, R.string.condition_802);
+        putString(803, R.string.condition_803);
+        putString(804, R.string.condition_804);
+        putString(900, R.string.condition_900);
+        putString(901, R.string.condition_901);
+        putString(902, R.string.condition_902);
+        putString(903, R.string.condition_903);
+        putString(904, R.string.condition_904);
+        putString(905, R.string.condition_905);
+        putString(906, R.string.condition_906);
+        putString(951, R.string.condition_951);
+        putString(952, R.string.condition_952);
+        putString(953, R.string.condition_953);
+        putString(954, R.string.condition_954);
+        putString(955, R.string.condition_955);
+        putString(956, R.string.condition_956);
+        putString(957, R.string.condition_957);
+        putString(958, R.string.condition_958);
+        putString(959, R.string.condition_959);
+        putString(960, R.string.condition_960);
+        putString(961, R.string.condition_961);
+        putString(962, R.string.condition_962);
+    }
+
+    private static void putKind(int first, int last, Kind kind) {
+        for (int id = first; id <= last; id++) {
+            if (sKinds[id] == null) {
+                sKinds[id] = kind;
+            }
+        }
+    }
+
+    private static void putString(int first, int last, int stringId) {
+        for (int id = first; id <= last; id++) {
+            if (sStringIds[id] == 0) {
+                sStringIds[id] = stringId;
+            }
+        }
+    }
+
+    private static void putString(int id, int stringId) {
+        putString(id, id, stringId);
+    }
+
+    private static Kind getKind(int weatherId) {
+        return weatherId >= 0 && weatherId < TABLE_SIZE ? sKinds[weatherId] : null;
+    }
+
+    /**
+     * @see Utility#getIconResourceForWeatherCondition(int)
+     */
+    public static int getIconResource(int weatherId) {
+        Kind kind = getKind(weatherId);
+        return kind == null ? -1 : kind.iconResource;
+    }
+
+    /**
+     * @see Utility#getArtResourceForWeatherCondition(int)
+     */
+    public static int getArtResource(int weatherId) {
+        Kind kind = getKind(weatherId);
+        return kind == null ? -1 : kind.artResource;
+    }
+
+    /**
+     * @see Utility#getImageUrlForWeatherCondition(int)
+     */
+    public static String getImageUrl(int weatherId) {
+        Kind kind = getKind(weatherId);
+        return kind == null ? null : kind.imageUrl;
+    }
+
+    /**
+     * @return the string resource describing the condition, or 0 if there is none.
+     */
+    public static int getStringResource(int weatherId) {
+        return weatherId >= 0 && weatherId < TABLE_SIZE ? sStringIds[weatherId] : 0;
+    }
+
+    private static WeatherConditions sInstance;
+
+    private final SunshineSettings mSettings;
+
+    // Guarded by this.  The art pack mArtUrls were formatted for, and the URLs, indexed by
+    // Kind.index
+    private String mArtPack;
+    private String[] mArtUrls;
+
+    public static synchronized WeatherConditions getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherConditions(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherConditions(Context context) {
+        mSettings = SunshineSettings.getInstance(context);
+    }
+
+    /**
+     * @see Utility#getArtUrlForWeatherCondition(Context, int)
+     */
+    public synchronized String getArtUrl(int weatherId) {
+        Kind kind = getKind(weatherId);
+        if (kind == null) {
+            return null;
+        }
+        String artPack = mSettings.getArtPack();
+        // The same string until the preference changes, so this is usually a reference check
+        if (!artPack.equals(mArtPack)) {
+            String[] artUrls = new String[KINDS.length];
+            for (Kind k : KINDS) {
+                artUrls[k.index] = String.format(Locale.US, artPack, k.artName);
+            }
+            mArtPack = artPack;
+            mArtUrls = artUrls;
+        }
+        return mArtUrls[kind.index];
+    }
+}
@@ -0,0 +1,375 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.text.format.Time;
+import android.util.SparseArray;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * Formats temperatures, wind and days for display, the way the helpers in {@link Utility} are
+ * documented to, for the forecast list, the detail view and the widgets, which format the same
+ * handful of values on every bind.
+ *
+ * The format strings, date formats and the names of today and tomorrow are looked up once per
+ * locale, and temperatures and days are formatted once and then served from memory.  Whole
+ * degrees and wind speeds are spliced into the format string without going through
+ * {@link String#format}, as long as the format string has the layout we expect and the locale
+ * writes digits as ASCII; anything else falls back to {@link String#format}.
+ *
+ * Everything is dropped when the locale or the units change, and the days when the day, the
+ * time or the time zone changes.
+ */
+public class WeatherFormatter {
+
+    // Formatted whole degrees kept for [-TEMPERATURE_OFFSET, TEMPERATURE_RANGE - TEMPERATURE_OFFSET)
+    private static final int TEMPERATURE_OFFSET = 100;
+    private static final int TEMPERATURE_RANGE = 256;
+
+    private static final String[] NUMBER_TOKENS = {"%1.0f", "%1$1.0f"};
+    private static final String[] WIND_SPEED_TOKENS = {"%1$1.0f"};
+    private static final String[] WIND_DIRECTION_TOKENS = {"%2$s"};
+
+    private static final String[] WIND_DIRECTIONS = {"N", "NE", "E", "SE", "S", "SW", "W", "NW"};
+
+    private static WeatherFormatter sInstance;
+
+    private final Context mContext;
+    private final SunshineSettings mSettings;
+
+    // All of the below guarded by this
+    private Locale mLocale;
+    private boolean mAsciiDigits;
+
+    // Units; mUnitsLoaded is false until the format strings are read again
+    private boolean mUnitsLoaded;
+    private boolean mMetric;
+    private String mTemperatureFormat;
+    private String[] mTemperatureParts;
+    private final String[] mTemperatures = new String[TEMPERATURE_RANGE];
+    private String mWindFormat;
+    private String[] mWindParts;
+
+    // Days, from the day of mDayStart on
+    private long mDayStart;
+    private long mDayEnd;
+    private long mGmtOff;
+    private int mCurrentJulianDay;
+    private String mToday;
+    private String mTomorrow;
+    private String mFullFriendlyFormat;
+    private SimpleDateFormat mDayNameFormat;
+    private SimpleDateFormat mMonthDayFormat;
+    private SimpleDateFormat mShortDateFormat;
+    private final SparseArray<String> mDayNames = new SparseArray<String>();
+    private final SparseArray<String> mMonthDays = new SparseArray<String>();
+    private final SparseArray<String> mFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mLongFriendlyDays = new SparseArray<String>();
+    private final SparseArray<String> mFullFriendlyDays = new SparseArray<String>();
+
+    public static synchronized WeatherFormatter getInstance(Context context) {
+        if (sInstance == null) {
+            sInstance = new WeatherFormatter(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private WeatherFormatter(Context context) {
+        mContext = context;
+        mSettings = SunshineSettings.getInstance(context);
+
+        IntentFilter filter = new IntentFilter(Intent.ACTION_TIME_CHANGED);
+        filter.addAction(Intent.ACTION_TIMEZONE_CHANGED);
+        filter.addAction(Intent.ACTION_DATE_CHANGED);
+        context.registerReceiver(new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                invalidateDays();
+            }
+        }, filter);
+    }
+
+    /**
+     * Drops everything, as if the locale had changed.
+     */
+    public synchronized void invalidate() {
+        mLocale = null;
+    }
+
+    synchronized void invalidateDays() {
+        mDayEnd = 0;
+    }
+
+    /**
+     * @see Utility#formatTemperature(Context, double)
+     */
+    public synchronized String formatTemperature(double temperature) {
+        loadUnits();
+        // Data stored in Celsius by default.  If user prefers to see in Fahrenheit, convert
+        // the values here.
+        if (!mMetric) {
+            temperature = (temperature * 1.8) + 32;
+        }
+        if (mTemperatureParts == null || !isWholeNumberFormattable(temperature)) {
+            return String.format(mTemperatureFormat, temperature);
+        }
+
+        // For presentation, assume the user doesn't care about tenths of a degree.
+        long degrees = roundHalfUp(temperature);
+        boolean cache = degrees != 0 || temperature >= 0;
+        int index = (int) degrees + TEMPERATURE_OFFSET;
+        cache &= index >= 0 && index < TEMPERATURE_RANGE;
+        if (cache && mTemperatures[index] != null) {
+            return mTemperatures[index];
+        }
+        StringBuilder sb = new StringBuilder(mTemperatureParts[0]);
+        appendWholeNumber(sb, temperature, degrees);
+        String formatted = sb.append(mTemperatureParts[1]).toString();
+        if (cache) {
+            mTemperatures[index] = formatted;
+        }
+        return formatted;
+    }
+
+    /**
+     * @see Utility#getFormattedWind(Context, float, float)
+     */
+    public synchronized String getFormattedWind(float windSpeed, float degrees) {
+        loadUnits();
+        if (!mMetric) {
+            windSpeed = .621371192237334f * windSpeed;
+        }
+
+        // From wind direction in degrees, determine compass direction as a string (e.g NW)
+        String direction;
+        if (degrees >= 337.5 || degrees < 22.5) {
+            direction = WIND_DIRECTIONS[0];
+        } else if (degrees >= 22.5 && degrees < 337.5) {
+            direction = WIND_DIRECTIONS[(int) ((degrees + 22.5) / 45)];
+        } else {
+            direction = "Unknown";
+        }
+
+        if (mWindParts == null || !isWholeNumberFormattable(windSpeed)) {
+            return String.format(mWindFormat, windSpeed, direction);
+        }
+        StringBuilder sb = new StringBuilder(mWindParts[0]);
+        appendWholeNumber(sb, windSpeed, roundHalfUp(windSpeed));
+        return sb.append(mWindParts[1]).append(direction).append(mWindParts[2]).toString();
+    }
+
+    /**
+     * @see Utility#getFriendlyDayString(Context, long, boolean)
+     */
+    public synchronized String getFriendlyDayString(long dateInMillis, boolean displayLongToday) {
+        loadDays();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOff);
+        if (displayLongToday && julianDay == mCurrentJulianDay) {
+            String friendlyDay = mLongFriendlyDays.get(julianDay);
+            if (friendlyDay == null) {
+                friendlyDay = String.format(mFullFriendlyFormat, mToday,
+                        getFormattedMonthDay(julianDay, dateInMillis));
+                mLongFriendlyDays.put(julianDay, friendlyDay);
+            }
+            return friendlyDay;
+        } else if (julianDay < mCurrentJulianDay + 7) {
+            return getDayName(julianDay, dateInMillis);
+        }
+        String friendlyDay = mFriendlyDays.get(julianDay);
+        if (friendlyDay == null) {
+            friendlyDay = mShortDateFormat.format(dateInMillis);
+            mFriendlyDays.put(julianDay, friendlyDay);
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * @see Utility#getFullFriendlyDayString(Context, long)
+     */
+    public synchronized String getFullFriendlyDayString(long dateInMillis) {
+        loadDays();
+        int julianDay = Time.getJulianDay(dateInMillis, mGmtOff);
+        String friendlyDay = mFullFriendlyDays.get(julianDay);
+        if (friendlyDay == null) {
+            friendlyDay = String.format(mFullFriendlyFormat, getDayName(julianDay, dateInMillis),
+                    getFormattedMonthDay(julianDay, dateInMillis));
+            mFullFriendlyDays.put(julianDay, friendlyDay);
+        }
+        return friendlyDay;
+    }
+
+    /**
+     * @see Utility#getDayName(Context, long)
+     */
+    public synchronized String getDayName(long dateInMillis) {
+        loadDays();
+        return getDayName(Time.getJulianDay(dateInMillis, mGmtOff), dateInMillis);
+    }
+
+    /**
+     * @see Utility#getFormattedMonthDay(Context, long)
+     */
+    public synchronized String getFormattedMonthDay(long dateInMillis) {
+        loadDays();
+        return getFormattedMonthDay(Time.getJulianDay(dateInMillis, mGmtOff), dateInMillis);
+    }
+
+    private String getDayName(int julianDay, long dateInMillis) {
+        if (julianDay == mCurrentJulianDay) {
+            return mToday;
+        } else if (julianDay == mCurrentJulianDay + 1) {
+            return mTomorrow;
+        }
+        String dayName = mDayNames.get(julianDay);
+        if (dayName == null) {
+            dayName = mDayNameFormat.format(dateInMillis);
+            mDayNames.put(julianDay, dayName);
+        }
+        return dayName;
+    }
+
+    private String getFormattedMonthDay(int julianDay, long dateInMillis) {
+        String monthDay = mMonthDays.get(julianDay);
+        if (monthDay == null) {
+            monthDay = mMonthDayFormat.format(dateInMillis);
+            mMonthDays.put(julianDay, monthDay);
+        }
+        return monthDay;
+    }
+
+    /**
+     * Drops everything if the locale has changed since we last looked.
+     */
+    private void checkLocale() {
+        Locale locale = Locale.getDefault();
+        if (locale.equals(mLocale)) {
+            return;
+        }
+        mLocale = locale;
+        mAsciiDigits = DecimalFormatSymbols.getInstance(locale).getZeroDigit() == '0';
+        mUnitsLoaded = false;
+        mDayEnd = 0;
+        mToday = mContext.getString(R.string.today);
+        mTomorrow = mContext.getString(R.string.tomorrow);
+        mFullFriendlyFormat = mContext.getString(R.string.format_full_friendly_date);
+        mDayNameFormat = new SimpleDateFormat("EEEE");
+        mMonthDayFormat = new SimpleDateFormat("MMMM dd");
+        mShortDateFormat = new SimpleDateFormat("EEE MMM dd");
+    }
+
+    private void loadUnits() {
+        checkLocale();
+        boolean metric = mSettings.isMetric();
+        if (mUnitsLoaded && metric == mMetric) {
+            return;
+        }
+        mMetric = metric;
+        mTemperatureFormat = mContext.getString(R.string.format_temperature);
+        mWindFormat = mContext.getString(mMetric ? R.string.format_wind_kmh
+                : R.string.format_wind_mph);
+        mTemperatureParts = mAsciiDigits ? split(mTemperatureFormat, NUMBER_TOKENS) : null;
+        mWindParts = mAsciiDigits
+                ? split(mWindFormat, WIND_SPEED_TOKENS, WIND_DIRECTION_TOKENS) : null;
+        for (int i = 0; i < TEMPERATURE_RANGE; i++) {
+            mTemperatures[i] = null;
+        }
+        mUnitsLoaded = true;
+    }
+
+    private void loadDays() {
+        checkLocale();
+        long now = System.currentTimeMillis();
+        if (now >= mDayStart && now < mDayEnd) {
+            return;
+        }
+        Time time = new Time();
+        time.setToNow();
+        mGmtOff = time.gmtoff;
+        mCurrentJulianDay = Time.getJulianDay(now, mGmtOff);
+        // Local midnights, so a day with a daylight saving change ends on time
+        mDayStart = time.setJulianDay(mCurrentJulianDay);
+        mDayEnd = time.setJulianDay(mCurrentJulianDay + 1);
+        mDayNames.clear();
+        mMonthDays.clear();
+        mFriendlyDays.clear();
+        mLongFriendlyDays.clear();
+        mFullFriendlyDays.clear();
+    }
+
+    /**
+     * Splits {@code format} around one occurrence of a token from each group, in order.
+     *
+     * @return the text before, between and after the tokens, or null if the format has any
+     * other conversions, or the tokens aren't there in that order.
+     */
+    static String[] split(String format, String[]... tokenGroups) {
+        String[] parts = new String[tokenGroups.length + 1];
+        int start = 0;
+        for (int i = 0; i < tokenGroups.length; i++) {
+            int found = -1;
+            String token = null;
+            for (String candidate : tokenGroups[i]) {
+                int index = format.indexOf(candidate, start);
+                if (index != -1 && (found == -1 || index < found)) {
+                    found = index;
+                    token = candidate;
+                }
+            }
+            if (found == -1) {
+                return null;
+            }
+            parts[i] = format.substring(start, found);
+            start = found + token.length();
+        }
+        parts[tokenGroups.length] = format.substring(start);
+        for (String part : parts) {
+            if (part.indexOf('%') != -1) {
+                return null;
+            }
+        }
+        return parts;
+    }
+
+    private static boolean isWholeNumberFormattable(double value) {
+        return !Double.isNaN(value) && Math.abs(value) < Integer.MAX_VALUE;
+    }
+
+    /**
+     * Rounds half away from zero, as %.0f does.
+     */
+    static long roundHalfUp(double value) {
+        long rounded = (long) Math.floor(Math.abs(value) + 0.5);
+        return value < 0 ? -rounded : rounded;
+    }
+
+    /**
+     * Appends {@code rounded} the way %.0f writes {@code value}, which keeps the sign of
+     * negative values that round to zero.
+     */
+    private static void appendWholeNumber(StringBuilder sb, double value, long rounded) {
+        if (rounded == 0 && (value < 0 || Double.doubleToRawLongBits(value) < 0)) {
+            sb.append('-');
+        }
+        sb.append(rounded);
+    }
+}
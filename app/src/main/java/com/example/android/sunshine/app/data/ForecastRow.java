@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+
+import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * One day of a location's forecast, as read from the weather-by-location queries.
+ *
+ * Each consumer asks the provider for one of the projections below, which hold only the columns
+ * that consumer shows, and reads the result through a {@link Decoder}.  Columns a projection
+ * leaves out read as 0, or null for the description.
+ */
+public final class ForecastRow {
+
+    // The forecast list: the day, its icon and temperatures, and where to show it on a map
+    public static final String[] LIST_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            LocationEntry.COLUMN_COORD_LAT,
+            LocationEntry.COLUMN_COORD_LONG
+    };
+
+    // The detail view: everything about one day
+    public static final String[] DETAIL_COLUMNS = {
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // The widgets, Muzei and the notification, through ForecastSnapshot.  The id needs to be
+    // qualified with the table name, since the provider joins the location table (which has
+    // an _id column too) in the background.
+    public static final String[] SUMMARY_COLUMNS = {
+            WeatherEntry.TABLE_NAME + "." + WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_MIN_TEMP
+    };
+
+    private final long mId;
+    private final long mDate;
+    private final int mWeatherId;
+    private final String mShortDesc;
+    private final double mMaxTemp;
+    private final double mMinTemp;
+    private final double mHumidity;
+    private final double mPressure;
+    private final double mWindSpeed;
+    private final double mDegrees;
+    private final double mCoordLat;
+    private final double mCoordLong;
+
+    private ForecastRow(Decoder decoder) {
+        mId = decoder.getId();
+        mDate = decoder.getDate();
+        mWeatherId = decoder.getWeatherId();
+        mShortDesc = decoder.getShortDesc();
+        mMaxTemp = decoder.getMaxTemp();
+        mMinTemp = decoder.getMinTemp();
+        mHumidity = decoder.getHumidity();
+        mPressure = decoder.getPressure();
+        mWindSpeed = decoder.getWindSpeed();
+        mDegrees = decoder.getDegrees();
+        mCoordLat = decoder.getCoordLat();
+        mCoordLong = decoder.getCoordLong();
+    }
+
+    /**
+     * @return the row id in the weather table.
+     */
+    public long getId() {
+        return mId;
+    }
+
+    public long getDate() {
+        return mDate;
+    }
+
+    public int getWeatherId() {
+        return mWeatherId;
+    }
+
+    public String getShortDesc() {
+        return mShortDesc;
+    }
+
+    public double getMaxTemp() {
+        return mMaxTemp;
+    }
+
+    public double getMinTemp() {
+        return mMinTemp;
+    }
+
+    public double getHumidity() {
+        return mHumidity;
+    }
+
+    public double getPressure() {
+        return mPressure;
+    }
+
+    public double getWindSpeed() {
+        return mWindSpeed;
+    }
+
+    public double getDegrees() {
+        return mDegrees;
+    }
+
+    public double getCoordLat() {
+        return mCoordLat;
+    }
+
+    public double getCoordLong() {
+        return mCoordLong;
+    }
+
+    /**
+     * Reads the columns of the cursor's current row straight into primitives.  The column
+     * indices are looked up once, when the decoder is created, so a decoder should live as long
+     * as its cursor: a list adapter can bind every row through one without allocating anything,
+     * and {@link #read()} only allocates the row it returns.
+     */
+    public static final class Decoder {
+        private final Cursor mCursor;
+        // -1 for the columns the cursor doesn't have
+        private final int mIdIndex;
+        private final int mDateIndex;
+        private final int mWeatherIdIndex;
+        private final int mShortDescIndex;
+        private final int mMaxTempIndex;
+        private final int mMinTempIndex;
+        private final int mHumidityIndex;
+        private final int mPressureIndex;
+        private final int mWindSpeedIndex;
+        private final int mDegreesIndex;
+        private final int mCoordLatIndex;
+        private final int mCoordLongIndex;
+
+        public Decoder(Cursor cursor) {
+            mCursor = cursor;
+            mIdIndex = cursor.getColumnIndex(WeatherEntry._ID);
+            mDateIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DATE);
+            mWeatherIdIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WEATHER_ID);
+            mShortDescIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_SHORT_DESC);
+            mMaxTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MAX_TEMP);
+            mMinTempIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_MIN_TEMP);
+            mHumidityIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_HUMIDITY);
+            mPressureIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_PRESSURE);
+            mWindSpeedIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_WIND_SPEED);
+            mDegreesIndex = cursor.getColumnIndex(WeatherEntry.COLUMN_DEGREES);
+            mCoordLatIndex = cursor.getColumnIndex(LocationEntry.COLUMN_COORD_LAT);
+            mCoordLongIndex = cursor.getColumnIndex(LocationEntry.COLUMN_COORD_LONG);
+        }
+
+        public Cursor getCursor() {
+            return mCursor;
+        }
+
+        /**
+         * @return a copy of the current row.
+         */
+        public ForecastRow read() {
+            return new ForecastRow(this);
+        }
+
+        private long getLong(int index) {
+            return index == -1 ? 0 : mCursor.getLong(index);
+        }
+
+        private double getDouble(int index) {
+            return index == -1 ? 0 : mCursor.getDouble(index);
+        }
+
+        public long getId() {
+            return getLong(mIdIndex);
+        }
+
+        public long getDate() {
+            return getLong(mDateIndex);
+        }
+
+        public int getWeatherId() {
+            return mWeatherIdIndex == -1 ? 0 : mCursor.getInt(mWeatherIdIndex);
+        }
+
+        public String getShortDesc() {
+            return mShortDescIndex == -1 ? null : mCursor.getString(mShortDescIndex);
+        }
+
+        public double getMaxTemp() {
+            return getDouble(mMaxTempIndex);
+        }
+
+        public double getMinTemp() {
+            return getDouble(mMinTempIndex);
+        }
+
+        public double getHumidity() {
+            return getDouble(mHumidityIndex);
+        }
+
+        public double getPressure() {
+            return getDouble(mPressureIndex);
+        }
+
+        public double getWindSpeed() {
+            return getDouble(mWindSpeedIndex);
+        }
+
+        public double getDegrees() {
+            return getDouble(mDegreesIndex);
+        }
+
+        public double getCoordLat() {
+            return getDouble(mCoordLatIndex);
+        }
+
+        public double getCoordLong() {
+            return getDouble(mCoordLongIndex);
+        }
+    }
+}
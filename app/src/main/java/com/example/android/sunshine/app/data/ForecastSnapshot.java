@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentResolver;
+import android.database.Cursor;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * An immutable copy of the forecast of one location, from a given day onwards, as the widgets,
+ * Muzei and the notification show it.  Day 0 is "today".
+ *
+ * It is read with a single query and can be handed from one consumer to the next, in process or
+ * through an Intent, without going back to the provider.
+ */
+public final class ForecastSnapshot implements Parcelable {
+
+    private final String mLocationSetting;
+    private final long[] mIds;
+    private final long[] mDates;
+    private final int[] mWeatherIds;
+    private final String[] mShortDescs;
+    private final double[] mMaxTemps;
+    private final double[] mMinTemps;
+
+    private ForecastSnapshot(String locationSetting, int size) {
+        mLocationSetting = locationSetting;
+        mIds = new long[size];
+        mDates = new long[size];
+        mWeatherIds = new int[size];
+        mShortDescs = new String[size];
+        mMaxTemps = new double[size];
+        mMinTemps = new double[size];
+    }
+
+    /**
+     * Reads the forecast of a location from the day of {@code startDate} onwards, in date order.
+     *
+     * @return the snapshot, empty if nothing is stored, or null if the provider couldn't be
+     * queried.
+     */
+    public static ForecastSnapshot query(ContentResolver resolver, String locationSetting,
+                                         long startDate) {
+        Cursor cursor = resolver.query(
+                WeatherEntry.buildWeatherLocationWithStartDate(locationSetting, startDate),
+                ForecastRow.SUMMARY_COLUMNS,
+                null,
+                null,
+                WeatherEntry.COLUMN_DATE + " ASC");
+        if (cursor == null) {
+            return null;
+        }
+        try {
+            ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, cursor.getCount());
+            ForecastRow.Decoder row = new ForecastRow.Decoder(cursor);
+            for (int i = 0; cursor.moveToNext(); i++) {
+                snapshot.mIds[i] = row.getId();
+                snapshot.mDates[i] = row.getDate();
+                snapshot.mWeatherIds[i] = row.getWeatherId();
+                snapshot.mShortDescs[i] = row.getShortDesc();
+                snapshot.mMaxTemps[i] = row.getMaxTemp();
+                snapshot.mMinTemps[i] = row.getMinTemp();
+            }
+            return snapshot;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    public String getLocationSetting() {
+        return mLocationSetting;
+    }
+
+    public int size() {
+        return mIds.length;
+    }
+
+    public boolean isEmpty() {
+        return mIds.length == 0;
+    }
+
+    /**
+     * @return the row id of day {@code i} in the weather table.
+     */
+    public long getId(int i) {
+        return mIds[i];
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    /**
+     * @return true if {@code other} holds the same rows of the same location.
+     */
+    public boolean hasSameContent(ForecastSnapshot other) {
+        return other != null
+                && mLocationSetting.equals(other.mLocationSetting)
+                && Arrays.equals(mIds, other.mIds)
+                && Arrays.equals(mDates, other.mDates)
+                && Arrays.equals(mWeatherIds, other.mWeatherIds)
+                && Arrays.equals(mShortDescs, other.mShortDescs)
+                && Arrays.equals(mMaxTemps, other.mMaxTemps)
+                && Arrays.equals(mMinTemps, other.mMinTemps);
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeString(mLocationSetting);
+        dest.writeInt(mIds.length);
+        for (int i = 0; i < mIds.length; i++) {
+            dest.writeLong(mIds[i]);
+            dest.writeLong(mDates[i]);
+            dest.writeInt(mWeatherIds[i]);
+            dest.writeString(mShortDescs[i]);
+            dest.writeDouble(mMaxTemps[i]);
+            dest.writeDouble(mMinTemps[i]);
+        }
+    }
+
+    public static final Parcelable.Creator<ForecastSnapshot> CREATOR =
+            new Parcelable.Creator<ForecastSnapshot>() {
+                @Override
+                public ForecastSnapshot createFromParcel(Parcel in) {
+                    String locationSetting = in.readString();
+                    int size = in.readInt();
+                    ForecastSnapshot snapshot = new ForecastSnapshot(locationSetting, size);
+                    for (int i = 0; i < size; i++) {
+                        snapshot.mIds[i] = in.readLong();
+                        snapshot.mDates[i] = in.readLong();
+                        snapshot.mWeatherIds[i] = in.readInt();
+                        snapshot.mShortDescs[i] = in.readString();
+                        snapshot.mMaxTemps[i] = in.readDouble();
+                        snapshot.mMinTemps[i] = in.readDouble();
+                    }
+                    return snapshot;
+                }
+
+                @Override
+                public ForecastSnapshot[] newArray(int size) {
+                    return new ForecastSnapshot[size];
+                }
+            };
+}
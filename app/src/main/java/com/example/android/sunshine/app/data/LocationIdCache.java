@@ -0,0 +1,128 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Maps location settings to location row ids, so that neither a sync nor a weather query has
+ * to look the setting up in the location table first.
+ *
+ * The whole table is read the first time anything is asked for; after that, only settings we
+ * haven't seen are looked up, one at a time.  Only settings that exist are kept, so a location
+ * inserted later is found without any invalidation.  Writers that update or delete locations
+ * bracket their changes with {@link #beginWrite()} and {@link #endWrite()} and invalidate the
+ * settings they touched in between, and, as in {@link WeatherQueryCache}, nothing read while a
+ * write is in flight is kept.
+ */
+class LocationIdCache {
+
+    //location_setting = ? on the location table alone
+    private static final String sLocationSettingSelection =
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
+
+    private static final String[] ID_COLUMNS = {
+            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING,
+            WeatherContract.LocationEntry._ID
+    };
+
+    // Guarded by this
+    private final HashMap<String, Long> mIds = new HashMap<String, Long>();
+    private boolean mLoaded;
+    private int mWritesInProgress;
+    private long mGeneration;
+    private long mHits;
+    private long mMisses;
+
+    /**
+     * @return the row id of the location, or -1 if there is none.
+     */
+    long getId(SQLiteDatabase db, String locationSetting) {
+        long generation;
+        boolean loaded;
+        synchronized (this) {
+            Long id = mIds.get(locationSetting);
+            if (id != null) {
+                mHits++;
+                return id;
+            }
+            mMisses++;
+            generation = mGeneration;
+            loaded = mLoaded;
+        }
+
+        HashMap<String, Long> ids = new HashMap<String, Long>();
+        Cursor cursor = loaded
+                ? db.query(WeatherContract.LocationEntry.TABLE_NAME, ID_COLUMNS,
+                        sLocationSettingSelection, new String[]{locationSetting},
+                        null, null, null)
+                : db.query(WeatherContract.LocationEntry.TABLE_NAME, ID_COLUMNS,
+                        null, null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                ids.put(cursor.getString(0), cursor.getLong(1));
+            }
+        } finally {
+            cursor.close();
+        }
+
+        synchronized (this) {
+            if (mWritesInProgress == 0 && mGeneration == generation) {
+                mIds.putAll(ids);
+                mLoaded = true;
+            }
+        }
+        Long id = ids.get(locationSetting);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Marks the start of a write.  Must be paired with {@link #endWrite()}.
+     */
+    synchronized void beginWrite() {
+        mWritesInProgress++;
+    }
+
+    synchronized void endWrite() {
+        mWritesInProgress--;
+        mGeneration++;
+    }
+
+    synchronized void invalidate(Collection<String> locationSettings) {
+        mIds.keySet().removeAll(locationSettings);
+    }
+
+    synchronized void invalidateAll() {
+        mIds.clear();
+        mLoaded = false;
+    }
+
+    synchronized int size() {
+        return mIds.size();
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.os.Parcel;
+import android.os.Parcelable;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.Arrays;
+
+/**
+ * A batch of weather rows stored column by column in primitive arrays, so that filling it and
+ * binding it to a compiled statement never boxes a value or builds a ContentValues map.
+ *
+ * Rows are addressed by their position in the batch.
+ */
+public class WeatherBatch implements Parcelable {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    // Every column a weather row needs; the provider's insert doesn't default any of them
+    private static final String[] REQUIRED_COLUMNS = {
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    private int mSize;
+    private long[] mLocationIds;
+    private long[] mDates;
+    private int[] mWeatherIds;
+    private String[] mShortDescs;
+    private double[] mMinTemps;
+    private double[] mMaxTemps;
+    private double[] mHumidities;
+    private double[] mPressures;
+    private double[] mWindSpeeds;
+    private double[] mDegrees;
+
+    public WeatherBatch() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public WeatherBatch(int capacity) {
+        allocate(Math.max(capacity, 1));
+    }
+
+    private void allocate(int capacity) {
+        mLocationIds = new long[capacity];
+        mDates = new long[capacity];
+        mWeatherIds = new int[capacity];
+        mShortDescs = new String[capacity];
+        mMinTemps = new double[capacity];
+        mMaxTemps = new double[capacity];
+        mHumidities = new double[capacity];
+        mPressures = new double[capacity];
+        mWindSpeeds = new double[capacity];
+        mDegrees = new double[capacity];
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity <= mLocationIds.length) {
+            return;
+        }
+        int newCapacity = Math.max(capacity, mLocationIds.length * 2);
+        mLocationIds = Arrays.copyOf(mLocationIds, newCapacity);
+        mDates = Arrays.copyOf(mDates, newCapacity);
+        mWeatherIds = Arrays.copyOf(mWeatherIds, newCapacity);
+        mShortDescs = Arrays.copyOf(mShortDescs, newCapacity);
+        mMinTemps = Arrays.copyOf(mMinTemps, newCapacity);
+        mMaxTemps = Arrays.copyOf(mMaxTemps, newCapacity);
+        mHumidities = Arrays.copyOf(mHumidities, newCapacity);
+        mPressures = Arrays.copyOf(mPressures, newCapacity);
+        mWindSpeeds = Arrays.copyOf(mWindSpeeds, newCapacity);
+        mDegrees = Arrays.copyOf(mDegrees, newCapacity);
+    }
+
+    /**
+     * Appends a row.
+     *
+     * @return the position of the new row.
+     */
+    public int add(long locationId, long date, int weatherId, String shortDesc,
+                   double minTemp, double maxTemp, double humidity, double pressure,
+                   double windSpeed, double degrees) {
+        ensureCapacity(mSize + 1);
+        int i = mSize++;
+        mLocationIds[i] = locationId;
+        mDates[i] = date;
+        mWeatherIds[i] = weatherId;
+        mShortDescs[i] = shortDesc;
+        mMinTemps[i] = minTemp;
+        mMaxTemps[i] = maxTemp;
+        mHumidities[i] = humidity;
+        mPressures[i] = pressure;
+        mWindSpeeds[i] = windSpeed;
+        mDegrees[i] = degrees;
+        return i;
+    }
+
+    public int size() {
+        return mSize;
+    }
+
+    public void clear() {
+        // Drop the String references so they can be collected; primitives are just overwritten
+        Arrays.fill(mShortDescs, 0, mSize, null);
+        mSize = 0;
+    }
+
+    public long getLocationId(int i) {
+        return mLocationIds[i];
+    }
+
+    /**
+     * Points row {@code i} at another location, e.g. once a sync commit has resolved it.
+     */
+    void setLocationId(int i, long locationId) {
+        mLocationIds[i] = locationId;
+    }
+
+    public long getDate(int i) {
+        return mDates[i];
+    }
+
+    public int getWeatherId(int i) {
+        return mWeatherIds[i];
+    }
+
+    public String getShortDesc(int i) {
+        return mShortDescs[i];
+    }
+
+    public double getMinTemp(int i) {
+        return mMinTemps[i];
+    }
+
+    public double getMaxTemp(int i) {
+        return mMaxTemps[i];
+    }
+
+    public double getHumidity(int i) {
+        return mHumidities[i];
+    }
+
+    public double getPressure(int i) {
+        return mPressures[i];
+    }
+
+    public double getWindSpeed(int i) {
+        return mWindSpeeds[i];
+    }
+
+    public double getDegrees(int i) {
+        return mDegrees[i];
+    }
+
+    /**
+     * Normalizes every date in the batch, in place, the same way the provider normalizes
+     * the COLUMN_DATE of incoming ContentValues.
+     */
+    void normalizeDates() {
+        for (int i = 0; i < mSize; i++) {
+            mDates[i] = WeatherContract.normalizeDate(mDates[i]);
+        }
+    }
+
+    /**
+     * Builds a batch out of complete weather rows.
+     *
+     * @throws IllegalArgumentException if a row is missing one of the weather columns, or has
+     * a value that isn't of the column's type.
+     */
+    public static WeatherBatch fromContentValues(ContentValues[] values) {
+        WeatherBatch batch = new WeatherBatch(values.length);
+        for (ContentValues value : values) {
+            for (String column : REQUIRED_COLUMNS) {
+                if (value.get(column) == null) {
+                    throw new IllegalArgumentException(
+                            "Weather row without " + column + ": " + value);
+                }
+            }
+            // Null where the value doesn't convert, say a date that isn't a number
+            Long locationId = value.getAsLong(WeatherEntry.COLUMN_LOC_KEY);
+            Long date = value.getAsLong(WeatherEntry.COLUMN_DATE);
+            Integer weatherId = value.getAsInteger(WeatherEntry.COLUMN_WEATHER_ID);
+            Double minTemp = value.getAsDouble(WeatherEntry.COLUMN_MIN_TEMP);
+            Double maxTemp = value.getAsDouble(WeatherEntry.COLUMN_MAX_TEMP);
+            Double humidity = value.getAsDouble(WeatherEntry.COLUMN_HUMIDITY);
+            Double pressure = value.getAsDouble(WeatherEntry.COLUMN_PRESSURE);
+            Double windSpeed = value.getAsDouble(WeatherEntry.COLUMN_WIND_SPEED);
+            Double degrees = value.getAsDouble(WeatherEntry.COLUMN_DEGREES);
+            if (locationId == null || date == null || weatherId == null || minTemp == null
+                    || maxTemp == null || humidity == null || pressure == null
+                    || windSpeed == null || degrees == null) {
+                throw new IllegalArgumentException("Malformed weather row: " + value);
+            }
+            batch.add(locationId, date, weatherId,
+                    value.getAsString(WeatherEntry.COLUMN_SHORT_DESC),
+                    minTemp, maxTemp, humidity, pressure, windSpeed, degrees);
+        }
+        return batch;
+    }
+
+    public ContentValues toContentValues(int i) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherEntry.COLUMN_LOC_KEY, mLocationIds[i]);
+        values.put(WeatherEntry.COLUMN_DATE, mDates[i]);
+        values.put(WeatherEntry.COLUMN_WEATHER_ID, mWeatherIds[i]);
+        values.put(WeatherEntry.COLUMN_SHORT_DESC, mShortDescs[i]);
+        values.put(WeatherEntry.COLUMN_MIN_TEMP, mMinTemps[i]);
+        values.put(WeatherEntry.COLUMN_MAX_TEMP, mMaxTemps[i]);
+        values.put(WeatherEntry.COLUMN_HUMIDITY, mHumidities[i]);
+        values.put(WeatherEntry.COLUMN_PRESSURE, mPressures[i]);
+        values.put(WeatherEntry.COLUMN_WIND_SPEED, mWindSpeeds[i]);
+        values.put(WeatherEntry.COLUMN_DEGREES, mDegrees[i]);
+        return values;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mSize);
+        for (int i = 0; i < mSize; i++) {
+            dest.writeLong(mLocationIds[i]);
+            dest.writeLong(mDates[i]);
+            dest.writeInt(mWeatherIds[i]);
+            dest.writeString(mShortDescs[i]);
+            dest.writeDouble(mMinTemps[i]);
+            dest.writeDouble(mMaxTemps[i]);
+            dest.writeDouble(mHumidities[i]);
+            dest.writeDouble(mPressures[i]);
+            dest.writeDouble(mWindSpeeds[i]);
+            dest.writeDouble(mDegrees[i]);
+        }
+    }
+
+    public static final Parcelable.Creator<WeatherBatch> CREATOR =
+            new Parcelable.Creator<WeatherBatch>() {
+                @Override
+                public WeatherBatch createFromParcel(Parcel in) {
+                    int size = in.readInt();
+                    WeatherBatch batch = new WeatherBatch(size);
+                    for (int i = 0; i < size; i++) {
+                        batch.add(in.readLong(), in.readLong(), in.readInt(), in.readString(),
+                                in.readDouble(), in.readDouble(), in.readDouble(),
+                                in.readDouble(), in.readDouble(), in.readDouble());
+                    }
+                    return batch;
+                }
+
+                @Override
+                public WeatherBatch[] newArray(int size) {
+                    return new WeatherBatch[size];
+                }
+            };
+}
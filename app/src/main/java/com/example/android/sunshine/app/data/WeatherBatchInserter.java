@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+/**
+ * Inserts rows of a {@link WeatherBatch} through a single compiled INSERT, binding the primitive
+ * columns directly.  The SQL is parsed once per inserter instead of once per row as
+ * SQLiteDatabase.insert(ContentValues) does.
+ *
+ * The UNIQUE (date, location_id) ON CONFLICT REPLACE constraint still applies.  The caller owns
+ * the transaction and must {@link #close()} the inserter when done.
+ */
+class WeatherBatchInserter {
+
+    private static final String SQL_INSERT = "INSERT INTO " + WeatherEntry.TABLE_NAME + " (" +
+            WeatherEntry.COLUMN_LOC_KEY + ", " +
+            WeatherEntry.COLUMN_DATE + ", " +
+            WeatherEntry.COLUMN_WEATHER_ID + ", " +
+            WeatherEntry.COLUMN_SHORT_DESC + ", " +
+            WeatherEntry.COLUMN_MIN_TEMP + ", " +
+            WeatherEntry.COLUMN_MAX_TEMP + ", " +
+            WeatherEntry.COLUMN_HUMIDITY + ", " +
+            WeatherEntry.COLUMN_PRESSURE + ", " +
+            WeatherEntry.COLUMN_WIND_SPEED + ", " +
+            WeatherEntry.COLUMN_DEGREES +
+            ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    private final SQLiteStatement mInsert;
+
+    WeatherBatchInserter(SQLiteDatabase db) {
+        mInsert = db.compileStatement(SQL_INSERT);
+    }
+
+    /**
+     * @return the row ID of the inserted row, or -1 if it could not be inserted.
+     */
+    long insert(WeatherBatch batch, int i) {
+        // Bind indices are 1-based and follow the column order in SQL_INSERT
+        mInsert.bindLong(1, batch.getLocationId(i));
+        mInsert.bindLong(2, batch.getDate(i));
+        mInsert.bindLong(3, batch.getWeatherId(i));
+        mInsert.bindString(4, batch.getShortDesc(i));
+        mInsert.bindDouble(5, batch.getMinTemp(i));
+        mInsert.bindDouble(6, batch.getMaxTemp(i));
+        mInsert.bindDouble(7, batch.getHumidity(i));
+        mInsert.bindDouble(8, batch.getPressure(i));
+        mInsert.bindDouble(9, batch.getWindSpeed(i));
+        mInsert.bindDouble(10, batch.getDegrees(i));
+        return mInsert.executeInsert();
+    }
+
+    /**
+     * @return the number of rows inserted.
+     */
+    int insertAll(WeatherBatch batch) {
+        int inserted = 0;
+        for (int i = 0; i < batch.size(); i++) {
+            if (insert(batch, i) != -1) {
+                inserted++;
+            }
+        }
+        return inserted;
+    }
+
+    void close() {
+        mInsert.close();
+    }
+}
@@ -43,6 +43,52 @@ public class WeatherContract {
     // At least, let's hope not.  Don't be that dev, reader.  Don't be that dev.
     public static final String PATH_WEATHER = "weather";
     public static final String PATH_LOCATION = "location";
+    public static final String PATH_HISTORY = "history";
+
+    // Provider call() that upserts weather rows and reports which ones actually changed.
+    // The rows go in the KEY_BATCH extra as a WeatherBatch, or in KEY_VALUES as a
+    // ContentValues[]; the result Bundle carries the counts and the changed rows as parallel
+    // location id / date arrays.
+    public static final String METHOD_UPSERT_WEATHER = "upsert_weather";
+    // Provider call() that inserts weather rows through a compiled statement.  Takes the same
+    // extras as METHOD_UPSERT_WEATHER and returns KEY_INSERTED.
+    public static final String METHOD_INSERT_WEATHER_BATCH = "insert_weather_batch";
+    public static final String KEY_BATCH = "batch";
+    public static final String KEY_VALUES = "values";
+    public static final String KEY_INSERTED = "inserted";
+    public static final String KEY_UPDATED = "updated";
+    public static final String KEY_UNCHANGED = "unchanged";
+    public static final String KEY_CHANGED_LOCATION_IDS = "changed_location_ids";
+    public static final String KEY_CHANGED_DATES = "changed_dates";
+    // Provider call() that commits a whole sync in one write transaction: it resolves or inserts
+    // the locations described by the parallel KEY_LOCATION_SETTINGS, KEY_CITY_NAMES,
+    // KEY_COORD_LATS and KEY_COORD_LONGS arrays, upserts the KEY_BATCH rows, whose location ids
+    // are positions in those arrays, and, if KEY_RETENTION_CUTOFF is given, deletes every
+    // weather row dated on or before it.  The result Bundle carries what METHOD_UPSERT_WEATHER
+    // returns, plus KEY_DELETED and the resolved ids as KEY_LOCATION_IDS.
+    public static final String METHOD_COMMIT_SYNC = "commit_sync";
+    public static final String KEY_LOCATION_SETTINGS = "location_settings";
+    public static final String KEY_CITY_NAMES = "city_names";
+    public static final String KEY_COORD_LATS = "coord_lats";
+    public static final String KEY_COORD_LONGS = "coord_longs";
+    public static final String KEY_RETENTION_CUTOFF = "retention_cutoff";
+    public static final String KEY_DELETED = "deleted";
+    public static final String KEY_LOCATION_IDS = "location_ids";
+    // Provider call() that moves weather rows dated before KEY_COMPACT_BEFORE into the history
+    // table as daily summaries, and drops history dated before KEY_HISTORY_CUTOFF; rows that
+    // are already older than the cutoff are dropped without being summarized.  It works
+    // through KEY_BATCH_SIZE rows per transaction and returns KEY_COMPACTED and KEY_DELETED.
+    public static final String METHOD_COMPACT_HISTORY = "compact_history";
+    public static final String KEY_COMPACT_BEFORE = "compact_before";
+    public static final String KEY_HISTORY_CUTOFF = "history_cutoff";
+    public static final String KEY_BATCH_SIZE = "batch_size";
+    public static final String KEY_COMPACTED = "compacted";
+    // Provider call() that reports the weather query cache's counters as KEY_CACHE_HITS,
+    // KEY_CACHE_MISSES and KEY_CACHE_INVALIDATIONS.
+    public static final String METHOD_QUERY_CACHE_STATS = "query_cache_stats";
+    public static final String KEY_CACHE_HITS = "cache_hits";
+    public static final String KEY_CACHE_MISSES = "cache_misses";
+    public static final String KEY_CACHE_INVALIDATIONS = "cache_invalidations";
 
     // To make it easy to query for the exact date, we normalize all dates that go into
     // the database to the start of the the Julian day at UTC.
@@ -126,10 +172,22 @@ public class WeatherContract {
         // Degrees are meteorological degrees (e.g, 0 is north, 180 is south).  Stored as floats.
         public static final String COLUMN_DEGREES = "degrees";
 
+        // Query parameter that switches bulkInsert to the change-detecting upsert, which skips
+        // identical rows and only notifies observers when something actually changed.
+        public static final String PARAM_UPSERT = "upsert";
+
         public static Uri buildWeatherUri(long id) {
             return ContentUris.withAppendedId(CONTENT_URI, id);
         }
 
+        public static Uri buildWeatherUpsertUri() {
+            return CONTENT_URI.buildUpon().appendQueryParameter(PARAM_UPSERT, "true").build();
+        }
+
+        public static boolean isUpsertUri(Uri uri) {
+            return uri.getBooleanQueryParameter(PARAM_UPSERT, false);
+        }
+
         /*
             Student: This is the buildWeatherLocation function you filled in.
          */
@@ -165,4 +223,25 @@ public class WeatherContract {
                 return 0;
         }
     }
+
+    /* Inner class that defines the table contents of the history table */
+    public static final class HistoryEntry implements BaseColumns {
+
+        public static final Uri CONTENT_URI =
+                BASE_CONTENT_URI.buildUpon().appendPath(PATH_HISTORY).build();
+
+        public static final String CONTENT_TYPE =
+                ContentResolver.CURSOR_DIR_BASE_TYPE + "/" + CONTENT_AUTHORITY + "/" + PATH_HISTORY;
+
+        // Past days, one summary row per location and day, kept for the history window
+        public static final String TABLE_NAME = "weather_history";
+
+        // The same meanings as the WeatherEntry columns of the same names.  The description
+        // can be derived from the weather id, and the rest isn't kept for past days.
+        public static final String COLUMN_LOC_KEY = WeatherEntry.COLUMN_LOC_KEY;
+        public static final String COLUMN_DATE = WeatherEntry.COLUMN_DATE;
+        public static final String COLUMN_WEATHER_ID = WeatherEntry.COLUMN_WEATHER_ID;
+        public static final String COLUMN_MIN_TEMP = WeatherEntry.COLUMN_MIN_TEMP;
+        public static final String COLUMN_MAX_TEMP = WeatherEntry.COLUMN_MAX_TEMP;
+    }
 }
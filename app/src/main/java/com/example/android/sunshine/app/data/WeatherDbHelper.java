@@ -19,6 +19,7 @@ import android.content.Context;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
 import com.example.android.sunshine.app.data.WeatherContract.LocationEntry;
 import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
 
@@ -27,13 +28,24 @@ import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
  */
 public class WeatherDbHelper extends SQLiteOpenHelper {
 
-    // If you change the database schema, you must increment the database version.
-    private static final int DATABASE_VERSION = 2;
+    // If you change the database schema, you must increment the database version and add a
+    // step for it to WeatherDbMigrations.
+    static final int DATABASE_VERSION = 4;
 
     static final String DATABASE_NAME = "weather.db";
 
+    // Covers the weather side of the location/date queries: the rows of one location, in date
+    // order, with the columns the widgets and the forecast list read.
+    static final String INDEX_WEATHER_LOCATION_DATE = "weather_location_date_idx";
+    // Covers the location side of the join, for the columns the forecast list reads.
+    static final String INDEX_LOCATION_SETTING = "location_setting_idx";
+
     public WeatherDbHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
+        // With write-ahead logging the framework keeps one primary connection, on which every
+        // write is serialized, and a pool of read connections, so widget, Muzei and loader
+        // reads run alongside a sync's write transaction instead of waiting for it.
+        setWriteAheadLoggingEnabled(true);
     }
 
     @Override
@@ -81,18 +93,63 @@ public class WeatherDbHelper extends SQLiteOpenHelper {
 
         sqLiteDatabase.execSQL(SQL_CREATE_LOCATION_TABLE);
         sqLiteDatabase.execSQL(SQL_CREATE_WEATHER_TABLE);
+        createIndexes(sqLiteDatabase);
+        createHistoryTable(sqLiteDatabase);
+    }
+
+    /**
+     * Adds the indexes for the location setting + date lookups.  The UNIQUE (date, location_id)
+     * constraint can't serve them since it leads with the date.
+     */
+    static void createIndexes(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_WEATHER_LOCATION_DATE +
+                " ON " + WeatherEntry.TABLE_NAME + " (" +
+                WeatherEntry.COLUMN_LOC_KEY + ", " +
+                WeatherEntry.COLUMN_DATE + ", " +
+                WeatherEntry.COLUMN_WEATHER_ID + ", " +
+                WeatherEntry.COLUMN_SHORT_DESC + ", " +
+                WeatherEntry.COLUMN_MAX_TEMP + ", " +
+                WeatherEntry.COLUMN_MIN_TEMP + ");");
+        sqLiteDatabase.execSQL("CREATE INDEX IF NOT EXISTS " + INDEX_LOCATION_SETTING +
+                " ON " + LocationEntry.TABLE_NAME + " (" +
+                LocationEntry.COLUMN_LOCATION_SETTING + ", " +
+                LocationEntry.COLUMN_COORD_LAT + ", " +
+                LocationEntry.COLUMN_COORD_LONG + ");");
+    }
+
+    /**
+     * Adds the table past days are compacted into.  The UNIQUE constraint leads with the date,
+     * which is what retention deletes by.
+     */
+    static void createHistoryTable(SQLiteDatabase sqLiteDatabase) {
+        sqLiteDatabase.execSQL("CREATE TABLE IF NOT EXISTS " + HistoryEntry.TABLE_NAME + " (" +
+                HistoryEntry._ID + " INTEGER PRIMARY KEY," +
+                HistoryEntry.COLUMN_LOC_KEY + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_DATE + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_WEATHER_ID + " INTEGER NOT NULL, " +
+                HistoryEntry.COLUMN_MIN_TEMP + " REAL NOT NULL, " +
+                HistoryEntry.COLUMN_MAX_TEMP + " REAL NOT NULL, " +
+                " FOREIGN KEY (" + HistoryEntry.COLUMN_LOC_KEY + ") REFERENCES " +
+                LocationEntry.TABLE_NAME + " (" + LocationEntry._ID + "), " +
+                " UNIQUE (" + HistoryEntry.COLUMN_DATE + ", " +
+                HistoryEntry.COLUMN_LOC_KEY + ") ON CONFLICT REPLACE);");
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase sqLiteDatabase, int oldVersion, int newVersion) {
-        // This database is only a cache for online data, so its upgrade policy is
-        // to simply to discard the data and start over
         // Note that this only fires if you change the version number for your database.
         // It does NOT depend on the version number for your application.
-        // If you want to update the schema without wiping data, commenting out the next 2 lines
-        // should be your top priority before modifying this method.
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
-        sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
-        onCreate(sqLiteDatabase);
+        if (oldVersion < WeatherDbMigrations.FIRST_MIGRATABLE_VERSION) {
+            // We don't know what came before version 2, and the data is only a cache for
+            // online data, so discard it and start over
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + LocationEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + WeatherEntry.TABLE_NAME);
+            sqLiteDatabase.execSQL("DROP TABLE IF EXISTS " + HistoryEntry.TABLE_NAME);
+            onCreate(sqLiteDatabase);
+            return;
+        }
+        // Keep the rows, so an app update doesn't force every device to refetch at once
+        WeatherDbMigrations.migrate(sqLiteDatabase, oldVersion, newVersion,
+                WeatherDbMigrations.STEPS);
     }
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The schema changes since version 2, one step per version, applied in order and in a single
+ * transaction so that an upgrade either fully happens or leaves the old schema alone.
+ *
+ * The rows are kept: the whole point is that an app update doesn't send every device back to
+ * the server at the same moment.  To change the schema, bump
+ * {@link WeatherDbHelper#DATABASE_VERSION}, add a step for the new version to {@link #STEPS},
+ * and make {@link WeatherDbHelper#onCreate} build the same schema from scratch.
+ */
+class WeatherDbMigrations {
+
+    /**
+     * The oldest version we can migrate from.  Anything older is dropped and recreated.
+     */
+    static final int FIRST_MIGRATABLE_VERSION = 2;
+
+    /**
+     * Brings the schema from {@code toVersion - 1} to {@code toVersion}.
+     */
+    abstract static class Step {
+        final int toVersion;
+
+        Step(int toVersion) {
+            this.toVersion = toVersion;
+        }
+
+        abstract void apply(SQLiteDatabase db);
+    }
+
+    static final List<Step> STEPS = Collections.unmodifiableList(Arrays.<Step>asList(
+            new Step(3) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    WeatherDbHelper.createIndexes(db);
+                }
+            },
+            new Step(4) {
+                @Override
+                void apply(SQLiteDatabase db) {
+                    WeatherDbHelper.createHistoryTable(db);
+                }
+            }
+    ));
+
+    private WeatherDbMigrations() {
+    }
+
+    /**
+     * @return the version the last of {@link #STEPS} migrates to.
+     */
+    static int getLatestVersion() {
+        return STEPS.isEmpty() ? FIRST_MIGRATABLE_VERSION : STEPS.get(STEPS.size() - 1).toVersion;
+    }
+
+    /**
+     * Applies every step after {@code oldVersion}, up to and including {@code newVersion}.
+     *
+     * @throws IllegalStateException if the steps don't cover every version in between.
+     */
+    static void migrate(SQLiteDatabase db, int oldVersion, int newVersion, List<Step> steps) {
+        if (oldVersion < FIRST_MIGRATABLE_VERSION) {
+            throw new IllegalArgumentException("Can't migrate from version " + oldVersion);
+        }
+        // SQLiteOpenHelper already runs onUpgrade in a transaction; this one nests inside it,
+        // and makes a direct call just as atomic
+        db.beginTransaction();
+        try {
+            int version = oldVersion;
+            for (Step step : steps) {
+                if (step.toVersion <= version) {
+                    continue;
+                }
+                if (step.toVersion > newVersion) {
+                    break;
+                }
+                if (step.toVersion != version + 1) {
+                    throw new IllegalStateException("No migration from version " + version
+                            + " to " + (version + 1));
+                }
+                step.apply(db);
+                version = step.toVersion;
+            }
+            if (version != newVersion) {
+                throw new IllegalStateException("No migration from version " + version
+                        + " to " + newVersion);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import com.example.android.sunshine.app.data.WeatherContract.HistoryEntry;
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.HashSet;
+
+/**
+ * Moves past days out of the weather table into the history table, one bounded batch at a time,
+ * and drops history that has aged out of the retention window.
+ *
+ * The weather table then only ever holds the current forecast, so the sync's upserts and the
+ * location/date queries stay as cheap as they are without history, and a batch never holds the
+ * write lock for long.  The caller owns the transaction of each batch.
+ */
+class WeatherHistoryCompactor {
+
+    static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * What the batches so far did.
+     */
+    static final class Result {
+        // Weather rows summarized into the history table
+        int compacted;
+        // Weather rows dropped without a summary, plus history rows that aged out
+        int deleted;
+        // The locations whose weather rows were touched
+        final HashSet<Long> locationIds = new HashSet<Long>();
+    }
+
+    private static final String[] WEATHER_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_LOC_KEY,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP
+    };
+
+    private static final String sBeforeSelection = WeatherEntry.COLUMN_DATE + " < ? ";
+
+    private static final String INSERT_HISTORY_SQL = "INSERT INTO " + HistoryEntry.TABLE_NAME +
+            " (" + HistoryEntry.COLUMN_LOC_KEY + ", " +
+            HistoryEntry.COLUMN_DATE + ", " +
+            HistoryEntry.COLUMN_WEATHER_ID + ", " +
+            HistoryEntry.COLUMN_MIN_TEMP + ", " +
+            HistoryEntry.COLUMN_MAX_TEMP + ") VALUES (?, ?, ?, ?, ?)";
+
+    private static final String DELETE_WEATHER_SQL = "DELETE FROM " + WeatherEntry.TABLE_NAME +
+            " WHERE " + WeatherEntry._ID + " = ?";
+
+    // Bounded by a LIMIT in a subquery, since SQLite isn't usually built to allow it on DELETE
+    private static final String DELETE_HISTORY_SQL = "DELETE FROM " + HistoryEntry.TABLE_NAME +
+            " WHERE " + HistoryEntry._ID + " IN (SELECT " + HistoryEntry._ID +
+            " FROM " + HistoryEntry.TABLE_NAME +
+            " WHERE " + HistoryEntry.COLUMN_DATE + " < ? LIMIT ?)";
+
+    private WeatherHistoryCompactor() {
+    }
+
+    /**
+     * Handles at most {@code batchSize} weather rows dated before {@code compactBefore}: those
+     * dated on or after {@code historyCutoff} are summarized into the history table, the rest
+     * just deleted.  Once no such weather rows are left, it drops at most {@code batchSize}
+     * history rows dated before {@code historyCutoff} instead.
+     *
+     * @return true if there is more to do.
+     */
+    static boolean compactBatch(SQLiteDatabase db, long compactBefore, long historyCutoff,
+                                int batchSize, Result result) {
+        Cursor cursor = db.query(WeatherEntry.TABLE_NAME, WEATHER_COLUMNS, sBeforeSelection,
+                new String[]{Long.toString(compactBefore)}, null, null, null,
+                Integer.toString(batchSize));
+        int rows = 0;
+        SQLiteStatement insert = db.compileStatement(INSERT_HISTORY_SQL);
+        SQLiteStatement delete = db.compileStatement(DELETE_WEATHER_SQL);
+        try {
+            while (cursor.moveToNext()) {
+                rows++;
+                long locationId = cursor.getLong(1);
+                long date = cursor.getLong(2);
+                if (date >= historyCutoff) {
+                    insert.bindLong(1, locationId);
+                    insert.bindLong(2, date);
+                    insert.bindLong(3, cursor.getLong(3));
+                    insert.bindDouble(4, cursor.getDouble(4));
+                    insert.bindDouble(5, cursor.getDouble(5));
+                    insert.executeInsert();
+                    result.compacted++;
+                } else {
+                    result.deleted++;
+                }
+                delete.bindLong(1, cursor.getLong(0));
+                delete.executeUpdateDelete();
+                result.locationIds.add(locationId);
+            }
+        } finally {
+            cursor.close();
+            insert.close();
+            delete.close();
+        }
+        if (rows == batchSize) {
+            return true;
+        }
+
+        SQLiteStatement deleteHistory = db.compileStatement(DELETE_HISTORY_SQL);
+        try {
+            deleteHistory.bindLong(1, historyCutoff);
+            deleteHistory.bindLong(2, batchSize - rows);
+            int deleted = deleteHistory.executeUpdateDelete();
+            result.deleted += deleted;
+            return deleted == batchSize - rows;
+        } finally {
+            deleteHistory.close();
+        }
+    }
+}
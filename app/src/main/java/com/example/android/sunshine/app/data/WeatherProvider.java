@@ -17,25 +17,44 @@ package com.example.android.sunshine.app.data;
 
 import android.annotation.TargetApi;
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.Parcelable;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 
 public class WeatherProvider extends ContentProvider {
 
     // The URI Matcher used by this content provider.
     private static final UriMatcher sUriMatcher = buildUriMatcher();
     private WeatherDbHelper mOpenHelper;
+    private final WeatherQueryCache mQueryCache =
+            new WeatherQueryCache(WeatherQueryCache.DEFAULT_MAX_ENTRIES);
+    // One provider per process, so this is the process-wide location setting to row id map
+    private final LocationIdCache mLocationIds = new LocationIdCache();
+    // The URIs changed so far by the applyBatch() running on this thread, if there is one
+    private final ThreadLocal<LinkedHashSet<Uri>> mPendingNotifications =
+            new ThreadLocal<LinkedHashSet<Uri>>();
 
     static final int WEATHER = 100;
     static final int WEATHER_WITH_LOCATION = 101;
     static final int WEATHER_WITH_LOCATION_AND_DATE = 102;
     static final int LOCATION = 300;
+    static final int HISTORY = 400;
 
-    private static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
+    static final SQLiteQueryBuilder sWeatherByLocationSettingQueryBuilder;
 
     static{
         sWeatherByLocationSettingQueryBuilder = new SQLiteQueryBuilder();
@@ -57,40 +76,76 @@ public class WeatherProvider extends ContentProvider {
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? ";
 
     //location.location_setting = ? AND date >= ?
-    private static final String sLocationSettingWithStartDateSelection =
+    static final String sLocationSettingWithStartDateSelection =
             WeatherContract.LocationEntry.TABLE_NAME+
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
 
     //location.location_setting = ? AND date = ?
-    private static final String sLocationSettingAndDaySelection =
+    static final String sLocationSettingAndDaySelection =
             WeatherContract.LocationEntry.TABLE_NAME +
                     "." + WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ? AND " +
                     WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
 
+    //weather.location_id = ?
+    static final String sLocationIdSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? ";
+
+    //weather.location_id = ? AND date >= ?
+    static final String sLocationIdWithStartDateSelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " >= ? ";
+
+    //weather.location_id = ? AND date = ?
+    static final String sLocationIdAndDaySelection =
+            WeatherContract.WeatherEntry.TABLE_NAME +
+                    "." + WeatherContract.WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherContract.WeatherEntry.COLUMN_DATE + " = ? ";
+
+    //date <= ? on the weather table alone
+    private static final String sDateOnOrBeforeSelection =
+            WeatherContract.WeatherEntry.COLUMN_DATE + " <= ? ";
+
     private Cursor getWeatherByLocationSetting(Uri uri, String[] projection, String sortOrder) {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long startDate = WeatherContract.WeatherEntry.getStartDateFromUri(uri);
 
+        WeatherQueryCache.Key key = new WeatherQueryCache.Key(locationSetting, startDate, false,
+                projection, sortOrder);
+        long generation = mQueryCache.getGeneration();
+        Cursor cursor = mQueryCache.get(key);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = mLocationIds.getId(db, locationSetting);
+        // An unknown setting has no weather; the join by setting still gives the right columns
+        String location = locationId == -1 ? locationSetting : Long.toString(locationId);
+
         String[] selectionArgs;
         String selection;
 
         if (startDate == 0) {
-            selection = sLocationSettingSelection;
-            selectionArgs = new String[]{locationSetting};
+            selection = locationId == -1 ? sLocationSettingSelection : sLocationIdSelection;
+            selectionArgs = new String[]{location};
         } else {
-            selectionArgs = new String[]{locationSetting, Long.toString(startDate)};
-            selection = sLocationSettingWithStartDateSelection;
+            selectionArgs = new String[]{location, Long.toString(startDate)};
+            selection = locationId == -1
+                    ? sLocationSettingWithStartDateSelection : sLocationIdWithStartDateSelection;
         }
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        return mQueryCache.put(key, generation, sWeatherByLocationSettingQueryBuilder.query(
+                db,
                 projection,
                 selection,
                 selectionArgs,
                 null,
                 null,
                 sortOrder
-        );
+        ));
     }
 
     private Cursor getWeatherByLocationSettingAndDate(
@@ -98,14 +153,26 @@ public class WeatherProvider extends ContentProvider {
         String locationSetting = WeatherContract.WeatherEntry.getLocationSettingFromUri(uri);
         long date = WeatherContract.WeatherEntry.getDateFromUri(uri);
 
-        return sWeatherByLocationSettingQueryBuilder.query(mOpenHelper.getReadableDatabase(),
+        WeatherQueryCache.Key key = new WeatherQueryCache.Key(locationSetting, date, true,
+                projection, sortOrder);
+        long generation = mQueryCache.getGeneration();
+        Cursor cursor = mQueryCache.get(key);
+        if (cursor != null) {
+            return cursor;
+        }
+
+        SQLiteDatabase db = mOpenHelper.getReadableDatabase();
+        long locationId = mLocationIds.getId(db, locationSetting);
+        return mQueryCache.put(key, generation, sWeatherByLocationSettingQueryBuilder.query(
+                db,
                 projection,
-                sLocationSettingAndDaySelection,
-                new String[]{locationSetting, Long.toString(date)},
+                locationId == -1 ? sLocationSettingAndDaySelection : sLocationIdAndDaySelection,
+                new String[]{locationId == -1 ? locationSetting : Long.toString(locationId),
+                        Long.toString(date)},
                 null,
                 null,
                 sortOrder
-        );
+        ));
     }
 
     /*
@@ -130,6 +197,7 @@ public class WeatherProvider extends ContentProvider {
         matcher.addURI(authority, WeatherContract.PATH_WEATHER + "/*/#", WEATHER_WITH_LOCATION_AND_DATE);
 
         matcher.addURI(authority, WeatherContract.PATH_LOCATION, LOCATION);
+        matcher.addURI(authority, WeatherContract.PATH_HISTORY, HISTORY);
         return matcher;
     }
 
@@ -164,6 +232,8 @@ public class WeatherProvider extends ContentProvider {
                 return WeatherContract.WeatherEntry.CONTENT_TYPE;
             case LOCATION:
                 return WeatherContract.LocationEntry.CONTENT_TYPE;
+            case HISTORY:
+                return WeatherContract.HistoryEntry.CONTENT_TYPE;
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
@@ -213,6 +283,19 @@ public class WeatherProvider extends ContentProvider {
                 );
                 break;
             }
+            // "history"
+            case HISTORY: {
+                retCursor = mOpenHelper.getReadableDatabase().query(
+                        WeatherContract.HistoryEntry.TABLE_NAME,
+                        projection,
+                        selection,
+                        selectionArgs,
+                        null,
+                        null,
+                        sortOrder
+                );
+                break;
+            }
 
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
@@ -233,7 +316,15 @@ public class WeatherProvider extends ContentProvider {
         switch (match) {
             case WEATHER: {
                 normalizeDate(values);
-                long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                long _id;
+                beginWrite();
+                try {
+                    _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, values);
+                    invalidateLocationIds(db, Collections.singleton(
+                            values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)));
+                } finally {
+                    endWrite();
+                }
                 if ( _id > 0 )
                     returnUri = WeatherContract.WeatherEntry.buildWeatherUri(_id);
                 else
@@ -251,7 +342,7 @@ public class WeatherProvider extends ContentProvider {
             default:
                 throw new UnsupportedOperationException("Unknown uri: " + uri);
         }
-        getContext().getContentResolver().notifyChange(uri, null);
+        notifyChange(uri);
         return returnUri;
     }
 
@@ -262,21 +353,32 @@ public class WeatherProvider extends ContentProvider {
         int rowsDeleted;
         // this makes delete all rows return the number of rows deleted
         if ( null == selection ) selection = "1";
-        switch (match) {
-            case WEATHER:
-                rowsDeleted = db.delete(
-                        WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            case LOCATION:
-                rowsDeleted = db.delete(
-                        WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        beginWrite();
+        try {
+            switch (match) {
+                case WEATHER:
+                    invalidateWeather(db, selection, selectionArgs);
+                    rowsDeleted = db.delete(
+                            WeatherContract.WeatherEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case LOCATION:
+                    invalidateLocations(db, selection, selectionArgs, null);
+                    rowsDeleted = db.delete(
+                            WeatherContract.LocationEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                case HISTORY:
+                    rowsDeleted = db.delete(
+                            WeatherContract.HistoryEntry.TABLE_NAME, selection, selectionArgs);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+        } finally {
+            endWrite();
         }
         // Because a null deletes all rows
         if (rowsDeleted != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsDeleted;
     }
@@ -296,50 +398,404 @@ public class WeatherProvider extends ContentProvider {
         final int match = sUriMatcher.match(uri);
         int rowsUpdated;
 
-        switch (match) {
-            case WEATHER:
-                normalizeDate(values);
-                rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            case LOCATION:
-                rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values, selection,
-                        selectionArgs);
-                break;
-            default:
-                throw new UnsupportedOperationException("Unknown uri: " + uri);
+        beginWrite();
+        try {
+            switch (match) {
+                case WEATHER:
+                    normalizeDate(values);
+                    // Rows can move to another location, so drop both where they were and
+                    // where they're going
+                    invalidateWeather(db, selection, selectionArgs);
+                    rowsUpdated = db.update(WeatherContract.WeatherEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    if (values.containsKey(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)) {
+                        invalidateLocationIds(db, Collections.singleton(
+                                values.getAsLong(WeatherContract.WeatherEntry.COLUMN_LOC_KEY)));
+                    }
+                    break;
+                case LOCATION:
+                    invalidateLocations(db, selection, selectionArgs, values.getAsString(
+                            WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING));
+                    rowsUpdated = db.update(WeatherContract.LocationEntry.TABLE_NAME, values,
+                            selection, selectionArgs);
+                    break;
+                default:
+                    throw new UnsupportedOperationException("Unknown uri: " + uri);
+            }
+        } finally {
+            endWrite();
         }
         if (rowsUpdated != 0) {
-            getContext().getContentResolver().notifyChange(uri, null);
+            notifyChange(uri);
         }
         return rowsUpdated;
     }
 
     @Override
     public int bulkInsert(Uri uri, ContentValues[] values) {
-        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
         final int match = sUriMatcher.match(uri);
         switch (match) {
             case WEATHER:
-                db.beginTransaction();
-                int returnCount = 0;
+                if (WeatherContract.WeatherEntry.isUpsertUri(uri)) {
+                    return upsertWeather(WeatherBatch.fromContentValues(values)).changedCount();
+                }
+                // Through the compiled INSERT rather than a ContentValues insert per row
+                return insertWeather(WeatherBatch.fromContentValues(values));
+            default:
+                return super.bulkInsert(uri, values);
+        }
+    }
+
+    private WeatherUpserter.Result upsertWeather(WeatherBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherUpserter.Result result;
+        batch.normalizeDates();
+        beginWrite();
+        try {
+            db.beginTransactionNonExclusive();
+            try {
+                result = WeatherUpserter.upsert(db, batch);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            // Unchanged days leave their locations' cached queries alone
+            invalidateLocationIds(db, new HashSet<Long>(result.changedLocationIds));
+        } finally {
+            endWrite();
+        }
+        // Only wake up loaders, widgets and Muzei when the data really moved
+        if (result.changedCount() > 0) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+        return result;
+    }
+
+    /**
+     * See {@link WeatherContract#METHOD_COMPACT_HISTORY}.  Every batch is its own short
+     * transaction, so syncs and other writers get in between them, and observers hear about it
+     * once at the end.
+     */
+    private Bundle compactHistory(Bundle extras) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        long compactBefore = extras.getLong(WeatherContract.KEY_COMPACT_BEFORE);
+        long historyCutoff = Math.min(compactBefore,
+                extras.getLong(WeatherContract.KEY_HISTORY_CUTOFF, compactBefore));
+        int batchSize = extras.getInt(WeatherContract.KEY_BATCH_SIZE,
+                WeatherHistoryCompactor.DEFAULT_BATCH_SIZE);
+
+        WeatherHistoryCompactor.Result result = new WeatherHistoryCompactor.Result();
+        boolean more = true;
+        while (more) {
+            beginWrite();
+            try {
+                db.beginTransactionNonExclusive();
                 try {
-                    for (ContentValues value : values) {
-                        normalizeDate(value);
-                        long _id = db.insert(WeatherContract.WeatherEntry.TABLE_NAME, null, value);
-                        if (_id != -1) {
-                            returnCount++;
-                        }
-                    }
+                    more = WeatherHistoryCompactor.compactBatch(db, compactBefore,
+                            historyCutoff, batchSize, result);
                     db.setTransactionSuccessful();
                 } finally {
                     db.endTransaction();
                 }
-                getContext().getContentResolver().notifyChange(uri, null);
-                return returnCount;
-            default:
-                return super.bulkInsert(uri, values);
+                // Only queries without a start date can see past days
+                invalidateLocationIds(db, result.locationIds);
+            } finally {
+                endWrite();
+            }
+        }
+
+        if (!result.locationIds.isEmpty()) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+        if (result.compacted > 0 || result.deleted > 0) {
+            notifyChange(WeatherContract.HistoryEntry.CONTENT_URI);
+        }
+        Bundle bundle = new Bundle();
+        bundle.putInt(WeatherContract.KEY_COMPACTED, result.compacted);
+        bundle.putInt(WeatherContract.KEY_DELETED, result.deleted);
+        return bundle;
+    }
+
+    /**
+     * Tells observers that {@code uri} changed, or, inside {@link #applyBatch}, remembers to
+     * tell them once the whole batch has committed.
+     */
+    private void notifyChange(Uri uri) {
+        LinkedHashSet<Uri> pending = mPendingNotifications.get();
+        if (pending != null) {
+            pending.add(uri);
+        } else {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+    }
+
+    /**
+     * Applies every operation in one transaction, so a batch either fully happens or not at
+     * all, and notifies each changed URI once after it commits rather than once per operation.
+     */
+    @Override
+    public ContentProviderResult[] applyBatch(ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        if (mPendingNotifications.get() != null) {
+            // Already inside a batch on this thread; the outer one commits and notifies
+            return super.applyBatch(operations);
+        }
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        LinkedHashSet<Uri> pending = new LinkedHashSet<Uri>();
+        ContentProviderResult[] results;
+        mPendingNotifications.set(pending);
+        // Keeps the caches from storing anything read before the batch commits
+        beginWrite();
+        try {
+            db.beginTransactionNonExclusive();
+            try {
+                results = super.applyBatch(operations);
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+        } finally {
+            endWrite();
+            mPendingNotifications.remove();
+        }
+        for (Uri uri : pending) {
+            getContext().getContentResolver().notifyChange(uri, null);
+        }
+        return results;
+    }
+
+    /**
+     * See {@link WeatherContract#METHOD_COMMIT_SYNC}.
+     */
+    private Bundle commitSync(Bundle extras) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        WeatherBatch batch = getBatch(extras);
+        String[] locationSettings = extras.getStringArray(WeatherContract.KEY_LOCATION_SETTINGS);
+        String[] cityNames = extras.getStringArray(WeatherContract.KEY_CITY_NAMES);
+        double[] lats = extras.getDoubleArray(WeatherContract.KEY_COORD_LATS);
+        double[] longs = extras.getDoubleArray(WeatherContract.KEY_COORD_LONGS);
+        boolean prune = extras.containsKey(WeatherContract.KEY_RETENTION_CUTOFF);
+        String[] pruneArgs =
+                {Long.toString(extras.getLong(WeatherContract.KEY_RETENTION_CUTOFF))};
+        batch.normalizeDates();
+
+        long[] locationIds = new long[locationSettings.length];
+        int locationsInserted = 0;
+        int deleted = 0;
+        WeatherUpserter.Result result;
+        beginWrite();
+        try {
+            db.beginTransactionNonExclusive();
+            try {
+                for (int i = 0; i < locationSettings.length; i++) {
+                    locationIds[i] = mLocationIds.getId(db, locationSettings[i]);
+                    if (locationIds[i] == -1) {
+                        locationIds[i] = insertLocation(db, locationSettings[i], cityNames[i],
+                                lats[i], longs[i]);
+                        locationsInserted++;
+                    }
+                }
+                for (int i = 0; i < batch.size(); i++) {
+                    batch.setLocationId(i, locationIds[(int) batch.getLocationId(i)]);
+                }
+                result = WeatherUpserter.upsert(db, batch);
+                if (prune) {
+                    invalidateWeather(db, sDateOnOrBeforeSelection, pruneArgs);
+                    deleted = db.delete(WeatherContract.WeatherEntry.TABLE_NAME,
+                            sDateOnOrBeforeSelection, pruneArgs);
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+            invalidateLocationIds(db, new HashSet<Long>(result.changedLocationIds));
+        } finally {
+            endWrite();
+        }
+
+        if (locationsInserted > 0) {
+            notifyChange(WeatherContract.LocationEntry.CONTENT_URI);
+        }
+        if (result.changedCount() > 0 || deleted > 0) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+        Bundle bundle = result.toBundle();
+        bundle.putInt(WeatherContract.KEY_DELETED, deleted);
+        bundle.putLongArray(WeatherContract.KEY_LOCATION_IDS, locationIds);
+        return bundle;
+    }
+
+    private static long insertLocation(SQLiteDatabase db, String locationSetting,
+                                       String cityName, double lat, double lon) {
+        ContentValues values = new ContentValues();
+        values.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
+        values.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
+        values.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
+        long _id = db.insert(WeatherContract.LocationEntry.TABLE_NAME, null, values);
+        if (_id == -1) {
+            throw new android.database.SQLException(
+                    "Failed to insert location " + locationSetting);
+        }
+        return _id;
+    }
+
+    private int insertWeather(WeatherBatch batch) {
+        final SQLiteDatabase db = mOpenHelper.getWritableDatabase();
+        int returnCount;
+        batch.normalizeDates();
+        beginWrite();
+        db.beginTransactionNonExclusive();
+        WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+        try {
+            returnCount = inserter.insertAll(batch);
+            db.setTransactionSuccessful();
+        } finally {
+            inserter.close();
+            db.endTransaction();
+            HashSet<Long> locationIds = new HashSet<Long>();
+            for (int i = 0; i < batch.size(); i++) {
+                locationIds.add(batch.getLocationId(i));
+            }
+            invalidateLocationIds(db, locationIds);
+            endWrite();
+        }
+        if (returnCount > 0) {
+            notifyChange(WeatherContract.WeatherEntry.CONTENT_URI);
+        }
+        return returnCount;
+    }
+
+    /**
+     * Marks the start of a write for both caches.  Must be paired with {@link #endWrite()}.
+     */
+    private void beginWrite() {
+        mQueryCache.beginWrite();
+        mLocationIds.beginWrite();
+    }
+
+    private void endWrite() {
+        mLocationIds.endWrite();
+        mQueryCache.endWrite();
+    }
+
+    /**
+     * Drops the cached queries of the locations with these row ids.  Must be called between
+     * {@link #beginWrite()} and {@link #endWrite()}.
+     */
+    private void invalidateLocationIds(SQLiteDatabase db, Collection<Long> locationIds) {
+        if (mQueryCache.isEmpty() || locationIds.isEmpty()) {
+            return;
+        }
+        StringBuilder selection = new StringBuilder(WeatherContract.LocationEntry._ID)
+                .append(" IN (");
+        String[] selectionArgs = new String[locationIds.size()];
+        int i = 0;
+        for (Long locationId : locationIds) {
+            selection.append(i == 0 ? "?" : ",?");
+            selectionArgs[i++] = String.valueOf(locationId);
+        }
+        selection.append(")");
+        mQueryCache.invalidate(getLocationSettings(db, selection.toString(), selectionArgs));
+    }
+
+    /**
+     * Drops the cached queries of every location that has a weather row matching the selection.
+     */
+    private void invalidateWeather(SQLiteDatabase db, String selection, String[] selectionArgs) {
+        if (mQueryCache.isEmpty()) {
+            return;
+        }
+        Cursor cursor = db.query(true, WeatherContract.WeatherEntry.TABLE_NAME,
+                new String[]{WeatherContract.WeatherEntry.COLUMN_LOC_KEY},
+                selection, selectionArgs, null, null, null, null);
+        HashSet<Long> locationIds = new HashSet<Long>();
+        try {
+            while (cursor.moveToNext()) {
+                locationIds.add(cursor.getLong(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        invalidateLocationIds(db, locationIds);
+    }
+
+    /**
+     * Drops the cached queries and the cached row ids of every location matching the selection,
+     * and of {@code newLocationSetting} if it isn't null.  For writes to the location table.
+     */
+    private void invalidateLocations(SQLiteDatabase db, String selection,
+                                     String[] selectionArgs, String newLocationSetting) {
+        if (mQueryCache.isEmpty() && mLocationIds.size() == 0) {
+            return;
+        }
+        HashSet<String> locationSettings = getLocationSettings(db, selection, selectionArgs);
+        if (newLocationSetting != null) {
+            locationSettings.add(newLocationSetting);
+        }
+        mQueryCache.invalidate(locationSettings);
+        mLocationIds.invalidate(locationSettings);
+    }
+
+    private static HashSet<String> getLocationSettings(SQLiteDatabase db, String selection,
+                                                       String[] selectionArgs) {
+        HashSet<String> locationSettings = new HashSet<String>();
+        Cursor cursor = db.query(WeatherContract.LocationEntry.TABLE_NAME,
+                new String[]{WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING},
+                selection, selectionArgs, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                locationSettings.add(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        return locationSettings;
+    }
+
+    private Bundle getQueryCacheStats() {
+        Bundle stats = new Bundle();
+        stats.putLong(WeatherContract.KEY_CACHE_HITS, mQueryCache.getHitCount());
+        stats.putLong(WeatherContract.KEY_CACHE_MISSES, mQueryCache.getMissCount());
+        stats.putLong(WeatherContract.KEY_CACHE_INVALIDATIONS,
+                mQueryCache.getInvalidationCount());
+        return stats;
+    }
+
+    /**
+     * The weather rows of a call() are either a {@link WeatherBatch} under KEY_BATCH, or a
+     * ContentValues[] under KEY_VALUES.
+     */
+    private static WeatherBatch getBatch(Bundle extras) {
+        extras.setClassLoader(WeatherBatch.class.getClassLoader());
+        WeatherBatch batch = extras.getParcelable(WeatherContract.KEY_BATCH);
+        if (batch != null) {
+            return batch;
+        }
+        Parcelable[] parcelables = extras.getParcelableArray(WeatherContract.KEY_VALUES);
+        ContentValues[] values = new ContentValues[parcelables.length];
+        for (int i = 0; i < parcelables.length; i++) {
+            values[i] = (ContentValues) parcelables[i];
+        }
+        return WeatherBatch.fromContentValues(values);
+    }
+
+    @Override
+    public Bundle call(String method, String arg, Bundle extras) {
+        if (WeatherContract.METHOD_UPSERT_WEATHER.equals(method)) {
+            return upsertWeather(getBatch(extras)).toBundle();
+        } else if (WeatherContract.METHOD_INSERT_WEATHER_BATCH.equals(method)) {
+            Bundle result = new Bundle();
+            result.putInt(WeatherContract.KEY_INSERTED, insertWeather(getBatch(extras)));
+            return result;
+        } else if (WeatherContract.METHOD_COMMIT_SYNC.equals(method)) {
+            return commitSync(extras);
+        } else if (WeatherContract.METHOD_COMPACT_HISTORY.equals(method)) {
+            return compactHistory(extras);
+        } else if (WeatherContract.METHOD_QUERY_CACHE_STATS.equals(method)) {
+            return getQueryCacheStats();
         }
+        return super.call(method, arg, extras);
     }
 
     // You do not need to call this method. This is a method specifically to assist the testing
@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.util.LruCache;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A read-through cache of the weather-by-location queries, which only ever return a couple of
+ * weeks of rows and only change when we sync.
+ *
+ * Results are copied out of the database cursor once and every hit is served as a fresh
+ * MatrixCursor over the copy.  Writers bracket their changes with {@link #beginWrite()} and
+ * {@link #endWrite()} and invalidate the location settings they touched in between; a result
+ * read while any write was in flight is returned but not kept, so the cache never holds rows
+ * older than the last committed write.
+ */
+class WeatherQueryCache {
+
+    static final int DEFAULT_MAX_ENTRIES = 32;
+
+    /**
+     * What a cached query was asked for.
+     */
+    static final class Key {
+        final String locationSetting;
+        // The start date, or the exact day when exactDay is set; 0 means all dates
+        final long date;
+        final boolean exactDay;
+        final String[] projection;
+        final String sortOrder;
+
+        Key(String locationSetting, long date, boolean exactDay, String[] projection,
+            String sortOrder) {
+            this.locationSetting = locationSetting;
+            this.date = date;
+            this.exactDay = exactDay;
+            this.projection = projection == null ? null : projection.clone();
+            this.sortOrder = sortOrder;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return date == other.date
+                    && exactDay == other.exactDay
+                    && locationSetting.equals(other.locationSetting)
+                    && Arrays.equals(projection, other.projection)
+                    && (sortOrder == null ? other.sortOrder == null
+                            : sortOrder.equals(other.sortOrder));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = locationSetting.hashCode();
+            result = 31 * result + (int) (date ^ (date >>> 32));
+            result = 31 * result + (exactDay ? 1 : 0);
+            result = 31 * result + Arrays.hashCode(projection);
+            result = 31 * result + (sortOrder == null ? 0 : sortOrder.hashCode());
+            return result;
+        }
+    }
+
+    /**
+     * The rows of a query, with each value boxed as the type SQLite returned it as.
+     */
+    private static final class Entry {
+        final String[] columns;
+        final Object[][] rows;
+
+        Entry(String[] columns, Object[][] rows) {
+            this.columns = columns;
+            this.rows = rows;
+        }
+
+        Cursor newCursor() {
+            MatrixCursor cursor = new MatrixCursor(columns, rows.length);
+            for (Object[] row : rows) {
+                cursor.addRow(row);
+            }
+            return cursor;
+        }
+    }
+
+    private final LruCache<Key, Entry> mEntries;
+
+    // Guarded by this
+    private int mWritesInProgress;
+    private long mGeneration;
+    private long mHits;
+    private long mMisses;
+    private long mInvalidations;
+
+    WeatherQueryCache(int maxEntries) {
+        mEntries = new LruCache<Key, Entry>(maxEntries);
+    }
+
+    /**
+     * @return the generation to pass to {@link #put} for a query about to be run.
+     */
+    synchronized long getGeneration() {
+        return mGeneration;
+    }
+
+    /**
+     * @return a new cursor over the cached result, or null if the query has to be run.
+     */
+    Cursor get(Key key) {
+        Entry entry = mEntries.get(key);
+        synchronized (this) {
+            if (entry == null) {
+                mMisses++;
+                return null;
+            }
+            mHits++;
+        }
+        return entry.newCursor();
+    }
+
+    /**
+     * Copies a query result, closes it, and keeps the copy unless a write started since
+     * {@code generation} was read.
+     *
+     * @return a cursor over the copied rows, positioned before the first one.
+     */
+    Cursor put(Key key, long generation, Cursor cursor) {
+        Entry entry;
+        try {
+            entry = copy(cursor);
+        } finally {
+            cursor.close();
+        }
+        synchronized (this) {
+            if (mWritesInProgress == 0 && mGeneration == generation) {
+                mEntries.put(key, entry);
+            }
+        }
+        return entry.newCursor();
+    }
+
+    private static Entry copy(Cursor cursor) {
+        String[] columns = cursor.getColumnNames();
+        Object[][] rows = new Object[cursor.getCount()][];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            Object[] row = new Object[columns.length];
+            for (int column = 0; column < columns.length; column++) {
+                switch (cursor.getType(column)) {
+                    case Cursor.FIELD_TYPE_INTEGER:
+                        row[column] = cursor.getLong(column);
+                        break;
+                    case Cursor.FIELD_TYPE_FLOAT:
+                        row[column] = cursor.getDouble(column);
+                        break;
+                    case Cursor.FIELD_TYPE_STRING:
+                        row[column] = cursor.getString(column);
+                        break;
+                    case Cursor.FIELD_TYPE_BLOB:
+                        row[column] = cursor.getBlob(column);
+                        break;
+                    default:
+                        row[column] = null;
+                }
+            }
+            rows[i] = row;
+        }
+        return new Entry(columns, rows);
+    }
+
+    /**
+     * Marks the start of a write.  Must be paired with {@link #endWrite()}.
+     */
+    synchronized void beginWrite() {
+        mWritesInProgress++;
+    }
+
+    synchronized void endWrite() {
+        mWritesInProgress--;
+        mGeneration++;
+    }
+
+    boolean isEmpty() {
+        return mEntries.size() == 0;
+    }
+
+    /**
+     * Drops every cached result for the given location settings.
+     */
+    void invalidate(Collection<String> locationSettings) {
+        if (locationSettings.isEmpty()) {
+            return;
+        }
+        int removed = 0;
+        for (Map.Entry<Key, Entry> entry : mEntries.snapshot().entrySet()) {
+            if (locationSettings.contains(entry.getKey().locationSetting)
+                    && mEntries.remove(entry.getKey()) != null) {
+                removed++;
+            }
+        }
+        synchronized (this) {
+            mInvalidations += removed;
+        }
+    }
+
+    void invalidateAll() {
+        int removed = mEntries.size();
+        mEntries.evictAll();
+        synchronized (this) {
+            mInvalidations += removed;
+        }
+    }
+
+    synchronized long getHitCount() {
+        return mHits;
+    }
+
+    synchronized long getMissCount() {
+        return mMisses;
+    }
+
+    /**
+     * @return how many cached results writes have dropped.
+     */
+    synchronized long getInvalidationCount() {
+        return mInvalidations;
+    }
+
+    synchronized float getHitRate() {
+        long lookups = mHits + mMisses;
+        return lookups == 0 ? 0f : (float) mHits / lookups;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.data;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.util.LongSparseArray;
+
+import com.example.android.sunshine.app.data.WeatherContract.WeatherEntry;
+
+import java.util.ArrayList;
+
+/**
+ * Writes weather rows by comparing them with what is already stored.  Rows that are identical are
+ * skipped, rows that differ only get their changed columns updated, and rows that don't exist yet
+ * are inserted.  Unlike a plain insert, which the ON CONFLICT REPLACE constraint turns into a
+ * delete plus insert, this leaves unchanged rows (and their _ids) untouched.
+ *
+ * The caller owns the transaction.
+ */
+class WeatherUpserter {
+
+    /**
+     * What an upsert did.  The changed rows are reported as parallel location id / date arrays.
+     */
+    static final class Result {
+        int inserted;
+        int updated;
+        int unchanged;
+        final ArrayList<Long> changedLocationIds = new ArrayList<Long>();
+        final ArrayList<Long> changedDates = new ArrayList<Long>();
+
+        int changedCount() {
+            return inserted + updated;
+        }
+
+        void addChanged(long locationId, long date) {
+            changedLocationIds.add(locationId);
+            changedDates.add(date);
+        }
+
+        Bundle toBundle() {
+            Bundle bundle = new Bundle();
+            bundle.putInt(WeatherContract.KEY_INSERTED, inserted);
+            bundle.putInt(WeatherContract.KEY_UPDATED, updated);
+            bundle.putInt(WeatherContract.KEY_UNCHANGED, unchanged);
+            bundle.putLongArray(WeatherContract.KEY_CHANGED_LOCATION_IDS, toArray(changedLocationIds));
+            bundle.putLongArray(WeatherContract.KEY_CHANGED_DATES, toArray(changedDates));
+            return bundle;
+        }
+
+        private static long[] toArray(ArrayList<Long> list) {
+            long[] array = new long[list.size()];
+            for (int i = 0; i < array.length; i++) {
+                array[i] = list.get(i);
+            }
+            return array;
+        }
+    }
+
+    private static final String sLocationAndDateRangeSelection =
+            WeatherEntry.COLUMN_LOC_KEY + " = ? AND " +
+                    WeatherEntry.COLUMN_DATE + " >= ? AND " +
+                    WeatherEntry.COLUMN_DATE + " <= ? ";
+
+    private static final String sIdSelection = WeatherEntry._ID + " = ? ";
+
+    private static final String[] STORED_COLUMNS = {
+            WeatherEntry._ID,
+            WeatherEntry.COLUMN_DATE,
+            WeatherEntry.COLUMN_WEATHER_ID,
+            WeatherEntry.COLUMN_SHORT_DESC,
+            WeatherEntry.COLUMN_MIN_TEMP,
+            WeatherEntry.COLUMN_MAX_TEMP,
+            WeatherEntry.COLUMN_HUMIDITY,
+            WeatherEntry.COLUMN_PRESSURE,
+            WeatherEntry.COLUMN_WIND_SPEED,
+            WeatherEntry.COLUMN_DEGREES
+    };
+
+    // these indices must match the projection
+    private static final int INDEX_ID = 0;
+    private static final int INDEX_DATE = 1;
+    private static final int INDEX_WEATHER_ID = 2;
+    private static final int INDEX_SHORT_DESC = 3;
+    private static final int INDEX_MIN_TEMP = 4;
+    private static final int INDEX_MAX_TEMP = 5;
+    private static final int INDEX_HUMIDITY = 6;
+    private static final int INDEX_PRESSURE = 7;
+    private static final int INDEX_WIND_SPEED = 8;
+    private static final int INDEX_DEGREES = 9;
+
+    private WeatherUpserter() {
+    }
+
+    /**
+     * @param batch weather rows whose dates have already been normalized.
+     */
+    static Result upsert(SQLiteDatabase db, WeatherBatch batch) {
+        Result result = new Result();
+
+        // location id -> positions of its rows in the batch, in a single pass
+        LongSparseArray<ArrayList<Integer>> byLocation =
+                new LongSparseArray<ArrayList<Integer>>();
+        for (int i = 0; i < batch.size(); i++) {
+            long locationId = batch.getLocationId(i);
+            ArrayList<Integer> rows = byLocation.get(locationId);
+            if (rows == null) {
+                rows = new ArrayList<Integer>();
+                byLocation.put(locationId, rows);
+            }
+            rows.add(i);
+        }
+
+        WeatherBatchInserter inserter = new WeatherBatchInserter(db);
+        try {
+            // Each location costs a single query for the rows its new days could collide with
+            for (int i = 0; i < byLocation.size(); i++) {
+                upsertLocation(db, inserter, batch, byLocation.keyAt(i), byLocation.valueAt(i),
+                        result);
+            }
+        } finally {
+            inserter.close();
+        }
+        return result;
+    }
+
+    private static void upsertLocation(SQLiteDatabase db, WeatherBatchInserter inserter,
+                                       WeatherBatch batch, long locationId,
+                                       ArrayList<Integer> rows, Result result) {
+        long minDate = Long.MAX_VALUE;
+        long maxDate = Long.MIN_VALUE;
+        for (int i : rows) {
+            minDate = Math.min(minDate, batch.getDate(i));
+            maxDate = Math.max(maxDate, batch.getDate(i));
+        }
+
+        Cursor stored = db.query(WeatherEntry.TABLE_NAME,
+                STORED_COLUMNS,
+                sLocationAndDateRangeSelection,
+                new String[]{Long.toString(locationId), Long.toString(minDate),
+                        Long.toString(maxDate)},
+                null,
+                null,
+                null);
+        try {
+            // date -> cursor position, for every stored day the incoming rows could collide with
+            LongSparseArray<Integer> storedByDate = new LongSparseArray<Integer>(stored.getCount());
+            while (stored.moveToNext()) {
+                storedByDate.put(stored.getLong(INDEX_DATE), stored.getPosition());
+            }
+
+            for (int i : rows) {
+                long date = batch.getDate(i);
+                Integer position = storedByDate.get(date);
+                if (position == null) {
+                    if (inserter.insert(batch, i) != -1) {
+                        result.inserted++;
+                        result.addChanged(locationId, date);
+                    }
+                    continue;
+                }
+
+                stored.moveToPosition(position);
+                ContentValues changed = changedColumns(stored, batch, i);
+                if (changed.size() == 0) {
+                    result.unchanged++;
+                } else {
+                    db.update(WeatherEntry.TABLE_NAME, changed, sIdSelection,
+                            new String[]{Long.toString(stored.getLong(INDEX_ID))});
+                    result.updated++;
+                    result.addChanged(locationId, date);
+                }
+            }
+        } finally {
+            stored.close();
+        }
+    }
+
+    /**
+     * @return the columns of row {@code i} of the batch that differ from the current row of
+     * {@code stored}.  Only those get written back.
+     */
+    static ContentValues changedColumns(Cursor stored, WeatherBatch batch, int i) {
+        ContentValues changed = new ContentValues();
+        if (stored.getInt(INDEX_WEATHER_ID) != batch.getWeatherId(i)) {
+            changed.put(WeatherEntry.COLUMN_WEATHER_ID, batch.getWeatherId(i));
+        }
+        if (!stored.getString(INDEX_SHORT_DESC).equals(batch.getShortDesc(i))) {
+            changed.put(WeatherEntry.COLUMN_SHORT_DESC, batch.getShortDesc(i));
+        }
+        putIfChanged(changed, WeatherEntry.COLUMN_MIN_TEMP,
+                stored.getDouble(INDEX_MIN_TEMP), batch.getMinTemp(i));
+        putIfChanged(changed, WeatherEntry.COLUMN_MAX_TEMP,
+                stored.getDouble(INDEX_MAX_TEMP), batch.getMaxTemp(i));
+        putIfChanged(changed, WeatherEntry.COLUMN_HUMIDITY,
+                stored.getDouble(INDEX_HUMIDITY), batch.getHumidity(i));
+        putIfChanged(changed, WeatherEntry.COLUMN_PRESSURE,
+                stored.getDouble(INDEX_PRESSURE), batch.getPressure(i));
+        putIfChanged(changed, WeatherEntry.COLUMN_WIND_SPEED,
+                stored.getDouble(INDEX_WIND_SPEED), batch.getWindSpeed(i));
+        putIfChanged(changed, WeatherEntry.COLUMN_DEGREES,
+                stored.getDouble(INDEX_DEGREES), batch.getDegrees(i));
+        return changed;
+    }
+
+    private static void putIfChanged(ContentValues changed, String column,
+                                     double stored, double incoming) {
+        if (Double.compare(stored, incoming) != 0) {
+            changed.put(column, incoming);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import org.json.JSONException;
+
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Fetches and parses the forecasts of several locations concurrently, on a bounded number of
+ * threads.  A location that fails only marks its own {@link Result}; the others carry on.
+ */
+public class ForecastFetcher {
+    private static final String LOG_TAG = ForecastFetcher.class.getSimpleName();
+
+    // OWM is a shared, rate limited API; a handful of connections is plenty
+    public static final int DEFAULT_MAX_CONCURRENT_FETCHES = 4;
+
+    /**
+     * The outcome for one location.  {@link #forecast} is only set when {@link #status} is
+     * {@link SunshineSyncAdapter#LOCATION_STATUS_OK} and the forecast is not {@link #notModified}.
+     */
+    public static final class Result {
+        public final String locationSetting;
+        public ForecastParser.Forecast forecast;
+        // The stored forecast is still current: nothing was parsed and there is nothing to write
+        public boolean notModified;
+        // Validators for the forecast, to put in the ForecastHttpCache once it has been stored.
+        // Null if there is nothing to cache.
+        public ForecastHttpCache.Entry pendingCacheEntry;
+        @SunshineSyncAdapter.LocationStatus
+        public int status = SunshineSyncAdapter.LOCATION_STATUS_UNKNOWN;
+
+        Result(String locationSetting) {
+            this.locationSetting = locationSetting;
+        }
+    }
+
+    private final ForecastSource mSource;
+    private final int mMaxConcurrentFetches;
+
+    public ForecastFetcher(ForecastSource source, int maxConcurrentFetches) {
+        mSource = source;
+        mMaxConcurrentFetches = Math.max(1, maxConcurrentFetches);
+    }
+
+    /**
+     * Blocks until every location has been fetched, or the calling thread is interrupted, in
+     * which case the outstanding fetches are cancelled and keep LOCATION_STATUS_UNKNOWN.
+     *
+     * @param storedLocations the locations that have a current forecast stored.  Only those can
+     *                        come back {@link Result#notModified}; the others are always
+     *                        downloaded in full.
+     * @return one result per location, in the order given.
+     */
+    public List<Result> fetchAll(List<String> locationSettings,
+                                 final Collection<String> storedLocations) {
+        List<Result> results = new ArrayList<Result>(locationSettings.size());
+        if (locationSettings.isEmpty()) {
+            return results;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(mMaxConcurrentFetches, locationSettings.size()));
+        List<Future<ForecastParser.Forecast>> futures =
+                new ArrayList<Future<ForecastParser.Forecast>>(locationSettings.size());
+        try {
+            for (final String locationSetting : locationSettings) {
+                results.add(new Result(locationSetting));
+                futures.add(executor.submit(new Callable<ForecastParser.Forecast>() {
+                    @Override
+                    public ForecastParser.Forecast call() throws Exception {
+                        return mSource.fetch(locationSetting,
+                                storedLocations.contains(locationSetting));
+                    }
+                }));
+            }
+
+            for (int i = 0; i < futures.size(); i++) {
+                Result result = results.get(i);
+                try {
+                    setForecast(result, futures.get(i).get());
+                } catch (ExecutionException e) {
+                    setFailure(result, e.getCause());
+                }
+            }
+        } catch (InterruptedException e) {
+            Log.w(LOG_TAG, "Interrupted, cancelling outstanding fetches");
+            for (Future<ForecastParser.Forecast> future : futures) {
+                future.cancel(true);
+            }
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return results;
+    }
+
+    private static void setForecast(Result result, ForecastParser.Forecast forecast) {
+        if (forecast.notModified) {
+            result.notModified = true;
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+            return;
+        }
+        switch (forecast.messageCode) {
+            case ForecastParser.NO_MESSAGE_CODE:
+            case HttpURLConnection.HTTP_OK:
+                result.forecast = forecast;
+                result.pendingCacheEntry = forecast.cacheEntry;
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_OK;
+                break;
+            case HttpURLConnection.HTTP_NOT_FOUND:
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_INVALID;
+                break;
+            default:
+                result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+
+    private static void setFailure(Result result, Throwable cause) {
+        if (cause instanceof JSONException) {
+            Log.e(LOG_TAG, "Invalid forecast for " + result.locationSetting, cause);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        } else {
+            // IOException, or anything unexpected: either way the server didn't give us a forecast
+            Log.e(LOG_TAG, "Error fetching " + result.locationSetting, cause);
+            result.status = SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN;
+        }
+    }
+}
@@ -0,0 +1,342 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TimeZone;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A small on-disk HTTP cache for forecast responses.
+ *
+ * For every URL it remembers the ETag, Last-Modified and the freshness lifetime from
+ * Cache-Control (or Expires).  A fresh entry means no request is made at all; a stale one turns
+ * the next request into a conditional GET, and a 304 answer tells the caller there is nothing new
+ * to parse or store.
+ *
+ * Only the validators are kept, not the body: the forecast itself lives in the database.  So an
+ * entry for a full response is only {@link #put} once the forecast has been stored, and callers
+ * must not use an entry for a location whose forecast is no longer in the database.
+ *
+ * Safe to use from several threads as long as they don't fetch the same URL at the same time,
+ * which the sync adapter never does.
+ */
+public class ForecastHttpCache {
+    private static final String LOG_TAG = ForecastHttpCache.class.getSimpleName();
+
+    private static final String HEADER_ETAG = "ETag";
+    private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+    private static final String HEADER_CACHE_CONTROL = "Cache-Control";
+    private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+    private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+    private static final String HEADER_EXPIRES = "Expires";
+    private static final String HEADER_DATE = "Date";
+
+    private static final String HTTP_DATE_FORMAT = "EEE, dd MMM yyyy HH:mm:ss zzz";
+
+    private static final String META_URL = "url";
+    private static final String META_ETAG = "etag";
+    private static final String META_LAST_MODIFIED = "last_modified";
+    private static final String META_EXPIRES = "expires";
+
+    private static final String META_SUFFIX = ".meta";
+    private static final String TMP_SUFFIX = ".tmp";
+
+    /**
+     * What we know about a cached response.
+     */
+    public static final class Entry {
+        final String url;
+        final String etag;
+        final String lastModified;
+        // When the entry stops being fresh, in milliseconds since the epoch.  0 means it must
+        // always be revalidated.
+        final long expires;
+
+        Entry(String url, String etag, String lastModified, long expires) {
+            this.url = url;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expires = expires;
+        }
+
+        boolean isFresh(long now) {
+            return now < expires;
+        }
+
+        boolean canRevalidate() {
+            return etag != null || lastModified != null;
+        }
+    }
+
+    private final File mDirectory;
+
+    // A fresh entry answered the request without touching the network
+    private final AtomicInteger mHitCount = new AtomicInteger();
+    // The server answered a conditional GET with 304 Not Modified
+    private final AtomicInteger mConditionalHitCount = new AtomicInteger();
+    // A full response had to be downloaded
+    private final AtomicInteger mMissCount = new AtomicInteger();
+
+    public ForecastHttpCache(File directory) {
+        mDirectory = directory;
+        if (!mDirectory.isDirectory() && !mDirectory.mkdirs()) {
+            Log.w(LOG_TAG, "Couldn't create cache directory " + mDirectory);
+        }
+    }
+
+    public int getHitCount() {
+        return mHitCount.get();
+    }
+
+    public int getConditionalHitCount() {
+        return mConditionalHitCount.get();
+    }
+
+    public int getMissCount() {
+        return mMissCount.get();
+    }
+
+    public int getRequestCount() {
+        return getHitCount() + getConditionalHitCount() + getMissCount();
+    }
+
+    /**
+     * @return the cached entry for the url, or null if there is none.
+     */
+    public Entry get(String url) {
+        File metaFile = new File(mDirectory, keyFor(url) + META_SUFFIX);
+        if (!metaFile.exists()) {
+            return null;
+        }
+        Properties meta = new Properties();
+        InputStream in = null;
+        try {
+            in = new FileInputStream(metaFile);
+            meta.load(in);
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Dropping unreadable cache entry " + metaFile, e);
+            return null;
+        } finally {
+            closeQuietly(in);
+        }
+        if (!url.equals(meta.getProperty(META_URL))) {
+            // Another url with the same hash
+            return null;
+        }
+        long expires;
+        try {
+            expires = Long.parseLong(meta.getProperty(META_EXPIRES, "0"));
+        } catch (NumberFormatException e) {
+            expires = 0;
+        }
+        return new Entry(url, meta.getProperty(META_ETAG),
+                meta.getProperty(META_LAST_MODIFIED), expires);
+    }
+
+    /**
+     * Records that a fresh entry was used in place of a request.
+     */
+    void recordHit() {
+        mHitCount.incrementAndGet();
+    }
+
+    /**
+     * Adds the validators of the entry to the headers of a request that hasn't been sent yet.
+     */
+    void addConditionalHeaders(Map<String, String> requestHeaders, Entry entry) {
+        if (entry.etag != null) {
+            requestHeaders.put(HEADER_IF_NONE_MATCH, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            requestHeaders.put(HEADER_IF_MODIFIED_SINCE, entry.lastModified);
+        }
+    }
+
+    /**
+     * Handles a 304 answer: the stored forecast is still current, and its freshness is renewed
+     * from the headers of the 304.
+     */
+    void recordNotModified(SyncHttpClient.Response response, Entry entry, long now) {
+        mConditionalHitCount.incrementAndGet();
+        long expires = computeExpires(response, now);
+        if (expires < 0) {
+            return;
+        }
+        String etag = response.getHeader(HEADER_ETAG);
+        String lastModified = response.getHeader(HEADER_LAST_MODIFIED);
+        writeMeta(new Entry(entry.url,
+                etag != null ? etag : entry.etag,
+                lastModified != null ? lastModified : entry.lastModified,
+                expires));
+    }
+
+    /**
+     * Records that a full response had to be downloaded.
+     */
+    void recordMiss() {
+        mMissCount.incrementAndGet();
+    }
+
+    /**
+     * Builds the entry for a full response.  Nothing is stored yet: it replaces the current entry
+     * only once it is passed to {@link #put}.
+     *
+     * @return the entry for the response, or null if it isn't worth caching.
+     */
+    Entry newEntry(String url, SyncHttpClient.Response response, long now) {
+        long expires = computeExpires(response, now);
+        if (expires < 0) {
+            return null;
+        }
+        Entry entry = new Entry(url,
+                response.getHeader(HEADER_ETAG),
+                response.getHeader(HEADER_LAST_MODIFIED),
+                expires);
+        if (!entry.canRevalidate() && !entry.isFresh(now)) {
+            // Nothing to revalidate with, and never fresh: not worth storing
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Makes the entry the current one for its url.  Only call this once the forecast it
+     * validates has been stored.
+     */
+    public void put(Entry entry) {
+        writeMeta(entry);
+    }
+
+    /**
+     * @return when a response received at {@code now} stops being fresh, or -1 if it must not
+     * be stored at all.
+     */
+    static long computeExpires(SyncHttpClient.Response response, long now) {
+        String cacheControl = response.getHeader(HEADER_CACHE_CONTROL);
+        if (cacheControl != null) {
+            long maxAgeSeconds = -1;
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if (directive.equals("no-store")) {
+                    return -1;
+                } else if (directive.equals("no-cache")) {
+                    return 0;
+                } else if (directive.startsWith("max-age=")) {
+                    try {
+                        maxAgeSeconds = Long.parseLong(directive.substring("max-age=".length()));
+                    } catch (NumberFormatException e) {
+                        maxAgeSeconds = 0;
+                    }
+                }
+            }
+            if (maxAgeSeconds >= 0) {
+                return now + maxAgeSeconds * 1000;
+            }
+        }
+        long expiration = parseHttpDate(response.getHeader(HEADER_EXPIRES));
+        if (expiration > 0) {
+            // Expires is relative to the server clock; rebase it on ours using Date if present
+            long date = parseHttpDate(response.getHeader(HEADER_DATE));
+            return date > 0 ? now + (expiration - date) : expiration;
+        }
+        // No freshness information: store it, but always revalidate
+        return 0;
+    }
+
+    /**
+     * @return the date in milliseconds since the epoch, or 0 if it is missing or malformed.
+     */
+    private static long parseHttpDate(String value) {
+        if (value == null) {
+            return 0;
+        }
+        // SimpleDateFormat isn't thread safe, and this runs at most twice per fetch
+        SimpleDateFormat format = new SimpleDateFormat(HTTP_DATE_FORMAT, Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        try {
+            return format.parse(value).getTime();
+        } catch (ParseException e) {
+            return 0;
+        }
+    }
+
+    public void clear() {
+        File[] files = mDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    private void writeMeta(Entry entry) {
+        Properties meta = new Properties();
+        meta.setProperty(META_URL, entry.url);
+        if (entry.etag != null) {
+            meta.setProperty(META_ETAG, entry.etag);
+        }
+        if (entry.lastModified != null) {
+            meta.setProperty(META_LAST_MODIFIED, entry.lastModified);
+        }
+        meta.setProperty(META_EXPIRES, Long.toString(entry.expires));
+
+        String key = keyFor(entry.url);
+        File tmpFile = new File(mDirectory, key + META_SUFFIX + TMP_SUFFIX);
+        OutputStream out = null;
+        try {
+            out = new FileOutputStream(tmpFile);
+            meta.store(out, null);
+            out.close();
+            out = null;
+            if (!tmpFile.renameTo(new File(mDirectory, key + META_SUFFIX))) {
+                tmpFile.delete();
+            }
+        } catch (IOException e) {
+            Log.w(LOG_TAG, "Couldn't store cache entry for " + entry.url, e);
+            tmpFile.delete();
+        } finally {
+            closeQuietly(out);
+        }
+    }
+
+    private static String keyFor(String url) {
+        return Integer.toHexString(url.hashCode());
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                // ignore
+            }
+        }
+    }
+}
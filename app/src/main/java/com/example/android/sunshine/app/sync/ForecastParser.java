@@ -0,0 +1,305 @@
+package com.example.android.sunshine.app.sync;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Decodes the OpenWeatherMap daily forecast response into plain per-day records.
+ *
+ * The streaming path pulls tokens straight off the HTTP stream and only keeps the dozen fields
+ * we store, so neither the raw response String nor a JSONObject tree is ever built.  The
+ * JSONObject path is kept for comparison in the benchmarks.
+ */
+public class ForecastParser {
+
+    // These are the names of the JSON objects that need to be extracted.
+
+    // Location information
+    static final String OWM_CITY = "city";
+    static final String OWM_CITY_NAME = "name";
+    static final String OWM_COORD = "coord";
+
+    // Location coordinate
+    static final String OWM_LATITUDE = "lat";
+    static final String OWM_LONGITUDE = "lon";
+
+    // Weather information.  Each day's forecast info is an element of the "list" array.
+    static final String OWM_LIST = "list";
+
+    static final String OWM_PRESSURE = "pressure";
+    static final String OWM_HUMIDITY = "humidity";
+    static final String OWM_WINDSPEED = "speed";
+    static final String OWM_WIND_DIRECTION = "deg";
+
+    // All temperatures are children of the "temp" object.
+    static final String OWM_TEMPERATURE = "temp";
+    static final String OWM_MAX = "max";
+    static final String OWM_MIN = "min";
+
+    static final String OWM_WEATHER = "weather";
+    static final String OWM_DESCRIPTION = "main";
+    static final String OWM_WEATHER_ID = "id";
+
+    static final String OWM_MESSAGE_CODE = "cod";
+
+    /** Value of {@link Forecast#messageCode} when the response carried no "cod" field. */
+    public static final int NO_MESSAGE_CODE = -1;
+
+    /**
+     * The decoded response: the city the server resolved the query to, and one {@link Day}
+     * per element of the "list" array, in order.
+     */
+    public static final class Forecast {
+        public int messageCode = NO_MESSAGE_CODE;
+        public String cityName;
+        public double cityLatitude;
+        public double cityLongitude;
+        public final List<Day> days;
+        // Set when the server said the forecast hasn't changed since we last stored it; there
+        // is nothing else in the forecast then.
+        public boolean notModified;
+        // The cache entry that validates this response, if any.  It goes into the
+        // ForecastHttpCache only once the forecast has been stored.
+        ForecastHttpCache.Entry cacheEntry;
+
+        Forecast(int expectedDays) {
+            days = new ArrayList<Day>(expectedDays);
+        }
+
+        static Forecast notModified() {
+            Forecast forecast = new Forecast(0);
+            forecast.notModified = true;
+            return forecast;
+        }
+    }
+
+    /**
+     * A single day's forecast.  Dates are not taken from the response; the sync adapter assigns
+     * them by position since the first element is always the current day.
+     */
+    public static final class Day {
+        public double pressure;
+        public int humidity;
+        public double windSpeed;
+        public double windDirection;
+        public double high;
+        public double low;
+        public String description;
+        public int weatherId;
+    }
+
+    private ForecastParser() {
+    }
+
+    /**
+     * Decodes the response straight off the stream.
+     *
+     * @param in the response body; it is not closed by this method.
+     * @param expectedDays the number of days requested, used to size the result.
+     * @throws IOException if the stream could not be read, or was empty.
+     * @throws JSONException if the stream does not contain the forecast we expect.
+     */
+    public static Forecast parse(InputStream in, int expectedDays)
+            throws IOException, JSONException {
+        return parse(new InputStreamReader(in, "UTF-8"), expectedDays);
+    }
+
+    public static Forecast parse(Reader in, int expectedDays) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(in);
+        Forecast forecast = new Forecast(expectedDays);
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (OWM_MESSAGE_CODE.equals(name)) {
+                    forecast.messageCode = reader.nextInt();
+                } else if (OWM_CITY.equals(name)) {
+                    readCity(reader, forecast);
+                } else if (OWM_LIST.equals(name)) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        forecast.days.add(readDay(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+        } catch (MalformedJsonException e) {
+            throw toJSONException(e);
+        } catch (IllegalStateException e) {
+            // JsonReader reports an unexpected token type this way
+            throw toJSONException(e);
+        } catch (NumberFormatException e) {
+            throw toJSONException(e);
+        }
+        if (isOk(forecast) && forecast.cityName == null) {
+            throw new JSONException("No value for " + OWM_CITY);
+        }
+        return forecast;
+    }
+
+    /**
+     * @return true unless the server told us, through the "cod" field, that the request failed.
+     */
+    public static boolean isOk(Forecast forecast) {
+        return forecast.messageCode == NO_MESSAGE_CODE
+                || forecast.messageCode == HttpURLConnection.HTTP_OK;
+    }
+
+    private static void readCity(JsonReader reader, Forecast forecast) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_CITY_NAME.equals(name)) {
+                forecast.cityName = reader.nextString();
+            } else if (OWM_COORD.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String coord = reader.nextName();
+                    if (OWM_LATITUDE.equals(coord)) {
+                        forecast.cityLatitude = reader.nextDouble();
+                    } else if (OWM_LONGITUDE.equals(coord)) {
+                        forecast.cityLongitude = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static Day readDay(JsonReader reader) throws IOException {
+        Day day = new Day();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_PRESSURE.equals(name)) {
+                day.pressure = reader.nextDouble();
+            } else if (OWM_HUMIDITY.equals(name)) {
+                day.humidity = reader.nextInt();
+            } else if (OWM_WINDSPEED.equals(name)) {
+                day.windSpeed = reader.nextDouble();
+            } else if (OWM_WIND_DIRECTION.equals(name)) {
+                day.windDirection = reader.nextDouble();
+            } else if (OWM_TEMPERATURE.equals(name)) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    String temperature = reader.nextName();
+                    if (OWM_MAX.equals(temperature)) {
+                        day.high = reader.nextDouble();
+                    } else if (OWM_MIN.equals(temperature)) {
+                        day.low = reader.nextDouble();
+                    } else {
+                        reader.skipValue();
+                    }
+                }
+                reader.endObject();
+            } else if (OWM_WEATHER.equals(name)) {
+                // Description is in a child array called "weather", which is 1 element long.
+                // That element also contains a weather code.
+                reader.beginArray();
+                if (reader.hasNext()) {
+                    readWeather(reader, day);
+                }
+                while (reader.hasNext()) {
+                    reader.skipValue();
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (day.description == null) {
+            throw new IllegalStateException("Day without a weather description");
+        }
+        return day;
+    }
+
+    private static void readWeather(JsonReader reader, Day day) throws IOException {
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (OWM_DESCRIPTION.equals(name) && reader.peek() != JsonToken.NULL) {
+                day.description = reader.nextString();
+            } else if (OWM_WEATHER_ID.equals(name)) {
+                day.weatherId = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+    }
+
+    private static JSONException toJSONException(Exception e) {
+        JSONException jsonException = new JSONException(e.getMessage());
+        jsonException.initCause(e);
+        return jsonException;
+    }
+
+    /**
+     * Decodes a complete response through a JSONObject tree.  This is how the sync adapter used
+     * to do it; it is only kept so the streaming parser can be checked and measured against it.
+     */
+    static Forecast parse(String forecastJsonStr, int expectedDays) throws JSONException {
+        JSONObject forecastJson = new JSONObject(forecastJsonStr);
+        Forecast forecast = new Forecast(expectedDays);
+
+        if (forecastJson.has(OWM_MESSAGE_CODE)) {
+            forecast.messageCode = forecastJson.getInt(OWM_MESSAGE_CODE);
+            if (!isOk(forecast)) {
+                return forecast;
+            }
+        }
+
+        JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
+
+        JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
+        forecast.cityName = cityJson.getString(OWM_CITY_NAME);
+
+        JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
+        forecast.cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
+        forecast.cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
+
+        for (int i = 0; i < weatherArray.length(); i++) {
+            JSONObject dayForecast = weatherArray.getJSONObject(i);
+            Day day = new Day();
+
+            day.pressure = dayForecast.getDouble(OWM_PRESSURE);
+            day.humidity = dayForecast.getInt(OWM_HUMIDITY);
+            day.windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
+            day.windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
+
+            JSONObject weatherObject =
+                    dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
+            day.description = weatherObject.getString(OWM_DESCRIPTION);
+            day.weatherId = weatherObject.getInt(OWM_WEATHER_ID);
+
+            JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
+            day.high = temperatureObject.getDouble(OWM_MAX);
+            day.low = temperatureObject.getDouble(OWM_MIN);
+
+            forecast.days.add(day);
+        }
+        return forecast;
+    }
+}
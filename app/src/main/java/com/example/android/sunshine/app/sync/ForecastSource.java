@@ -0,0 +1,22 @@
+package com.example.android.sunshine.app.sync;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+
+/**
+ * Where the sync adapter gets its forecasts from.  Implementations must be safe to call from
+ * several threads at once, since locations are fetched concurrently.
+ */
+public interface ForecastSource {
+    /**
+     * @param locationSetting the location string used to request updates from the server.
+     * @param revalidate whether the forecast stored for the location may be kept, in which case
+     *                   the result can be {@link ForecastParser.Forecast#notModified}.  Pass false
+     *                   when nothing current is stored, to always get the whole forecast.
+     * @throws IOException if the server could not be reached or the response could not be read.
+     * @throws JSONException if the response is not a forecast we understand.
+     */
+    ForecastParser.Forecast fetch(String locationSetting, boolean revalidate)
+            throws IOException, JSONException;
+}
@@ -0,0 +1,120 @@
+package com.example.android.sunshine.app.sync;
+
+import android.net.Uri;
+
+import com.example.android.sunshine.app.BuildConfig;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Fetches the daily forecast from OpenWeatherMap through a {@link SyncHttpClient} and decodes it
+ * straight off the HTTP stream.
+ *
+ * With a {@link ForecastHttpCache}, a response that is still fresh isn't requested again, and a
+ * stale one is revalidated with a conditional GET.  Either way the result is a
+ * {@link ForecastParser.Forecast#notModified} forecast and nothing is parsed.  The validators of
+ * a full response come back with the forecast, for the caller to put in the cache once it has
+ * stored it.
+ */
+public class OwmForecastSource implements ForecastSource {
+    // Construct the URL for the OpenWeatherMap query
+    // Possible parameters are avaiable at OWM's forecast API page, at
+    // http://openweathermap.org/API#forecast
+    static final String FORECAST_BASE_URL =
+            "http://api.openweathermap.org/data/2.5/forecast/daily?";
+    static final String QUERY_PARAM = "q";
+    static final String FORMAT_PARAM = "mode";
+    static final String UNITS_PARAM = "units";
+    static final String DAYS_PARAM = "cnt";
+    static final String APPID_PARAM = "APPID";
+
+    static final String FORMAT = "json";
+    static final String UNITS = "metric";
+    public static final int NUM_DAYS = 14;
+
+    private final String mBaseUrl;
+    private final SyncHttpClient mClient;
+    private final ForecastHttpCache mCache;
+
+    public OwmForecastSource() {
+        this(FORECAST_BASE_URL, new UrlConnectionSyncHttpClient(), null);
+    }
+
+    public OwmForecastSource(SyncHttpClient client, ForecastHttpCache cache) {
+        this(FORECAST_BASE_URL, client, cache);
+    }
+
+    /**
+     * @param cache may be null, in which case every fetch downloads the whole forecast.
+     */
+    OwmForecastSource(String baseUrl, SyncHttpClient client, ForecastHttpCache cache) {
+        mBaseUrl = baseUrl;
+        mClient = client;
+        mCache = cache;
+    }
+
+    static URL buildForecastUrl(String locationSetting) throws IOException {
+        return buildForecastUrl(FORECAST_BASE_URL, locationSetting);
+    }
+
+    static URL buildForecastUrl(String baseUrl, String locationSetting) throws IOException {
+        Uri builtUri = Uri.parse(baseUrl).buildUpon()
+                .appendQueryParameter(QUERY_PARAM, locationSetting)
+                .appendQueryParameter(FORMAT_PARAM, FORMAT)
+                .appendQueryParameter(UNITS_PARAM, UNITS)
+                .appendQueryParameter(DAYS_PARAM, Integer.toString(NUM_DAYS))
+                .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
+                .build();
+        return new URL(builtUri.toString());
+    }
+
+    @Override
+    public ForecastParser.Forecast fetch(String locationSetting, boolean revalidate)
+            throws IOException, JSONException {
+        URL url = buildForecastUrl(mBaseUrl, locationSetting);
+        long now = System.currentTimeMillis();
+        ForecastHttpCache.Entry cached = mCache == null || !revalidate
+                ? null : mCache.get(url.toString());
+        if (cached != null && cached.isFresh(now)) {
+            mCache.recordHit();
+            return ForecastParser.Forecast.notModified();
+        }
+
+        Map<String, String> requestHeaders = new HashMap<String, String>();
+        if (cached != null) {
+            mCache.addConditionalHeaders(requestHeaders, cached);
+        }
+
+        // Closing the response, rather than disconnecting, lets the next fetch reuse the
+        // connection
+        SyncHttpClient.Response response = mClient.get(url, requestHeaders);
+        try {
+            if (cached != null && response.getCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                mCache.recordNotModified(response, cached, now);
+                return ForecastParser.Forecast.notModified();
+            }
+
+            if (mCache != null) {
+                mCache.recordMiss();
+            }
+
+            // Decode the forecast straight off the stream.  An empty stream surfaces as an
+            // EOFException, which callers handle like any other read failure.
+            ForecastParser.Forecast forecast =
+                    ForecastParser.parse(response.getBody(), NUM_DAYS);
+            if (mCache != null && ForecastParser.isOk(forecast)) {
+                // Only a forecast we could use is worth revalidating later
+                forecast.cacheEntry = mCache.newEntry(url.toString(), response, now);
+            }
+            return forecast;
+        } finally {
+            response.close();
+        }
+    }
+}
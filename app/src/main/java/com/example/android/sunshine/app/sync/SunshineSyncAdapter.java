@@ -8,21 +8,19 @@ import android.app.PendingIntent;
 import android.content.AbstractThreadedSyncAdapter;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentUris;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
-import android.content.SharedPreferences;
 import android.content.SyncRequest;
 import android.content.SyncResult;
 import android.content.res.Resources;
 import android.database.Cursor;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.net.Uri;
 import android.os.Build;
 import android.os.Bundle;
-import android.preference.PreferenceManager;
+import android.os.PowerManager;
+import android.os.Process;
+import android.os.SystemClock;
 import android.support.annotation.IntDef;
 import android.support.v4.app.NotificationCompat;
 import android.support.v4.app.TaskStackBuilder;
@@ -30,52 +28,41 @@ import android.text.format.Time;
 import android.util.Log;
 
 import com.bumptech.glide.Glide;
-import com.example.android.sunshine.app.BuildConfig;
 import com.example.android.sunshine.app.MainActivity;
 import com.example.android.sunshine.app.R;
+import com.example.android.sunshine.app.SunshineSettings;
 import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherBatch;
 import com.example.android.sunshine.app.data.WeatherContract;
 import com.example.android.sunshine.app.muzei.WeatherMuzeiSource;
 
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.io.BufferedReader;
-import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.Vector;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public final String LOG_TAG = SunshineSyncAdapter.class.getSimpleName();
     public static final String ACTION_DATA_UPDATED =
             "com.example.android.sunshine.app.ACTION_DATA_UPDATED";
-    // Interval at which to sync with the weather, in seconds.
-    // 60 seconds (1 minute) * 180 = 3 hours
-    public static final int SYNC_INTERVAL = 60 * 180;
-    public static final int SYNC_FLEXTIME = SYNC_INTERVAL/3;
     private static final long DAY_IN_MILLIS = 1000 * 60 * 60 * 24;
     private static final int WEATHER_NOTIFICATION_ID = 3004;
 
-
-    private static final String[] NOTIFY_WEATHER_PROJECTION = new String[] {
-            WeatherContract.WeatherEntry.COLUMN_WEATHER_ID,
-            WeatherContract.WeatherEntry.COLUMN_MAX_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_MIN_TEMP,
-            WeatherContract.WeatherEntry.COLUMN_SHORT_DESC
-    };
-
-    // these indices must match the projection
-    private static final int INDEX_WEATHER_ID = 0;
-    private static final int INDEX_MAX_TEMP = 1;
-    private static final int INDEX_MIN_TEMP = 2;
-    private static final int INDEX_SHORT_DESC = 3;
+    // The ForecastSnapshot the ACTION_DATA_UPDATED broadcast and service intents carry, so
+    // consumers don't have to query the provider for it again
+    public static final String EXTRA_SNAPSHOT =
+            "com.example.android.sunshine.app.sync.EXTRA_SNAPSHOT";
 
     @Retention(RetentionPolicy.SOURCE)
     @IntDef({LOCATION_STATUS_OK, LOCATION_STATUS_SERVER_DOWN, LOCATION_STATUS_SERVER_INVALID,  LOCATION_STATUS_UNKNOWN, LOCATION_STATUS_INVALID})
@@ -87,322 +74,405 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     public static final int LOCATION_STATUS_UNKNOWN = 3;
     public static final int LOCATION_STATUS_INVALID = 4;
 
+    // Sync extra with additional locations to fetch, separated by LOCATION_SEPARATOR.  Sync
+    // extras can't hold arrays.  These locations are tracked from then on, and synced along with
+    // the preferred one until untrackLocations() is called for them.
+    public static final String EXTRA_LOCATIONS =
+            "com.example.android.sunshine.app.sync.EXTRA_LOCATIONS";
+    private static final String LOCATION_SEPARATOR = "\n";
+
+    // Forecast responses are kept under the cache dir so unchanged ones can be revalidated
+    private static final String FORECAST_CACHE_DIR = "forecasts";
+
+    // Compaction normally takes well under a second; the wakelock is never held longer than this
+    private static final long COMPACTION_WAKELOCK_TIMEOUT_MILLIS = 60 * 1000;
+
+    // One client for the life of the adapter so its connections are reused across syncs
+    private final UrlConnectionSyncHttpClient mHttpClient = new UrlConnectionSyncHttpClient();
+    private final ForecastHttpCache mHttpCache;
+    private final ForecastFetcher mFetcher;
+    private final SyncScheduler mScheduler;
+    private final SyncPublisher mPublisher;
+    private final WearablePublisher mWearablePublisher;
+
+    // Compaction is housekeeping, so it runs on a background priority thread of its own rather
+    // than holding up the sync
+    private final ExecutorService mCompactionExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(final Runnable r) {
+                    Thread thread = new Thread(new Runnable() {
+                        @Override
+                        public void run() {
+                            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                            r.run();
+                        }
+                    }, "WeatherHistoryCompaction");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+    private final AtomicBoolean mCompactionQueued = new AtomicBoolean();
+
+    // Publishes to the watch asked for outside of a sync, one at a time and in order
+    private static final ExecutorService sWearableExecutor =
+            Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "WearableUpdate");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+
     public SunshineSyncAdapter(Context context, boolean autoInitialize) {
         super(context, autoInitialize);
+        mScheduler = getScheduler(context);
+        mWearablePublisher = WearablePublisher.getInstance(context);
+        mPublisher = new SyncPublisher(
+                new SyncPublisher.SnapshotLoader() {
+                    @Override
+                    public ForecastSnapshot load() {
+                        return ForecastSnapshot.query(getContext().getContentResolver(),
+                                Utility.getPreferredLocation(getContext()),
+                                System.currentTimeMillis());
+                    }
+                },
+                new SyncPublisher.Consumer() {
+                    @Override
+                    public void onPublish(ForecastSnapshot snapshot, boolean dataChanged,
+                                          boolean notify) {
+                        if (dataChanged) {
+                            updateWidgets(snapshot);
+                            updateMuzei(snapshot);
+                        }
+                        if (notify) {
+                            notifyWeather(snapshot);
+                        }
+                        // Goes out on every fan-out; the publisher skips what the watch has
+                        updateWearable(snapshot);
+                    }
+                });
+        mHttpCache = new ForecastHttpCache(new File(context.getCacheDir(), FORECAST_CACHE_DIR));
+        mFetcher = new ForecastFetcher(new OwmForecastSource(mHttpClient, mHttpCache),
+                ForecastFetcher.DEFAULT_MAX_CONCURRENT_FETCHES);
     }
 
     @Override
     public void onPerformSync(Account account, Bundle extras, String authority, ContentProviderClient provider, SyncResult syncResult) {
         Log.d(LOG_TAG, "Starting sync");
-        String locationQuery = Utility.getPreferredLocation(getContext());
-
-        // These two need to be declared outside the try/catch
-        // so that they can be closed in the finally block.
-        HttpURLConnection urlConnection = null;
-        BufferedReader reader = null;
-
-        // Will contain the raw JSON response as a string.
-        String forecastJsonStr = null;
+        String preferredLocation = Utility.getPreferredLocation(getContext());
+        List<String> locations = getTrackedLocations(preferredLocation, extras);
+
+        // Only a location whose forecast we still have can be answered with "not modified"
+        long today = getToday();
+        Set<String> storedLocations = new HashSet<String>();
+        for (String location : locations) {
+            if (hasCurrentRows(location, today)) {
+                storedLocations.add(location);
+            }
+        }
 
-        String format = "json";
-        String units = "metric";
-        int numDays = 14;
+        // Fetch and parse every location concurrently; a failing location only affects itself
+        List<ForecastFetcher.Result> results = mFetcher.fetchAll(locations, storedLocations);
+        storeForecasts(results, preferredLocation);
 
-        try {
-            // Construct the URL for the OpenWeatherMap query
-            // Possible parameters are avaiable at OWM's forecast API page, at
-            // http://openweathermap.org/API#forecast
-            final String FORECAST_BASE_URL =
-                    "http://api.openweathermap.org/data/2.5/forecast/daily?";
-            final String QUERY_PARAM = "q";
-            final String FORMAT_PARAM = "mode";
-            final String UNITS_PARAM = "units";
-            final String DAYS_PARAM = "cnt";
-            final String APPID_PARAM = "APPID";
-
-            Uri builtUri = Uri.parse(FORECAST_BASE_URL).buildUpon()
-                    .appendQueryParameter(QUERY_PARAM, locationQuery)
-                    .appendQueryParameter(FORMAT_PARAM, format)
-                    .appendQueryParameter(UNITS_PARAM, units)
-                    .appendQueryParameter(DAYS_PARAM, Integer.toString(numDays))
-                    .appendQueryParameter(APPID_PARAM, BuildConfig.OPEN_WEATHER_MAP_API_KEY)
-                    .build();
-
-            URL url = new URL(builtUri.toString());
-
-            // Create the request to OpenWeatherMap, and open the connection
-            urlConnection = (HttpURLConnection) url.openConnection();
-            urlConnection.setRequestMethod("GET");
-            urlConnection.connect();
-
-            // Read the input stream into a String
-            InputStream inputStream = urlConnection.getInputStream();
-            StringBuffer buffer = new StringBuffer();
-            if (inputStream == null) {
-                // Nothing to do.
-                return;
-            }
-            reader = new BufferedReader(new InputStreamReader(inputStream));
-
-            String line;
-            while ((line = reader.readLine()) != null) {
-                // Since it's JSON, adding a newline isn't necessary (it won't affect parsing)
-                // But it does make debugging a *lot* easier if you print out the completed
-                // buffer for debugging.
-                buffer.append(line + "\n");
-            }
+        // Once the new forecast is stored and published, move the days that have passed out of
+        // the forecast without keeping the sync waiting for it
+        scheduleCompaction();
+    }
 
-            if (buffer.length() == 0) {
-                // Stream was empty.  No point in parsing.
-                setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                return;
-            }
-            forecastJsonStr = buffer.toString();
-            getWeatherDataFromJson(forecastJsonStr, locationQuery);
-        } catch (IOException e) {
-            Log.e(LOG_TAG, "Error ", e);
-            // If the code didn't successfully get the weather data, there's no point in attempting
-            // to parse it.
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
-        } finally {
-            if (urlConnection != null) {
-                urlConnection.disconnect();
-            }
-            if (reader != null) {
+    /**
+     * Queues {@link #compactHistory()} on the compaction thread, unless it is already queued.
+     * It holds a wakelock of its own, since the sync's is released when onPerformSync returns.
+     * Compaction that doesn't get to run is picked up by the next one.
+     */
+    private void scheduleCompaction() {
+        if (!mCompactionQueued.compareAndSet(false, true)) {
+            return;
+        }
+        PowerManager powerManager =
+                (PowerManager) getContext().getSystemService(Context.POWER_SERVICE);
+        final PowerManager.WakeLock wakeLock =
+                powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, LOG_TAG);
+        wakeLock.acquire(COMPACTION_WAKELOCK_TIMEOUT_MILLIS);
+        mCompactionExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mCompactionQueued.set(false);
                 try {
-                    reader.close();
-                } catch (final IOException e) {
-                    Log.e(LOG_TAG, "Error closing stream", e);
+                    compactHistory();
+                } catch (RuntimeException e) {
+                    Log.e(LOG_TAG, "Error compacting the weather history", e);
+                } finally {
+                    if (wakeLock.isHeld()) {
+                        wakeLock.release();
+                    }
                 }
             }
-        }
-        return;
+        });
     }
 
     /**
-     * Take the String representing the complete forecast in JSON Format and
-     * pull out the data we need to construct the Strings needed for the wireframes.
-     *
-     * Fortunately parsing is easy:  constructor takes the JSON string and converts it
-     * into an Object hierarchy for us.
+     * Moves past days into the history table, or drops them if we don't keep any history, and
+     * drops history older than the window set in the preferences.  The provider does this in
+     * small batches, so it doesn't hold up readers or the next sync.
      */
-    private void getWeatherDataFromJson(String forecastJsonStr,
-                                        String locationSetting)
-            throws JSONException {
-
-        // Now we have a String representing the complete forecast in JSON Format.
-        // Fortunately parsing is easy:  constructor takes the JSON string and converts it
-        // into an Object hierarchy for us.
-
-        // These are the names of the JSON objects that need to be extracted.
-
-        // Location information
-        final String OWM_CITY = "city";
-        final String OWM_CITY_NAME = "name";
-        final String OWM_COORD = "coord";
-
-        // Location coordinate
-        final String OWM_LATITUDE = "lat";
-        final String OWM_LONGITUDE = "lon";
-
-        // Weather information.  Each day's forecast info is an element of the "list" array.
-        final String OWM_LIST = "list";
-
-        final String OWM_PRESSURE = "pressure";
-        final String OWM_HUMIDITY = "humidity";
-        final String OWM_WINDSPEED = "speed";
-        final String OWM_WIND_DIRECTION = "deg";
-
-        // All temperatures are children of the "temp" object.
-        final String OWM_TEMPERATURE = "temp";
-        final String OWM_MAX = "max";
-        final String OWM_MIN = "min";
-
-        final String OWM_WEATHER = "weather";
-        final String OWM_DESCRIPTION = "main";
-        final String OWM_WEATHER_ID = "id";
-
-        final String OWM_MESSAGE_CODE = "cod";
+    private void compactHistory() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        dayTime = new Time();
+
+        Bundle extras = new Bundle();
+        extras.putLong(WeatherContract.KEY_COMPACT_BEFORE, dayTime.setJulianDay(julianStartDay));
+        extras.putLong(WeatherContract.KEY_HISTORY_CUTOFF,
+                dayTime.setJulianDay(julianStartDay - Utility.getHistoryDays(getContext())));
+        long start = SystemClock.elapsedRealtime();
+        Bundle result = getContext().getContentResolver().call(
+                WeatherContract.WeatherEntry.CONTENT_URI,
+                WeatherContract.METHOD_COMPACT_HISTORY, null, extras);
+        Log.d(LOG_TAG, "History: " + result.getInt(WeatherContract.KEY_COMPACTED)
+                + " days compacted, " + result.getInt(WeatherContract.KEY_DELETED)
+                + " deleted in " + (SystemClock.elapsedRealtime() - start) + " ms");
+    }
 
-        try {
-            JSONObject forecastJson = new JSONObject(forecastJsonStr);
-
-            // do we have an error?
-            if ( forecastJson.has(OWM_MESSAGE_CODE) ) {
-                int errorCode = forecastJson.getInt(OWM_MESSAGE_CODE);
-
-                switch (errorCode) {
-                    case HttpURLConnection.HTTP_OK:
-                        break;
-                    case HttpURLConnection.HTTP_NOT_FOUND:
-                        setLocationStatus(getContext(), LOCATION_STATUS_INVALID);
-                        return;
-                    default:
-                        setLocationStatus(getContext(), LOCATION_STATUS_SERVER_DOWN);
-                        return;
+    /**
+     * @return the locations to sync: the preferred one first, then the tracked ones, including
+     * any passed in with {@link #EXTRA_LOCATIONS}, which are tracked from now on.
+     */
+    private List<String> getTrackedLocations(String preferredLocation, Bundle extras) {
+        SunshineSettings settings = SunshineSettings.getInstance(getContext());
+        String requested = extras == null ? null : extras.getString(EXTRA_LOCATIONS);
+        if (requested != null) {
+            ArrayList<String> requestedLocations = new ArrayList<String>();
+            for (String location : requested.split(LOCATION_SEPARATOR)) {
+                if (location.length() > 0) {
+                    requestedLocations.add(location);
                 }
             }
+            settings.trackLocations(requestedLocations);
+        }
 
-            JSONArray weatherArray = forecastJson.getJSONArray(OWM_LIST);
-
-            JSONObject cityJson = forecastJson.getJSONObject(OWM_CITY);
-            String cityName = cityJson.getString(OWM_CITY_NAME);
-
-            JSONObject cityCoord = cityJson.getJSONObject(OWM_COORD);
-            double cityLatitude = cityCoord.getDouble(OWM_LATITUDE);
-            double cityLongitude = cityCoord.getDouble(OWM_LONGITUDE);
-
-            long locationId = addLocation(locationSetting, cityName, cityLatitude, cityLongitude);
-
-            // Insert the new weather information into the database
-            Vector<ContentValues> cVVector = new Vector<ContentValues>(weatherArray.length());
-
-            // OWM returns daily forecasts based upon the local time of the city that is being
-            // asked for, which means that we need to know the GMT offset to translate this data
-            // properly.
-
-            // Since this data is also sent in-order and the first day is always the
-            // current day, we're going to take advantage of that to get a nice
-            // normalized UTC date for all of our weather.
+        // Locations that were only ever preferred aren't synced once the preference moves on
+        LinkedHashSet<String> locations = new LinkedHashSet<String>();
+        locations.add(preferredLocation);
+        locations.addAll(settings.getTrackedLocations());
+        return new ArrayList<String>(locations);
+    }
 
-            Time dayTime = new Time();
-            dayTime.setToNow();
+    /**
+     * Take the decoded forecasts and store them, along with their locations, in the database.
+     * The locations and the weather rows are committed in a single provider call, and therefore
+     * a single write transaction.
+     */
+    private void storeForecasts(List<ForecastFetcher.Result> results, String preferredLocation) {
+        @LocationStatus int preferredStatus = LOCATION_STATUS_UNKNOWN;
+
+        // Insert the new weather information into the database.  Until the provider resolves
+        // them, the batch's location ids are positions in the location arrays.
+        WeatherBatch batch = new WeatherBatch(results.size() * OwmForecastSource.NUM_DAYS);
+        ArrayList<String> locationSettings = new ArrayList<String>(results.size());
+        ArrayList<String> cityNames = new ArrayList<String>(results.size());
+        double[] lats = new double[results.size()];
+        double[] longs = new double[results.size()];
+
+        // OWM returns daily forecasts based upon the local time of the city that is being
+        // asked for, which means that we need to know the GMT offset to translate this data
+        // properly.
+
+        // Since this data is also sent in-order and the first day is always the
+        // current day, we're going to take advantage of that to get a nice
+        // normalized UTC date for all of our weather.
+
+        Time dayTime = new Time();
+        dayTime.setToNow();
+
+        // we start at the day returned by local time. Otherwise this is a mess.
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+
+        // now we work exclusively in UTC
+        dayTime = new Time();
+
+        int failed = 0;
+        int notModified = 0;
+        for (ForecastFetcher.Result result : results) {
+            if (result.locationSetting.equals(preferredLocation)) {
+                preferredStatus = result.status;
+            }
+            if (result.status != LOCATION_STATUS_OK) {
+                failed++;
+                continue;
+            }
+            if (result.notModified) {
+                // What we stored last time is still current
+                notModified++;
+                continue;
+            }
 
-            // we start at the day returned by local time. Otherwise this is a mess.
-            int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+            ForecastParser.Forecast forecast = result.forecast;
+            int locationIndex = locationSettings.size();
+            locationSettings.add(result.locationSetting);
+            cityNames.add(forecast.cityName);
+            lats[locationIndex] = forecast.cityLatitude;
+            longs[locationIndex] = forecast.cityLongitude;
 
-            // now we work exclusively in UTC
-            dayTime = new Time();
+            for (int i = 0; i < forecast.days.size(); i++) {
+                ForecastParser.Day day = forecast.days.get(i);
 
-            for(int i = 0; i < weatherArray.length(); i++) {
-                // These are the values that will be collected.
-                long dateTime;
-                double pressure;
-                int humidity;
-                double windSpeed;
-                double windDirection;
+                // Cheating to convert this to UTC time, which is what we want anyhow
+                long dateTime = dayTime.setJulianDay(julianStartDay + i);
 
-                double high;
-                double low;
+                batch.add(locationIndex, dateTime, day.weatherId, day.description, day.low,
+                        day.high, day.humidity, day.pressure, day.windSpeed, day.windDirection);
+            }
+        }
 
-                String description;
-                int weatherId;
+        int changed = 0;
+        // add to database
+        if ( batch.size() > 0 ) {
+            // Upsert so that days the server didn't revise are left alone, and observers only
+            // hear about it when something actually changed.  Past days are left for
+            // compactHistory(), which runs on its own once this sync is done.
+            Bundle extras = new Bundle();
+            extras.putParcelable(WeatherContract.KEY_BATCH, batch);
+            extras.putStringArray(WeatherContract.KEY_LOCATION_SETTINGS,
+                    locationSettings.toArray(new String[locationSettings.size()]));
+            extras.putStringArray(WeatherContract.KEY_CITY_NAMES,
+                    cityNames.toArray(new String[cityNames.size()]));
+            extras.putDoubleArray(WeatherContract.KEY_COORD_LATS,
+                    Arrays.copyOf(lats, locationSettings.size()));
+            extras.putDoubleArray(WeatherContract.KEY_COORD_LONGS,
+                    Arrays.copyOf(longs, locationSettings.size()));
+            Bundle result = getContext().getContentResolver().call(
+                    WeatherContract.WeatherEntry.CONTENT_URI,
+                    WeatherContract.METHOD_COMMIT_SYNC, null, extras);
+            changed = result.getInt(WeatherContract.KEY_INSERTED)
+                    + result.getInt(WeatherContract.KEY_UPDATED);
+
+            // The forecasts are stored, so from now on the server may tell us they're unchanged
+            for (ForecastFetcher.Result fetched : results) {
+                if (fetched.forecast != null && fetched.pendingCacheEntry != null) {
+                    mHttpCache.put(fetched.pendingCacheEntry);
+                }
+            }
 
-                // Get the JSON object representing the day
-                JSONObject dayForecast = weatherArray.getJSONObject(i);
+            // Widgets, Muzei and the notification all hear about it at once, from a single read
+            // of the result, before the sync returns and lets the device sleep
+            mPublisher.publish(changed > 0, preferredStatus == LOCATION_STATUS_OK);
+        }
+        Log.d(LOG_TAG, "Sync Complete. " + results.size() + " locations, " + failed
+                + " failed, " + notModified + " not modified, " + changed + " of "
+                + batch.size() + " days changed");
+        Log.d(LOG_TAG, "Forecast cache: " + mHttpCache.getHitCount() + " fresh hits, "
+                + mHttpCache.getConditionalHitCount() + " conditional hits, "
+                + mHttpCache.getMissCount() + " misses");
+        Log.d(LOG_TAG, "Forecast client: " + mHttpClient.getRequestCount() + " requests, "
+                + mHttpClient.getBytesOnWire() + " bytes on the wire, "
+                + mHttpClient.getBytesDecoded() + " decoded");
+        setLocationStatus(getContext(), preferredStatus);
+
+        // Days we were told hadn't changed still count towards how calm the weather is
+        int totalDays = batch.size() + notModified * OwmForecastSource.NUM_DAYS;
+        long today = dayTime.setJulianDay(julianStartDay);
+        scheduleNextSync(preferredStatus, changed, totalDays,
+                !hasCurrentRows(preferredLocation, today));
+    }
 
-                // Cheating to convert this to UTC time, which is what we want anyhow
-                dateTime = dayTime.setJulianDay(julianStartDay+i);
-
-                pressure = dayForecast.getDouble(OWM_PRESSURE);
-                humidity = dayForecast.getInt(OWM_HUMIDITY);
-                windSpeed = dayForecast.getDouble(OWM_WINDSPEED);
-                windDirection = dayForecast.getDouble(OWM_WIND_DIRECTION);
-
-                // Description is in a child array called "weather", which is 1 element long.
-                // That element also contains a weather code.
-                JSONObject weatherObject =
-                        dayForecast.getJSONArray(OWM_WEATHER).getJSONObject(0);
-                description = weatherObject.getString(OWM_DESCRIPTION);
-                weatherId = weatherObject.getInt(OWM_WEATHER_ID);
-
-                // Temperatures are in a child object called "temp".  Try not to name variables
-                // "temp" when working with temperature.  It confuses everybody.
-                JSONObject temperatureObject = dayForecast.getJSONObject(OWM_TEMPERATURE);
-                high = temperatureObject.getDouble(OWM_MAX);
-                low = temperatureObject.getDouble(OWM_MIN);
-
-                ContentValues weatherValues = new ContentValues();
-
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_LOC_KEY, locationId);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DATE, dateTime);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_HUMIDITY, humidity);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_PRESSURE, pressure);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WIND_SPEED, windSpeed);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_DEGREES, windDirection);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MAX_TEMP, high);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_MIN_TEMP, low);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_SHORT_DESC, description);
-                weatherValues.put(WeatherContract.WeatherEntry.COLUMN_WEATHER_ID, weatherId);
-
-                cVVector.add(weatherValues);
-            }
+    /**
+     * @return the start of today, as stored in the date column.
+     */
+    private static long getToday() {
+        Time dayTime = new Time();
+        dayTime.setToNow();
+        int julianStartDay = Time.getJulianDay(System.currentTimeMillis(), dayTime.gmtoff);
+        return new Time().setJulianDay(julianStartDay);
+    }
 
-            int inserted = 0;
-            // add to database
-            if ( cVVector.size() > 0 ) {
-                ContentValues[] cvArray = new ContentValues[cVVector.size()];
-                cVVector.toArray(cvArray);
-                getContext().getContentResolver().bulkInsert(WeatherContract.WeatherEntry.CONTENT_URI, cvArray);
-
-                // delete old data so we don't build up an endless history
-                getContext().getContentResolver().delete(WeatherContract.WeatherEntry.CONTENT_URI,
-                        WeatherContract.WeatherEntry.COLUMN_DATE + " <= ?",
-                        new String[] {Long.toString(dayTime.setJulianDay(julianStartDay-1))});
-
-                updateWidgets();
-                updateMuzei();
-                notifyWeather();
-            }
-            Log.d(LOG_TAG, "Sync Complete. " + cVVector.size() + " Inserted");
-            setLocationStatus(getContext(), LOCATION_STATUS_OK);
+    /**
+     * @return true if the location has a stored day from today onwards.
+     */
+    private boolean hasCurrentRows(String locationSetting, long today) {
+        Cursor cursor = getContext().getContentResolver().query(
+                WeatherContract.WeatherEntry.buildWeatherLocation(locationSetting),
+                new String[]{WeatherContract.WeatherEntry.COLUMN_DATE},
+                null,
+                null,
+                WeatherContract.WeatherEntry.COLUMN_DATE + " DESC");
+        if (cursor == null) {
+            return false;
+        }
+        try {
+            // The last stored day is enough: if even that is in the past, so is the first
+            return cursor.moveToFirst() && cursor.getLong(0) >= today;
+        } finally {
+            cursor.close();
+        }
+    }
 
-        } catch (JSONException e) {
-            Log.e(LOG_TAG, e.getMessage(), e);
-            e.printStackTrace();
-            setLocationStatus(getContext(), LOCATION_STATUS_SERVER_INVALID);
+    private void scheduleNextSync(@LocationStatus int preferredStatus, int changedDays,
+                                  int totalDays, boolean firstRowStale) {
+        int previousInterval = mScheduler.getInterval();
+        int interval = mScheduler.onSyncFinished(preferredStatus, changedDays, totalDays,
+                firstRowStale);
+        if (interval != previousInterval) {
+            Log.d(LOG_TAG, "Next sync in " + interval + "s, was " + previousInterval + "s");
+            configurePeriodicSync(getContext(), interval, SyncScheduler.getFlexTime(interval));
         }
     }
 
-    private void updateWidgets() {
+    private static SyncScheduler getScheduler(Context context) {
+        return new SyncScheduler(
+                context.getSharedPreferences(SyncScheduler.PREFS_NAME, Context.MODE_PRIVATE));
+    }
+
+    private void updateWidgets(ForecastSnapshot snapshot) {
         Context context = getContext();
         // Setting the package ensures that only components in our app will receive the broadcast
         Intent dataUpdatedIntent = new Intent(ACTION_DATA_UPDATED)
-                .setPackage(context.getPackageName());
+                .setPackage(context.getPackageName())
+                .putExtra(EXTRA_SNAPSHOT, snapshot);
         context.sendBroadcast(dataUpdatedIntent);
     }
 
-    private void updateMuzei() {
+    private void updateMuzei(ForecastSnapshot snapshot) {
         // Muzei is only compatible with Jelly Bean MR1+ devices, so there's no need to update the
         // Muzei background on lower API level devices
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
             Context context = getContext();
             context.startService(new Intent(ACTION_DATA_UPDATED)
-                    .setClass(context, WeatherMuzeiSource.class));
+                    .setClass(context, WeatherMuzeiSource.class)
+                    .putExtra(EXTRA_SNAPSHOT, snapshot));
         }
     }
 
-    private void notifyWeather() {
+    private void updateWearable(ForecastSnapshot snapshot) {
+        mWearablePublisher.publish(snapshot,
+                SunshineSettings.getInstance(getContext()).isMetric());
+        Log.d(LOG_TAG, "Wearable: " + mWearablePublisher.getWriteCount() + " writes, "
+                + mWearablePublisher.getBytesWritten() + " bytes; "
+                + mWearablePublisher.getSkipCount() + " skipped, "
+                + mWearablePublisher.getBytesSaved() + " bytes saved");
+    }
+
+    private void notifyWeather(ForecastSnapshot snapshot) {
         Context context = getContext();
         //checking the last update and notify if it' the first of the day
-        SharedPreferences prefs = PreferenceManager.getDefaultSharedPreferences(context);
-        String displayNotificationsKey = context.getString(R.string.pref_enable_notifications_key);
-        boolean displayNotifications = prefs.getBoolean(displayNotificationsKey,
-                Boolean.parseBoolean(context.getString(R.string.pref_enable_notifications_default)));
+        SunshineSettings settings = SunshineSettings.getInstance(context);
+        boolean displayNotifications = settings.areNotificationsEnabled();
 
         if ( displayNotifications ) {
 
-            String lastNotificationKey = context.getString(R.string.pref_last_notification);
-            long lastSync = prefs.getLong(lastNotificationKey, 0);
+            long lastSync = settings.getLastNotification();
 
             if (System.currentTimeMillis() - lastSync >= DAY_IN_MILLIS) {
                 // Last sync was more than 1 day ago, let's send a notification with the weather.
-                String locationQuery = Utility.getPreferredLocation(context);
-
-                Uri weatherUri = WeatherContract.WeatherEntry.buildWeatherLocationWithDate(locationQuery, System.currentTimeMillis());
-
-                // we'll query our contentProvider, as always
-                Cursor cursor = context.getContentResolver().query(weatherUri, NOTIFY_WEATHER_PROJECTION, null, null, null);
-
-                if (cursor.moveToFirst()) {
-                    int weatherId = cursor.getInt(INDEX_WEATHER_ID);
-                    double high = cursor.getDouble(INDEX_MAX_TEMP);
-                    double low = cursor.getDouble(INDEX_MIN_TEMP);
-                    String desc = cursor.getString(INDEX_SHORT_DESC);
+                // Only if the snapshot still starts with today
+                if (snapshot.getDate(0) == WeatherContract.normalizeDate(System.currentTimeMillis())) {
+                    int weatherId = snapshot.getWeatherId(0);
+                    double high = snapshot.getMaxTemp(0);
+                    double low = snapshot.getMinTemp(0);
+                    String desc = snapshot.getShortDesc(0);
 
                     int iconId = Utility.getIconResourceForWeatherCondition(weatherId);
                     Resources resources = context.getResources();
@@ -474,65 +544,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                     mNotificationManager.notify(WEATHER_NOTIFICATION_ID, mBuilder.build());
 
                     //refreshing last sync
-                    SharedPreferences.Editor editor = prefs.edit();
-                    editor.putLong(lastNotificationKey, System.currentTimeMillis());
-                    editor.commit();
+                    settings.setLastNotification(System.currentTimeMillis());
                 }
-                cursor.close();
             }
         }
     }
 
-    /**
-     * Helper method to handle insertion of a new location in the weather database.
-     *
-     * @param locationSetting The location string used to request updates from the server.
-     * @param cityName A human-readable city name, e.g "Mountain View"
-     * @param lat the latitude of the city
-     * @param lon the longitude of the city
-     * @return the row ID of the added location.
-     */
-    long addLocation(String locationSetting, String cityName, double lat, double lon) {
-        long locationId;
-
-        // First, check if the location with this city name exists in the db
-        Cursor locationCursor = getContext().getContentResolver().query(
-                WeatherContract.LocationEntry.CONTENT_URI,
-                new String[]{WeatherContract.LocationEntry._ID},
-                WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING + " = ?",
-                new String[]{locationSetting},
-                null);
-
-        if (locationCursor.moveToFirst()) {
-            int locationIdIndex = locationCursor.getColumnIndex(WeatherContract.LocationEntry._ID);
-            locationId = locationCursor.getLong(locationIdIndex);
-        } else {
-            // Now that the content provider is set up, inserting rows of data is pretty simple.
-            // First create a ContentValues object to hold the data you want to insert.
-            ContentValues locationValues = new ContentValues();
-
-            // Then add the data, along with the corresponding name of the data type,
-            // so the content provider knows what kind of value is being inserted.
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_CITY_NAME, cityName);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_LOCATION_SETTING, locationSetting);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LAT, lat);
-            locationValues.put(WeatherContract.LocationEntry.COLUMN_COORD_LONG, lon);
-
-            // Finally, insert location data into the database.
-            Uri insertedUri = getContext().getContentResolver().insert(
-                    WeatherContract.LocationEntry.CONTENT_URI,
-                    locationValues
-            );
-
-            // The resulting URI contains the ID for the row.  Extract the locationId from the Uri.
-            locationId = ContentUris.parseId(insertedUri);
-        }
-
-        locationCursor.close();
-        // Wait, that worked?  Yes!
-        return locationId;
-    }
-
     /**
      * Helper method to schedule the sync adapter periodic execution
      */
@@ -552,6 +569,25 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         }
     }
 
+    /**
+     * Sends today's forecast of the preferred location to the watch again, in the given units,
+     * on a background thread.  Syncs send it in the units set at the time, so without this a
+     * change of units only reaches the watch with the next sync.  Goes through the same
+     * publisher as the sync.
+     */
+    public static void updateWearable(Context context, final boolean metric) {
+        final Context appContext = context.getApplicationContext();
+        sWearableExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ForecastSnapshot snapshot = ForecastSnapshot.query(
+                        appContext.getContentResolver(),
+                        Utility.getPreferredLocation(appContext), System.currentTimeMillis());
+                WearablePublisher.getInstance(appContext).publish(snapshot, metric);
+            }
+        });
+    }
+
     /**
      * Helper method to have the sync adapter sync immediately
      * @param context The context used to access the account service
@@ -564,6 +600,38 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
                 context.getString(R.string.content_authority), bundle);
     }
 
+    /**
+     * Helper method to have the sync adapter fetch extra locations immediately, along with the
+     * ones it already tracks, and keep them up to date until {@link #untrackLocations}.
+     * @param context The context used to access the account service
+     * @param locationSettings The location strings to request from the server
+     */
+    public static void syncLocations(Context context, String... locationSettings) {
+        StringBuilder locations = new StringBuilder();
+        for (String locationSetting : locationSettings) {
+            if (locations.length() > 0) {
+                locations.append(LOCATION_SEPARATOR);
+            }
+            locations.append(locationSetting);
+        }
+        Bundle bundle = new Bundle();
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+        bundle.putBoolean(ContentResolver.SYNC_EXTRAS_MANUAL, true);
+        bundle.putString(EXTRA_LOCATIONS, locations.toString());
+        ContentResolver.requestSync(getSyncAccount(context),
+                context.getString(R.string.content_authority), bundle);
+    }
+
+    /**
+     * Helper method to stop syncing locations added with {@link #syncLocations}.  Their stored
+     * forecasts are left to age out; the preferred location is always synced.
+     * @param context The context used to access the settings
+     * @param locationSettings The location strings to stop syncing
+     */
+    public static void untrackLocations(Context context, String... locationSettings) {
+        SunshineSettings.getInstance(context).untrackLocations(Arrays.asList(locationSettings));
+    }
+
     /**
      * Helper method to get the fake account to be used with SyncAdapter, or make a new one
      * if the fake account doesn't exist yet.  If we make a new account, we call the
@@ -607,7 +675,9 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
         /*
          * Since we've created an account
          */
-        SunshineSyncAdapter.configurePeriodicSync(context, SYNC_INTERVAL, SYNC_FLEXTIME);
+        int interval = getScheduler(context).getInterval();
+        SunshineSyncAdapter.configurePeriodicSync(context, interval,
+                SyncScheduler.getFlexTime(interval));
 
         /*
          * Without calling setSyncAutomatically, our periodic sync will not be enabled.
@@ -625,15 +695,12 @@ public class SunshineSyncAdapter extends AbstractThreadedSyncAdapter {
     }
 
     /**
-     * Sets the location status into shared preference.  This function should not be called from
-     * the UI thread because it uses commit to write to the shared preferences.
-     * @param c Context to get the PreferenceManager from.
+     * Sets the location status into shared preference.  The write itself happens in the
+     * background, so this is safe to call from any thread.
+     * @param c Context to get the settings from.
      * @param locationStatus The IntDef value to set
      */
     static private void setLocationStatus(Context c, @LocationStatus int locationStatus){
-        SharedPreferences sp = PreferenceManager.getDefaultSharedPreferences(c);
-        SharedPreferences.Editor spe = sp.edit();
-        spe.putInt(c.getString(R.string.pref_location_status_key), locationStatus);
-        spe.commit();
+        SunshineSettings.getInstance(c).setLocationStatus(locationStatus);
     }
 }
\ No newline at end of file
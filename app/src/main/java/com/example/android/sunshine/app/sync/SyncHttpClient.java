@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.Map;
+
+/**
+ * The HTTP layer the sync adapter fetches forecasts through.  Implementations decide how
+ * connections are made and reused and how bodies are transferred; callers only ever see the
+ * decoded body as a stream.
+ */
+public interface SyncHttpClient {
+
+    /**
+     * Sends a GET and returns once the response headers have arrived.  The caller must
+     * {@link Response#close()} the response, which hands the connection back for reuse.
+     */
+    Response get(URL url, Map<String, String> requestHeaders) throws IOException;
+
+    interface Response extends Closeable {
+        int getCode();
+
+        /**
+         * @return the value of the named response header, or null if it wasn't sent.
+         */
+        String getHeader(String name);
+
+        /**
+         * @return the body, already decoded from whatever Content-Encoding it was sent with.
+         * It is decoded as it is read, never buffered whole.
+         */
+        InputStream getBody() throws IOException;
+
+        /**
+         * @return how long it took from sending the request until the response headers arrived.
+         */
+        long getTimeToFirstByteNanos();
+
+        /**
+         * @return the number of body bytes read off the network so far, before decoding.
+         */
+        long getBytesOnWire();
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.util.Log;
+
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.example.android.sunshine.app.data.WeatherContract;
+
+/**
+ * The stage after a sync that tells everybody downstream about it.
+ *
+ * The "today" snapshot is read once and the same snapshot is handed to every consumer.  This
+ * runs on the sync's own thread, while the sync still keeps the device awake.  Syncs are
+ * coalesced by content: when the snapshot is the same as the last one published, say because
+ * only other tracked locations changed, the widgets and Muzei aren't told about it again.
+ */
+public class SyncPublisher {
+    private static final String LOG_TAG = SyncPublisher.class.getSimpleName();
+
+    /**
+     * Reads the snapshot to publish.  Called on the thread that publishes.
+     */
+    public interface SnapshotLoader {
+        /**
+         * @return the snapshot, or null if there is nothing to publish.
+         */
+        ForecastSnapshot load();
+    }
+
+    /**
+     * Receives each fan-out.  Called on the thread that publishes.
+     */
+    public interface Consumer {
+        /**
+         * @param snapshot the forecast of the preferred location from today onwards.
+         * @param dataChanged true if the snapshot differs from the last one published.
+         * @param notify true if the sync asked for the notification.
+         */
+        void onPublish(ForecastSnapshot snapshot, boolean dataChanged, boolean notify);
+    }
+
+    // The last snapshot published in this process, for consumers that can't be handed one
+    private static volatile ForecastSnapshot sLatestSnapshot;
+
+    private final SnapshotLoader mLoader;
+    private final Consumer mConsumer;
+
+    // Guarded by this
+    private ForecastSnapshot mLastPublished;
+    private int mSkipCount;
+
+    public SyncPublisher(SnapshotLoader loader, Consumer consumer) {
+        mLoader = loader;
+        mConsumer = consumer;
+    }
+
+    /**
+     * Fans the current snapshot out to the consumer, unless there is nothing new to tell.
+     *
+     * @param dataChanged true if the sync changed stored weather.
+     * @param notify true if the sync asks for the notification.
+     * @return true if the consumer was called.
+     */
+    public synchronized boolean publish(boolean dataChanged, boolean notify) {
+        if (!dataChanged && !notify) {
+            return false;
+        }
+
+        ForecastSnapshot snapshot = mLoader.load();
+        if (snapshot == null || snapshot.isEmpty()) {
+            Log.d(LOG_TAG, "Nothing to publish");
+            return false;
+        }
+        if (dataChanged && snapshot.hasSameContent(mLastPublished)) {
+            // What changed isn't in the snapshot, or an earlier sync already published it
+            dataChanged = false;
+        }
+        if (!dataChanged && !notify) {
+            mSkipCount++;
+            Log.d(LOG_TAG, "Snapshot unchanged, " + mSkipCount + " fan-outs skipped");
+            return false;
+        }
+
+        mLastPublished = snapshot;
+        sLatestSnapshot = snapshot;
+        Log.d(LOG_TAG, "Publishing " + snapshot.size() + " days");
+        mConsumer.onPublish(snapshot, dataChanged, notify);
+        return true;
+    }
+
+    /**
+     * @return how many syncs had nothing to publish because the snapshot hadn't changed.
+     */
+    public synchronized int getSkipCount() {
+        return mSkipCount;
+    }
+
+    /**
+     * @return the last snapshot published in this process if it is for {@code locationSetting}
+     * and still starts on the day of {@code startDate}, otherwise null.
+     */
+    public static ForecastSnapshot getLatestSnapshot(String locationSetting, long startDate) {
+        ForecastSnapshot snapshot = sLatestSnapshot;
+        if (snapshot == null || !snapshot.getLocationSetting().equals(locationSetting)
+                || snapshot.getDate(0) < WeatherContract.normalizeDate(startDate)) {
+            return null;
+        }
+        return snapshot;
+    }
+}
@@ -0,0 +1,218 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.SharedPreferences;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+/**
+ * Picks the period of the next sync from what the previous syncs saw.
+ *
+ * <ul>
+ *     <li>Volatility: the more of the stored days the last syncs changed, the sooner we sync
+ *     again, between {@link #MIN_INTERVAL} and {@link #MAX_INTERVAL}.</li>
+ *     <li>Failure rate: a server that often fails gets asked less often.</li>
+ *     <li>Time of day: at night the period is stretched, but never past the morning.</li>
+ *     <li>Staleness: the stored forecast is never allowed to get older than
+ *     {@link #MAX_STALENESS}, and a first row that is already in the past means we sync as soon
+ *     as we can.</li>
+ *     <li>{@link SunshineSyncAdapter#LOCATION_STATUS_SERVER_DOWN} backs off exponentially, from
+ *     {@link #MIN_BACKOFF} up to {@link #MAX_BACKOFF}, and trumps all of the above.</li>
+ * </ul>
+ *
+ * All periods are in seconds, like the ones ContentResolver takes.  The history is kept in its
+ * own SharedPreferences so it survives the process.
+ */
+public class SyncScheduler {
+
+    /**
+     * Where "now" comes from, so tests can move time along.
+     */
+    public interface Clock {
+        long currentTimeMillis();
+    }
+
+    public static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    static final String PREFS_NAME = "sync_scheduler";
+
+    // The fixed period we used to sync at, before there was any history
+    public static final int DEFAULT_INTERVAL = 60 * 180;
+    static final int MIN_INTERVAL = 60 * 60;
+    static final int MAX_INTERVAL = 60 * 60 * 6;
+
+    static final int MIN_BACKOFF = 60 * 15;
+    static final int MAX_BACKOFF = 60 * 60 * 6;
+
+    static final int MAX_STALENESS = 60 * 60 * 12;
+
+    // Local hours during which nobody is looking at the forecast
+    static final int NIGHT_START_HOUR = 0;
+    static final int NIGHT_END_HOUR = 6;
+    static final int NIGHT_FACTOR = 2;
+
+    // Weight of the latest sync in the running averages
+    static final float VOLATILITY_WEIGHT = 0.5f;
+    static final float FAILURE_WEIGHT = 0.3f;
+
+    private static final String KEY_VOLATILITY = "volatility";
+    private static final String KEY_FAILURE_RATE = "failure_rate";
+    private static final String KEY_CONSECUTIVE_SERVER_DOWN = "consecutive_server_down";
+    private static final String KEY_LAST_SUCCESS = "last_success";
+    private static final String KEY_INTERVAL = "interval";
+
+    private static final long SECOND_IN_MILLIS = 1000;
+
+    private final SharedPreferences mPrefs;
+    private final Clock mClock;
+    private final TimeZone mTimeZone;
+
+    public SyncScheduler(SharedPreferences prefs) {
+        this(prefs, SYSTEM_CLOCK, TimeZone.getDefault());
+    }
+
+    public SyncScheduler(SharedPreferences prefs, Clock clock, TimeZone timeZone) {
+        mPrefs = prefs;
+        mClock = clock;
+        mTimeZone = timeZone;
+    }
+
+    /**
+     * @return the period last returned by {@link #onSyncFinished}, or {@link #DEFAULT_INTERVAL}.
+     */
+    public int getInterval() {
+        return mPrefs.getInt(KEY_INTERVAL, DEFAULT_INTERVAL);
+    }
+
+    /**
+     * @return the flex time to go with a period; as before, a third of it.
+     */
+    public static int getFlexTime(int interval) {
+        return interval / 3;
+    }
+
+    /**
+     * Records how a sync went and works out when the next one should be.
+     *
+     * @param status the status of the preferred location.
+     * @param changedDays how many stored days the sync inserted or updated.
+     * @param totalDays how many days the sync received, including unchanged ones.
+     * @param firstRowStale whether the first stored day of the preferred location is already in
+     *                      the past.
+     * @return the period until the next sync, in seconds.
+     */
+    public int onSyncFinished(@SunshineSyncAdapter.LocationStatus int status,
+                              int changedDays, int totalDays, boolean firstRowStale) {
+        long now = mClock.currentTimeMillis();
+        float volatility = mPrefs.getFloat(KEY_VOLATILITY, 0f);
+        float failureRate = mPrefs.getFloat(KEY_FAILURE_RATE, 0f);
+        int consecutiveServerDown = mPrefs.getInt(KEY_CONSECUTIVE_SERVER_DOWN, 0);
+        long lastSuccess = mPrefs.getLong(KEY_LAST_SUCCESS, 0);
+
+        boolean failed = status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN
+                || status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_INVALID;
+        failureRate += FAILURE_WEIGHT * ((failed ? 1f : 0f) - failureRate);
+        if (status == SunshineSyncAdapter.LOCATION_STATUS_OK) {
+            // A sync that found nothing new counts as calm weather
+            float changed = totalDays > 0 ? (float) changedDays / totalDays : 0f;
+            volatility += VOLATILITY_WEIGHT * (changed - volatility);
+            lastSuccess = now;
+        }
+        consecutiveServerDown = status == SunshineSyncAdapter.LOCATION_STATUS_SERVER_DOWN
+                ? consecutiveServerDown + 1 : 0;
+
+        int interval;
+        if (consecutiveServerDown > 0) {
+            interval = computeBackoff(consecutiveServerDown);
+        } else if (status == SunshineSyncAdapter.LOCATION_STATUS_INVALID) {
+            // Asking again soon won't make the location valid; the user has to change it
+            interval = MAX_INTERVAL;
+        } else {
+            interval = computeInterval(now, volatility, failureRate, lastSuccess, firstRowStale);
+        }
+
+        mPrefs.edit()
+                .putFloat(KEY_VOLATILITY, volatility)
+                .putFloat(KEY_FAILURE_RATE, failureRate)
+                .putInt(KEY_CONSECUTIVE_SERVER_DOWN, consecutiveServerDown)
+                .putLong(KEY_LAST_SUCCESS, lastSuccess)
+                .putInt(KEY_INTERVAL, interval)
+                .apply();
+        return interval;
+    }
+
+    static int computeBackoff(int consecutiveServerDown) {
+        // Shift at most far enough to pass MAX_BACKOFF, so it can't overflow
+        int shift = Math.min(consecutiveServerDown - 1, 16);
+        return (int) Math.min((long) MIN_BACKOFF << shift, MAX_BACKOFF);
+    }
+
+    int computeInterval(long now, float volatility, float failureRate, long lastSuccess,
+                        boolean firstRowStale) {
+        if (firstRowStale) {
+            return MIN_INTERVAL;
+        }
+
+        // Calm weather syncs at MAX_INTERVAL, weather that changes every time at MIN_INTERVAL
+        float interval = MAX_INTERVAL - volatility * (MAX_INTERVAL - MIN_INTERVAL);
+
+        // Up to twice as long when the server fails all the time
+        interval *= 1f + failureRate;
+
+        if (isNight(now)) {
+            int untilMorning = secondsUntilMorning(now);
+            interval = Math.max(interval, Math.min(interval * NIGHT_FACTOR, untilMorning));
+        }
+
+        // Never let what we have get older than MAX_STALENESS
+        if (lastSuccess > 0) {
+            long age = (now - lastSuccess) / SECOND_IN_MILLIS;
+            interval = Math.min(interval, Math.max(MAX_STALENESS - age, MIN_INTERVAL));
+        }
+
+        return Math.max(MIN_INTERVAL, Math.min(Math.round(interval), MAX_STALENESS));
+    }
+
+    private boolean isNight(long now) {
+        int hour = getCalendar(now).get(Calendar.HOUR_OF_DAY);
+        return hour >= NIGHT_START_HOUR && hour < NIGHT_END_HOUR;
+    }
+
+    private int secondsUntilMorning(long now) {
+        Calendar morning = getCalendar(now);
+        morning.set(Calendar.HOUR_OF_DAY, NIGHT_END_HOUR);
+        morning.set(Calendar.MINUTE, 0);
+        morning.set(Calendar.SECOND, 0);
+        morning.set(Calendar.MILLISECOND, 0);
+        if (morning.getTimeInMillis() <= now) {
+            morning.add(Calendar.DAY_OF_MONTH, 1);
+        }
+        return (int) ((morning.getTimeInMillis() - now) / SECOND_IN_MILLIS);
+    }
+
+    private Calendar getCalendar(long now) {
+        Calendar calendar = Calendar.getInstance(mTimeZone);
+        calendar.setTimeInMillis(now);
+        return calendar;
+    }
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * A {@link SyncHttpClient} on top of HttpURLConnection.
+ *
+ * It asks for gzip or deflate and decodes the body itself, so it can count what actually came
+ * over the wire.  Connections are never disconnect()ed: a response is read to the end and closed
+ * instead, which returns its connection to the platform's keep-alive pool so the next location
+ * (or the next sync) can reuse it without a new TCP handshake.
+ */
+public class UrlConnectionSyncHttpClient implements SyncHttpClient {
+
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 15 * 1000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 20 * 1000;
+
+    private static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    // Left-over body bytes we are willing to read just to keep a connection reusable
+    private static final int MAX_DRAIN_BYTES = 64 * 1024;
+
+    private final int mConnectTimeoutMs;
+    private final int mReadTimeoutMs;
+
+    private final AtomicLong mRequestCount = new AtomicLong();
+    private final AtomicLong mBytesOnWire = new AtomicLong();
+    private final AtomicLong mBytesDecoded = new AtomicLong();
+    private final AtomicLong mTimeToFirstByteNanos = new AtomicLong();
+
+    public UrlConnectionSyncHttpClient() {
+        this(DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+
+    public UrlConnectionSyncHttpClient(int connectTimeoutMs, int readTimeoutMs) {
+        mConnectTimeoutMs = connectTimeoutMs;
+        mReadTimeoutMs = readTimeoutMs;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    /**
+     * @return the body bytes of every closed response, as they were transferred.
+     */
+    public long getBytesOnWire() {
+        return mBytesOnWire.get();
+    }
+
+    /**
+     * @return the body bytes of every closed response, after decoding.
+     */
+    public long getBytesDecoded() {
+        return mBytesDecoded.get();
+    }
+
+    public long getTotalTimeToFirstByteNanos() {
+        return mTimeToFirstByteNanos.get();
+    }
+
+    @Override
+    public Response get(URL url, Map<String, String> requestHeaders) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod("GET");
+        connection.setConnectTimeout(mConnectTimeoutMs);
+        connection.setReadTimeout(mReadTimeoutMs);
+        // Callers do their own caching
+        connection.setUseCaches(false);
+        // Setting this ourselves turns off the platform's transparent gzip, which would hide
+        // the compressed size from us
+        connection.setRequestProperty("Accept-Encoding", ACCEPT_ENCODING);
+        if (requestHeaders != null) {
+            for (Map.Entry<String, String> header : requestHeaders.entrySet()) {
+                connection.setRequestProperty(header.getKey(), header.getValue());
+            }
+        }
+
+        long start = System.nanoTime();
+        int code;
+        try {
+            code = connection.getResponseCode();
+        } catch (IOException e) {
+            // Nothing to reuse after a failed exchange
+            connection.disconnect();
+            throw e;
+        }
+        long timeToFirstByte = System.nanoTime() - start;
+        mRequestCount.incrementAndGet();
+        mTimeToFirstByteNanos.addAndGet(timeToFirstByte);
+        return new UrlConnectionResponse(connection, code, timeToFirstByte);
+    }
+
+    private final class UrlConnectionResponse implements Response {
+        private final HttpURLConnection mConnection;
+        private final int mCode;
+        private final long mTimeToFirstByteNanos;
+
+        private CountingInputStream mWire;
+        private CountingInputStream mDecoded;
+        private boolean mClosed;
+
+        UrlConnectionResponse(HttpURLConnection connection, int code, long timeToFirstByteNanos) {
+            mConnection = connection;
+            mCode = code;
+            mTimeToFirstByteNanos = timeToFirstByteNanos;
+        }
+
+        @Override
+        public int getCode() {
+            return mCode;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return mConnection.getHeaderField(name);
+        }
+
+        @Override
+        public InputStream getBody() throws IOException {
+            if (mDecoded != null) {
+                return mDecoded;
+            }
+            // Like getInputStream(), this throws for 4xx and 5xx responses
+            mWire = new CountingInputStream(mConnection.getInputStream());
+            String encoding = mConnection.getContentEncoding();
+            InputStream decoded;
+            if ("gzip".equalsIgnoreCase(encoding)) {
+                decoded = new GZIPInputStream(mWire);
+            } else if ("deflate".equalsIgnoreCase(encoding)) {
+                // HTTP's deflate is a zlib stream, which is what Inflater expects by default
+                decoded = new InflaterInputStream(mWire);
+            } else {
+                decoded = mWire;
+            }
+            mDecoded = new CountingInputStream(decoded);
+            return mDecoded;
+        }
+
+        @Override
+        public long getTimeToFirstByteNanos() {
+            return mTimeToFirstByteNanos;
+        }
+
+        @Override
+        public long getBytesOnWire() {
+            return mWire == null ? 0 : mWire.count;
+        }
+
+        @Override
+        public void close() {
+            if (mClosed) {
+                return;
+            }
+            mClosed = true;
+            if (mDecoded == null) {
+                // Bodiless response (a 304), or one the caller never read
+                try {
+                    if (mCode < HttpURLConnection.HTTP_BAD_REQUEST) {
+                        getBody();
+                    }
+                } catch (IOException e) {
+                    mConnection.disconnect();
+                    return;
+                }
+            }
+            if (mDecoded == null) {
+                mConnection.disconnect();
+                return;
+            }
+            try {
+                // A parser stops at the end of the JSON, which can leave the gzip trailer unread.
+                // The connection only goes back to the pool once the body has been consumed.
+                drain(mWire);
+                mDecoded.close();
+            } catch (IOException e) {
+                mConnection.disconnect();
+            } finally {
+                mBytesOnWire.addAndGet(mWire.count);
+                mBytesDecoded.addAndGet(mDecoded.count);
+            }
+        }
+    }
+
+    private static void drain(InputStream in) throws IOException {
+        byte[] buffer = new byte[1024];
+        int drained = 0;
+        int read;
+        while (drained < MAX_DRAIN_BYTES && (read = in.read(buffer)) != -1) {
+            drained += read;
+        }
+        if (drained >= MAX_DRAIN_BYTES) {
+            throw new IOException("Too much left over to keep the connection");
+        }
+    }
+
+    private static final class CountingInputStream extends FilterInputStream {
+        long count;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b != -1) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                count += read;
+            }
+            return read;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(n);
+            count += skipped;
+            return skipped;
+        }
+    }
+}
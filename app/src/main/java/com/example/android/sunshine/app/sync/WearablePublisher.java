@@ -0,0 +1,256 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.sync;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+
+import com.example.android.sunshine.app.Utility;
+import com.example.android.sunshine.app.data.ForecastSnapshot;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.Asset;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataMapRequest;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends today's forecast to the watch face after a sync, without any UI around.
+ *
+ * The watch only hears about it when what it shows has changed: the high, the low, the
+ * condition or the units they are in.  A hash of those is kept in private preferences, so
+ * syncs that bring the same "today", in this process or a later one, don't connect to the
+ * Data Layer at all.  When they have changed, the client connects once for the batch, writes
+ * the item and disconnects.
+ *
+ * Blocks, so it must be called off the main thread.
+ */
+public class WearablePublisher {
+    private static final String LOG_TAG = WearablePublisher.class.getSimpleName();
+
+    static final String PREFS_NAME = "wearable_publisher";
+    // The hash of what the watch was last sent, and how many bytes that took
+    private static final String KEY_CONTENT_HASH = "content_hash";
+    private static final String KEY_ITEM_BYTES = "item_bytes";
+
+    // DataItem keys, shared with the watch face
+    public static final String DATAITEM_TEMP_PATH = "/DATAITEM_TEMP_PATH";
+    public static final String DATAITEM_TEMP_MAX = "DATAITEM_TEMP_MAX";
+    public static final String DATAITEM_TEMP_MIN = "DATAITEM_TEMP_MIN";
+    public static final String DATAITEM_TEMP_IMAGE = "DATAITEM_TEMP_IMAGE";
+
+    /**
+     * Where the items go.  Every call is made on the publishing thread.
+     */
+    public interface DataLayer {
+        /**
+         * @return true if connected, and {@link #disconnect()} has to be called.
+         */
+        boolean connect();
+
+        /**
+         * @return true if the item was stored; it reaches the watch from there.
+         */
+        boolean putDataItem(PutDataRequest request);
+
+        void disconnect();
+    }
+
+    private static WearablePublisher sInstance;
+
+    private final SharedPreferences mPrefs;
+    private final Resources mResources;
+    private final DataLayer mDataLayer;
+
+    // Guarded by this
+    private int mWriteCount;
+    private int mSkipCount;
+    private long mBytesWritten;
+    private long mBytesSaved;
+
+    public WearablePublisher(SharedPreferences prefs, Resources resources, DataLayer dataLayer) {
+        mPrefs = prefs;
+        mResources = resources;
+        mDataLayer = dataLayer;
+    }
+
+    /**
+     * @return the publisher sending to the watch over the Wearable API.  There is one per
+     * process, so publishes from the sync and from elsewhere take turns and the stored hash
+     * always matches what the watch was last sent.
+     */
+    public static synchronized WearablePublisher getInstance(Context context) {
+        if (sInstance == null) {
+            Context appContext = context.getApplicationContext();
+            sInstance = new WearablePublisher(
+                    appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE),
+                    appContext.getResources(),
+                    new WearableDataLayer(appContext));
+        }
+        return sInstance;
+    }
+
+    /**
+     * Sends the first day of {@code snapshot}, in the given units, unless the watch already
+     * has it.
+     *
+     * @return true if an item was written.
+     */
+    public synchronized boolean publish(ForecastSnapshot snapshot, boolean metric) {
+        if (snapshot == null || snapshot.isEmpty()) {
+            return false;
+        }
+        double max = snapshot.getMaxTemp(0);
+        double min = snapshot.getMinTemp(0);
+        int weatherId = snapshot.getWeatherId(0);
+        long hash = contentHash(max, min, weatherId, metric);
+        if (mPrefs.contains(KEY_CONTENT_HASH) && mPrefs.getLong(KEY_CONTENT_HASH, 0) == hash) {
+            mSkipCount++;
+            mBytesSaved += mPrefs.getInt(KEY_ITEM_BYTES, 0);
+            Log.d(LOG_TAG, "Watch is up to date");
+            return false;
+        }
+
+        byte[] art = encodeArt(weatherId);
+        PutDataMapRequest putDataMapRequest = PutDataMapRequest.create(DATAITEM_TEMP_PATH);
+        putDataMapRequest.getDataMap().putDouble(DATAITEM_TEMP_MAX, toUnits(max, metric));
+        putDataMapRequest.getDataMap().putDouble(DATAITEM_TEMP_MIN, toUnits(min, metric));
+        if (art != null) {
+            putDataMapRequest.getDataMap().putAsset(DATAITEM_TEMP_IMAGE,
+                    Asset.createFromBytes(art));
+        }
+        PutDataRequest request = putDataMapRequest.asPutDataRequest();
+        int bytes = request.getData().length + (art != null ? art.length : 0);
+
+        if (!mDataLayer.connect()) {
+            // The hash is left alone, so the next batch tries again
+            Log.w(LOG_TAG, "Couldn't connect to the Data Layer");
+            return false;
+        }
+        boolean stored;
+        try {
+            stored = mDataLayer.putDataItem(request);
+        } finally {
+            mDataLayer.disconnect();
+        }
+        if (!stored) {
+            Log.e(LOG_TAG, "Failed to store data in the dataItem: " + DATAITEM_TEMP_PATH);
+            return false;
+        }
+        mPrefs.edit()
+                .putLong(KEY_CONTENT_HASH, hash)
+                .putInt(KEY_ITEM_BYTES, bytes)
+                .apply();
+        mWriteCount++;
+        mBytesWritten += bytes;
+        Log.d(LOG_TAG, "Sent " + bytes + " bytes to " + DATAITEM_TEMP_PATH);
+        return true;
+    }
+
+    /**
+     * @return the number of items written to the Data Layer.
+     */
+    public synchronized int getWriteCount() {
+        return mWriteCount;
+    }
+
+    /**
+     * @return the number of publishes skipped because the watch already had the content.
+     */
+    public synchronized int getSkipCount() {
+        return mSkipCount;
+    }
+
+    public synchronized long getBytesWritten() {
+        return mBytesWritten;
+    }
+
+    /**
+     * @return the bytes the skipped publishes would have written.
+     */
+    public synchronized long getBytesSaved() {
+        return mBytesSaved;
+    }
+
+    static long contentHash(double max, double min, int weatherId, boolean metric) {
+        long hash = Double.doubleToLongBits(max);
+        hash = 31 * hash + Double.doubleToLongBits(min);
+        hash = 31 * hash + weatherId;
+        hash = 31 * hash + (metric ? 1 : 0);
+        return hash;
+    }
+
+    // The watch face shows the temperatures as they come, so send them in the user's units
+    private static double toUnits(double temperature, boolean metric) {
+        return metric ? temperature : (temperature * 1.8) + 32;
+    }
+
+    private byte[] encodeArt(int weatherId) {
+        int artResource = Utility.getArtResourceForWeatherCondition(weatherId);
+        if (artResource == -1) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeResource(mResources, artResource);
+        if (bitmap == null) {
+            return null;
+        }
+        ByteArrayOutputStream byteStream = new ByteArrayOutputStream();
+        bitmap.compress(Bitmap.CompressFormat.PNG, 100, byteStream);
+        bitmap.recycle();
+        return byteStream.toByteArray();
+    }
+
+    /**
+     * The Data Layer of the Wearable API.  One client is kept and connected once per publish.
+     */
+    static class WearableDataLayer implements DataLayer {
+        private static final long CONNECT_TIMEOUT_SECONDS = 30;
+        private static final long PUT_TIMEOUT_SECONDS = 30;
+
+        private final GoogleApiClient mGoogleApiClient;
+
+        WearableDataLayer(Context context) {
+            mGoogleApiClient = new GoogleApiClient.Builder(context.getApplicationContext())
+                    .addApi(Wearable.API)
+                    .build();
+        }
+
+        @Override
+        public boolean connect() {
+            return mGoogleApiClient.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .isSuccess();
+        }
+
+        @Override
+        public boolean putDataItem(PutDataRequest request) {
+            DataApi.DataItemResult result = Wearable.DataApi.putDataItem(mGoogleApiClient,
+                    request).await(PUT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            return result.getStatus().isSuccess();
+        }
+
+        @Override
+        public void disconnect() {
+            mGoogleApiClient.disconnect();
+        }
+    }
+}
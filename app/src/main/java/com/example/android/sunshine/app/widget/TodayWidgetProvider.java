@@ -22,6 +22,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.support.annotation.NonNull;
 
+import com.example.android.sunshine.app.data.ForecastSnapshot;
 import com.example.android.sunshine.app.sync.SunshineSyncAdapter;
 
 /**
@@ -47,7 +48,14 @@ public class TodayWidgetProvider extends AppWidgetProvider {
     public void onReceive(@NonNull Context context, @NonNull Intent intent) {
         super.onReceive(context, intent);
         if (SunshineSyncAdapter.ACTION_DATA_UPDATED.equals(intent.getAction())) {
-            context.startService(new Intent(context, TodayWidgetIntentService.class));
+            // Pass the sync's snapshot along so the service doesn't have to read it again
+            Intent serviceIntent = new Intent(context, TodayWidgetIntentService.class);
+            ForecastSnapshot snapshot =
+                    intent.getParcelableExtra(SunshineSyncAdapter.EXTRA_SNAPSHOT);
+            if (snapshot != null) {
+                serviceIntent.putExtra(SunshineSyncAdapter.EXTRA_SNAPSHOT, snapshot);
+            }
+            context.startService(serviceIntent);
         }
     }
 }
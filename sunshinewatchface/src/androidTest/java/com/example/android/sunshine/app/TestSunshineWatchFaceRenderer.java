@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.os.Debug;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import com.example.android.sunshine.app.utils.AllocationCounter;
+import com.example.android.sunshine.app.utils.CountingCanvas;
+
+import java.util.Calendar;
+import java.util.Locale;
+
+/*
+    Checks that the digits match what String.format wrote before, that drawing every minute
+    of a day allocates nothing once the day's date has been formatted, and that the static layer
+    is only drawn again when something on it changes.  Counts the draw calls and CPU time of a
+    frame with and without the layer.
+ */
+public class TestSunshineWatchFaceRenderer extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestSunshineWatchFaceRenderer.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    // Short of a whole day, so a day that loses an hour to daylight saving doesn't roll over
+    private static final int MINUTES_PER_DAY = 23 * 60;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    private SunshineWatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+    private long mMidnight;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mRenderer = new SunshineWatchFaceRenderer(mContext.getResources());
+        mRenderer.setRound(mContext.getResources(), false);
+        mRenderer.setTemperatures(25, 15);
+        mRenderer.setWeatherIcon(
+                BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear));
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        mMidnight = calendar.getTimeInMillis();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testFormatNumber() {
+        char[] buffer = new char[2];
+        for (int i = 0; i < 100; i++) {
+            int length = SunshineWatchFaceRenderer.formatNumber(i, 2, '0', buffer);
+            assertEquals(String.format(Locale.US, "%02d", i), new String(buffer, 0, length));
+        }
+        for (int i = 1; i <= 12; i++) {
+            int length = SunshineWatchFaceRenderer.formatNumber(i, 1, '0', buffer);
+            assertEquals(String.valueOf(i), new String(buffer, 0, length));
+        }
+    }
+
+    public void testDrawAllocatesNothing() {
+        for (boolean is24Hour : new boolean[]{true, false}) {
+            for (boolean ambient : new boolean[]{false, true}) {
+                mRenderer.set24HourFormat(is24Hour);
+                mRenderer.setAmbientMode(ambient);
+                assertEquals("Error: drawing allocated in " + (is24Hour ? "24" : "12")
+                                + "-hour " + (ambient ? "ambient" : "interactive") + " mode",
+                        0, countDayOfFrames());
+            }
+        }
+    }
+
+    public void testNewTemperaturesAreNotReformattedPerFrame() {
+        mRenderer.setTemperatures(-3.5, -12);
+        assertEquals(0, countDayOfFrames());
+    }
+
+    public void testStaticLayerRedrawnOnlyOnChanges() {
+        mRenderer.draw(mCanvas, mBounds, mMidnight, true);
+        int builds = mRenderer.getStaticLayerBuildCount();
+        for (int minute = 1; minute < 60; minute++) {
+            mRenderer.draw(mCanvas, mBounds, mMidnight + minute * MINUTE_IN_MILLIS, true);
+        }
+        assertEquals("Error: the time alone redrew the static layer", builds,
+                mRenderer.getStaticLayerBuildCount());
+
+        mRenderer.setTemperatures(30, 20);
+        mRenderer.draw(mCanvas, mBounds, mMidnight, true);
+        assertEquals(++builds, mRenderer.getStaticLayerBuildCount());
+        mRenderer.setAmbientMode(true);
+        mRenderer.draw(mCanvas, mBounds, mMidnight, true);
+        assertEquals(++builds, mRenderer.getStaticLayerBuildCount());
+        mRenderer.draw(mCanvas, mBounds, mMidnight, false);
+        assertEquals("Error: a peek card didn't hide the weather", ++builds,
+                mRenderer.getStaticLayerBuildCount());
+        // Over a day later, so a day that gains an hour to daylight saving can't keep it on today
+        mRenderer.draw(mCanvas, mBounds, mMidnight + 26 * 60 * MINUTE_IN_MILLIS, false);
+        assertEquals("Error: the date wasn't redrawn on a new day", ++builds,
+                mRenderer.getStaticLayerBuildCount());
+    }
+
+    public void testLayeredMatchesFlat() {
+        SunshineWatchFaceRenderer flat = new SunshineWatchFaceRenderer(
+                mContext.getResources(), false);
+        flat.setRound(mContext.getResources(), false);
+        flat.setTemperatures(25, 15);
+        flat.setWeatherIcon(
+                BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear));
+        Bitmap flatBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+
+        long now = mMidnight + 754 * MINUTE_IN_MILLIS;
+        mRenderer.draw(mCanvas, mBounds, now, true);
+        flat.draw(new Canvas(flatBitmap), mBounds, now, true);
+        assertTrue("Error: the layered frame differs from the flat one",
+                mBitmap.sameAs(flatBitmap));
+        flatBitmap.recycle();
+    }
+
+    @LargeTest
+    public void testBenchmarkLayers() {
+        SunshineWatchFaceRenderer flat = new SunshineWatchFaceRenderer(
+                mContext.getResources(), false);
+        flat.setRound(mContext.getResources(), false);
+        flat.setTemperatures(25, 15);
+        flat.setWeatherIcon(
+                BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear));
+        CountingCanvas canvas = new CountingCanvas(mBitmap);
+
+        for (boolean ambient : new boolean[]{false, true}) {
+            flat.setAmbientMode(ambient);
+            mRenderer.setAmbientMode(ambient);
+            // The first frame of each builds what it caches
+            flat.draw(canvas, mBounds, mMidnight, true);
+            mRenderer.draw(canvas, mBounds, mMidnight, true);
+
+            canvas.resetDrawCount();
+            long flatNanos = drawDay(flat, canvas);
+            int flatCalls = canvas.getDrawCount();
+
+            canvas.resetDrawCount();
+            long layeredNanos = drawDay(mRenderer, canvas);
+            int layeredCalls = canvas.getDrawCount();
+            assertTrue(layeredCalls < flatCalls);
+
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%s frames: flat %d draw calls, %d us CPU; layered %d draw calls, %d us CPU",
+                    ambient ? "Ambient" : "Interactive",
+                    flatCalls / (MINUTES_PER_DAY - 1),
+                    flatNanos / (MINUTES_PER_DAY - 1) / 1000,
+                    layeredCalls / (MINUTES_PER_DAY - 1),
+                    layeredNanos / (MINUTES_PER_DAY - 1) / 1000));
+        }
+    }
+
+    /**
+     * @return the CPU time this thread spent drawing each minute of the day, after the first.
+     */
+    private long drawDay(SunshineWatchFaceRenderer renderer, Canvas canvas) {
+        long start = Debug.threadCpuTimeNanos();
+        for (int minute = 1; minute < MINUTES_PER_DAY; minute++) {
+            renderer.draw(canvas, mBounds, mMidnight + minute * MINUTE_IN_MILLIS, true);
+        }
+        return Debug.threadCpuTimeNanos() - start;
+    }
+
+    /**
+     * @return the allocations made drawing each minute of the day, after the first.
+     */
+    private int countDayOfFrames() {
+        // The first frame of a day formats the date
+        mRenderer.draw(mCanvas, mBounds, mMidnight, true);
+        return new AllocationCounter() {
+            private int mMinute;
+
+            @Override
+            protected void run() {
+                mMinute++;
+                mRenderer.draw(mCanvas, mBounds, mMidnight + mMinute * MINUTE_IN_MILLIS, true);
+            }
+        }.count(MINUTES_PER_DAY - 1);
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Checks that the timer sleeps until the minute turns and that wake-ups only draw when
+    something visible changed, and counts the wake-ups and frames of an hour on a fake clock
+    against the one-minute timer the face had before, which ran from whenever it was started.
+ */
+public class TestTickScheduler extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestTickScheduler.class.getSimpleName();
+
+    private static final int SIZE = 320;
+    private static final long SECOND_IN_MILLIS = 1000;
+    private static final long HOUR_IN_MILLIS = 60 * TickScheduler.MINUTE_IN_MILLIS;
+    // Some way into a minute, as the face usually is when it becomes visible
+    private static final long START = 1450000000000L + 17500;
+
+    /*
+        A clock that only moves when told to.
+     */
+    static class FakeClock implements TickScheduler.Clock {
+        long now;
+
+        FakeClock(long now) {
+            this.now = now;
+        }
+
+        @Override
+        public long currentTimeMillis() {
+            return now;
+        }
+    }
+
+    private FakeClock mClock;
+    private TickScheduler mScheduler;
+    private SunshineWatchFaceRenderer mRenderer;
+    private Bitmap mBitmap;
+    private Canvas mCanvas;
+    private Rect mBounds;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mClock = new FakeClock(START);
+        mScheduler = new TickScheduler(mClock);
+        mRenderer = new SunshineWatchFaceRenderer(mContext.getResources());
+        mRenderer.setRound(mContext.getResources(), false);
+        mBitmap = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        mCanvas = new Canvas(mBitmap);
+        mBounds = new Rect(0, 0, SIZE, SIZE);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mRenderer.release();
+        mBitmap.recycle();
+        super.tearDown();
+    }
+
+    public void testDelayEndsOnTheMinute() {
+        for (long now = START; now < START + 2 * TickScheduler.MINUTE_IN_MILLIS; now += 250) {
+            mClock.now = now;
+            long delay = mScheduler.getDelayMillis();
+            assertTrue(delay > 0 && delay <= TickScheduler.MINUTE_IN_MILLIS);
+            assertEquals("Error: woke up off the minute from " + now, 0,
+                    (now + delay) % TickScheduler.MINUTE_IN_MILLIS);
+        }
+    }
+
+    public void testOnlyChangesAreDrawn() {
+        wakeUp();
+        assertEquals(1, mScheduler.getFrameCount());
+
+        // A system time tick later in the same minute
+        mClock.now += 20 * SECOND_IN_MILLIS;
+        wakeUp();
+        assertEquals("Error: a tick with nothing new drew a frame", 1,
+                mScheduler.getFrameCount());
+
+        mRenderer.setTemperatures(21, 12);
+        wakeUp();
+        assertEquals("Error: new data wasn't drawn", 2, mScheduler.getFrameCount());
+
+        mClock.now += mScheduler.getDelayMillis();
+        wakeUp();
+        assertEquals("Error: the new minute wasn't drawn", 3, mScheduler.getFrameCount());
+    }
+
+    public void testWakeupsPerHour() {
+        // The first wake-up is when the timer starts, the rest on each minute
+        wakeUp();
+        while (mClock.now + mScheduler.getDelayMillis() <= START + HOUR_IN_MILLIS) {
+            mClock.now += mScheduler.getDelayMillis();
+            wakeUp();
+        }
+        assertEquals(61, mScheduler.getWakeupCount());
+        assertEquals(61, mScheduler.getFrameCount());
+
+        // The timer as it was: a tick a minute, counted from when it was started, so each new
+        // minute only shows up at the next tick
+        TickScheduler unaligned = new TickScheduler(mClock);
+        long worstLag = 0;
+        for (long tick = START; tick <= START + HOUR_IN_MILLIS;
+                tick += TickScheduler.MINUTE_IN_MILLIS) {
+            mClock.now = tick;
+            if (unaligned.onWakeup(mRenderer)) {
+                mRenderer.draw(mCanvas, mBounds, mClock.now, true);
+            }
+            worstLag = Math.max(worstLag, tick % TickScheduler.MINUTE_IN_MILLIS);
+        }
+        assertTrue("Error: more wake-ups than a timer that isn't aligned to the minute",
+                mScheduler.getWakeupCount() <= unaligned.getWakeupCount() + 1);
+
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "An hour: one-minute timer from start %d wake-ups and %d frames, each minute "
+                        + "shown up to %d ms late; on the minute %d wake-ups and %d frames, "
+                        + "on time",
+                unaligned.getWakeupCount(), unaligned.getFrameCount(), worstLag,
+                mScheduler.getWakeupCount(), mScheduler.getFrameCount()));
+    }
+
+    private void wakeUp() {
+        if (mScheduler.onWakeup(mRenderer)) {
+            mRenderer.draw(mCanvas, mBounds, mClock.now, true);
+        }
+    }
+}
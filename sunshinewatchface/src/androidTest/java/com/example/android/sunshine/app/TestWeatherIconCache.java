@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.util.Locale;
+
+/*
+    Checks that the icons are rendered once per source and size, at that size, in grey or black
+    and white for ambient mode, and times frames in both modes against scaling and greying the
+    icon on every frame.
+ */
+public class TestWeatherIconCache extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherIconCache.class.getSimpleName();
+
+    private static final int ICON_SIZE = 40;
+    private static final int SIZE = 320;
+    private static final int BENCHMARK_FRAMES = 500;
+    private static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    private Bitmap mSource;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mSource = BitmapFactory.decodeResource(mContext.getResources(), R.drawable.art_clear);
+    }
+
+    public void testBuiltOncePerSourceAndSize() {
+        WeatherIconCache cache = new WeatherIconCache();
+        assertNull(cache.get(false));
+        cache.setSize(ICON_SIZE);
+        assertNull("Error: there is no icon without a source", cache.get(true));
+
+        cache.setSource(mSource);
+        cache.setSize(ICON_SIZE);
+        cache.setSource(mSource);
+        assertEquals(1, cache.getBuildCount());
+        for (boolean ambient : new boolean[]{false, true}) {
+            Bitmap icon = cache.get(ambient);
+            assertEquals(ICON_SIZE, icon.getWidth());
+            assertEquals(ICON_SIZE, icon.getHeight());
+            assertSame("Error: the icon was rendered again for a frame", icon,
+                    cache.get(ambient));
+        }
+
+        cache.setSize(ICON_SIZE + 1);
+        assertEquals(2, cache.getBuildCount());
+        assertEquals(ICON_SIZE + 1, cache.get(false).getWidth());
+        assertFalse("Error: the cache recycled a source it doesn't own", mSource.isRecycled());
+    }
+
+    public void testAmbientIsGrey() {
+        WeatherIconCache cache = new WeatherIconCache();
+        cache.setSource(mSource);
+        cache.setSize(ICON_SIZE);
+        Bitmap icon = cache.get(true);
+        for (int x = 0; x < ICON_SIZE; x++) {
+            for (int y = 0; y < ICON_SIZE; y++) {
+                int pixel = icon.getPixel(x, y);
+                // Edge pixels lose precision to premultiplied alpha
+                if (Color.alpha(pixel) == 255) {
+                    assertEquals(Color.red(pixel), Color.green(pixel), 1);
+                    assertEquals(Color.green(pixel), Color.blue(pixel), 1);
+                }
+            }
+        }
+
+        cache.setLowBitAmbient(true);
+        icon = cache.get(true);
+        for (int x = 0; x < ICON_SIZE; x++) {
+            for (int y = 0; y < ICON_SIZE; y++) {
+                int pixel = icon.getPixel(x, y);
+                int red = Color.red(pixel);
+                if (Color.alpha(pixel) == 255) {
+                    assertTrue("Error: low-bit ambient icon has grey " + red,
+                            red == 0 || red == 255);
+                }
+            }
+        }
+    }
+
+    @LargeTest
+    public void testBenchmarkFrames() {
+        Bitmap frame = Bitmap.createBitmap(SIZE, SIZE, Bitmap.Config.ARGB_8888);
+        Canvas canvas = new Canvas(frame);
+        Rect bounds = new Rect(0, 0, SIZE, SIZE);
+        SunshineWatchFaceRenderer renderer = new SunshineWatchFaceRenderer(
+                mContext.getResources());
+        renderer.setRound(mContext.getResources(), false);
+        renderer.setTemperatures(25, 15);
+        renderer.setWeatherIcon(mSource);
+        long now = System.currentTimeMillis();
+
+        for (boolean ambient : new boolean[]{false, true}) {
+            renderer.setAmbientMode(ambient);
+            // Warm-up, so neither side pays for the first frame
+            renderer.draw(canvas, bounds, now, true);
+            drawOld(canvas, mSource, ambient);
+
+            // The same frame, plus the icon work onDraw did on top of it
+            long start = System.nanoTime();
+            Bitmap icon = mSource;
+            for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+                renderer.draw(canvas, bounds, now + i * MINUTE_IN_MILLIS, true);
+                icon = drawOld(canvas, icon, ambient);
+            }
+            long oldNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (int i = 0; i < BENCHMARK_FRAMES; i++) {
+                renderer.draw(canvas, bounds, now + i * MINUTE_IN_MILLIS, true);
+            }
+            long newNanos = System.nanoTime() - start;
+
+            Log.i(LOG_TAG, String.format(Locale.US,
+                    "%s frames: icon scaled%s every frame %d us, cached %d us",
+                    ambient ? "Ambient" : "Interactive", ambient ? " and greyed" : "",
+                    oldNanos / BENCHMARK_FRAMES / 1000, newNanos / BENCHMARK_FRAMES / 1000));
+        }
+        frame.recycle();
+    }
+
+    // What onDraw did with the icon before the cache; it scaled the last frame's icon
+    private static Bitmap drawOld(Canvas canvas, Bitmap bitmap, boolean ambient) {
+        bitmap = Bitmap.createScaledBitmap(bitmap, ICON_SIZE, ICON_SIZE, true);
+        Bitmap adjustedBitmap = bitmap;
+        if (ambient) {
+            adjustedBitmap = toGreyScale(bitmap);
+        }
+        canvas.drawBitmap(adjustedBitmap, 0, 0, null);
+        return bitmap;
+    }
+
+    private static Bitmap toGreyScale(Bitmap bmpOriginal) {
+        Bitmap bmpGrayscale = Bitmap.createBitmap(bmpOriginal.getWidth(),
+                bmpOriginal.getHeight(), Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(bmpGrayscale);
+        Paint paint = new Paint();
+        ColorMatrix cm = new ColorMatrix();
+        cm.setSaturation(0);
+        paint.setColorFilter(new ColorMatrixColorFilter(cm));
+        c.drawBitmap(bmpOriginal, 0, 0, paint);
+        return bmpGrayscale;
+    }
+}
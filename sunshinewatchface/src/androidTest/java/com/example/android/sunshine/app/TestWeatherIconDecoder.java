@@ -0,0 +1,231 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.util.Log;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/*
+    Checks that icons are decoded at about the size they are drawn at, into the memory of icons
+    handed back, and that only the newest of overlapping decodes is delivered.  Logs the memory
+    and time of a decode against decoding the image the phone sends at full size.
+ */
+public class TestWeatherIconDecoder extends AndroidTestCase {
+
+    public static final String LOG_TAG = TestWeatherIconDecoder.class.getSimpleName();
+
+    private static final int ICON_SIZE = 40;
+    private static final long TIMEOUT_SECONDS = 10;
+    private static final int BENCHMARK_DECODES = 50;
+
+    /*
+        Collects the icons delivered to the callback.
+     */
+    static class RecordingCallback implements WeatherIconDecoder.Callback {
+        final List<Bitmap> icons = new ArrayList<Bitmap>();
+        volatile CountDownLatch delivered = new CountDownLatch(1);
+
+        @Override
+        public synchronized void onIconDecoded(Bitmap icon) {
+            icons.add(icon);
+            delivered.countDown();
+        }
+
+        Bitmap await() throws InterruptedException {
+            assertTrue("Error: no icon was delivered",
+                    delivered.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            delivered = new CountDownLatch(1);
+            synchronized (this) {
+                return icons.get(icons.size() - 1);
+            }
+        }
+    }
+
+    private byte[] mImage;
+    private HandlerThread mThread;
+    private RecordingCallback mCallback;
+    private WeatherIconDecoder mDecoder;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        // What the phone sends: the art for its screen, as a PNG
+        InputStream in = mContext.getResources().openRawResource(R.drawable.art_clear);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        in.close();
+        mImage = out.toByteArray();
+
+        mThread = new HandlerThread(LOG_TAG);
+        mThread.start();
+        mCallback = new RecordingCallback();
+        mDecoder = new WeatherIconDecoder(new Handler(mThread.getLooper()), mCallback);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        mDecoder.release();
+        mThread.quit();
+        super.tearDown();
+    }
+
+    public void testInSampleSize() {
+        assertEquals(4, WeatherIconDecoder.calculateInSampleSize(288, 288, 60));
+        assertEquals(2, WeatherIconDecoder.calculateInSampleSize(144, 144, 60));
+        assertEquals(1, WeatherIconDecoder.calculateInSampleSize(96, 96, 60));
+        assertEquals("Error: the icon was decoded smaller than it is drawn", 1,
+                WeatherIconDecoder.calculateInSampleSize(40, 40, 60));
+        assertEquals(2, WeatherIconDecoder.calculateInSampleSize(100, 300, 50));
+        assertEquals(1, WeatherIconDecoder.calculateInSampleSize(288, 288, 0));
+    }
+
+    public void testDecodesAtIconSize() throws InterruptedException {
+        mDecoder.decode(new ImageSource(), ICON_SIZE);
+        Bitmap icon = mCallback.await();
+        assertTrue("Error: icon is smaller than it is drawn", icon.getWidth() >= ICON_SIZE);
+        assertTrue("Error: icon is more than twice the size it is drawn at " + icon.getWidth(),
+                icon.getWidth() < 2 * ICON_SIZE);
+        assertTrue(icon.isMutable());
+    }
+
+    public void testReusesMemory() throws InterruptedException {
+        mDecoder.decode(new ImageSource(), ICON_SIZE);
+        Bitmap first = mCallback.await();
+
+        mDecoder.reuse(first);
+        mDecoder.decode(new ImageSource(), ICON_SIZE);
+        Bitmap second = mCallback.await();
+        assertEquals(2, mDecoder.getDecodeCount());
+        assertEquals(1, mDecoder.getReuseCount());
+        assertSame("Error: the second icon wasn't decoded into the first", first, second);
+    }
+
+    public void testReuseAfterReleaseIsIgnored() throws InterruptedException {
+        mDecoder.decode(new ImageSource(), ICON_SIZE);
+        Bitmap first = mCallback.await();
+        mDecoder.release();
+
+        // As a result posted before the release would hand it back
+        mDecoder.reuse(first);
+        Bitmap second = first.copy(Bitmap.Config.ARGB_8888, true);
+        mDecoder.reuse(second);
+        assertFalse("Error: an icon handed back after the release was kept",
+                first.isRecycled());
+        assertFalse(second.isRecycled());
+        second.recycle();
+    }
+
+    public void testOnlyNewestDelivered() throws InterruptedException {
+        final CountDownLatch blocked = new CountDownLatch(1);
+        // Stuck fetching the asset until a newer decode interrupts it
+        WeatherIconDecoder.Source stuck = new WeatherIconDecoder.Source() {
+            @Override
+            public InputStream open() throws IOException {
+                try {
+                    blocked.await();
+                } catch (InterruptedException e) {
+                    throw new InterruptedIOException();
+                }
+                return new ByteArrayInputStream(mImage);
+            }
+        };
+        try {
+            for (int i = 0; i < 4; i++) {
+                mDecoder.decode(stuck, ICON_SIZE);
+            }
+            int smallSize = ICON_SIZE / 4;
+            mDecoder.decode(new ImageSource(), smallSize);
+
+            Bitmap icon = mCallback.await();
+            assertTrue("Error: an older decode was delivered", icon.getWidth() < 2 * smallSize);
+            assertEquals(1, mDecoder.getDecodeCount());
+        } finally {
+            blocked.countDown();
+        }
+
+        // Nothing of the superseded decodes comes after it
+        mDecoder.decode(new ImageSource(), ICON_SIZE);
+        mCallback.await();
+        synchronized (mCallback) {
+            assertEquals(2, mCallback.icons.size());
+        }
+    }
+
+    @LargeTest
+    public void testBenchmarkDecode() throws InterruptedException {
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(mImage, 0, mImage.length, bounds);
+
+        // As LoadBitmapAsyncTask did, the whole image every time
+        Bitmap full = null;
+        long start = SystemClock.elapsedRealtimeNanos();
+        for (int i = 0; i < BENCHMARK_DECODES; i++) {
+            full = BitmapFactory.decodeStream(new ByteArrayInputStream(mImage));
+        }
+        long fullNanos = (SystemClock.elapsedRealtimeNanos() - start) / BENCHMARK_DECODES;
+
+        long decodeNanos = 0;
+        Bitmap icon = null;
+        for (int i = 0; i < BENCHMARK_DECODES; i++) {
+            mDecoder.reuse(icon);
+            mDecoder.decode(new ImageSource(), ICON_SIZE);
+            icon = mCallback.await();
+            decodeNanos += mDecoder.getLastDecodeNanos();
+        }
+        decodeNanos /= BENCHMARK_DECODES;
+
+        assertTrue(icon.getAllocationByteCount() <= full.getAllocationByteCount());
+        assertEquals(BENCHMARK_DECODES - 1, mDecoder.getReuseCount());
+        Log.i(LOG_TAG, String.format(Locale.US,
+                "A %dx%d image for a %dpx icon: full size %dx%d, %d bytes, %d us; "
+                        + "downsampled %dx%d, %d bytes, %d us, %d of %d into reused memory",
+                bounds.outWidth, bounds.outHeight, ICON_SIZE,
+                full.getWidth(), full.getHeight(), full.getAllocationByteCount(),
+                fullNanos / 1000,
+                icon.getWidth(), icon.getHeight(), icon.getAllocationByteCount(),
+                decodeNanos / 1000, mDecoder.getReuseCount(), BENCHMARK_DECODES));
+        full.recycle();
+    }
+
+    private class ImageSource implements WeatherIconDecoder.Source {
+        @Override
+        public InputStream open() {
+            return new ByteArrayInputStream(mImage);
+        }
+    }
+}
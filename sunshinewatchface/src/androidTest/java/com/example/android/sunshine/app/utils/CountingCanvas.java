@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.example.android.sunshine.app.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+
+/*
+    A canvas over a bitmap that counts the draw calls made on it.  Covers the calls the watch
+    face makes.
+ */
+public class CountingCanvas extends Canvas {
+
+    private int mDrawCount;
+
+    public CountingCanvas(Bitmap bitmap) {
+        super(bitmap);
+    }
+
+    public int getDrawCount() {
+        return mDrawCount;
+    }
+
+    public void resetDrawCount() {
+        mDrawCount = 0;
+    }
+
+    @Override
+    public void drawColor(int color) {
+        mDrawCount++;
+        super.drawColor(color);
+    }
+
+    @Override
+    public void drawRect(float left, float top, float right, float bottom, Paint paint) {
+        mDrawCount++;
+        super.drawRect(left, top, right, bottom, paint);
+    }
+
+    @Override
+    public void drawLine(float startX, float startY, float stopX, float stopY, Paint paint) {
+        mDrawCount++;
+        super.drawLine(startX, startY, stopX, stopY, paint);
+    }
+
+    @Override
+    public void drawText(String text, float x, float y, Paint paint) {
+        mDrawCount++;
+        super.drawText(text, x, y, paint);
+    }
+
+    @Override
+    public void drawText(char[] text, int index, int count, float x, float y, Paint paint) {
+        mDrawCount++;
+        super.drawText(text, index, count, x, y, paint);
+    }
+
+    @Override
+    public void drawBitmap(Bitmap bitmap, float left, float top, Paint paint) {
+        mDrawCount++;
+        super.drawBitmap(bitmap, left, top, paint);
+    }
+}
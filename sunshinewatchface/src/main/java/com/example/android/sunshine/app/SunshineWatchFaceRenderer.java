@@ -0,0 +1,494 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.content.res.Resources;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.Typeface;
+
+import java.text.DecimalFormatSymbols;
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Locale;
+import java.util.TimeZone;
+
+/**
+ * Draws the Sunshine watch face: the time, the date, and today's high, low and weather icon.
+ *
+ * Drawing a frame allocates nothing.  The paints are made once, the hour and minute digits are
+ * written into char buffers, the date is only formatted again when the day changes and the
+ * temperatures only when new ones arrive from the phone.  The icon comes ready-sized from a
+ * {@link WeatherIconCache}.
+ *
+ * Between most frames only the minute changes, so everything but the time is composed into an
+ * offscreen layer, and a frame is that layer and the time drawn over it.
+ */
+class SunshineWatchFaceRenderer {
+
+    private static final Typeface BOLD_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
+    private static final Typeface NORMAL_TYPEFACE =
+            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
+
+    static final String COLON_STRING = ":";
+
+    /** Alpha value for drawing time when in mute mode. */
+    static final int MUTE_ALPHA = 100;
+
+    /** Alpha value for drawing time when not in mute mode. */
+    static final int NORMAL_ALPHA = 255;
+
+    private final String mTemperatureFormat;
+    private final String mAmString;
+    private final String mPmString;
+
+    private final int mInteractiveBackgroundColor;
+    private final int mInteractiveTimeColor;
+    private final int mInteractiveDateColor;
+    private final int mInteractiveLineColor;
+    private final int mInteractiveMaxTempColor;
+    private final int mInteractiveMinTempColor;
+
+    private final Paint mBackgroundPaint;
+    private final Paint mHourPaint;
+    private final Paint mColonPaint;
+    private final Paint mMinPaint;
+    private final Paint mAmPmPaint;
+    private final Paint mDatePaint;
+    private final Paint mLinePaint;
+    private final Paint mMaxTempPaint;
+    private final Paint mMinTempPaint;
+
+    private final Calendar mCalendar = Calendar.getInstance();
+
+    // The digits of the hour and minute, in the locale's digits
+    private final char[] mHourChars = new char[2];
+    private int mHourLength;
+    private final char[] mMinuteChars = new char[2];
+    private char mZeroDigit;
+
+    // Formatted when the day changes; mDateDay is the day it was formatted for
+    private SimpleDateFormat mDateFormat;
+    private String mDate;
+    private int mDateDay = -1;
+    private float mDateWidth;
+
+    private String mMaxTemp;
+    private String mMinTemp;
+    private float mMaxTempWidth;
+
+    private final WeatherIconCache mIcon = new WeatherIconCache();
+
+    // Everything but the time, drawn again only when the data, the mode, the sizes or the day
+    // change.  Without it, every frame draws everything.
+    private final boolean mLayered;
+    private Bitmap mStaticLayer;
+    private Canvas mStaticCanvas;
+    private boolean mStaticLayerValid;
+    private boolean mStaticLayerShowsWeather;
+    private int mStaticLayerBuildCount;
+
+    // Whether anything has changed since the last frame, besides the time; and the minute that
+    // frame showed
+    private boolean mDirty = true;
+    private long mDrawnMinute = -1;
+
+    private float mColonWidth;
+    private float mYOffset;
+    private float mLineHeight;
+    private float mLineWidth;
+
+    private boolean mIs24Hour;
+    private boolean mAmbient;
+    private boolean mLowBitAmbient;
+    private boolean mMute;
+
+    SunshineWatchFaceRenderer(Resources resources) {
+        this(resources, true);
+    }
+
+    /**
+     * @param layered true to keep everything but the time in an offscreen layer.
+     */
+    SunshineWatchFaceRenderer(Resources resources, boolean layered) {
+        mLayered = layered;
+        mTemperatureFormat = resources.getString(R.string.format_temperature);
+        mAmString = resources.getString(R.string.digital_am);
+        mPmString = resources.getString(R.string.digital_pm);
+
+        mInteractiveBackgroundColor = resources.getColor(R.color.background);
+        mInteractiveTimeColor = resources.getColor(R.color.white_text);
+        mInteractiveDateColor = resources.getColor(R.color.grey_text);
+        mInteractiveLineColor = resources.getColor(R.color.grey_text);
+        mInteractiveMaxTempColor = resources.getColor(R.color.white_text);
+        mInteractiveMinTempColor = resources.getColor(R.color.grey_text);
+
+        mBackgroundPaint = new Paint();
+        mBackgroundPaint.setColor(mInteractiveBackgroundColor);
+
+        mHourPaint = createTextPaint(mInteractiveTimeColor, BOLD_TYPEFACE);
+        mMinPaint = createTextPaint(mInteractiveTimeColor, NORMAL_TYPEFACE);
+        mColonPaint = createTextPaint(mInteractiveTimeColor, BOLD_TYPEFACE);
+        mAmPmPaint = createTextPaint(mInteractiveTimeColor, BOLD_TYPEFACE);
+        mDatePaint = createTextPaint(mInteractiveDateColor, NORMAL_TYPEFACE);
+        mLinePaint = createTextPaint(mInteractiveLineColor, NORMAL_TYPEFACE);
+        mMaxTempPaint = createTextPaint(mInteractiveMaxTempColor, NORMAL_TYPEFACE);
+        mMinTempPaint = createTextPaint(mInteractiveMinTempColor, NORMAL_TYPEFACE);
+
+        setTemperatures(0, 0);
+        onLocaleChanged();
+    }
+
+    private static Paint createTextPaint(int defaultInteractiveColor, Typeface typeface) {
+        Paint paint = new Paint();
+        paint.setColor(defaultInteractiveColor);
+        paint.setTypeface(typeface);
+        paint.setAntiAlias(true);
+        return paint;
+    }
+
+    /**
+     * Picks up a new time zone or locale.
+     */
+    void onLocaleChanged() {
+        mCalendar.setTimeZone(TimeZone.getDefault());
+        mZeroDigit = DecimalFormatSymbols.getInstance().getZeroDigit();
+        mDateFormat = new SimpleDateFormat("EEE, MMM dd yyyy", Locale.getDefault());
+        mDateFormat.setCalendar(mCalendar);
+        mDateDay = -1;
+        invalidateStaticLayer();
+    }
+
+    void set24HourFormat(boolean is24Hour) {
+        if (is24Hour != mIs24Hour) {
+            mIs24Hour = is24Hour;
+            mDirty = true;
+        }
+    }
+
+    /**
+     * Sets the sizes, which have alternate values for round watches.
+     */
+    void setRound(Resources resources, boolean isRound) {
+        float timeSize = resources.getDimension(isRound
+                ? R.dimen.time_textsize_round : R.dimen.time_textsize);
+        float dateSize = resources.getDimension(isRound
+                ? R.dimen.date_textsize_round : R.dimen.date_textsize);
+        float tempSize = resources.getDimension(isRound
+                ? R.dimen.temp_textsize_round : R.dimen.temp_textsize);
+        float ampmSize = resources.getDimension(isRound
+                ? R.dimen.ampm_textsize_round : R.dimen.ampm_textsize);
+        mLineWidth = resources.getDimension(isRound
+                ? R.dimen.digital_line_width_round : R.dimen.digital_line_width);
+        mLineHeight = resources.getDimension(isRound
+                ? R.dimen.digital_line_height_round : R.dimen.digital_line_height);
+        mYOffset = resources.getDimension(isRound
+                ? R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
+
+        mHourPaint.setTextSize(timeSize);
+        mMinPaint.setTextSize(timeSize);
+        mColonPaint.setTextSize(timeSize);
+        mAmPmPaint.setTextSize(ampmSize);
+        mDatePaint.setTextSize(dateSize);
+        mMaxTempPaint.setTextSize(tempSize);
+        mMinTempPaint.setTextSize(tempSize);
+
+        mColonWidth = mColonPaint.measureText(COLON_STRING);
+        mMaxTempWidth = mMaxTempPaint.measureText(mMaxTemp);
+        mIcon.setSize(getIconSize());
+        mDateDay = -1;
+        invalidateStaticLayer();
+    }
+
+    void setBurnInProtection(boolean burnInProtection) {
+        mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
+        mDirty = true;
+    }
+
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        mLowBitAmbient = lowBitAmbient;
+        mIcon.setLowBitAmbient(lowBitAmbient);
+        invalidateStaticLayer();
+    }
+
+    void setAmbientMode(boolean inAmbientMode) {
+        mAmbient = inAmbientMode;
+        adjustPaintColorToCurrentMode(mBackgroundPaint, mInteractiveBackgroundColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND);
+        adjustPaintColorToCurrentMode(mHourPaint, mInteractiveTimeColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
+        adjustPaintColorToCurrentMode(mMinPaint, mInteractiveTimeColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
+        adjustPaintColorToCurrentMode(mColonPaint, mInteractiveTimeColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
+        adjustPaintColorToCurrentMode(mAmPmPaint, mInteractiveTimeColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
+        adjustPaintColorToCurrentMode(mDatePaint, mInteractiveDateColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_DATE);
+        adjustPaintColorToCurrentMode(mLinePaint, mInteractiveLineColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_LINE);
+        adjustPaintColorToCurrentMode(mMaxTempPaint, mInteractiveMaxTempColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_MAXTEMP);
+        adjustPaintColorToCurrentMode(mMinTempPaint, mInteractiveMinTempColor,
+                SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_MINTEMP);
+
+        if (mLowBitAmbient) {
+            boolean antiAlias = !inAmbientMode;
+            mHourPaint.setAntiAlias(antiAlias);
+            mColonPaint.setAntiAlias(antiAlias);
+            mMinPaint.setAntiAlias(antiAlias);
+            mDatePaint.setAntiAlias(antiAlias);
+            mLinePaint.setAntiAlias(antiAlias);
+            mMaxTempPaint.setAntiAlias(antiAlias);
+            mMinTempPaint.setAntiAlias(antiAlias);
+        }
+        invalidateStaticLayer();
+    }
+
+    private void adjustPaintColorToCurrentMode(Paint paint, int interactiveColor,
+                                               int ambientColor) {
+        paint.setColor(mAmbient ? ambientColor : interactiveColor);
+    }
+
+    /**
+     * @return true if the mode changed and the face has to be drawn again.
+     */
+    boolean setMuteMode(boolean inMuteMode) {
+        if (mMute == inMuteMode) {
+            return false;
+        }
+        mMute = inMuteMode;
+        int alpha = inMuteMode ? MUTE_ALPHA : NORMAL_ALPHA;
+        mDatePaint.setAlpha(alpha);
+        mHourPaint.setAlpha(alpha);
+        mMinPaint.setAlpha(alpha);
+        mColonPaint.setAlpha(alpha);
+        mMaxTempPaint.setAlpha(alpha);
+        mMinTempPaint.setAlpha(alpha);
+        invalidateStaticLayer();
+        return true;
+    }
+
+    /**
+     * Sets today's high and low, as they came from the phone.
+     */
+    void setTemperatures(double maxTemp, double minTemp) {
+        mMaxTemp = String.format(mTemperatureFormat, maxTemp);
+        mMinTemp = String.format(mTemperatureFormat, minTemp);
+        mMaxTempWidth = mMaxTempPaint.measureText(mMaxTemp);
+        mIcon.setSize(getIconSize());
+        invalidateStaticLayer();
+    }
+
+    /**
+     * Sets the full-size weather icon.
+     */
+    void setWeatherIcon(Bitmap bitmap) {
+        mIcon.setSource(bitmap);
+        invalidateStaticLayer();
+    }
+
+    /**
+     * @return the width and height the weather icon is drawn at, a little larger than the high
+     * is wide.
+     */
+    int getIconSize() {
+        return (int) mMaxTempWidth + 20;
+    }
+
+    private void invalidateStaticLayer() {
+        mStaticLayerValid = false;
+        mDirty = true;
+    }
+
+    /**
+     * @return true if a frame drawn at {@code now} would differ from the last one drawn: the
+     * minute has moved on, or something else on the face has changed since.
+     */
+    boolean isDirty(long now) {
+        return mDirty || getMinute(now) != mDrawnMinute;
+    }
+
+    private static long getMinute(long time) {
+        return time / TickScheduler.MINUTE_IN_MILLIS;
+    }
+
+    /**
+     * Draws a frame for the time {@code now}.
+     *
+     * @param showWeather false to leave out the line and the weather, so they don't bleed into
+     * a peek card.
+     */
+    void draw(Canvas canvas, Rect bounds, long now, boolean showWeather) {
+        mDirty = false;
+        mDrawnMinute = getMinute(now);
+        mCalendar.setTimeInMillis(now);
+        int day = mCalendar.get(Calendar.YEAR) * 1000 + mCalendar.get(Calendar.DAY_OF_YEAR);
+        if (day != mDateDay) {
+            mDate = mDateFormat.format(mCalendar.getTime());
+            mDateWidth = mDatePaint.measureText(mDate);
+            mDateDay = day;
+            mStaticLayerValid = false;
+        }
+
+        int width = bounds.width();
+        int height = bounds.height();
+        if (!mLayered) {
+            drawStaticLayer(canvas, width, height, showWeather);
+        } else {
+            if (mStaticLayer == null || mStaticLayer.getWidth() != width
+                    || mStaticLayer.getHeight() != height) {
+                if (mStaticLayer != null) {
+                    mStaticLayer.recycle();
+                }
+                mStaticLayer = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+                mStaticCanvas = new Canvas(mStaticLayer);
+                mStaticLayerValid = false;
+            }
+            if (!mStaticLayerValid || showWeather != mStaticLayerShowsWeather) {
+                mStaticLayer.eraseColor(Color.TRANSPARENT);
+                drawStaticLayer(mStaticCanvas, width, height, showWeather);
+                mStaticLayerShowsWeather = showWeather;
+                mStaticLayerValid = true;
+                mStaticLayerBuildCount++;
+            }
+            canvas.drawBitmap(mStaticLayer, 0, 0, null);
+        }
+        drawTime(canvas, width / 2);
+    }
+
+    /**
+     * Draws everything but the time: the background, the date, the line and the weather.
+     */
+    private void drawStaticLayer(Canvas canvas, int width, int height, boolean showWeather) {
+        // Draw the background.
+        if (mAmbient) {
+            canvas.drawColor(SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND);
+        } else {
+            canvas.drawRect(0, 0, width, height, mBackgroundPaint);
+        }
+
+        // Setting offsets
+        final float xCenter = width / 2;
+        float y = mYOffset + mLineHeight;
+        float xOffset;
+
+        // Date
+        canvas.drawText(mDate, xCenter - (mDateWidth / 2), y, mDatePaint);
+        y += mLineHeight;
+
+        if (showWeather) {
+            // Line
+            canvas.drawLine(xCenter - mLineWidth, y, xCenter + mLineWidth, y, mLinePaint);
+            y += mLineHeight;
+
+            // High temp
+            canvas.drawText(mMaxTemp, xCenter - (mMaxTempWidth / 2), y, mMaxTempPaint);
+
+            // Low Temp
+            xOffset = (mMaxTempWidth / 2) + mLineWidth;
+            canvas.drawText(mMinTemp, xCenter + xOffset, y, mMinTempPaint);
+
+            // Image
+            Bitmap icon = mIcon.get(mAmbient);
+            if (icon != null) {
+                int tempTextHeight = (int) mMaxTempWidth;
+                xOffset = (mMaxTempWidth / 2) + mLineWidth + icon.getWidth();
+                float yOffset = (tempTextHeight / 2) + 20;
+
+                canvas.drawBitmap(icon, xCenter - xOffset, y - yOffset, null);
+            }
+        }
+    }
+
+    /**
+     * Draws the hour, the minute and, for 12-hour time, AM or PM, around a colon at the center.
+     */
+    private void drawTime(Canvas canvas, float xCenter) {
+        float y = mYOffset;
+        float xOffset;
+
+        // Drawing Colon First at the center
+        canvas.drawText(COLON_STRING, xCenter - (mColonWidth / 2), y, mColonPaint);
+
+        // Draw Hours
+        if (mIs24Hour) {
+            mHourLength = formatNumber(mCalendar.get(Calendar.HOUR_OF_DAY), 2, mZeroDigit,
+                    mHourChars);
+        } else {
+            int hour = mCalendar.get(Calendar.HOUR);
+            if (hour == 0) {
+                hour = 12;
+            }
+            mHourLength = formatNumber(hour, 1, mZeroDigit, mHourChars);
+        }
+        xOffset = (mColonWidth / 2) + mHourPaint.measureText(mHourChars, 0, mHourLength);
+        canvas.drawText(mHourChars, 0, mHourLength, xCenter - xOffset, y, mHourPaint);
+
+        // Draw Minutes
+        formatNumber(mCalendar.get(Calendar.MINUTE), 2, mZeroDigit, mMinuteChars);
+        canvas.drawText(mMinuteChars, 0, mMinuteChars.length, xCenter + (mColonWidth / 2), y,
+                mMinPaint);
+
+        // Draw Am Pm
+        if (!mIs24Hour) {
+            xOffset = (mColonWidth / 2)
+                    + mMinPaint.measureText(mMinuteChars, 0, mMinuteChars.length)
+                    + (mColonWidth / 2);
+            String amPm = mCalendar.get(Calendar.AM_PM) == Calendar.AM ? mAmString : mPmString;
+            canvas.drawText(amPm, xCenter + xOffset, y, mAmPmPaint);
+        }
+    }
+
+    /**
+     * Frees the offscreen layer; the next frame makes a new one.
+     */
+    void release() {
+        if (mStaticLayer != null) {
+            mStaticLayer.recycle();
+            mStaticLayer = null;
+            mStaticCanvas = null;
+        }
+    }
+
+    /**
+     * @return how many times the static layer has been drawn.
+     */
+    int getStaticLayerBuildCount() {
+        return mStaticLayerBuildCount;
+    }
+
+    /**
+     * Writes {@code value}, which must be from 0 to 99, into {@code buffer} with at least
+     * {@code minDigits} digits, counting up from {@code zeroDigit}.
+     *
+     * @return the number of digits written.
+     */
+    static int formatNumber(int value, int minDigits, char zeroDigit, char[] buffer) {
+        if (value < 10 && minDigits < 2) {
+            buffer[0] = (char) (zeroDigit + value);
+            return 1;
+        }
+        buffer[0] = (char) (zeroDigit + value / 10);
+        buffer[1] = (char) (zeroDigit + value % 10);
+        return 2;
+    }
+}
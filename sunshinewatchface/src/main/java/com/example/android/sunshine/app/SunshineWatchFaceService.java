@@ -22,16 +22,10 @@ import android.content.Intent;
 import android.content.IntentFilter;
 import android.content.res.Resources;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Canvas;
-import android.graphics.ColorMatrix;
-import android.graphics.ColorMatrixColorFilter;
-import android.graphics.Paint;
 import android.graphics.Rect;
-import android.graphics.Typeface;
 import android.graphics.drawable.BitmapDrawable;
 import android.graphics.drawable.Drawable;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Message;
@@ -55,31 +49,16 @@ import com.google.android.gms.wearable.DataMapItem;
 import com.google.android.gms.wearable.Wearable;
 
 import java.io.InputStream;
-import java.text.SimpleDateFormat;
-import java.util.Calendar;
-import java.util.Date;
-import java.util.Locale;
-import java.util.TimeZone;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Digital watch face with seconds. In ambient mode, the seconds aren't displayed. On devices with
- * low-bit ambient mode, the text is drawn without anti-aliasing in ambient mode.
+ * Digital watch face showing hours and minutes, which wakes up once a minute in interactive
+ * mode. On devices with low-bit ambient mode, the text is drawn without anti-aliasing in ambient
+ * mode.
  */
 public class SunshineWatchFaceService extends CanvasWatchFaceService {
     private static final String TAG = "SunshineWFService";
 
-    private static final Typeface BOLD_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.BOLD);
-    private static final Typeface NORMAL_TYPEFACE =
-            Typeface.create(Typeface.SANS_SERIF, Typeface.NORMAL);
-
-    /**
-     * Update rate in milliseconds for interactive mode. We update once a minute since seconds won't
-     * appear neither on ambient nor interactive mode
-     */
-    private static final long NORMAL_UPDATE_RATE_MS = TimeUnit.MINUTES.toMillis(1);
-
     @Override
     public Engine onCreateEngine() {
         return new Engine();
@@ -94,21 +73,15 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         private static final String DATAITEM_TEMP_MIN = "DATAITEM_TEMP_MIN";
         private static final String DATAITEM_TEMP_IMAGE = "DATAITEM_TEMP_IMAGE";
 
-        static final String COLON_STRING = ":";
-
-        /** Alpha value for drawing time when in mute mode. */
-        static final int MUTE_ALPHA = 100;
-
-        /** Alpha value for drawing time when not in mute mode. */
-        static final int NORMAL_ALPHA = 255;
+        private static final long ASSET_TIMEOUT_SECONDS = 30;
 
         /**
          * Handler message id for updating the time periodically in interactive mode.
          */
         private static final int MSG_UPDATE_TIME = 0;
 
-        /** How often {@link #mUpdateTimeHandler} ticks in milliseconds. */
-        long mInteractiveUpdateRateMs = NORMAL_UPDATE_RATE_MS;
+        /** When {@link #mUpdateTimeHandler} ticks, and whether a tick draws a frame. */
+        final TickScheduler mScheduler = new TickScheduler();
 
         /* Handler to update the time periodically in interactive mode */
         final Handler mUpdateTimeHandler = new Handler() {
@@ -119,13 +92,13 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
                         if (Log.isLoggable(TAG, Log.VERBOSE)) {
                             Log.v(TAG, "updating time");
                         }
-                        invalidate();
-                        /*if (shouldTimerBeRunning()) {
-                            long timeMs = System.currentTimeMillis();
-                            long delayMs =
-                                    mInteractiveUpdateRateMs - (timeMs % mInteractiveUpdateRateMs);
-                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME, delayMs);
-                        }*/
+                        if (mScheduler.onWakeup(mRenderer)) {
+                            invalidate();
+                        }
+                        if (shouldTimerBeRunning()) {
+                            mUpdateTimeHandler.sendEmptyMessageDelayed(MSG_UPDATE_TIME,
+                                    mScheduler.getDelayMillis());
+                        }
                         break;
                 }
             }
@@ -139,9 +112,12 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
         final BroadcastReceiver mTimeZoneReceiver = new BroadcastReceiver() {
             @Override
             public void onReceive(Context context, Intent intent) {
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                initFormats();
+                mRenderer.onLocaleChanged();
+                mRenderer.set24HourFormat(
+                        DateFormat.is24HourFormat(SunshineWatchFaceService.this));
                 invalidate();
+                // The pending wake-up was timed for the minute on the old clock
+                updateTimer();
             }
         };
 
@@ -151,39 +127,19 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
          */
         boolean mRegisteredTimeZoneReceiver = false;
 
-        Paint mBackgroundPaint;
-        Paint mHourPaint;
-        Paint mColonPaint;
-        Paint mMinPaint;
-        Paint mAmPmPaint;
-        Paint mDatePaint;
-        Paint mLinePaint;
-        Paint mMaxTempPaint;
-        Paint mMinTempPaint;
-        float mColonWidth;
-        boolean mMute;
-
-        String mAmString;
-        String mPmString;
-
-        Calendar mCalendar;
-        Date mDate;
-        SimpleDateFormat mDayOfWeekFormat;
-        SimpleDateFormat mMonthFormat;
-        SimpleDateFormat mYearFormat;
-
-        java.text.DateFormat mDateFormat;
-
-        float mYOffset;
-        float mLineHeight;
-        float mLineWidth;
-
-        int mInteractiveBackgroundColor;
-        int mInteractiveTimeColor;
-        int mInteractiveDateColor;
-        int mInteractiveLineColor;
-        int mInteractiveMaxTempColor;
-        int mInteractiveMinTempColor;
+        SunshineWatchFaceRenderer mRenderer;
+
+        /** Decodes the icons the phone sends, off the UI thread. */
+        WeatherIconDecoder mIconDecoder;
+
+        /**
+         * The icon from {@link #mIconDecoder} that is shown, handed back to it once replaced.
+         */
+        Bitmap mDecodedIcon;
+
+        /** Where the current icon comes from, and the size it was last asked to be decoded at. */
+        WeatherIconDecoder.Source mIconSource;
+        int mIconDecodeSize;
 
         /*
          * Whether the display supports fewer bits for each color in ambient mode. When true, we
@@ -191,10 +147,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
          */
         boolean mLowBitAmbient;
 
-        private double mMaxTemp;
-        private double mMinTemp;
-        private Bitmap mBitmap;
-
         @Override
         public void onSurfaceChanged(SurfaceHolder holder, int format, int width, int height) {
             super.onSurfaceChanged(holder, format, width, height);
@@ -216,65 +168,39 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             Resources resources = SunshineWatchFaceService.this.getResources();
 
-            mMaxTemp = 0;
-            mMinTemp = 0;
+            mRenderer = new SunshineWatchFaceRenderer(resources);
             Drawable backgroundDrawable = resources.getDrawable(R.drawable.art_clear, null);
-            mBitmap = ((BitmapDrawable) backgroundDrawable).getBitmap();
-            /*Bitmap bitmap = BitmapFactory.decodeResource(resources,
-                    R.drawable.ic_default_weather);*/
+            mRenderer.setWeatherIcon(((BitmapDrawable) backgroundDrawable).getBitmap());
+            mRenderer.set24HourFormat(DateFormat.is24HourFormat(SunshineWatchFaceService.this));
+
+            mIconDecoder = new WeatherIconDecoder(new Handler(),
+                    new WeatherIconDecoder.Callback() {
+                        @Override
+                        public void onIconDecoded(Bitmap icon) {
+                            Log.d(TAG, "Setting the weather icon");
+                            mRenderer.setWeatherIcon(icon);
+                            // The renderer has its own copies now
+                            mIconDecoder.reuse(mDecodedIcon);
+                            mDecodedIcon = icon;
+                            invalidate();
+                        }
+                    });
 
             setWatchFaceStyle(new WatchFaceStyle.Builder(SunshineWatchFaceService.this)
                     .setCardPeekMode(WatchFaceStyle.PEEK_MODE_SHORT)
                     .setBackgroundVisibility(WatchFaceStyle.BACKGROUND_VISIBILITY_INTERRUPTIVE)
                     .setShowSystemUiTime(false)
                     .build());
-
-            mAmString = resources.getString(R.string.digital_am);
-            mPmString = resources.getString(R.string.digital_pm);
-
-            mInteractiveBackgroundColor = resources.getColor(R.color.background);
-            mInteractiveTimeColor = resources.getColor(R.color.white_text);
-            mInteractiveDateColor = resources.getColor(R.color.grey_text);
-            mInteractiveLineColor = resources.getColor(R.color.grey_text);
-            mInteractiveMaxTempColor = resources.getColor(R.color.white_text);
-            mInteractiveMinTempColor = resources.getColor(R.color.grey_text);
-
-            mBackgroundPaint = new Paint();
-            mBackgroundPaint.setColor(mInteractiveBackgroundColor);
-
-            mHourPaint = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
-            mMinPaint = createTextPaint(resources.getColor(R.color.white_text));
-            mColonPaint = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
-            mAmPmPaint = createTextPaint(resources.getColor(R.color.white_text), BOLD_TYPEFACE);
-            mDatePaint = createTextPaint(resources.getColor(R.color.grey_text));
-            mLinePaint = createTextPaint(resources.getColor(R.color.grey_text));
-            mMaxTempPaint = createTextPaint(resources.getColor(R.color.white_text));
-            mMinTempPaint = createTextPaint(resources.getColor(R.color.grey_text));
-
-            mCalendar = Calendar.getInstance();
-            mDate = new Date();
-
-            initFormats();
         }
 
         @Override
         public void onDestroy() {
             mUpdateTimeHandler.removeMessages(MSG_UPDATE_TIME);
+            mIconDecoder.release();
+            mRenderer.release();
             super.onDestroy();
         }
 
-        private Paint createTextPaint(int defaultInteractiveColor) {
-            return createTextPaint(defaultInteractiveColor, NORMAL_TYPEFACE);
-        }
-
-        private Paint createTextPaint(int defaultInteractiveColor, Typeface typeface) {
-            Paint paint = new Paint();
-            paint.setColor(defaultInteractiveColor);
-            paint.setTypeface(typeface);
-            paint.setAntiAlias(true);
-            return paint;
-        }
-
         @Override
         public void onVisibilityChanged(boolean visible) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
@@ -287,9 +213,11 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
                 registerReceiver();
 
-                // Update time zone and date formats, in case they changed while we weren't visible.
-                mCalendar.setTimeZone(TimeZone.getDefault());
-                initFormats();
+                // Update time zone, date formats and the 24-hour setting, in case they changed
+                // while we weren't visible.
+                mRenderer.onLocaleChanged();
+                mRenderer.set24HourFormat(
+                        DateFormat.is24HourFormat(SunshineWatchFaceService.this));
             } else {
                 unregisterReceiver();
 
@@ -304,21 +232,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
-        private void initFormats() {
-            mDayOfWeekFormat = new SimpleDateFormat("EEE", Locale.getDefault());
-            mDayOfWeekFormat.setCalendar(mCalendar);
-
-            mMonthFormat = new SimpleDateFormat("MMM dd", Locale.getDefault());
-            mMonthFormat.setCalendar(mCalendar);
-
-            mYearFormat = new SimpleDateFormat("yyyy", Locale.getDefault());
-            mYearFormat.setCalendar(mCalendar);
-
-            //SimpleDateFormat mDateFormat = new SimpleDateFormat();
-            //mDateFormat = DateFormat.getMediumDateFormat(SunshineWatchFaceService.this);
-            //mDateFormat.setCalendar(mCalendar);
-        }
-
         private void registerReceiver() {
             if (mRegisteredTimeZoneReceiver) {
                 return;
@@ -326,6 +239,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             mRegisteredTimeZoneReceiver = true;
             IntentFilter filter = new IntentFilter(Intent.ACTION_TIMEZONE_CHANGED);
             filter.addAction(Intent.ACTION_LOCALE_CHANGED);
+            // Sent when the user switches between 12 and 24-hour time, among others
+            filter.addAction(Intent.ACTION_TIME_CHANGED);
             SunshineWatchFaceService.this.registerReceiver(mTimeZoneReceiver, filter);
         }
 
@@ -345,32 +260,8 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onApplyWindowInsets(insets);
 
             // Load resources that have alternate values for round watches.
-            Resources resources = SunshineWatchFaceService.this.getResources();
-            boolean isRound = insets.isRound();
-            float timeSize = resources.getDimension(isRound
-                    ? R.dimen.time_textsize_round : R.dimen.time_textsize);
-            float dateSize = resources.getDimension(isRound
-                    ? R.dimen.date_textsize_round : R.dimen.date_textsize);
-            float tempSize = resources.getDimension(isRound
-                    ? R.dimen.temp_textsize_round : R.dimen.temp_textsize);
-            float ampmSize = resources.getDimension(isRound
-                    ? R.dimen.ampm_textsize_round : R.dimen.ampm_textsize);
-            mLineWidth = resources.getDimension(isRound
-                    ? R.dimen.digital_line_width_round : R.dimen.digital_line_width);
-            mLineHeight = resources.getDimension(isRound
-                    ? R.dimen.digital_line_height_round : R.dimen.digital_line_height);
-            mYOffset = resources.getDimension(isRound
-                    ? R.dimen.digital_y_offset_round : R.dimen.digital_y_offset);
-
-            mHourPaint.setTextSize(timeSize);
-            mMinPaint.setTextSize(timeSize);
-            mColonPaint.setTextSize(timeSize);
-            mAmPmPaint.setTextSize(ampmSize);
-            mDatePaint.setTextSize(dateSize);
-            mMaxTempPaint.setTextSize(tempSize);
-            mMinTempPaint.setTextSize(tempSize);
-
-            mColonWidth = mColonPaint.measureText(COLON_STRING);
+            mRenderer.setRound(SunshineWatchFaceService.this.getResources(), insets.isRound());
+            decodeIconIfGrown();
         }
 
         @Override
@@ -378,9 +269,10 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             super.onPropertiesChanged(properties);
 
             boolean burnInProtection = properties.getBoolean(PROPERTY_BURN_IN_PROTECTION, false);
-            mHourPaint.setTypeface(burnInProtection ? NORMAL_TYPEFACE : BOLD_TYPEFACE);
+            mRenderer.setBurnInProtection(burnInProtection);
 
             mLowBitAmbient = properties.getBoolean(PROPERTY_LOW_BIT_AMBIENT, false);
+            mRenderer.setLowBitAmbient(mLowBitAmbient);
 
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onPropertiesChanged: burn-in protection = " + burnInProtection
@@ -394,7 +286,9 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onTimeTick: ambient = " + isInAmbientMode());
             }
-            invalidate();
+            if (mScheduler.onWakeup(mRenderer)) {
+                invalidate();
+            }
         }
 
         // Umcomplete: should change colors back when interactive mode
@@ -404,43 +298,7 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
                 Log.d(TAG, "onAmbientModeChanged: " + inAmbientMode);
             }
-            adjustPaintColorToCurrentMode(mBackgroundPaint, mInteractiveBackgroundColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND);
-
-            adjustPaintColorToCurrentMode(mHourPaint, mInteractiveTimeColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
-
-            adjustPaintColorToCurrentMode(mMinPaint, mInteractiveTimeColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
-
-            adjustPaintColorToCurrentMode(mColonPaint, mInteractiveTimeColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
-
-            adjustPaintColorToCurrentMode(mAmPmPaint, mInteractiveTimeColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_TIME);
-
-            adjustPaintColorToCurrentMode(mDatePaint, mInteractiveDateColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_DATE);
-
-            adjustPaintColorToCurrentMode(mLinePaint, mInteractiveLineColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_LINE);
-
-            adjustPaintColorToCurrentMode(mMaxTempPaint, mInteractiveMaxTempColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_MAXTEMP);
-
-            adjustPaintColorToCurrentMode(mMinTempPaint, mInteractiveMinTempColor,
-                    SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_MINTEMP);
-
-            if (mLowBitAmbient) {
-                boolean antiAlias = !inAmbientMode;
-                mHourPaint.setAntiAlias(antiAlias);
-                mColonPaint.setAntiAlias(antiAlias);
-                mMinPaint.setAntiAlias(antiAlias);
-                mDatePaint.setAntiAlias(antiAlias);
-                mLinePaint.setAntiAlias(antiAlias);
-                mMaxTempPaint.setAntiAlias(antiAlias);
-                mMinTempPaint.setAntiAlias(antiAlias);
-            }
+            mRenderer.setAmbientMode(inAmbientMode);
             invalidate();
 
             // Whether the timer should be running depends on whether we're visible (as well as
@@ -448,11 +306,6 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             updateTimer();
         }
 
-        private void adjustPaintColorToCurrentMode(Paint paint, int interactiveColor,
-                                                   int ambientColor) {
-            paint.setColor(isInAmbientMode() ? ambientColor : interactiveColor);
-        }
-
         @Override
         public void onInterruptionFilterChanged(int interruptionFilter) {
             if (Log.isLoggable(TAG, Log.DEBUG)) {
@@ -462,153 +315,17 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
 
             boolean inMuteMode = interruptionFilter == WatchFaceService.INTERRUPTION_FILTER_NONE;
 
-            if (mMute != inMuteMode) {
-                mMute = inMuteMode;
-                int alpha = inMuteMode ? MUTE_ALPHA : NORMAL_ALPHA;
-                mDatePaint.setAlpha(alpha);
-                mHourPaint.setAlpha(alpha);
-                mMinPaint.setAlpha(alpha);
-                mColonPaint.setAlpha(alpha);
-                mMaxTempPaint.setAlpha(alpha);
-                mMinTempPaint.setAlpha(alpha);
+            if (mRenderer.setMuteMode(inMuteMode)) {
                 invalidate();
             }
         }
 
-        private void updatePaintIfInteractive(Paint paint, int interactiveColor) {
-            if (!isInAmbientMode() && paint != null) {
-                paint.setColor(interactiveColor);
-            }
-        }
-
-        private String formatTwoDigitNumber(int hour) {
-            return String.format("%02d", hour);
-        }
-
-        private String getAmPmString(int amPm) {
-            return amPm == Calendar.AM ? mAmString : mPmString;
-        }
-
-        // Not done yet
         @Override
         public void onDraw(Canvas canvas, Rect bounds) {
-            Log.d(TAG, "Drawing");
-            long now = System.currentTimeMillis();
-            mCalendar.setTimeInMillis(now);
-            mDate.setTime(now);
-
-            boolean is24Hour = DateFormat.is24HourFormat(SunshineWatchFaceService.this);
-
-            // Draw the background.
-            if (isInAmbientMode()) {
-                canvas.drawColor(SunshineWatchFaceUtils.COLOR_VALUE_DEFAULT_AND_AMBIENT_BACKGROUND);
-            } else {
-                canvas.drawRect(0, 0, bounds.width(), bounds.height(), mBackgroundPaint);
-            }
-
-            // Setting offsets
-            final float xCenter = (canvas.getWidth() / 2);
-            float y = mYOffset;
-            float xOffset;
-            float centerTextWidth;
-
-            // Drawing Colon First at the center
-            centerTextWidth = mColonPaint.measureText(COLON_STRING);
-            canvas.drawText(COLON_STRING, xCenter - (centerTextWidth / 2), y, mColonPaint);
-
-            // Draw Hours
-            String hourString;
-            if (is24Hour) {
-                hourString = formatTwoDigitNumber(mCalendar.get(Calendar.HOUR_OF_DAY));
-            } else {
-                int hour = mCalendar.get(Calendar.HOUR);
-                if (hour == 0) {
-                    hour = 12;
-                }
-                hourString = String.valueOf(hour);
-            }
-            xOffset = (centerTextWidth / 2) + mHourPaint.measureText(hourString);
-            canvas.drawText(hourString, xCenter - xOffset, y, mHourPaint);
-
-            // Draw Minutes
-            String minuteString = formatTwoDigitNumber(mCalendar.get(Calendar.MINUTE));
-            canvas.drawText(minuteString, xCenter + (centerTextWidth / 2), y, mMinPaint);
-
-            // Draw Am Pm
-            if (!is24Hour) {
-                xOffset = (centerTextWidth / 2) + mMinPaint.measureText(minuteString) + (centerTextWidth / 2);
-                canvas.drawText(getAmPmString(
-                        mCalendar.get(Calendar.AM_PM)), xCenter + xOffset, mYOffset, mAmPmPaint);
-            }
-
-            // update y offset for a new line
-            y += mLineHeight;
-
-            // Date
-            String date = mDayOfWeekFormat.format(mDate) + ", " + mMonthFormat.format(mDate) +
-                    " " + mYearFormat.format(mDate);
-            centerTextWidth = mDatePaint.measureText(date);
-            canvas.drawText(
-                    date,
-                    xCenter - (centerTextWidth / 2), y, mDatePaint);
-            y += mLineHeight;
-
             // Only render the line and temps if there is no peek card, so they do not bleed
             // into each other in ambient mode.
-            if (getPeekCardPosition().isEmpty()) {
-                // Line
-                Paint paint = new Paint();
-                paint.setColor(mInteractiveDateColor);
-                paint.setTypeface(NORMAL_TYPEFACE);
-                canvas.drawLine(xCenter - mLineWidth, y, xCenter + mLineWidth, y, paint);
-                y += mLineHeight;
-
-                // High temp
-                String maxTemp = String.format(SunshineWatchFaceService.this.
-                        getResources().getString(R.string.format_temperature), mMaxTemp);
-                centerTextWidth = mMaxTempPaint.measureText(maxTemp);
-                canvas.drawText(
-                        maxTemp,
-                        xCenter - (centerTextWidth / 2), y, mMaxTempPaint);
-
-                // Low Temp
-                String minTemp = String.format(SunshineWatchFaceService.this.
-                        getResources().getString(R.string.format_temperature), mMinTemp);
-                xOffset = (centerTextWidth / 2) + mLineWidth;
-                canvas.drawText(
-                        minTemp,
-                        xCenter + xOffset, y, mMinTempPaint);
-
-                // Image
-                Resources resources = SunshineWatchFaceService.this.getResources();
-                int tempTextHeight = (int) mMaxTempPaint.measureText(maxTemp);
-                int imageSize =  tempTextHeight + 20; //resources.getDimensionPixelSize(R.dimen.image_size);
-                mBitmap = Bitmap.createScaledBitmap(mBitmap,
-                        imageSize, imageSize, true  /*filter*/ );
-                Bitmap adjustedBitmap = mBitmap;
-
-                if (isInAmbientMode()) {
-                    adjustedBitmap = toGreyScale(mBitmap);
-                }
-
-                xOffset = (centerTextWidth / 2) + mLineWidth + imageSize;
-                float yOffset = (tempTextHeight / 2) + 20;
-
-                canvas.drawBitmap(adjustedBitmap, xCenter - xOffset, y - yOffset, null);
-
-                /*xOffset = (centerTextWidth / 2) - mLineWidth - mLineWidth;
-                Bitmap bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.preview_digital_circular);
-                bitmap.setWidth((int) mLineWidth);
-                bitmap.setHeight((int) mLineWidth);
-                Paint paint = new Paint();
-                canvas.drawBitmap(bitmap, xCenter - xOffset, mLineHeight, paint);*/
-            }
-
-            // Draw H:MM in ambient mode or H:MM:SS in interactive mode.
-            /*String text = mAmbient
-                    ? String.format("%d:%02d", mTime.hour, mTime.minute)
-                    : String.format("%d:%02d:%02d", mTime.hour, mTime.minute, mTime.second);
-            canvas.drawText(text, mXOffset, mYOffset, mTextPaint);*/
+            mRenderer.draw(canvas, bounds, mScheduler.currentTimeMillis(),
+                    getPeekCardPosition().isEmpty());
         }
 
         /**
@@ -650,66 +367,42 @@ public class SunshineWatchFaceService extends CanvasWatchFaceService {
             DataMap dataMap = DataMapItem.fromDataItem(item).getDataMap();
             String path = item.getUri().getPath();
             if (path.equals(DATAITEM_TEMP_PATH)) {
-                mMaxTemp = dataMap.getDouble(DATAITEM_TEMP_MAX);
-                mMinTemp = dataMap.getDouble(DATAITEM_TEMP_MIN);
-                Asset photoAsset = dataMap.getAsset(DATAITEM_TEMP_IMAGE);
-                //mBitmap = SunshineWatchFaceUtils.getBitmapFromAsset(mGoogleApiClient, photoAsset);
-                new LoadBitmapAsyncTask().execute(photoAsset);
-                invalidate();
-                //SunshineWatchFaceUtils.updateTempData(max, min);
-            }
-        }
-
-        private class LoadBitmapAsyncTask extends AsyncTask<Asset, Void, Bitmap> {
-
-            @Override
-            protected Bitmap doInBackground(Asset... params) {
-
-                if(params.length > 0) {
-
-                    Asset asset = params[0];
-
-                    InputStream assetInputStream = Wearable.DataApi.getFdForAsset(
-                            mGoogleApiClient, asset).await().getInputStream();
-
-                    if (assetInputStream == null) {
-                        Log.w(TAG, "Requested an unknown Asset.");
-                        return null;
-                    }
-                    return BitmapFactory.decodeStream(assetInputStream);
-
+                mRenderer.setTemperatures(dataMap.getDouble(DATAITEM_TEMP_MAX),
+                        dataMap.getDouble(DATAITEM_TEMP_MIN));
+                final Asset photoAsset = dataMap.getAsset(DATAITEM_TEMP_IMAGE);
+                if (photoAsset != null) {
+                    mIconSource = new WeatherIconDecoder.Source() {
+                        @Override
+                        public InputStream open() {
+                            DataApi.GetFdForAssetResult result = Wearable.DataApi.getFdForAsset(
+                                    mGoogleApiClient, photoAsset)
+                                    .await(ASSET_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+                            return result.getStatus().isSuccess()
+                                    ? result.getInputStream() : null;
+                        }
+                    };
+                    decodeIcon();
                 } else {
-                    Log.e(TAG, "Asset must be non-null");
-                    return null;
+                    // Wider temperatures make room for a larger icon
+                    decodeIconIfGrown();
                 }
+                invalidate();
             }
+        }
 
-            @Override
-            protected void onPostExecute(Bitmap bitmap) {
-
-                if(bitmap != null) {
-                    Log.d(TAG, "Setting background image on second page..");
-                    mBitmap = bitmap;
-                    invalidate();
-                }
-            }
+        private void decodeIcon() {
+            mIconDecodeSize = mRenderer.getIconSize();
+            mIconDecoder.decode(mIconSource, mIconDecodeSize);
         }
 
-        public Bitmap toGreyScale(Bitmap bmpOriginal)
-        {
-            int width, height;
-            height = bmpOriginal.getHeight();
-            width = bmpOriginal.getWidth();
-
-            Bitmap bmpGrayscale = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
-            Canvas c = new Canvas(bmpGrayscale);
-            Paint paint = new Paint();
-            ColorMatrix cm = new ColorMatrix();
-            cm.setSaturation(0);
-            ColorMatrixColorFilter f = new ColorMatrixColorFilter(cm);
-            paint.setColorFilter(f);
-            c.drawBitmap(bmpOriginal, 0, 0, paint);
-            return bmpGrayscale;
+        /**
+         * Decodes the icon again if it is now drawn larger than it was decoded for, so it isn't
+         * scaled up.  Icons that shrink are scaled down from the one already decoded.
+         */
+        private void decodeIconIfGrown() {
+            if (mIconSource != null && mRenderer.getIconSize() > mIconDecodeSize) {
+                decodeIcon();
+            }
         }
 
         @Override
@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+/**
+ * Decides when the watch face wakes up to draw.
+ *
+ * Nothing on the face shows seconds, so on its own it only changes at the top of each minute;
+ * the timer sleeps until exactly then.  Data, mode and inset changes draw as they happen.  A
+ * wake-up only turns into a frame if something visible has changed since the last one, so a
+ * system time tick that lands in a minute we have already drawn costs nothing.
+ */
+class TickScheduler {
+
+    static final long MINUTE_IN_MILLIS = 60 * 1000;
+
+    interface Clock {
+        long currentTimeMillis();
+    }
+
+    static final Clock SYSTEM_CLOCK = new Clock() {
+        @Override
+        public long currentTimeMillis() {
+            return System.currentTimeMillis();
+        }
+    };
+
+    private final Clock mClock;
+
+    private int mWakeupCount;
+    private int mFrameCount;
+
+    TickScheduler() {
+        this(SYSTEM_CLOCK);
+    }
+
+    TickScheduler(Clock clock) {
+        mClock = clock;
+    }
+
+    long currentTimeMillis() {
+        return mClock.currentTimeMillis();
+    }
+
+    /**
+     * @return how long to sleep until the face next changes by itself, which is the start of the
+     * next minute.
+     */
+    long getDelayMillis() {
+        return MINUTE_IN_MILLIS - (mClock.currentTimeMillis() % MINUTE_IN_MILLIS);
+    }
+
+    /**
+     * Called whenever a timer or the system wakes the face up.
+     *
+     * @return true if a frame has to be drawn.
+     */
+    boolean onWakeup(SunshineWatchFaceRenderer renderer) {
+        mWakeupCount++;
+        if (!renderer.isDirty(mClock.currentTimeMillis())) {
+            return false;
+        }
+        mFrameCount++;
+        return true;
+    }
+
+    int getWakeupCount() {
+        return mWakeupCount;
+    }
+
+    /**
+     * @return how many wake-ups asked for a frame.
+     */
+    int getFrameCount() {
+        return mFrameCount;
+    }
+}
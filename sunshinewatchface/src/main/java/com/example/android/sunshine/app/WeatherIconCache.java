@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorMatrix;
+import android.graphics.ColorMatrixColorFilter;
+import android.graphics.Paint;
+
+/**
+ * The weather icon, pre-rendered at the size it is drawn at, in colour for interactive mode and
+ * in grey for ambient mode.
+ *
+ * Both are rendered from the full-size source once, when a new source arrives or the size
+ * changes, so frames only blit them.  On low-bit ambient displays the ambient icon is reduced
+ * to black and white, since greys can't be shown there.
+ */
+class WeatherIconCache {
+
+    private final Paint mGreyPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    private final Paint mLowBitPaint = new Paint();
+
+    private Bitmap mSource;
+    private int mSize;
+    private boolean mLowBitAmbient;
+
+    private Bitmap mInteractive;
+    private Bitmap mAmbient;
+    private int mBuildCount;
+
+    WeatherIconCache() {
+        ColorMatrix grey = new ColorMatrix();
+        grey.setSaturation(0);
+        mGreyPaint.setColorFilter(new ColorMatrixColorFilter(grey));
+
+        // Grey, then every channel pushed to 0 or 255 around the middle
+        float contrast = 255f;
+        ColorMatrix threshold = new ColorMatrix(new float[]{
+                contrast, 0, 0, 0, -127.5f * contrast,
+                0, contrast, 0, 0, -127.5f * contrast,
+                0, 0, contrast, 0, -127.5f * contrast,
+                0, 0, 0, 1, 0
+        });
+        ColorMatrix lowBit = new ColorMatrix(grey);
+        lowBit.postConcat(threshold);
+        mLowBitPaint.setColorFilter(new ColorMatrixColorFilter(lowBit));
+    }
+
+    /**
+     * Sets the full-size icon.  The cache never recycles it, and doesn't use it again once the
+     * icon has been rendered, so the caller may reuse it as soon as it is replaced.
+     */
+    void setSource(Bitmap source) {
+        if (source != mSource) {
+            mSource = source;
+            rebuild();
+        }
+    }
+
+    /**
+     * Sets the width and height the icon is drawn at, in pixels.
+     */
+    void setSize(int size) {
+        if (size != mSize) {
+            mSize = size;
+            rebuild();
+        }
+    }
+
+    void setLowBitAmbient(boolean lowBitAmbient) {
+        if (lowBitAmbient != mLowBitAmbient) {
+            mLowBitAmbient = lowBitAmbient;
+            rebuild();
+        }
+    }
+
+    /**
+     * @return the icon to draw, or null if there is none yet.
+     */
+    Bitmap get(boolean ambient) {
+        return ambient ? mAmbient : mInteractive;
+    }
+
+    /**
+     * @return how many times the icons have been rendered.
+     */
+    int getBuildCount() {
+        return mBuildCount;
+    }
+
+    private void rebuild() {
+        release();
+        if (mSource == null || mSize <= 0) {
+            return;
+        }
+        // Always from the source, so the icon isn't resampled over and over
+        mInteractive = Bitmap.createScaledBitmap(mSource, mSize, mSize, true /*filter*/);
+        // createScaledBitmap hands back the source itself when it is already the right size,
+        // and the source may be reused for another icon once it is replaced
+        if (mInteractive == mSource) {
+            mInteractive = mSource.copy(Bitmap.Config.ARGB_8888, false);
+        }
+        mAmbient = Bitmap.createBitmap(mSize, mSize, Bitmap.Config.ARGB_8888);
+        new Canvas(mAmbient).drawBitmap(mInteractive, 0, 0,
+                mLowBitAmbient ? mLowBitPaint : mGreyPaint);
+        mBuildCount++;
+    }
+
+    private void release() {
+        if (mInteractive != null) {
+            mInteractive.recycle();
+        }
+        if (mAmbient != null) {
+            mAmbient.recycle();
+        }
+        mInteractive = null;
+        mAmbient = null;
+    }
+}
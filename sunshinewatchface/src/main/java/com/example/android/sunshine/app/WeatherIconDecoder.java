@@ -0,0 +1,294 @@
+/*
+ * Copyright (C) 2015 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.example.android.sunshine.app;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decodes weather icons sent by the phone on a background thread, at about the size they are
+ * drawn at.
+ *
+ * The image's bounds are read first, so it can be decoded with the largest power of two
+ * subsampling that still leaves it at least as large as the icon; the phone sends art meant for
+ * its own screen, which is several times that.  Icons that are no longer shown can be handed back
+ * and their memory is decoded into next time.
+ *
+ * Decodes run one at a time.  A new request cancels the one before it, and a decode that has been
+ * superseded is dropped instead of being delivered, so only the newest icon ever reaches the
+ * callback.
+ */
+class WeatherIconDecoder {
+
+    private static final String LOG_TAG = WeatherIconDecoder.class.getSimpleName();
+
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    /**
+     * Where the encoded image comes from.  Opened on the decode thread, so it may block.
+     */
+    interface Source {
+        /**
+         * @return the encoded image, or null if it isn't available.
+         */
+        InputStream open() throws IOException;
+    }
+
+    interface Callback {
+        /**
+         * Called on the callback handler's thread with the newest icon.
+         */
+        void onIconDecoded(Bitmap icon);
+    }
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mHandler;
+    private final Callback mCallback;
+
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private final AtomicReference<Bitmap> mReusable = new AtomicReference<Bitmap>();
+    private Future<?> mPending;
+    private volatile boolean mReleased;
+
+    private final AtomicInteger mDecodeCount = new AtomicInteger();
+    private final AtomicInteger mReuseCount = new AtomicInteger();
+    private final AtomicInteger mDroppedCount = new AtomicInteger();
+    private volatile long mLastDecodeNanos;
+
+    /**
+     * @param handler the handler the callback is run on.
+     */
+    WeatherIconDecoder(Handler handler, Callback callback) {
+        mHandler = handler;
+        mCallback = callback;
+    }
+
+    /**
+     * Starts decoding an icon to be drawn at {@code size} pixels square, cancelling any decode
+     * still in progress.
+     */
+    synchronized void decode(final Source source, final int size) {
+        final int generation = mGeneration.incrementAndGet();
+        if (mPending != null) {
+            mPending.cancel(true);
+        }
+        mPending = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Bitmap icon = decodeIfCurrent(source, size, generation);
+                if (icon == null) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        // A newer decode may have been asked for while this one was queued
+                        if (isCurrent(generation)) {
+                            mCallback.onIconDecoded(icon);
+                        } else {
+                            drop(icon);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Hands back an icon from this decoder that is no longer drawn, so the next decode can reuse
+     * its memory.  Nothing else may hold on to it.  Does nothing once the decoder is released.
+     */
+    void reuse(Bitmap icon) {
+        if (mReleased || icon == null || icon.isRecycled() || !icon.isMutable()) {
+            return;
+        }
+        Bitmap previous = mReusable.getAndSet(icon);
+        if (previous != null && previous != icon) {
+            previous.recycle();
+        }
+        if (mReleased) {
+            // Released while it was being handed back, maybe after release() emptied mReusable
+            mReusable.compareAndSet(icon, null);
+        }
+    }
+
+    /**
+     * Cancels any pending decode and stops the decode thread.
+     */
+    synchronized void release() {
+        mReleased = true;
+        mGeneration.incrementAndGet();
+        mExecutor.shutdownNow();
+        Bitmap reusable = mReusable.getAndSet(null);
+        if (reusable != null) {
+            reusable.recycle();
+        }
+    }
+
+    int getDecodeCount() {
+        return mDecodeCount.get();
+    }
+
+    /**
+     * @return how many decodes went into the memory of an icon handed back with {@link #reuse}.
+     */
+    int getReuseCount() {
+        return mReuseCount.get();
+    }
+
+    /**
+     * @return how many requests were superseded before their icon was delivered.
+     */
+    int getDroppedCount() {
+        return mDroppedCount.get();
+    }
+
+    /**
+     * @return how long the last decode took, from opening the source to having the bitmap.
+     */
+    long getLastDecodeNanos() {
+        return mLastDecodeNanos;
+    }
+
+    /**
+     * @return the largest power of two that leaves a {@code width} by {@code height} image at
+     * least {@code size} pixels in both directions.
+     */
+    static int calculateInSampleSize(int width, int height, int size) {
+        int inSampleSize = 1;
+        if (size <= 0) {
+            return inSampleSize;
+        }
+        while (width / (inSampleSize * 2) >= size && height / (inSampleSize * 2) >= size) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    private boolean isCurrent(int generation) {
+        return generation == mGeneration.get();
+    }
+
+    private void drop(Bitmap icon) {
+        mDroppedCount.incrementAndGet();
+        reuse(icon);
+    }
+
+    private Bitmap decodeIfCurrent(Source source, int size, int generation) {
+        if (!isCurrent(generation)) {
+            mDroppedCount.incrementAndGet();
+            return null;
+        }
+        long start = SystemClock.elapsedRealtimeNanos();
+
+        // The bounds and the pixels each need a pass over the data, and the stream can't be
+        // rewound, so it is read once.  It is the compressed image, a few kilobytes.
+        byte[] data;
+        try {
+            data = read(source);
+        } catch (IOException e) {
+            if (isCurrent(generation)) {
+                Log.e(LOG_TAG, "Error reading the weather icon", e);
+            } else {
+                // Most likely interrupted by the newer decode
+                mDroppedCount.incrementAndGet();
+            }
+            return null;
+        }
+        if (data == null) {
+            Log.w(LOG_TAG, "Requested an unknown icon.");
+            return null;
+        }
+        if (!isCurrent(generation) || Thread.currentThread().isInterrupted()) {
+            mDroppedCount.incrementAndGet();
+            return null;
+        }
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            Log.w(LOG_TAG, "The weather icon couldn't be decoded.");
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, size);
+        // Mutable so it can be decoded into again once it is handed back
+        options.inMutable = true;
+        Bitmap icon = null;
+        Bitmap reusable = mReusable.getAndSet(null);
+        if (reusable != null) {
+            options.inBitmap = reusable;
+            try {
+                icon = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (icon != null) {
+                    mReuseCount.incrementAndGet();
+                }
+            } catch (IllegalArgumentException e) {
+                // Too small for this image
+                reusable.recycle();
+            }
+        }
+        if (icon == null) {
+            options.inBitmap = null;
+            icon = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+        if (icon == null) {
+            Log.w(LOG_TAG, "The weather icon couldn't be decoded.");
+            return null;
+        }
+        mLastDecodeNanos = SystemClock.elapsedRealtimeNanos() - start;
+        mDecodeCount.incrementAndGet();
+
+        if (!isCurrent(generation)) {
+            drop(icon);
+            return null;
+        }
+        return icon;
+    }
+
+    private static byte[] read(Source source) throws IOException {
+        InputStream in = source.open();
+        if (in == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(BUFFER_SIZE);
+            byte[] buffer = new byte[BUFFER_SIZE];
+            int count;
+            while ((count = in.read(buffer)) != -1) {
+                out.write(buffer, 0, count);
+            }
+            return out.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}